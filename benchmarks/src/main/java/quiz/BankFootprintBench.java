@@ -0,0 +1,97 @@
+package quiz;
+
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+// Memory footprint and garbage collection cost of the two question bank
+// layouts on a generated bank. fullCollection times a full collection with
+// the bank live, which has to trace everything the bank keeps on the heap;
+// churn allocates short lived garbage next to it, provoking young
+// collections. The heap and direct memory the bank takes is printed when it
+// is built, as JMH has no measure for it.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class BankFootprintBench {
+    private static final int CHURN_BYTES = 256 * 1024 * 1024;
+    
+    @Param({"objects", "columnar"})
+    String layout;
+    
+    @Param({"500000"})
+    int questions;
+    
+    private QuestionBank bank;
+    
+    @Setup
+    public void setUp() {
+        long heapBefore = usedHeap();
+        long directBefore = usedDirect();
+        List<Question> generated = generate(questions);
+        bank = layout.equals("columnar") ? ColumnarQuestionBank.of(generated) : new HeapQuestionBank(0, generated);
+        generated = null;
+        long heap = usedHeap() - heapBefore;
+        long direct = usedDirect() - directBefore;
+        System.out.printf("%s: %.1f MB heap, %.1f MB direct, %.1f bytes/question%n", layout,
+            heap / 1048576.0, direct / 1048576.0, (heap + direct) / (double) questions);
+    }
+    
+    // Checks the bank still reads back, which also keeps it reachable
+    @TearDown
+    public void tearDown() {
+        if (bank.get(questions - 1).getCorrectAnswer() <= 0) {
+            throw new IllegalStateException("Bank is damaged");
+        }
+    }
+    
+    @Benchmark
+    public int fullCollection() {
+        System.gc();
+        return bank.size();
+    }
+    
+    @Benchmark
+    public void churn(Blackhole hole) {
+        for (int allocated = 0; allocated < CHURN_BYTES; allocated += 1024) {
+            hole.consume(new byte[1024]);
+        }
+    }
+    
+    private static List<Question> generate(int count) {
+        List<Question> questions = new ArrayList<>(count);
+        for (int i = 1; i <= count; i++) {
+            HeapQuestion question = new HeapQuestion();
+            question.setQuestion("Generated question number " + i + "?");
+            for (int option = 1; option <= 4; option++) {
+                question.addOption("Option " + option + " of question " + i);
+            }
+            question.setCorrectAnswer(i % 4 + 1);
+            questions.add(question);
+        }
+        return questions;
+    }
+    
+    private static long usedHeap() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+    
+    private static long usedDirect() {
+        long used = 0;
+        for (BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+            used += pool.getMemoryUsed();
+        }
+        return used;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,142 @@
+package quiz;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Compares two JMH result files written with -rf csv, e.g. from the commit
+// before and after a change. Benchmarks are matched by name and parameters.
+// A change counts as a regression when it is worse by more than the
+// threshold and by more than both runs' error bounds combined.
+//
+// Usage: java -cp benchmarks.jar quiz.CompareResults <baseline.csv> <current.csv> [threshold %]
+// Exits with status 1 if anything regressed.
+public class CompareResults {
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: CompareResults <baseline.csv> <current.csv> [threshold %]");
+            System.exit(2);
+        }
+        double threshold = args.length > 2 ? Double.parseDouble(args[2]) : 5.0;
+        Map<String, Result> baseline = read(Path.of(args[0]));
+        Map<String, Result> current = read(Path.of(args[1]));
+        
+        int regressions = 0;
+        System.out.printf("%-60s %14s %14s %9s  %s%n", "Benchmark", "Baseline", "Current", "Change", "Unit");
+        for (Map.Entry<String, Result> entry : current.entrySet()) {
+            Result now = entry.getValue();
+            Result before = baseline.get(entry.getKey());
+            if (before == null) {
+                System.out.printf("%-60s %14s %14.3f %9s  %s%n", entry.getKey(), "-", now.score, "new", now.unit);
+                continue;
+            }
+            
+            // Positive means worse, whichever direction the mode counts in
+            double change = (now.score - before.score) / before.score * 100;
+            double worse = now.higherIsBetter() ? -change : change;
+            boolean regressed = worse > threshold
+                && Math.abs(now.score - before.score) > now.error + before.error;
+            if (regressed) {
+                regressions++;
+            }
+            System.out.printf("%-60s %14.3f %14.3f %+8.1f%%  %s%s%n", entry.getKey(), before.score, now.score,
+                change, now.unit, regressed ? "  REGRESSION" : "");
+        }
+        
+        System.out.println(regressions == 0 ? "No regressions" : regressions + " regression(s)");
+        System.exit(regressions == 0 ? 0 : 1);
+    }
+    
+    private static Map<String, Result> read(Path file) throws IOException {
+        List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        if (lines.isEmpty()) {
+            throw new IOException(file + " is empty");
+        }
+        List<String> header = split(lines.get(0));
+        int name = header.indexOf("Benchmark");
+        int mode = header.indexOf("Mode");
+        int threads = header.indexOf("Threads");
+        int score = header.indexOf("Score");
+        int error = header.indexOf("Score Error (99.9%)");
+        int unit = header.indexOf("Unit");
+        if (name < 0 || mode < 0 || score < 0 || unit < 0) {
+            throw new IOException(file + " is not a JMH CSV result file");
+        }
+        
+        Map<String, Result> results = new LinkedHashMap<>();
+        for (String line : lines.subList(1, lines.size())) {
+            if (line.isEmpty()) {
+                continue;
+            }
+            List<String> fields = split(line);
+            StringBuilder key = new StringBuilder(fields.get(name));
+            for (int i = 0; i < header.size(); i++) {
+                if (header.get(i).startsWith("Param: ") && !fields.get(i).isEmpty()) {
+                    key.append(' ').append(header.get(i).substring(7)).append('=').append(fields.get(i));
+                }
+            }
+            if (threads >= 0 && !fields.get(threads).equals("1")) {
+                key.append(" t=").append(fields.get(threads));
+            }
+            key.append(" (").append(fields.get(mode)).append(')');
+            
+            String errorText = error >= 0 ? fields.get(error) : "";
+            results.put(key.toString(), new Result(fields.get(mode), parse(fields.get(score)),
+                errorText.isEmpty() || errorText.equals("NaN") ? 0 : parse(errorText), fields.get(unit)));
+        }
+        return results;
+    }
+    
+    // JMH writes numbers with a decimal comma in some locales
+    private static double parse(String number) {
+        return Double.parseDouble(number.replace(',', '.'));
+    }
+    
+    // Splits one CSV line, honouring quoted fields
+    private static List<String> split(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '"') {
+                if (quoted && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else {
+                    quoted = !quoted;
+                }
+            } else if (c == ',' && !quoted) {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+    
+    private static final class Result {
+        final String mode;
+        final double score;
+        final double error;
+        final String unit;
+        
+        Result(String mode, double score, double error, String unit) {
+            this.mode = mode;
+            this.score = score;
+            this.error = error;
+            this.unit = unit;
+        }
+        
+        boolean higherIsBetter() {
+            return mode.equals("thrpt");
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,80 @@
+package quiz;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+// Server side frame encoding for one question in both codecs, on the object
+// and columnar layouts. Both serve frames they encoded once, the columnar
+// layout from its table of recently sent ones; coldFrame measures that first
+// encoding.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EncodeBench {
+    @Param({"objects", "columnar"})
+    String layout;
+    
+    private Question question;
+    private final FrameBuffer out = new FrameBuffer(512);
+    
+    @Setup
+    public void setUp() {
+        HeapQuestion source = new HeapQuestion();
+        source.setQuestion("Which data structure gives O(1) average lookup by key?");
+        source.addOption("A linked list");
+        source.addOption("A hash table");
+        source.addOption("A binary heap");
+        source.addOption("A sorted array");
+        source.setCorrectAnswer(2);
+        
+        question = layout.equals("columnar")
+            ? ColumnarQuestionBank.of(List.of(source)).get(0)
+            : source;
+    }
+    
+    @Benchmark
+    public int textQuestion() {
+        out.reset();
+        TextCodec.INSTANCE.question(out, question, WireCodec.UNTAGGED);
+        return out.length();
+    }
+    
+    @Benchmark
+    public int textTaggedQuestion() {
+        out.reset();
+        TextCodec.INSTANCE.question(out, question, 42);
+        return out.length();
+    }
+    
+    @Benchmark
+    public int binaryQuestion() {
+        out.reset();
+        BinaryCodec.INSTANCE.question(out, question, WireCodec.UNTAGGED);
+        return out.length();
+    }
+    
+    @Benchmark
+    public int textResult() {
+        out.reset();
+        TextCodec.INSTANCE.result(out, question, WireCodec.UNTAGGED, false);
+        TextCodec.INSTANCE.score(out, 17, 42);
+        return out.length();
+    }
+    
+    @Benchmark
+    public int binaryResult() {
+        out.reset();
+        BinaryCodec.INSTANCE.result(out, question, WireCodec.UNTAGGED, false);
+        BinaryCodec.INSTANCE.score(out, 17, 42);
+        return out.length();
+    }
+    
+    @Benchmark
+    public byte[] coldFrame() {
+        return HeapQuestion.copyOf(question).getFrame();
+    }
+}
\ No newline at end of file
@@ -0,0 +1,92 @@
+package quiz;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+// Per answer cost of the session loop's inner step: decode an ANSWER
+// message, grade it and encode the result and score. ClientHandler is tied
+// to its socket, so this replays the same codec calls over a buffered
+// stream of answers.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@OperationsPerInvocation(GradeBench.ANSWERS)
+public class GradeBench {
+    static final int ANSWERS = 1000;
+    
+    @Param({"text", "binary"})
+    String codec;
+    
+    @Param({"false", "true"})
+    boolean tagged;
+    
+    private WireCodec wire;
+    private byte[] answers;
+    private QuestionBank questions;
+    private final FrameBuffer out = new FrameBuffer(512);
+    private final WireCodec.Message message = new WireCodec.Message();
+    
+    @Setup
+    public void setUp() {
+        List<Question> parsed = new ArrayList<>();
+        for (int i = 0; i < ANSWERS; i++) {
+            HeapQuestion question = new HeapQuestion();
+            question.setQuestion("Question " + i + "?");
+            for (int option = 1; option <= 4; option++) {
+                question.addOption("Option " + option);
+            }
+            question.setCorrectAnswer(i % 4 + 1);
+            parsed.add(question);
+        }
+        questions = new HeapQuestionBank(1, parsed);
+        
+        wire = codec.equals("binary") ? BinaryCodec.INSTANCE : TextCodec.INSTANCE;
+        FrameBuffer stream = new FrameBuffer(ANSWERS * 16);
+        for (int i = 0; i < ANSWERS; i++) {
+            int answer = i % 3 + 1;
+            if (wire == BinaryCodec.INSTANCE) {
+                if (tagged) {
+                    BinaryProtocol.taggedAnswer(stream, i + 1, answer);
+                } else {
+                    BinaryProtocol.answer(stream, answer);
+                }
+            } else if (tagged) {
+                stream.append("ANSWER#").append(i + 1).append(':').append(answer).append('\n');
+            } else {
+                stream.append("ANSWER:").append(answer).append('\n');
+            }
+        }
+        answers = stream.toByteArray();
+    }
+    
+    @Benchmark
+    public int gradeAnswers() throws IOException {
+        FrameReader in = new FrameReader(new ByteArrayInputStream(answers));
+        int score = 0;
+        int answered = 0;
+        while (wire.read(in, message)) {
+            if (message.type != WireCodec.Message.Type.ANSWER) {
+                throw new IllegalStateException("Unexpected message " + message.type);
+            }
+            int index = message.id == WireCodec.UNTAGGED ? answered : message.id - 1;
+            Question question = questions.get(index);
+            boolean correct = message.value == question.getCorrectAnswer();
+            if (correct) {
+                score++;
+            }
+            answered++;
+            
+            out.reset();
+            wire.result(out, question, tagged ? index + 1 : WireCodec.UNTAGGED, correct);
+            wire.score(out, score, answered);
+        }
+        return score;
+    }
+}
\ No newline at end of file
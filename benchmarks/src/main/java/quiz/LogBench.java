@@ -0,0 +1,42 @@
+package quiz;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+// Cost on the calling thread of logging a message and an answer event. The
+// drain thread formats into a sink that discards the text. Run with -t to
+// measure contention on the ring; events that find it full are dropped,
+// which is part of what the hot path costs.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LogBench {
+    @Param({"8192"})
+    int capacity;
+    
+    private EventLog log;
+    
+    @Setup
+    public void setUp() {
+        log = new EventLog(capacity).addSink(batch -> { });
+        log.start();
+    }
+    
+    @TearDown
+    public void tearDown() {
+        log.close();
+    }
+    
+    @Benchmark
+    public boolean message() {
+        return log.message("Client 127.0.0.1 connected");
+    }
+    
+    @Benchmark
+    public boolean event() {
+        return log.event(EventLog.Event.CORRECT, "127.0.0.1", 7, 0);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,98 @@
+package quiz;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+// Question file loading: the parser on its own, single threaded and on the
+// fork/join pool, and QuizEngine.loadQuestions with and without the
+// compiled snapshot.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParseBench {
+    @Param({"10000", "100000"})
+    int questions;
+    
+    private Path dir;
+    private Path file;
+    
+    @Setup
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("quiz-bench");
+        file = dir.resolve("questions.txt");
+        generate(file, questions);
+    }
+    
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(QuestionSnapshot.snapshotPath(file));
+        Files.deleteIfExists(file);
+        Files.deleteIfExists(dir);
+    }
+    
+    // An engine on the generated file, only set up for loadQuestions
+    @State(Scope.Benchmark)
+    public static class Engine {
+        @Param({"false", "true"})
+        boolean snapshot;
+        
+        private EventLog log;
+        private QuizEngine engine;
+        
+        @Setup
+        public void setUp(ParseBench bench) throws IOException {
+            log = new EventLog(1024);
+            log.start();
+            engine = new QuizEngine(ServerConfig.fromArgs(new String[] {
+                "--questions", bench.file.toString(),
+                "--questions.watch", "false",
+                "--questions.snapshot", Boolean.toString(snapshot)
+            }), log);
+            // Writes the snapshot, so the measured loads map it
+            engine.loadQuestions();
+        }
+        
+        @TearDown
+        public void tearDown() {
+            log.close();
+        }
+    }
+    
+    @Benchmark
+    public List<Question> parseSequential() throws IOException {
+        return new QuestionParser(1).parse(file, problem -> { });
+    }
+    
+    @Benchmark
+    public List<Question> parseParallel() throws IOException {
+        return new QuestionParser().parse(file, problem -> { });
+    }
+    
+    @Benchmark
+    public int loadQuestions(Engine state) throws IOException {
+        return state.engine.loadQuestions();
+    }
+    
+    // A question file of count questions with four options each; also used
+    // by SessionBench
+    static void generate(Path file, int count) throws IOException {
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(
+                Files.newOutputStream(file), StandardCharsets.UTF_8), 1 << 16)) {
+            for (int i = 1; i <= count; i++) {
+                out.write("Q: Generated question number " + i + "?\n");
+                for (int option = 1; option <= 4; option++) {
+                    out.write(option + ". Option " + option + " of question " + i + "\n");
+                }
+                out.write("A: " + (i % 4 + 1) + "\n\n");
+            }
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,94 @@
+package quiz;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+// One complete text quiz session against an engine running in the same
+// JVM on a loopback socket: connect, answer every question in lockstep and
+// read the final score.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SessionBench {
+    private static final byte[] ANSWER = "ANSWER:1\n".getBytes(StandardCharsets.US_ASCII);
+    
+    @Param({"threads", "virtual", "nio"})
+    String engine;
+    
+    @Param({"20"})
+    int quizQuestions;
+    
+    // Session journal: off, or group or async commits
+    @Param({"off", "group"})
+    String journal;
+    
+    private Path file;
+    private Path journalFile;
+    private EventLog log;
+    private QuizEngine server;
+    
+    @Setup
+    public void setUp() throws IOException {
+        file = Files.createTempFile("questions", ".txt");
+        ParseBench.generate(file, quizQuestions);
+        journalFile = Files.createTempFile("sessions", ".journal");
+        Files.delete(journalFile);
+        
+        log = new EventLog(8192).addSink(batch -> { });
+        log.start();
+        server = new QuizEngine(ServerConfig.fromArgs(new String[] {
+            "--port", "0",
+            "--engine", engine,
+            "--questions", file.toString(),
+            "--questions.watch", "false",
+            "--questions.snapshot", "false",
+            "--journal.file", journal.equals("off") ? "" : journalFile.toString(),
+            "--journal.sync", journal.equals("off") ? "group" : journal
+        }), log);
+        server.start();
+    }
+    
+    @TearDown
+    public void tearDown() throws Exception {
+        server.stop();
+        server.awaitStop();
+        log.close();
+        Files.deleteIfExists(file);
+        Files.deleteIfExists(journalFile);
+    }
+    
+    @Benchmark
+    public int session() throws IOException {
+        try (Socket socket = new Socket("localhost", server.getLocalPort())) {
+            socket.setTcpNoDelay(true);
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            OutputStream out = socket.getOutputStream();
+            
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.startsWith("OPTIONS:")) {
+                    int options = Integer.parseInt(line.substring(8));
+                    for (int i = 0; i < options; i++) {
+                        in.readLine();
+                    }
+                    out.write(ANSWER);
+                    out.flush();
+                } else if (line.startsWith("FINISHED:")) {
+                    return line.length();
+                }
+            }
+            throw new IOException("Session ended before FINISHED");
+        }
+    }
+}
\ No newline at end of file
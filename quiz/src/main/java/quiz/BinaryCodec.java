@@ -0,0 +1,122 @@
+package quiz;
+
+import java.io.IOException;
+import java.util.BitSet;
+import java.util.List;
+
+// Binary frames, see BinaryProtocol for the layout
+class BinaryCodec implements WireCodec {
+    static final BinaryCodec INSTANCE = new BinaryCodec();
+    
+    @Override
+    public void total(FrameBuffer out, int total) {
+        BinaryProtocol.total(out, total);
+    }
+    
+    @Override
+    public void question(FrameBuffer out, Question question, int id) {
+        if (id == UNTAGGED) {
+            out.append(question.getBinaryFrame());
+        } else {
+            BinaryProtocol.taggedQuestion(out, question.getBinaryFrame(), id);
+        }
+    }
+    
+    @Override
+    public void result(FrameBuffer out, Question question, int id, boolean correct) {
+        if (id == UNTAGGED) {
+            BinaryProtocol.result(out, correct, question.getCorrectAnswer());
+        } else {
+            BinaryProtocol.taggedResult(out, id, correct, question.getCorrectAnswer());
+        }
+    }
+    
+    @Override
+    public void deadline(FrameBuffer out, int millis) {
+        BinaryProtocol.deadline(out, millis);
+    }
+    
+    @Override
+    public void timedOut(FrameBuffer out, Question question, int id) {
+        BinaryProtocol.timedOut(out, id == UNTAGGED ? 0 : id, question.getCorrectAnswer());
+    }
+    
+    @Override
+    public void score(FrameBuffer out, int score, int answered) {
+        BinaryProtocol.score(out, score, answered);
+    }
+    
+    @Override
+    public void finished(FrameBuffer out, int score, int total) {
+        BinaryProtocol.finished(out, score, total);
+    }
+    
+    @Override
+    public void error(FrameBuffer out, String message) {
+        BinaryProtocol.error(out, message == null ? "Invalid answer format" : message);
+    }
+    
+    @Override
+    public void pipelineAccepted(FrameBuffer out, int window) {
+        BinaryProtocol.pipelineAccepted(out, window);
+    }
+    
+    @Override
+    public void hashes(FrameBuffer out, QuestionBank questions) {
+        BinaryProtocol.hashes(out, questions);
+    }
+    
+    @Override
+    public void cachedQuestion(FrameBuffer out, int number) {
+        BinaryProtocol.cachedQuestion(out, number);
+    }
+    
+    @Override
+    public void leaderboard(FrameBuffer out, List<Leaderboard.Standing> standings) {
+        BinaryProtocol.leaderboard(out, standings);
+    }
+    
+    @Override
+    public void questionStats(FrameBuffer out, int id, long attempts, long correct) {
+        BinaryProtocol.questionStats(out, id, LiveStats.clamp(attempts), LiveStats.clamp(correct));
+    }
+    
+    @Override
+    public boolean read(FrameReader in, Message message) throws IOException {
+        int type = in.readFrame();
+        if (type < 0) {
+            return false;
+        }
+        
+        switch (type) {
+            case BinaryProtocol.ANSWER:
+                message.set(Message.Type.ANSWER, UNTAGGED, in.readVarint());
+                break;
+            case BinaryProtocol.TAGGED_ANSWER:
+                int id = in.readVarint();
+                message.set(Message.Type.ANSWER, id, in.readVarint());
+                break;
+            case BinaryProtocol.PIPELINE:
+                message.set(Message.Type.PIPELINE, UNTAGGED, in.readVarint());
+                break;
+            case BinaryProtocol.LEADERBOARD_REQUEST:
+                message.set(Message.Type.LEADERBOARD, UNTAGGED, in.readVarint());
+                break;
+            case BinaryProtocol.STATS_REQUEST:
+                message.set(Message.Type.STATS, in.readVarint(), 0);
+                break;
+            case BinaryProtocol.HAVE:
+                BitSet known = BitSet.valueOf(in.readBytes());
+                message.set(Message.Type.HAVE, UNTAGGED, 0);
+                message.known = known;
+                break;
+            case BinaryProtocol.COMPRESS:
+                message.set(Message.Type.COMPRESS, UNTAGGED, in.readBoolean() ? 1 : 0);
+                break;
+            default:
+                message.set(Message.Type.OTHER, UNTAGGED, type);
+                break;
+        }
+        return true;
+    }
+}
\ No newline at end of file
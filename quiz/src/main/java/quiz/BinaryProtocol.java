@@ -0,0 +1,244 @@
+package quiz;
+
+import java.nio.charset.StandardCharsets;
+import java.util.BitSet;
+import java.util.List;
+
+// Compact binary framing, negotiated on top of the text protocol.
+//
+// Handshake: a server that supports it starts with the line HELLO:BINARY/<versions>.
+// A client that wants it answers UPGRADE:BINARY/<version>. The server replies
+// with UPGRADE:OK (or UPGRADE:REFUSED) and, once accepted, both sides switch
+// to binary frames and the server resends TOTAL and the current question.
+// Clients that ignore the HELLO line keep using text.
+//
+// Frame: <type byte> <varint payload length> <payload>. Integers are unsigned
+// LEB128 varints; strings are a varint byte length followed by UTF-8 bytes.
+class BinaryProtocol {
+    static final int VERSION = 1;
+    static final String HELLO_PREFIX = "HELLO:BINARY/";
+    static final String UPGRADE_PREFIX = "UPGRADE:BINARY/";
+    static final String UPGRADE_OK = "UPGRADE:OK";
+    static final String UPGRADE_REFUSED = "UPGRADE:REFUSED";
+    static final byte[] HELLO_LINE = FrameBuffer.ascii(HELLO_PREFIX + VERSION + "\n");
+    static final int MAX_FRAME_LENGTH = 1024 * 1024;
+    
+    // Server to client
+    static final int TOTAL = 1;        // total
+    static final int QUESTION = 2;     // question text, option count, options
+    static final int RESULT = 3;       // correct flag, correct option
+    static final int SCORE = 4;        // score, answered
+    static final int FINISHED = 5;     // score, total
+    static final int ERROR = 6;        // message
+    static final int TAGGED_QUESTION = 7;  // id, then the QUESTION payload
+    static final int TAGGED_RESULT = 8;    // id, correct flag, correct option
+    static final int PIPELINE_OK = 9;      // granted window
+    static final int LEADERBOARD = 10;     // count, then score, answered and name per entry
+    static final int QUESTION_STATS = 11;  // id, attempts, correct
+    static final int DEADLINE = 12;        // milliseconds left to answer the next question
+    static final int TIMED_OUT = 13;       // id (0 if untagged), correct option
+    static final int HASHES = 14;          // count, then 8 bytes per question; see QuestionSync
+    static final int CACHED_QUESTION = 15; // position of a question the client has
+    
+    // Client to server
+    static final int ANSWER = 16;      // chosen option
+    static final int TAGGED_ANSWER = 17;   // id, chosen option
+    static final int PIPELINE = 18;        // requested window
+    static final int LEADERBOARD_REQUEST = 19; // limit, 0 for the whole board
+    static final int STATS_REQUEST = 20;   // id, 0 for the question graded last
+    static final int HAVE = 21;            // bitmap length, then the bytes of a little-endian bit set
+    static final int COMPRESS = 22;        // whether the dictionary is needed; see Compression
+    
+    // Server to client, once compression is on
+    static final int DICTIONARY = 23;      // dictionary length, then its bytes, or 0 if the client has it
+    static final int COMPRESSED = 24;      // id (0 if untagged), QUESTION payload length, deflated payload
+    
+    // Highest version both sides speak, or 0 if none. Versions are listed
+    // comma separated after the prefix.
+    static int negotiate(String line, String prefix) {
+        if (!line.startsWith(prefix)) {
+            return 0;
+        }
+        int best = 0;
+        for (String version : line.substring(prefix.length()).split(",")) {
+            try {
+                int v = Integer.parseInt(version.trim());
+                if (v <= VERSION && v > best) {
+                    best = v;
+                }
+            } catch (NumberFormatException e) {
+                // Ignore versions we cannot parse
+            }
+        }
+        return best;
+    }
+    
+    static byte[] upgradeRequest() {
+        return FrameBuffer.ascii(UPGRADE_PREFIX + VERSION + "\n");
+    }
+    
+    static void total(FrameBuffer out, int total) {
+        header(out, TOTAL, varintSize(total)).appendVarint(total);
+    }
+    
+    // Encodes a full QUESTION frame; Question caches the result
+    static byte[] question(String question, List<String> options) {
+        byte[] text = question.getBytes(StandardCharsets.UTF_8);
+        byte[][] encodedOptions = new byte[options.size()][];
+        int length = varintSize(text.length) + text.length + varintSize(options.size());
+        for (int i = 0; i < encodedOptions.length; i++) {
+            encodedOptions[i] = options.get(i).getBytes(StandardCharsets.UTF_8);
+            length += varintSize(encodedOptions[i].length) + encodedOptions[i].length;
+        }
+        
+        FrameBuffer out = new FrameBuffer(length + 6);
+        header(out, QUESTION, length);
+        out.appendVarint(text.length).append(text);
+        out.appendVarint(encodedOptions.length);
+        for (byte[] option : encodedOptions) {
+            out.appendVarint(option.length).append(option);
+        }
+        return out.toByteArray();
+    }
+    
+    static void result(FrameBuffer out, boolean correct, int correctAnswer) {
+        header(out, RESULT, 1 + varintSize(correctAnswer)).append((char) (correct ? 1 : 0)).appendVarint(correctAnswer);
+    }
+    
+    // Re-frames a cached QUESTION frame with the question id in front
+    static void taggedQuestion(FrameBuffer out, byte[] questionFrame, int id) {
+        int length = payloadLength(questionFrame);
+        header(out, TAGGED_QUESTION, varintSize(id) + length).appendVarint(id);
+        out.append(questionFrame, questionFrame.length - length, length);
+    }
+    
+    // Payload length of an encoded frame; the payload is its last bytes
+    static int payloadLength(byte[] frame) {
+        int length = 0;
+        int offset = 1;
+        for (int shift = 0; ; shift += 7) {
+            int b = frame[offset++] & 0xFF;
+            length |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return length;
+            }
+        }
+    }
+    
+    static void compressed(FrameBuffer out, int id, int payloadLength, byte[] deflated, int deflatedLength) {
+        header(out, COMPRESSED, varintSize(id) + varintSize(payloadLength) + deflatedLength)
+            .appendVarint(id).appendVarint(payloadLength).append(deflated, 0, deflatedLength);
+    }
+    
+    static void dictionary(FrameBuffer out, byte[] dictionary) {
+        header(out, DICTIONARY, varintSize(dictionary.length) + dictionary.length)
+            .appendVarint(dictionary.length).append(dictionary);
+    }
+    
+    static void compress(FrameBuffer out, boolean needDictionary) {
+        header(out, COMPRESS, 1).append((char) (needDictionary ? 1 : 0));
+    }
+    
+    static void taggedResult(FrameBuffer out, int id, boolean correct, int correctAnswer) {
+        header(out, TAGGED_RESULT, varintSize(id) + 1 + varintSize(correctAnswer))
+            .appendVarint(id).append((char) (correct ? 1 : 0)).appendVarint(correctAnswer);
+    }
+    
+    static void deadline(FrameBuffer out, int millis) {
+        header(out, DEADLINE, varintSize(millis)).appendVarint(millis);
+    }
+    
+    static void timedOut(FrameBuffer out, int id, int correctAnswer) {
+        header(out, TIMED_OUT, varintSize(id) + varintSize(correctAnswer)).appendVarint(id).appendVarint(correctAnswer);
+    }
+    
+    static void hashes(FrameBuffer out, QuestionBank questions) {
+        int count = questions.size();
+        header(out, HASHES, varintSize(count) + 8 * count).appendVarint(count);
+        for (int i = 0; i < count; i++) {
+            long hash = questions.get(i).getContentHash();
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                out.append((char) ((hash >>> shift) & 0xFF));
+            }
+        }
+    }
+    
+    static void cachedQuestion(FrameBuffer out, int number) {
+        header(out, CACHED_QUESTION, varintSize(number)).appendVarint(number);
+    }
+    
+    static void have(FrameBuffer out, BitSet known) {
+        byte[] bits = known.toByteArray();
+        header(out, HAVE, varintSize(bits.length) + bits.length).appendVarint(bits.length).append(bits);
+    }
+    
+    static void pipelineAccepted(FrameBuffer out, int window) {
+        header(out, PIPELINE_OK, varintSize(window)).appendVarint(window);
+    }
+    
+    static void leaderboard(FrameBuffer out, List<Leaderboard.Standing> standings) {
+        byte[][] names = new byte[standings.size()][];
+        int length = varintSize(names.length);
+        for (int i = 0; i < names.length; i++) {
+            Leaderboard.Standing standing = standings.get(i);
+            names[i] = standing.name.getBytes(StandardCharsets.UTF_8);
+            length += varintSize(standing.score) + varintSize(standing.answered) + varintSize(names[i].length) + names[i].length;
+        }
+        header(out, LEADERBOARD, length).appendVarint(names.length);
+        for (int i = 0; i < names.length; i++) {
+            Leaderboard.Standing standing = standings.get(i);
+            out.appendVarint(standing.score).appendVarint(standing.answered).appendVarint(names[i].length).append(names[i]);
+        }
+    }
+    
+    static void questionStats(FrameBuffer out, int id, int attempts, int correct) {
+        header(out, QUESTION_STATS, varintSize(id) + varintSize(attempts) + varintSize(correct))
+            .appendVarint(id).appendVarint(attempts).appendVarint(correct);
+    }
+    
+    static void leaderboardRequest(FrameBuffer out, int limit) {
+        header(out, LEADERBOARD_REQUEST, varintSize(limit)).appendVarint(limit);
+    }
+    
+    static void statsRequest(FrameBuffer out, int id) {
+        header(out, STATS_REQUEST, varintSize(id)).appendVarint(id);
+    }
+    
+    static void taggedAnswer(FrameBuffer out, int id, int answer) {
+        header(out, TAGGED_ANSWER, varintSize(id) + varintSize(answer)).appendVarint(id).appendVarint(answer);
+    }
+    
+    static void pipeline(FrameBuffer out, int window) {
+        header(out, PIPELINE, varintSize(window)).appendVarint(window);
+    }
+    
+    static void score(FrameBuffer out, int score, int answered) {
+        header(out, SCORE, varintSize(score) + varintSize(answered)).appendVarint(score).appendVarint(answered);
+    }
+    
+    static void finished(FrameBuffer out, int score, int total) {
+        header(out, FINISHED, varintSize(score) + varintSize(total)).appendVarint(score).appendVarint(total);
+    }
+    
+    static void error(FrameBuffer out, String message) {
+        byte[] text = message.getBytes(StandardCharsets.UTF_8);
+        header(out, ERROR, varintSize(text.length) + text.length).appendVarint(text.length).append(text);
+    }
+    
+    static void answer(FrameBuffer out, int answer) {
+        header(out, ANSWER, varintSize(answer)).appendVarint(answer);
+    }
+    
+    static int varintSize(int value) {
+        int size = 1;
+        while ((value & ~0x7F) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+    
+    static FrameBuffer header(FrameBuffer out, int type, int length) {
+        return out.append((char) type).appendVarint(length);
+    }
+}
\ No newline at end of file
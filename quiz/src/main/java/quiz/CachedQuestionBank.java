@@ -0,0 +1,132 @@
+package quiz;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+// Keeps only the questions sessions are actually using as objects, with
+// their encoded frames, in front of a columnar bank that usually sits on a
+// mapped snapshot. Heap use follows the working set instead of the bank size.
+//
+// The cache is split into segments by question id, each evicting with the
+// clock algorithm: a hit only sets a reference bit, and the hand clears bits
+// until it finds an entry that was not used since its last pass.
+final class CachedQuestionBank extends QuestionBank {
+    private static final int SEGMENTS = 16;
+    
+    private final QuestionBank source;
+    private final Segment[] segments;
+    private final LongAdder hits;
+    private final LongAdder misses;
+    
+    CachedQuestionBank(QuestionBank source, int capacity) {
+        super(source.getVersion());
+        this.source = source;
+        this.segments = new Segment[SEGMENTS];
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(Math.max(1, (capacity + SEGMENTS - 1) / SEGMENTS));
+        }
+        this.hits = new LongAdder();
+        this.misses = new LongAdder();
+    }
+    
+    private CachedQuestionBank(int version, CachedQuestionBank other) {
+        super(version);
+        this.source = other.source.withVersion(version);
+        this.segments = other.segments;
+        this.hits = other.hits;
+        this.misses = other.misses;
+    }
+    
+    @Override
+    public int size() {
+        return source.size();
+    }
+    
+    @Override
+    public Question get(int index) {
+        Segment segment = segments[index & (SEGMENTS - 1)];
+        Question question = segment.get(index);
+        if (question != null) {
+            hits.increment();
+            return question;
+        }
+        
+        // Decode outside the lock; if another session got there first, use its copy
+        misses.increment();
+        return segment.put(index, HeapQuestion.copyOf(source.get(index)));
+    }
+    
+    @Override
+    public QuestionBank withVersion(int version) {
+        return new CachedQuestionBank(version, this);
+    }
+    
+    @Override
+    protected String categoryOf(int index) {
+        return source.categoryOf(index);
+    }
+    
+    public long getHits() {
+        return hits.sum();
+    }
+    
+    public long getMisses() {
+        return misses.sum();
+    }
+    
+    private static class Segment {
+        private final Map<Integer, Entry> entries = new HashMap<>();
+        private final Entry[] ring;
+        private int size;
+        private int hand;
+        
+        Segment(int capacity) {
+            ring = new Entry[capacity];
+        }
+        
+        synchronized Question get(int id) {
+            Entry entry = entries.get(id);
+            if (entry == null) {
+                return null;
+            }
+            entry.referenced = true;
+            return entry.question;
+        }
+        
+        synchronized Question put(int id, Question question) {
+            Entry existing = entries.get(id);
+            if (existing != null) {
+                existing.referenced = true;
+                return existing.question;
+            }
+            
+            Entry entry = new Entry(id, question);
+            if (size < ring.length) {
+                ring[size++] = entry;
+            } else {
+                // Give every recently used entry a second chance
+                while (ring[hand].referenced) {
+                    ring[hand].referenced = false;
+                    hand = (hand + 1) % ring.length;
+                }
+                entries.remove(ring[hand].id);
+                ring[hand] = entry;
+                hand = (hand + 1) % ring.length;
+            }
+            entries.put(id, entry);
+            return question;
+        }
+    }
+    
+    private static class Entry {
+        final int id;
+        final Question question;
+        boolean referenced;
+        
+        Entry(int id, Question question) {
+            this.id = id;
+            this.question = question;
+        }
+    }
+}
\ No newline at end of file
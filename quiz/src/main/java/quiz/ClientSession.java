@@ -0,0 +1,710 @@
+package quiz;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Client side of the quiz protocol, without any UI. It negotiates the
+// binary and pipelined protocols the server offers, turns what the server
+// sends into Listener calls and encodes the answers. QuizClient puts the
+// Swing window on top of it; LoadGenerator drives thousands at once.
+class ClientSession implements Closeable {
+    // Question id passed for questions and results that are not pipelined
+    static final int UNTAGGED = 0;
+    
+    // The server turned the connection away because it is full
+    static class BusyException extends IOException {
+        private static final long serialVersionUID = 1L;
+        
+        BusyException(String message) {
+            super(message);
+        }
+    }
+    
+    // Called on the thread that runs the session
+    interface Listener {
+        void total(int total);
+        
+        // Pipelined questions carry their id and may arrive before the
+        // previous one is answered; others are UNTAGGED
+        void question(int id, String text, List<String> options);
+        
+        void result(int id, boolean correct, int correctAnswer);
+        
+        void score(int score, int answered);
+        
+        void finished(String message);
+        
+        void error(String message);
+        
+        // The next question is timed and has to be answered within this
+        // many milliseconds from now; see TimedQuestions
+        default void deadline(long millis) {
+        }
+        
+        // A timed question was not answered in time and counts as wrong
+        default void timedOut(int id, int correctAnswer) {
+            result(id, false, correctAnswer);
+        }
+        
+        // The server picked up the session this one resumes
+        default void resumed(int answered, int score) {
+        }
+        
+        // The server did not know the session, the quiz starts over
+        default void resumeRefused() {
+        }
+        
+        // Replies to requestLeaderboard() and requestStats()
+        default void leaderboard(List<Leaderboard.Standing> standings) {
+        }
+        
+        default void questionStats(int id, int attempts, int correct) {
+        }
+        
+        // Live games, see joinRoom(). Each round's question follows
+        // roundStarted() tagged with the round number.
+        default void joined(String room, int players, int rounds) {
+        }
+        
+        default void roundStarted(int round, int rounds, long millis) {
+        }
+        
+        default void roundClosed(int round, int correctOption, int answers, int right) {
+        }
+    }
+    
+    // Replaced once when a cluster router sends the session on to its node
+    private volatile Socket socket;
+    private volatile OutputStream out;
+    private volatile FrameReader in;
+    private final boolean wantBinary;
+    private final int pipelineWindow;
+    private volatile boolean binaryMode = false;
+    private volatile boolean pipelined = false;
+    private volatile boolean open = true;
+    private volatile String token;
+    private volatile boolean finished = false;
+    private volatile boolean statsOffered = false;
+    private volatile boolean inRoom = false;
+    private String resumeToken;
+    private String room;
+    private KnownQuestions cache;
+    private boolean offersCache = false;
+    // Hashes of the session's questions until HAVE is sent for them
+    private long[] offeredHashes;
+    // What HAVE claimed, by position, so evictions since don't matter
+    private KnownQuestions.Entry[] claimed = new KnownQuestions.Entry[0];
+    private boolean wantCompression = false;
+    // Id of the dictionary the server compresses with, 0 if it does not
+    private long offeredDictionary = 0;
+    private byte[] dictionary;
+    private volatile boolean compressed = false;
+    // Untagged answers only: whether one has had no result yet, and how many
+    // timed out questions the server still expects a late answer for. The
+    // server only expects them once told with TIMED:LATE; set by the reader.
+    // Players may run on virtual threads, so this and the send lock are
+    // ReentrantLocks rather than monitors, and nothing is sent under this one.
+    private final ReentrantLock answers = new ReentrantLock();
+    private boolean answering = false;
+    private int owedAnswers = 0;
+    private boolean answersLate = false;
+    // Whole frames go out one at a time, from any thread
+    private final ReentrantLock sending = new ReentrantLock();
+    
+    // Connects right away. A pipeline window of 0 or 1 keeps the lockstep protocol.
+    public ClientSession(String host, int port, boolean wantBinary, int pipelineWindow) throws IOException {
+        this.wantBinary = wantBinary;
+        this.pipelineWindow = pipelineWindow;
+        connect(host, port);
+    }
+    
+    private void connect(String host, int port) throws IOException {
+        Socket connection = new Socket(host, port);
+        try {
+            connection.setTcpNoDelay(true);
+            out = connection.getOutputStream();
+            in = new FrameReader(connection.getInputStream());
+        } catch (IOException e) {
+            connection.close();
+            throw e;
+        }
+        socket = connection;
+    }
+    
+    // Asks a cluster router for the node of this session, by the token to
+    // resume if there is one, and continues on a connection to that node
+    private void redirect() throws IOException {
+        String key = resumeToken != null ? resumeToken : "";
+        out.write(FrameBuffer.ascii(ClusterRouting.ROUTE_PREFIX + key + "\n"));
+        out.flush();
+        String line = in.readLine();
+        if (line == null || !line.startsWith(ClusterRouting.REDIRECT_PREFIX)) {
+            throw new IOException("The cluster router did not name a node");
+        }
+        String[] hostPort;
+        try {
+            hostPort = ClusterRing.parseAddress(line.substring(ClusterRouting.REDIRECT_PREFIX.length()));
+        } catch (IllegalArgumentException e) {
+            throw new IOException(e.getMessage());
+        }
+        Socket router = socket;
+        connect(hostPort[0], Integer.parseInt(hostPort[1]));
+        router.close();
+    }
+    
+    public boolean isBinary() {
+        return binaryMode;
+    }
+    
+    public boolean isPipelined() {
+        return pipelined;
+    }
+    
+    // Asks the server to continue the session with this token, from
+    // getToken() of an earlier connection, instead of starting over.
+    // Call before run(); null starts a new session.
+    public void resumeFrom(String token) {
+        this.resumeToken = token;
+    }
+    
+    // Joins the live game in this room instead of playing alone. Call
+    // before run(); the session fails if the server hosts no live games.
+    public void joinRoom(String room) {
+        this.room = room;
+    }
+    
+    // Keeps the questions of this session in cache and has the server skip
+    // the ones already there, if it offers that. Call before run().
+    public void useCache(KnownQuestions cache) {
+        this.cache = cache;
+    }
+    
+    // Asks for compressed questions once on the binary protocol, if the
+    // server offers them. Call before run(); with a cache the dictionary is
+    // kept there too.
+    public void useCompression(boolean compress) {
+        this.wantCompression = compress;
+    }
+    
+    // Whether the server agreed to compress questions
+    public boolean isCompressed() {
+        return compressed;
+    }
+    
+    // Whether the server answers leaderboard and statistics requests
+    public boolean isStatsOffered() {
+        return statsOffered;
+    }
+    
+    // Whether the server sent the final score
+    public boolean isFinished() {
+        return finished;
+    }
+    
+    // Token of the session the server is running, or null if it cannot
+    // resume sessions. Still valid once the connection is lost.
+    public String getToken() {
+        return token;
+    }
+    
+    // Reads from the server until it closes the connection or close() is
+    // called. Throws BusyException if the server is full.
+    public void run(Listener listener) throws IOException {
+        String line;
+        boolean offersBinary = false;
+        boolean offersPipeline = false;
+        boolean offersRooms = false;
+        boolean offersTimed = false;
+        boolean awaitingUpgrade = false;
+        boolean awaitingPipeline = false;
+        boolean awaitingResume = false;
+        boolean awaitingJoin = false;
+        
+        // Get total questions from server, noting what it offers on the way
+        while ((line = in.readLine()) != null && open) {
+            if (BinaryProtocol.negotiate(line, BinaryProtocol.HELLO_PREFIX) > 0) {
+                offersBinary = true;
+            } else if (line.equals(Pipelining.HELLO_LINE)) {
+                offersPipeline = true;
+            } else if (line.equals(LiveStats.HELLO_LINE)) {
+                statsOffered = true;
+            } else if (line.equals(LiveGames.HELLO_LINE)) {
+                offersRooms = true;
+            } else if (line.equals(TimedQuestions.HELLO_LINE)) {
+                offersTimed = true;
+            } else if (line.equals(QuestionSync.HELLO_LINE)) {
+                offersCache = cache != null;
+            } else if (line.startsWith(Compression.HELLO_PREFIX)) {
+                offeredDictionary = Long.parseUnsignedLong(line.substring(Compression.HELLO_PREFIX.length()), 16);
+            } else if (line.startsWith(Resumption.TOKEN_PREFIX)) {
+                token = line.substring(Resumption.TOKEN_PREFIX.length());
+            } else if (line.startsWith("TOTAL:")) {
+                listener.total(Integer.parseInt(line.substring(6)));
+                break;
+            } else if (line.startsWith(SessionLimits.BUSY_PREFIX)) {
+                throw new BusyException(line.substring(SessionLimits.BUSY_PREFIX.length()));
+            } else if (line.equals(ClusterRouting.HELLO_LINE)) {
+                redirect();
+            }
+        }
+        
+        // Ask for everything in one write. The resume and pipeline requests go
+        // first as they are text lines; frames sent before the replies are skipped.
+        FrameBuffer request = new FrameBuffer(128);
+        if (room != null) {
+            // Live games are played in text and without a personal window
+            if (!offersRooms) {
+                throw new IOException("The server does not host live games");
+            }
+            request.append(LiveGames.JOIN_PREFIX).append(room).append('\n');
+            awaitingJoin = true;
+        } else if (resumeToken != null && token != null) {
+            request.append(Resumption.REQUEST_PREFIX).append(resumeToken).append('\n');
+            awaitingResume = true;
+        }
+        if (offersTimed && room == null) {
+            // Untagged answers that cross a timeout are owed; see TimedQuestions
+            request.append(TimedQuestions.LATE_ANSWERS_LINE).append('\n');
+            answersLate = true;
+        }
+        if (pipelineWindow > 1 && offersPipeline && room == null) {
+            request.append(Pipelining.REQUEST_PREFIX).append(pipelineWindow).append('\n');
+            awaitingPipeline = true;
+        }
+        if (wantBinary && offersBinary && room == null) {
+            request.append(BinaryProtocol.upgradeRequest());
+            awaitingUpgrade = true;
+        }
+        if (request.length() > 0) {
+            request.writeTo(out);
+            out.flush();
+        }
+        
+        // Process questions
+        List<String> options = new ArrayList<>();
+        String questionText = null;
+        int questionId = UNTAGGED;
+        
+        while (!binaryMode && (line = in.readLine()) != null && open) {
+            if (awaitingResume && line.startsWith(Resumption.RESUMED_PREFIX)) {
+                // RESUME:OK:<answered>:<score>, the session keeps its old token
+                String[] parts = line.substring(Resumption.RESUMED_PREFIX.length()).split(":");
+                token = resumeToken;
+                awaitingResume = false;
+                // The hashes of the resumed session follow the restated TOTAL
+                offeredHashes = null;
+                listener.resumed(Integer.parseInt(parts[0]), Integer.parseInt(parts[1]));
+                continue;
+            }
+            if (awaitingResume && line.equals(Resumption.UNKNOWN)) {
+                awaitingResume = false;
+                sendHave(awaitingUpgrade);
+                listener.resumeRefused();
+                continue;
+            }
+            if (line.startsWith(QuestionSync.HASHES_PREFIX)) {
+                if (offersCache && room == null) {
+                    offeredHashes = QuestionSync.parseHashes(line.substring(QuestionSync.HASHES_PREFIX.length()));
+                    sendHave(awaitingUpgrade || awaitingResume);
+                }
+                continue;
+            }
+            if (awaitingJoin && line.startsWith(LiveGames.JOINED_PREFIX)) {
+                // JOIN:OK:<room>:<players>:<rounds>
+                String[] parts = line.substring(LiveGames.JOINED_PREFIX.length()).split(":");
+                awaitingJoin = false;
+                inRoom = true;
+                listener.joined(parts[0], Integer.parseInt(parts[1]), Integer.parseInt(parts[2]));
+                continue;
+            }
+            if (awaitingJoin && line.startsWith("ERROR:")) {
+                throw new IOException(line.substring(6));
+            }
+            if (line.startsWith("TOTAL:")) {
+                // Restated after a resume
+                listener.total(Integer.parseInt(line.substring(6)));
+                continue;
+            }
+            if (awaitingPipeline && line.startsWith(Pipelining.ACCEPTED_PREFIX)) {
+                pipelined = Integer.parseInt(line.substring(Pipelining.ACCEPTED_PREFIX.length())) > 1;
+                awaitingPipeline = false;
+                continue;
+            }
+            if (awaitingUpgrade || awaitingPipeline || awaitingResume || awaitingJoin) {
+                if (line.equals(BinaryProtocol.UPGRADE_OK)) {
+                    binaryMode = true;
+                    awaitingUpgrade = false;
+                } else if (line.equals(BinaryProtocol.UPGRADE_REFUSED)) {
+                    awaitingUpgrade = false;
+                    sendHave(awaitingResume);
+                } else if (line.startsWith("OPTIONS:")) {
+                    // Skip the options of the question sent before the reply
+                    int numOptions = Integer.parseInt(line.substring(8));
+                    for (int i = 0; i < numOptions && in.readLine() != null; i++) {
+                        // discard
+                    }
+                }
+                continue;
+            }
+            
+            if (line.startsWith("QUESTION:")) {
+                questionId = UNTAGGED;
+                questionText = line.substring(9);
+                
+            } else if (line.startsWith(Pipelining.TAGGED_QUESTION_PREFIX)) {
+                // QUESTION#<id>:<text>, options follow as usual
+                int colon = line.indexOf(':');
+                questionId = Integer.parseInt(line.substring(Pipelining.TAGGED_QUESTION_PREFIX.length(), colon));
+                questionText = line.substring(colon + 1);
+                
+            } else if (line.startsWith("OPTIONS:")) {
+                int numOptions = Integer.parseInt(line.substring(8));
+                
+                options.clear();
+                for (int i = 0; i < numOptions && open; i++) {
+                    String option = in.readLine();
+                    if (option != null) {
+                        options.add(option);
+                    }
+                }
+                remember(questionText, options);
+                listener.question(questionId, questionText, new ArrayList<>(options));
+                
+            } else if (line.startsWith(QuestionSync.CACHED_QUESTION_PREFIX)) {
+                // QUESTION@<n>, the n-th question of the session, which HAVE said is cached
+                cachedQuestion(listener, Integer.parseInt(line.substring(QuestionSync.CACHED_QUESTION_PREFIX.length())));
+                
+            } else if (line.startsWith(TimedQuestions.DEADLINE_PREFIX)) {
+                listener.deadline(Long.parseLong(line.substring(TimedQuestions.DEADLINE_PREFIX.length())));
+                
+            } else if (line.startsWith(Pipelining.TAGGED_RESULT_PREFIX)) {
+                // RESULT#<id>:CORRECT, RESULT#<id>:INCORRECT:<answer> or RESULT#<id>:TIMEOUT:<answer>
+                String[] parts = line.substring(Pipelining.TAGGED_RESULT_PREFIX.length()).split(":");
+                int id = Integer.parseInt(parts[0]);
+                if (parts[1].equals("CORRECT")) {
+                    listener.result(id, true, 0);
+                } else if (parts[1].equals(TimedQuestions.TIMEOUT)) {
+                    listener.timedOut(id, Integer.parseInt(parts[2]));
+                } else {
+                    listener.result(id, false, Integer.parseInt(parts[2]));
+                }
+                
+            } else if (line.startsWith("RESULT:")) {
+                String result = line.substring(7);
+                untaggedResult(result.startsWith(TimedQuestions.TIMEOUT));
+                if (result.startsWith("CORRECT")) {
+                    listener.result(UNTAGGED, true, 0);
+                } else if (result.startsWith("INCORRECT")) {
+                    listener.result(UNTAGGED, false, Integer.parseInt(result.split(":")[1]));
+                } else if (result.startsWith(TimedQuestions.TIMEOUT)) {
+                    listener.timedOut(UNTAGGED, Integer.parseInt(result.split(":")[1]));
+                }
+                
+            } else if (line.startsWith("SCORE:")) {
+                // SCORE:<score>/<answered>
+                int slash = line.indexOf('/');
+                listener.score(Integer.parseInt(line.substring(6, slash)), Integer.parseInt(line.substring(slash + 1)));
+                
+            } else if (line.startsWith("FINISHED:")) {
+                finished = true;
+                listener.finished(line.substring(9));
+                
+            } else if (line.startsWith(LiveGames.ROUND_PREFIX)) {
+                // ROUND:<n>:<rounds>:<millis> or ROUND:<n>:CLOSED:<correct>:<answers>:<right>
+                String[] parts = line.substring(LiveGames.ROUND_PREFIX.length()).split(":");
+                int round = Integer.parseInt(parts[0]);
+                if (parts[1].equals(LiveGames.CLOSED)) {
+                    listener.roundClosed(round, Integer.parseInt(parts[2]), Integer.parseInt(parts[3]), Integer.parseInt(parts[4]));
+                } else {
+                    listener.roundStarted(round, Integer.parseInt(parts[1]), Long.parseLong(parts[2]));
+                }
+                
+            } else if (line.startsWith(LiveStats.LEADERBOARD_PREFIX + ":")) {
+                // LEADERBOARD:<count>, then one line per entry
+                int count = Integer.parseInt(line.substring(LiveStats.LEADERBOARD_PREFIX.length() + 1));
+                List<Leaderboard.Standing> standings = new ArrayList<>(count);
+                for (int i = 0; i < count && (line = in.readLine()) != null; i++) {
+                    standings.add(LiveStats.parseStanding(line));
+                }
+                listener.leaderboard(standings);
+                
+            } else if (line.startsWith(LiveStats.STATS_PREFIX + ":")) {
+                // STATS:<id>:<attempts>:<correct>
+                String[] parts = line.split(":");
+                listener.questionStats(Integer.parseInt(parts[1]), Integer.parseInt(parts[2]), Integer.parseInt(parts[3]));
+                
+            } else if (line.startsWith("ERROR:")) {
+                listener.error(line.substring(6));
+            }
+        }
+        
+        if (binaryMode) {
+            sendHave(awaitingResume);
+            requestCompression();
+            readBinaryFrames(listener);
+        }
+    }
+    
+    // Only asks for the dictionary if the cache does not have it
+    private void requestCompression() throws IOException {
+        if (!wantCompression || offeredDictionary == 0) {
+            return;
+        }
+        dictionary = cache != null ? cache.getDictionary(offeredDictionary) : null;
+        FrameBuffer frame = new FrameBuffer(8);
+        BinaryProtocol.compress(frame, dictionary == null);
+        send(frame);
+    }
+    
+    // The payload of a QUESTION frame, whichever frame it came in
+    private void readQuestion(Listener listener, int id) throws IOException {
+        String text = in.readString();
+        int numOptions = in.readVarint();
+        List<String> options = new ArrayList<>(numOptions);
+        for (int i = 0; i < numOptions; i++) {
+            options.add(in.readString());
+        }
+        remember(text, options);
+        listener.question(id, text, options);
+    }
+    
+    // Tells the server which of the offered questions are cached, in the
+    // protocol it reads from now on; not while a reply that changes either
+    // is outstanding
+    private void sendHave(boolean awaitingReply) throws IOException {
+        if (offeredHashes == null || awaitingReply) {
+            return;
+        }
+        BitSet known = new BitSet(offeredHashes.length);
+        claimed = new KnownQuestions.Entry[offeredHashes.length];
+        for (int i = 0; i < offeredHashes.length; i++) {
+            claimed[i] = cache.get(offeredHashes[i]);
+            if (claimed[i] != null) {
+                known.set(i);
+            }
+        }
+        offeredHashes = null;
+        FrameBuffer frame = new FrameBuffer(32 + known.length() / 4);
+        if (binaryMode) {
+            BinaryProtocol.have(frame, known);
+        } else {
+            QuestionSync.have(frame, known);
+        }
+        send(frame);
+    }
+    
+    private void cachedQuestion(Listener listener, int number) throws IOException {
+        if (number < 1 || number > claimed.length || claimed[number - 1] == null) {
+            throw new IOException("The server sent question " + number + " by position, which is not cached");
+        }
+        KnownQuestions.Entry entry = claimed[number - 1];
+        listener.question(pipelined ? number : UNTAGGED, entry.text, new ArrayList<>(entry.options));
+    }
+    
+    private void remember(String text, List<String> options) {
+        if (offersCache) {
+            cache.put(QuestionSync.hash(text, options), text, options);
+        }
+    }
+    
+    // Same flow as the text loop, on binary protocol frames
+    private void readBinaryFrames(Listener listener) throws IOException {
+        int type;
+        while (open && (type = in.readFrame()) >= 0) {
+            switch (type) {
+                case BinaryProtocol.TOTAL:
+                    listener.total(in.readVarint());
+                    break;
+                case BinaryProtocol.QUESTION:
+                case BinaryProtocol.TAGGED_QUESTION:
+                    readQuestion(listener, type == BinaryProtocol.TAGGED_QUESTION ? in.readVarint() : UNTAGGED);
+                    break;
+                case BinaryProtocol.COMPRESSED:
+                    if (dictionary == null) {
+                        throw new IOException("Compressed question before the dictionary");
+                    }
+                    int compressedId = in.readVarint();
+                    in.inflatePayload(dictionary, in.readVarint());
+                    readQuestion(listener, compressedId);
+                    break;
+                case BinaryProtocol.DICTIONARY:
+                    byte[] sent = in.readBytes();
+                    if (sent.length > 0) {
+                        if (QuestionSync.hash(sent) != offeredDictionary) {
+                            throw new IOException("The compression dictionary does not match its id");
+                        }
+                        dictionary = sent;
+                        if (cache != null) {
+                            cache.putDictionary(offeredDictionary, sent);
+                        }
+                    }
+                    compressed = dictionary != null;
+                    break;
+                case BinaryProtocol.CACHED_QUESTION:
+                    cachedQuestion(listener, in.readVarint());
+                    break;
+                case BinaryProtocol.HASHES:
+                    int hashCount = in.readVarint();
+                    long[] hashes = new long[hashCount];
+                    for (int i = 0; i < hashCount; i++) {
+                        hashes[i] = in.readLong();
+                    }
+                    if (offersCache) {
+                        offeredHashes = hashes;
+                        sendHave(false);
+                    }
+                    break;
+                case BinaryProtocol.RESULT:
+                    untaggedResult(false);
+                    boolean correct = in.readBoolean();
+                    listener.result(UNTAGGED, correct, in.readVarint());
+                    break;
+                case BinaryProtocol.TAGGED_RESULT:
+                    int resultId = in.readVarint();
+                    boolean taggedCorrect = in.readBoolean();
+                    listener.result(resultId, taggedCorrect, in.readVarint());
+                    break;
+                case BinaryProtocol.DEADLINE:
+                    listener.deadline(in.readVarint());
+                    break;
+                case BinaryProtocol.TIMED_OUT:
+                    int timedOutId = in.readVarint();
+                    if (timedOutId == UNTAGGED) {
+                        untaggedResult(true);
+                    }
+                    listener.timedOut(timedOutId, in.readVarint());
+                    break;
+                case BinaryProtocol.PIPELINE_OK:
+                    pipelined = in.readVarint() > 1;
+                    break;
+                case BinaryProtocol.SCORE:
+                    int score = in.readVarint();
+                    listener.score(score, in.readVarint());
+                    break;
+                case BinaryProtocol.FINISHED:
+                    int finalScore = in.readVarint();
+                    finished = true;
+                    listener.finished("Your final score is " + finalScore + " out of " + in.readVarint());
+                    break;
+                case BinaryProtocol.ERROR:
+                    listener.error(in.readString());
+                    break;
+                case BinaryProtocol.LEADERBOARD:
+                    int count = in.readVarint();
+                    List<Leaderboard.Standing> standings = new ArrayList<>(Math.min(count, 1024));
+                    for (int i = 0; i < count; i++) {
+                        int standingScore = in.readVarint();
+                        int standingAnswered = in.readVarint();
+                        standings.add(new Leaderboard.Standing(in.readString(), standingScore, standingAnswered));
+                    }
+                    listener.leaderboard(standings);
+                    break;
+                case BinaryProtocol.QUESTION_STATS:
+                    int statsId = in.readVarint();
+                    int attempts = in.readVarint();
+                    listener.questionStats(statsId, attempts, in.readVarint());
+                    break;
+                default:
+                    // Unknown frames from newer servers are skipped
+                    break;
+            }
+        }
+    }
+    
+    // Answers a question; id is the one it was delivered with. Safe to call
+    // from another thread than the one running the session.
+    public void answer(int id, int option) throws IOException {
+        FrameBuffer frame = new FrameBuffer(16);
+        if ((pipelined || inRoom) && id != UNTAGGED) {
+            if (binaryMode) {
+                BinaryProtocol.taggedAnswer(frame, id, option);
+            } else {
+                frame.append(Pipelining.TAGGED_ANSWER_PREFIX).append(id).append(':').append(option).append('\n');
+            }
+            send(frame);
+            return;
+        }
+        answers.lock();
+        try {
+            // The late answers go first, so the server drops those and not this one
+            for (; owedAnswers > 0; owedAnswers--) {
+                untaggedAnswer(frame, 0);
+            }
+            untaggedAnswer(frame, option);
+            answering = true;
+        } finally {
+            answers.unlock();
+        }
+        send(frame);
+    }
+    
+    private void untaggedAnswer(FrameBuffer frame, int option) {
+        if (binaryMode) {
+            BinaryProtocol.answer(frame, option);
+        } else {
+            frame.append("ANSWER:").append(option).append('\n');
+        }
+    }
+    
+    // An untagged question that timed out before it was answered still owes
+    // the server its late answer; see TimedQuestions
+    private void untaggedResult(boolean timedOut) {
+        answers.lock();
+        try {
+            if (timedOut && !answering && answersLate) {
+                owedAnswers++;
+            }
+            answering = false;
+        } finally {
+            answers.unlock();
+        }
+    }
+    
+    // Asks for the best scores, 0 for the whole board. Only if isStatsOffered().
+    public void requestLeaderboard(int limit) throws IOException {
+        FrameBuffer frame = new FrameBuffer(24);
+        if (binaryMode) {
+            BinaryProtocol.leaderboardRequest(frame, limit);
+        } else if (limit > 0) {
+            frame.append(LiveStats.LEADERBOARD_PREFIX).append(':').append(limit).append('\n');
+        } else {
+            frame.append(LiveStats.LEADERBOARD_PREFIX).append('\n');
+        }
+        send(frame);
+    }
+    
+    // Asks how everyone did on a graded question, by the id it was delivered
+    // with or its position counting from 1; UNTAGGED for the last one graded
+    public void requestStats(int id) throws IOException {
+        FrameBuffer frame = new FrameBuffer(16);
+        if (binaryMode) {
+            BinaryProtocol.statsRequest(frame, id);
+        } else if (id != UNTAGGED) {
+            frame.append(LiveStats.STATS_PREFIX).append(':').append(id).append('\n');
+        } else {
+            frame.append(LiveStats.STATS_PREFIX).append('\n');
+        }
+        send(frame);
+    }
+    
+    private void send(FrameBuffer frame) throws IOException {
+        sending.lock();
+        try {
+            frame.writeTo(out);
+        } finally {
+            sending.unlock();
+        }
+    }
+    
+    @Override
+    public void close() throws IOException {
+        open = false;
+        socket.close();
+    }
+}
\ No newline at end of file
@@ -0,0 +1,103 @@
+package quiz;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+// Consistent hash ring over the nodes of a cluster, which decides the node
+// a session belongs to by hashing its token. Every node sits at many points
+// on the ring and owns the keys that hash up to each of them, so keys
+// spread evenly, and adding or removing a node only moves the keys next to
+// its own points: about one in N, where rehashing would move nearly all.
+//
+// The router and every node build the ring from the same node list, so
+// they agree on the owners without talking to each other.
+final class ClusterRing {
+    private static final int POINTS_PER_NODE = 160;
+    
+    private final List<String> nodes;
+    private final long[] points;       // sorted
+    private final String[] owners;     // node at each point
+    
+    private ClusterRing(List<String> nodes) {
+        this.nodes = Collections.unmodifiableList(new ArrayList<>(nodes));
+        int count = nodes.size() * POINTS_PER_NODE;
+        long[][] placed = new long[count][];
+        for (int n = 0; n < nodes.size(); n++) {
+            for (int i = 0; i < POINTS_PER_NODE; i++) {
+                placed[n * POINTS_PER_NODE + i] = new long[] {hash(nodes.get(n) + "#" + i), n};
+            }
+        }
+        Arrays.sort(placed, (a, b) -> Long.compare(a[0], b[0]));
+        points = new long[count];
+        owners = new String[count];
+        for (int i = 0; i < count; i++) {
+            points[i] = placed[i][0];
+            owners[i] = nodes.get((int) placed[i][1]);
+        }
+    }
+    
+    // Nodes as host:port, comma separated
+    static ClusterRing parse(String nodeList) {
+        List<String> nodes = new ArrayList<>();
+        for (String node : nodeList.split(",")) {
+            String address = node.trim();
+            if (address.isEmpty()) {
+                continue;
+            }
+            parseAddress(address);
+            if (!nodes.contains(address)) {
+                nodes.add(address);
+            }
+        }
+        if (nodes.isEmpty()) {
+            throw new IllegalArgumentException("No cluster nodes given");
+        }
+        return new ClusterRing(nodes);
+    }
+    
+    // Splits host:port, or throws IllegalArgumentException
+    static String[] parseAddress(String address) {
+        int colon = address.lastIndexOf(':');
+        if (colon <= 0 || colon == address.length() - 1) {
+            throw new IllegalArgumentException("Expected host:port, got " + address);
+        }
+        try {
+            Integer.parseInt(address.substring(colon + 1));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Expected host:port, got " + address);
+        }
+        return new String[] {address.substring(0, colon), address.substring(colon + 1)};
+    }
+    
+    public List<String> getNodes() {
+        return nodes;
+    }
+    
+    // The node that owns the key: the one at the first point at or after its hash
+    public String owner(String key) {
+        int i = Arrays.binarySearch(points, hash(key));
+        if (i < 0) {
+            i = -i - 1;
+        }
+        return owners[i == points.length ? 0 : i];
+    }
+    
+    // 64-bit FNV-1a, finished with the MurmurHash3 mix so that keys
+    // differing in their last characters still land far apart
+    static long hash(String key) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            h ^= b & 0xFF;
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
\ No newline at end of file
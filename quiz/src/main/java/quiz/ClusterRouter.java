@@ -0,0 +1,257 @@
+package quiz;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// The one address of a cluster. Each client is sent to the node that owns
+// its session on the ClusterRing, by token for a resumed session and by a
+// fresh random key for a new one; see ClusterRouting. Nodes only hand out
+// tokens they own themselves, so a client that comes back lands where its
+// session was, and with a shared StoreServer any node could take it over.
+//
+// Redirected clients talk to their node directly, so the router only does
+// a little work per connection and adding nodes adds capacity. Clients
+// that do not know about routing are relayed, two threads each.
+//
+//   java -cp quiz.jar quiz.ClusterRouter --port 12345 --cluster.nodes host1:12346,host2:12346
+public class ClusterRouter {
+    private static final byte[] HELLO = FrameBuffer.ascii(ClusterRouting.HELLO_LINE + "\n");
+    private static final int MAX_ROUTE_LINE = 256;
+    private static final int CONNECT_TIMEOUT_MILLIS = 5000;
+    private static final int RELAY_BUFFER_SIZE = 16 * 1024;
+    
+    private final ServerConfig config;
+    private final EventLog log;
+    private final AtomicLong redirected = new AtomicLong();
+    private final AtomicLong relayed = new AtomicLong();
+    private final CountDownLatch stopped = new CountDownLatch(1);
+    private ClusterRing ring;
+    private ServerSocket serverSocket;
+    private ExecutorService workers;
+    private volatile boolean running = false;
+    
+    public ClusterRouter(ServerConfig config, EventLog log) {
+        this.config = config;
+        this.log = log;
+    }
+    
+    public synchronized void start() throws IOException {
+        if (running) {
+            return;
+        }
+        if (config.getClusterNodes() == null) {
+            throw new IOException("No cluster nodes to route to, see --cluster.nodes");
+        }
+        ring = ClusterRing.parse(config.getClusterNodes());
+        serverSocket = new ServerSocket(config.getPort(), config.getAcceptBacklog());
+        AtomicInteger threads = new AtomicInteger();
+        workers = Executors.newCachedThreadPool(task -> {
+            Thread thread = new Thread(task, "quiz-router-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        running = true;
+        
+        Thread acceptor = new Thread(this::acceptLoop, "quiz-router-accept");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        log.message("Routing port " + serverSocket.getLocalPort() + " to " + String.join(", ", ring.getNodes()));
+    }
+    
+    public synchronized void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        try {
+            serverSocket.close();
+        } catch (IOException e) {
+            log.message("Error closing server socket: " + e.getMessage());
+        }
+        workers.shutdownNow();
+        log.message("Router stopped after redirecting " + redirected.get() + " and relaying " + relayed.get() + " clients");
+        stopped.countDown();
+    }
+    
+    public int getLocalPort() {
+        ServerSocket socket = serverSocket;
+        return socket != null ? socket.getLocalPort() : -1;
+    }
+    
+    public void awaitStop() throws InterruptedException {
+        stopped.await();
+    }
+    
+    private void acceptLoop() {
+        while (running) {
+            try {
+                Socket client = serverSocket.accept();
+                workers.execute(() -> route(client));
+            } catch (IOException e) {
+                if (running) {
+                    log.message("Error accepting connection: " + e.getMessage());
+                }
+            }
+        }
+    }
+    
+    private void route(Socket client) {
+        String address = client.getInetAddress().getHostAddress();
+        try {
+            client.setTcpNoDelay(true);
+            client.setSoTimeout((int) Math.min(Integer.MAX_VALUE, config.getClusterRouteWait()));
+            OutputStream out = client.getOutputStream();
+            out.write(HELLO);
+            InputStream in = new BufferedInputStream(client.getInputStream());
+            byte[] first = readFirstLine(in);
+            if (first == null) {
+                client.close();
+                return;
+            }
+            
+            String line = new String(first, StandardCharsets.UTF_8).trim();
+            boolean complete = first.length > 0 && first[first.length - 1] == '\n';
+            if (complete && line.startsWith(ClusterRouting.ROUTE_PREFIX)) {
+                String node = ring.owner(key(line.substring(ClusterRouting.ROUTE_PREFIX.length())));
+                out.write(FrameBuffer.ascii(ClusterRouting.REDIRECT_PREFIX + node + "\n"));
+                redirected.incrementAndGet();
+                client.close();
+                return;
+            }
+            
+            // A client that does not know about routing, possibly resuming
+            String token = complete && line.startsWith(Resumption.REQUEST_PREFIX)
+                ? line.substring(Resumption.REQUEST_PREFIX.length()) : "";
+            relay(client, in, first, ring.owner(key(token)));
+        } catch (IOException e) {
+            log.message("Error routing client " + address + ": " + e.getMessage());
+            close(client);
+        }
+    }
+    
+    // The session token, or a random key that spreads new sessions over the ring
+    private static String key(String token) {
+        String key = token.trim().toLowerCase();
+        return key.isEmpty() ? Long.toHexString(ThreadLocalRandom.current().nextLong()) : key;
+    }
+    
+    // Up to and including the first newline, whatever arrived within the
+    // routing wait, or null if the client left without sending anything
+    private static byte[] readFirstLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream(64);
+        try {
+            int b;
+            while (line.size() < MAX_ROUTE_LINE && (b = in.read()) >= 0) {
+                line.write(b);
+                if (b == '\n') {
+                    break;
+                }
+            }
+        } catch (SocketTimeoutException e) {
+            // Sends nothing by itself, or too slowly to be routed by what it sends
+            return line.toByteArray();
+        }
+        return line.size() == 0 ? null : line.toByteArray();
+    }
+    
+    // Passes bytes both ways until either side closes, starting with what
+    // was read from the client while routing
+    private void relay(Socket client, InputStream clientIn, byte[] first, String node) throws IOException {
+        String[] hostPort = ClusterRing.parseAddress(node);
+        Socket server = new Socket();
+        InputStream serverIn;
+        try {
+            server.connect(new InetSocketAddress(hostPort[0], Integer.parseInt(hostPort[1])), CONNECT_TIMEOUT_MILLIS);
+            server.setTcpNoDelay(true);
+            client.setSoTimeout(0);
+            server.getOutputStream().write(first);
+            serverIn = server.getInputStream();
+        } catch (IOException e) {
+            close(server);
+            throw e;
+        }
+        relayed.incrementAndGet();
+        workers.execute(() -> pump(serverIn, server, client));
+        pump(clientIn, client, server);
+    }
+    
+    private static void pump(InputStream in, Socket from, Socket to) {
+        byte[] buffer = new byte[RELAY_BUFFER_SIZE];
+        try {
+            OutputStream out = to.getOutputStream();
+            int count;
+            while ((count = in.read(buffer)) >= 0) {
+                out.write(buffer, 0, count);
+            }
+        } catch (IOException e) {
+            // Either side went away
+        } finally {
+            close(from);
+            close(to);
+        }
+    }
+    
+    private static void close(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // Closed anyway
+        }
+    }
+    
+    public static void main(String[] args) {
+        ServerConfig config;
+        try {
+            config = ServerConfig.fromArgs(args);
+        } catch (IllegalArgumentException | IOException e) {
+            System.err.println(e.getMessage());
+            System.err.println(ServerConfig.usage());
+            System.exit(2);
+            return;
+        }
+        
+        EventLog log;
+        try {
+            log = QuizEngine.createLog(config, batch -> System.out.print(batch));
+        } catch (IOException e) {
+            System.err.println("Failed to open log file: " + e.getMessage());
+            System.exit(1);
+            return;
+        }
+        log.start();
+        
+        ClusterRouter router = new ClusterRouter(config, log);
+        try {
+            router.start();
+        } catch (IOException | IllegalArgumentException e) {
+            log.close();
+            System.err.println("Failed to start router: " + e.getMessage());
+            System.exit(1);
+            return;
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            router.stop();
+            log.close();
+        }, "quiz-shutdown"));
+        
+        try {
+            router.awaitStop();
+        } catch (InterruptedException e) {
+            router.stop();
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,19 @@
+package quiz;
+
+// Cluster routing. Clients of a cluster connect to its ClusterRouter, which
+// starts with the line HELLO:CLUSTER/1. A client that knows it answers
+// ROUTE:<token> to continue a session, or ROUTE: for a new one, and is told
+// REDIRECT:<host>:<port>, the node that owns the session on the ring. The
+// client connects there and goes on as with a single server; the router
+// is out of the way from then on.
+//
+// A client that ignores the HELLO line and sends nothing else within the
+// routing wait, or sends anything but ROUTE, is relayed to a node through
+// the router instead, which works with any client but puts the router in
+// the path of every byte. A RESUME line sent first still picks the node
+// that owns the session.
+class ClusterRouting {
+    static final String HELLO_LINE = "HELLO:CLUSTER/1";
+    static final String ROUTE_PREFIX = "ROUTE:";
+    static final String REDIRECT_PREFIX = "REDIRECT:";
+}
\ No newline at end of file
@@ -0,0 +1,383 @@
+package quiz;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+// Question bank for very large question sets. Instead of a String and an
+// ArrayList per question, all text lives as UTF-8 in one direct (or memory
+// mapped) buffer, with int offset arrays into it and the correct answers in a
+// byte array, and categories and time limits as a short per question. The
+// heap holds a handful of arrays whatever the bank size, so the garbage
+// collector has nothing to trace.
+//
+// get() returns a small flyweight view; frames are copied straight out of
+// the text buffer without decoding it. The frames of recently sent questions
+// are kept in a table direct mapped by index, so a question sessions keep
+// asking for is encoded once, like a HeapQuestion, while the heap stays
+// bounded whatever the bank size.
+final class ColumnarQuestionBank extends QuestionBank {
+    private static final int FRAME_SLOTS = 1 << 14;
+    private static final byte[] QUESTION_PREFIX = FrameBuffer.ascii("QUESTION:");
+    private static final byte[] OPTIONS_PREFIX = FrameBuffer.ascii("OPTIONS:");
+    private static final byte[][] INCORRECT_RESULTS = new byte[256][];
+    
+    static {
+        for (int answer = 0; answer < INCORRECT_RESULTS.length; answer++) {
+            INCORRECT_RESULTS[answer] = FrameBuffer.ascii("RESULT:INCORRECT:" + answer + "\n");
+        }
+    }
+    
+    private final ByteBuffer text;      // read with absolute gets only, so views can share it
+    private final int[] optionStart;    // size() + 1 entries, first option of each question
+    private final int[] stringStart;    // question text followed by its options; category names at the end
+    private final byte[] answers;
+    private final short[] categoryOf;   // 0 for none, otherwise index into categories
+    private final String[] categories;  // categories[0] is null
+    private final short[] timeLimits;   // seconds, 0 for none
+    private final AtomicLongArray contentHashes;  // hashed when first asked for, 0 until then
+    private final AtomicReferenceArray<Frames> frames;  // slot index & (length - 1), shared by versions
+    
+    ColumnarQuestionBank(int version, ByteBuffer text, int[] optionStart, int[] stringStart,
+                         byte[] answers, short[] categoryOf, String[] categories, short[] timeLimits) {
+        super(version);
+        this.text = text;
+        this.optionStart = optionStart;
+        this.stringStart = stringStart;
+        this.answers = answers;
+        this.categoryOf = categoryOf;
+        this.categories = categories;
+        this.timeLimits = timeLimits;
+        this.contentHashes = new AtomicLongArray(answers.length);
+        this.frames = frameTable(answers.length);
+    }
+    
+    private ColumnarQuestionBank(int version, ColumnarQuestionBank other) {
+        super(version);
+        this.text = other.text;
+        this.optionStart = other.optionStart;
+        this.stringStart = other.stringStart;
+        this.answers = other.answers;
+        this.categoryOf = other.categoryOf;
+        this.categories = other.categories;
+        this.timeLimits = other.timeLimits;
+        this.contentHashes = other.contentHashes;
+        this.frames = other.frames;
+    }
+    
+    // Same storage as another bank; only the category names are decoded
+    ColumnarQuestionBank(ByteBuffer text, int[] optionStart, int[] stringStart, byte[] answers, short[] categoryOf,
+                         short[] timeLimits) {
+        super(0);
+        this.text = text;
+        this.optionStart = optionStart;
+        this.stringStart = stringStart;
+        this.answers = answers;
+        this.categoryOf = categoryOf;
+        this.timeLimits = timeLimits;
+        this.contentHashes = new AtomicLongArray(answers.length);
+        this.frames = frameTable(answers.length);
+        int firstName = answers.length + optionStart[answers.length];
+        this.categories = new String[stringStart.length - firstName];
+        for (int c = 1; c < categories.length; c++) {
+            categories[c] = string(firstName + c - 1);
+        }
+    }
+    
+    // Packs question objects, typically straight from the parser
+    static ColumnarQuestionBank of(List<Question> questions) {
+        int count = questions.size();
+        int[] optionStart = new int[count + 1];
+        byte[] answers = new byte[count];
+        short[] categoryOf = new short[count];
+        short[] timeLimits = new short[count];
+        Map<String, Integer> categoryIds = new LinkedHashMap<>();
+        
+        int options = 0;
+        for (int i = 0; i < count; i++) {
+            Question question = questions.get(i);
+            if (question.getCorrectAnswer() > 255) {
+                throw new IllegalArgumentException("Questions with more than 255 options cannot be packed");
+            }
+            optionStart[i] = options;
+            options += question.getOptions().size();
+            answers[i] = (byte) question.getCorrectAnswer();
+            if (question.getTimeLimit() > Short.MAX_VALUE) {
+                throw new IllegalArgumentException("Time limits above " + Short.MAX_VALUE + " seconds cannot be packed");
+            }
+            timeLimits[i] = (short) question.getTimeLimit();
+            if (question.getCategory() != null) {
+                int id = categoryIds.computeIfAbsent(question.getCategory(), name -> categoryIds.size() + 1);
+                if (id > Short.MAX_VALUE) {
+                    throw new IllegalArgumentException("More than " + Short.MAX_VALUE + " categories");
+                }
+                categoryOf[i] = (short) id;
+            }
+        }
+        optionStart[count] = options;
+        
+        byte[][] strings = new byte[count + options + categoryIds.size()][];
+        long textBytes = 0;
+        int s = 0;
+        for (Question question : questions) {
+            strings[s] = question.getQuestion().getBytes(StandardCharsets.UTF_8);
+            textBytes += strings[s++].length;
+            for (String option : question.getOptions()) {
+                strings[s] = option.getBytes(StandardCharsets.UTF_8);
+                textBytes += strings[s++].length;
+            }
+        }
+        String[] categories = new String[categoryIds.size() + 1];
+        for (String category : categoryIds.keySet()) {
+            categories[s - count - options + 1] = category;
+            strings[s] = category.getBytes(StandardCharsets.UTF_8);
+            textBytes += strings[s++].length;
+        }
+        if (textBytes > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Question text exceeds 2 GB");
+        }
+        
+        ByteBuffer text = ByteBuffer.allocateDirect((int) textBytes);
+        int[] stringStart = new int[strings.length + 1];
+        for (int i = 0; i < strings.length; i++) {
+            stringStart[i] = text.position();
+            text.put(strings[i]);
+        }
+        stringStart[strings.length] = text.position();
+        return new ColumnarQuestionBank(0, text, optionStart, stringStart, answers, categoryOf, categories, timeLimits);
+    }
+    
+    @Override
+    public int size() {
+        return answers.length;
+    }
+    
+    @Override
+    public Question get(int index) {
+        if (index < 0 || index >= answers.length) {
+            throw new IndexOutOfBoundsException("Question " + index + " of " + answers.length);
+        }
+        return new View(index);
+    }
+    
+    @Override
+    public QuestionBank withVersion(int version) {
+        return new ColumnarQuestionBank(version, this);
+    }
+    
+    @Override
+    protected String categoryOf(int index) {
+        return categories[categoryOf[index]];
+    }
+    
+    // The storage itself, for QuestionSnapshot to write out. Not copied.
+    ByteBuffer getText() {
+        return text;
+    }
+    
+    int[] getOptionStarts() {
+        return optionStart;
+    }
+    
+    int[] getStringStarts() {
+        return stringStart;
+    }
+    
+    byte[] getAnswers() {
+        return answers;
+    }
+    
+    short[] getCategories() {
+        return categoryOf;
+    }
+    
+    short[] getTimeLimits() {
+        return timeLimits;
+    }
+    
+    private int length(int string) {
+        return stringStart[string + 1] - stringStart[string];
+    }
+    
+    private String string(int string) {
+        byte[] bytes = new byte[length(string)];
+        text.get(stringStart[string], bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+    
+    private FrameBuffer appendString(FrameBuffer out, int string) {
+        return out.append(text, stringStart[string], length(string));
+    }
+    
+    // A power of two no larger than needed
+    private static AtomicReferenceArray<Frames> frameTable(int questions) {
+        int slots = 1;
+        while (slots < Math.min(questions, FRAME_SLOTS)) {
+            slots <<= 1;
+        }
+        return new AtomicReferenceArray<>(slots);
+    }
+    
+    // The slot's frames if they are this question's, else a fresh empty entry
+    // in place of whichever question had the slot
+    private Frames framesOf(int index) {
+        int slot = index & (frames.length() - 1);
+        Frames cached = frames.get(slot);
+        if (cached == null || cached.index != index) {
+            cached = new Frames(index);
+            frames.set(slot, cached);
+        }
+        return cached;
+    }
+    
+    // Encoded when first sent, like HeapQuestion's
+    private static final class Frames {
+        final int index;
+        volatile byte[] frame;
+        volatile byte[] binaryFrame;
+        
+        Frames(int index) {
+            this.index = index;
+        }
+    }
+    
+    private class View implements Question {
+        private final int index;
+        
+        View(int index) {
+            this.index = index;
+        }
+        
+        // String index of the question text; its options follow it
+        private int first() {
+            return index + optionStart[index];
+        }
+        
+        private int optionCount() {
+            return optionStart[index + 1] - optionStart[index];
+        }
+        
+        @Override
+        public String getQuestion() {
+            return string(first());
+        }
+        
+        @Override
+        public List<String> getOptions() {
+            int first = first() + 1;
+            int count = optionCount();
+            return new AbstractList<String>() {
+                @Override
+                public String get(int option) {
+                    if (option < 0 || option >= count) {
+                        throw new IndexOutOfBoundsException("Option " + option + " of " + count);
+                    }
+                    return string(first + option);
+                }
+                
+                @Override
+                public int size() {
+                    return count;
+                }
+            };
+        }
+        
+        @Override
+        public int getCorrectAnswer() {
+            return answers[index] & 0xFF;
+        }
+        
+        @Override
+        public String getCategory() {
+            return categoryOf(index);
+        }
+        
+        @Override
+        public int getTimeLimit() {
+            return timeLimits[index];
+        }
+        
+        @Override
+        public byte[] getFrame() {
+            Frames cached = framesOf(index);
+            byte[] encoded = cached.frame;
+            if (encoded == null) {
+                encoded = encodeFrame();
+                cached.frame = encoded;
+            }
+            return encoded;
+        }
+        
+        @Override
+        public byte[] getBinaryFrame() {
+            Frames cached = framesOf(index);
+            byte[] encoded = cached.binaryFrame;
+            if (encoded == null) {
+                encoded = encodeBinaryFrame();
+                cached.binaryFrame = encoded;
+            }
+            return encoded;
+        }
+        
+        private byte[] encodeFrame() {
+            int first = first();
+            int count = optionCount();
+            int length = QUESTION_PREFIX.length + length(first) + OPTIONS_PREFIX.length + 12;
+            for (int s = first + 1; s <= first + count; s++) {
+                length += length(s) + 1;
+            }
+            
+            FrameBuffer out = new FrameBuffer(length);
+            appendString(out.append(QUESTION_PREFIX), first).append('\n');
+            out.append(OPTIONS_PREFIX).append(count).append('\n');
+            for (int s = first + 1; s <= first + count; s++) {
+                appendString(out, s).append('\n');
+            }
+            return out.toByteArray();
+        }
+        
+        private byte[] encodeBinaryFrame() {
+            int first = first();
+            int count = optionCount();
+            int length = BinaryProtocol.varintSize(count);
+            for (int s = first; s <= first + count; s++) {
+                length += BinaryProtocol.varintSize(length(s)) + length(s);
+            }
+            
+            FrameBuffer out = new FrameBuffer(length + 6);
+            BinaryProtocol.header(out, BinaryProtocol.QUESTION, length);
+            appendString(out.appendVarint(length(first)), first);
+            out.appendVarint(count);
+            for (int s = first + 1; s <= first + count; s++) {
+                appendString(out.appendVarint(length(s)), s);
+            }
+            return out.toByteArray();
+        }
+        
+        @Override
+        public long getContentHash() {
+            long hash = contentHashes.get(index);
+            if (hash == 0) {
+                hash = QuestionSync.hash(getBinaryFrame());
+                contentHashes.set(index, hash);
+            }
+            return hash;
+        }
+        
+        @Override
+        public byte[] getIncorrectResult() {
+            return INCORRECT_RESULTS[getCorrectAnswer()];
+        }
+        
+        @Override
+        public boolean isValid() {
+            int answer = getCorrectAnswer();
+            return length(first()) > 0 && answer > 0 && answer <= optionCount();
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,291 @@
+package quiz;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+// Per-message compression of questions, negotiated on top of the binary
+// protocol. Question text is short and repetitive across a bank, which plain
+// deflate can't exploit one message at a time, so both sides deflate against
+// a preset dictionary trained on the bank: the words and phrases that recur
+// most, the most valuable last where deflate reaches them cheapest.
+//
+// A server that offers it sends HELLO:DEFLATE:<hex id>, the id being the
+// first 64 bits of the SHA-256 of the dictionary. A binary client asks with a
+// COMPRESS frame, flagged if it does not have that dictionary yet; the server
+// answers with a DICTIONARY frame, carrying the dictionary only if flagged,
+// and from then on may send COMPRESSED frames in place of QUESTION and
+// TAGGED_QUESTION: the id (0 if untagged), the length of the QUESTION
+// payload and that payload deflated, raw and with no context kept between
+// messages. A question that doesn't get smaller goes out as it is.
+//
+// Deflaters and inflaters hold native zlib state that is slow to set up, so
+// both sides take them from a pool for each message and give them back. A
+// question deflates the same for every session, so the server keeps the
+// recently sent ones with their dictionary and deflates each only once.
+class Compression {
+    static final String HELLO_PREFIX = "HELLO:DEFLATE:";
+    static final int DEFAULT_DICTIONARY_SIZE = 16 * 1024;
+    // Deflate only reaches back 32 KB
+    static final int MAX_DICTIONARY_SIZE = 32 * 1024;
+    
+    // Questions looked at when training on a large bank
+    private static final int TRAINING_SAMPLE = 4096;
+    private static final int POOL_SIZE = 64;
+    // Deflated questions kept per dictionary; a power of two
+    private static final int DEFLATED_SLOTS = 1 << 14;
+    
+    private static final Pool<Deflater> DEFLATERS = new Pool<>(() -> new Deflater(Deflater.DEFAULT_COMPRESSION, true), Deflater::end);
+    private static final Pool<Inflater> INFLATERS = new Pool<>(() -> new Inflater(true), Inflater::end);
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+    private static final boolean THREAD_CPU = THREADS.isCurrentThreadCpuTimeSupported();
+    
+    // A trained dictionary and its id, with the questions deflated against it
+    static final class Dictionary {
+        static final Dictionary NONE = new Dictionary(new byte[0]);
+        
+        final byte[] bytes;
+        final long id;
+        // Direct-mapped by content hash; a collision just deflates again
+        private final AtomicReferenceArray<Deflated> deflated;
+        
+        Dictionary(byte[] bytes) {
+            this.bytes = bytes;
+            this.id = bytes.length > 0 ? QuestionSync.hash(bytes) : 0;
+            this.deflated = new AtomicReferenceArray<>(bytes.length > 0 ? DEFLATED_SLOTS : 0);
+        }
+        
+        boolean isEmpty() {
+            return bytes.length == 0;
+        }
+        
+        // The question's QUESTION payload deflated against this dictionary
+        Deflated deflate(Question question) {
+            long hash = question.getContentHash();
+            int slot = (int) (hash ^ (hash >>> 32)) & (deflated.length() - 1);
+            Deflated cached = deflated.get(slot);
+            if (cached != null && cached.hash == hash) {
+                return cached;
+            }
+            byte[] frame = question.getBinaryFrame();
+            int length = BinaryProtocol.payloadLength(frame);
+            // Only worth it if the saving covers the length in front
+            byte[] target = new byte[length];
+            int written = Compression.deflate(bytes, frame, frame.length - length, length, target);
+            byte[] kept = written >= 0 && BinaryProtocol.varintSize(length) + written < length
+                ? Arrays.copyOf(target, written)
+                : null;
+            cached = new Deflated(hash, length, kept);
+            deflated.set(slot, cached);
+            return cached;
+        }
+    }
+    
+    // One question's payload, deflated unless that would not make it smaller
+    static final class Deflated {
+        final long hash;
+        final int length;
+        final byte[] bytes;
+        
+        Deflated(long hash, int length, byte[] bytes) {
+            this.hash = hash;
+            this.length = length;
+            this.bytes = bytes;
+        }
+        
+        boolean isCompressed() {
+            return bytes != null;
+        }
+    }
+    
+    // Scores every word of the questions and options, every pair of words
+    // in a row and every whole option by the bytes it would save, which is
+    // its length times its repeats, and packs the best into size bytes.
+    // Large banks are sampled evenly.
+    static Dictionary train(QuestionBank bank, int size) {
+        Map<String, Integer> counts = new HashMap<>();
+        int step = Math.max(1, bank.size() / TRAINING_SAMPLE);
+        for (int i = 0; i < bank.size(); i += step) {
+            Question question = bank.get(i);
+            countPhrases(counts, question.getQuestion());
+            for (String option : question.getOptions()) {
+                counts.merge(option, 1, Integer::sum);
+                countPhrases(counts, option);
+            }
+        }
+        
+        List<Map.Entry<String, Integer>> candidates = new ArrayList<>();
+        for (Map.Entry<String, Integer> entry : counts.entrySet()) {
+            if (entry.getValue() > 1 && entry.getKey().length() > 2) {
+                candidates.add(entry);
+            }
+        }
+        candidates.sort((a, b) -> Long.compare(saving(b), saving(a)));
+        
+        // Best first while choosing, so phrases inside a better one are skipped
+        Set<String> covered = new HashSet<>();
+        List<byte[]> pieces = new ArrayList<>();
+        int total = 0;
+        for (Map.Entry<String, Integer> candidate : candidates) {
+            String phrase = candidate.getKey();
+            byte[] bytes = phrase.getBytes(StandardCharsets.UTF_8);
+            if (total + bytes.length > size || covered.contains(phrase)) {
+                continue;
+            }
+            cover(covered, phrase);
+            pieces.add(bytes);
+            total += bytes.length;
+        }
+        Collections.reverse(pieces);
+        
+        byte[] dictionary = new byte[total];
+        int offset = 0;
+        for (byte[] piece : pieces) {
+            System.arraycopy(piece, 0, dictionary, offset, piece.length);
+            offset += piece.length;
+        }
+        return new Dictionary(dictionary);
+    }
+    
+    // Words keep the space in front, as they appear after the first one
+    private static void countPhrases(Map<String, Integer> counts, String text) {
+        String[] words = text.split(" ");
+        for (int i = 0; i < words.length; i++) {
+            if (words[i].isEmpty()) {
+                continue;
+            }
+            String word = i > 0 ? " " + words[i] : words[i];
+            counts.merge(word, 1, Integer::sum);
+            if (i + 1 < words.length && !words[i + 1].isEmpty()) {
+                counts.merge(word + " " + words[i + 1], 1, Integer::sum);
+            }
+        }
+    }
+    
+    // Adds the phrase and every candidate inside it: its words and pairs of
+    // words, with the space in front where the phrase has one
+    private static void cover(Set<String> covered, String phrase) {
+        covered.add(phrase);
+        String[] words = phrase.split(" ");
+        for (int i = 0; i < words.length; i++) {
+            if (words[i].isEmpty()) {
+                continue;
+            }
+            String pair = i + 1 < words.length && !words[i + 1].isEmpty() ? words[i] + " " + words[i + 1] : null;
+            covered.add(words[i]);
+            if (pair != null) {
+                covered.add(pair);
+            }
+            if (i > 0) {
+                covered.add(" " + words[i]);
+                if (pair != null) {
+                    covered.add(" " + pair);
+                }
+            }
+        }
+    }
+    
+    private static long saving(Map.Entry<String, Integer> candidate) {
+        return (long) (candidate.getValue() - 1) * candidate.getKey().length();
+    }
+    
+    // Deflates length bytes of data into target, raw and against the
+    // dictionary. Returns the deflated length, or -1 if it would not fit.
+    static int deflate(byte[] dictionary, byte[] data, int offset, int length, byte[] target) {
+        Deflater deflater = DEFLATERS.take();
+        try {
+            deflater.setDictionary(dictionary);
+            deflater.setInput(data, offset, length);
+            deflater.finish();
+            int written = deflater.deflate(target, 0, target.length);
+            return deflater.finished() ? written : -1;
+        } finally {
+            deflater.reset();
+            DEFLATERS.give(deflater);
+        }
+    }
+    
+    // Inflates exactly targetLength bytes into target; see deflate()
+    static void inflate(byte[] dictionary, byte[] data, int offset, int length, byte[] target, int targetLength)
+        throws DataFormatException {
+        Inflater inflater = INFLATERS.take();
+        try {
+            inflater.setDictionary(dictionary);
+            inflater.setInput(data, offset, length);
+            int inflated = 0;
+            while (inflated < targetLength) {
+                int n = inflater.inflate(target, inflated, targetLength - inflated);
+                if (n == 0 && (inflater.finished() || inflater.needsInput())) {
+                    break;
+                }
+                inflated += n;
+            }
+            if (inflated != targetLength) {
+                throw new DataFormatException("Inflated " + inflated + " of " + targetLength + " bytes");
+            }
+        } finally {
+            inflater.reset();
+            INFLATERS.give(inflater);
+        }
+    }
+    
+    // CPU time of the current thread, or wall time where the JVM can't
+    // measure that; only differences between two calls mean anything
+    static long cpuNanos() {
+        if (THREAD_CPU) {
+            long nanos = THREADS.getCurrentThreadCpuTime();
+            if (nanos >= 0) {
+                return nanos;
+            }
+        }
+        return System.nanoTime();
+    }
+    
+    // Idle instances, up to POOL_SIZE; the rest are freed when given back
+    private static final class Pool<T> {
+        private final Queue<T> idle = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger size = new AtomicInteger();
+        private final Supplier<T> create;
+        private final Consumer<T> free;
+        
+        Pool(Supplier<T> create, Consumer<T> free) {
+            this.create = create;
+            this.free = free;
+        }
+        
+        T take() {
+            T item = idle.poll();
+            if (item == null) {
+                return create.get();
+            }
+            size.decrementAndGet();
+            return item;
+        }
+        
+        void give(T item) {
+            if (size.incrementAndGet() <= POOL_SIZE) {
+                idle.add(item);
+            } else {
+                size.decrementAndGet();
+                free.accept(item);
+            }
+        }
+    }
+}
\ No newline at end of file
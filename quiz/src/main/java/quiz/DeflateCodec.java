@@ -0,0 +1,29 @@
+package quiz;
+
+// Binary frames with questions deflated against the bank's dictionary, for
+// a session that asked for compression; see Compression. Questions come
+// deflated from the dictionary, which keeps them for every session.
+class DeflateCodec extends BinaryCodec {
+    private final Compression.Dictionary dictionary;
+    private final ServerMetrics metrics;
+    
+    DeflateCodec(Compression.Dictionary dictionary, ServerMetrics metrics) {
+        this.dictionary = dictionary;
+        this.metrics = metrics;
+    }
+    
+    @Override
+    public void question(FrameBuffer out, Question question, int id) {
+        long start = Compression.cpuNanos();
+        Compression.Deflated deflated = dictionary.deflate(question);
+        int length = deflated.length;
+        int sent = length;
+        if (deflated.isCompressed()) {
+            BinaryProtocol.compressed(out, id == UNTAGGED ? 0 : id, length, deflated.bytes, deflated.bytes.length);
+            sent = BinaryProtocol.varintSize(length) + deflated.bytes.length;
+        } else {
+            super.question(out, question, id);
+        }
+        metrics.recordCompression(length, sent, Compression.cpuNanos() - start);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,217 @@
+package quiz;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+// Bounded, lock-free server log. Worker threads claim a preallocated slot in
+// a ring buffer and store the raw event fields, so logging an answer never
+// allocates or blocks. A single drain thread formats the events in batches
+// and hands them to the sinks. When the ring is full the event is dropped
+// and counted instead of stalling the caller.
+class EventLog {
+    // Hot path events, formatted on the drain thread
+    enum Event {
+        MESSAGE,
+        CONNECTED,
+        CORRECT,
+        INCORRECT,
+        EXPIRED,
+        FINISHED,
+        RESUMED
+    }
+    
+    // Receives formatted batches, one line per event
+    interface Sink {
+        void write(String batch);
+        
+        default void close() {
+        }
+    }
+    
+    private static final int MAX_BATCH = 256;
+    private static final long IDLE_PARK_NANOS = 2_000_000L;
+    
+    private final int mask;
+    private final AtomicLongArray sequences;
+    private final Event[] types;
+    private final String[] texts;
+    private final int[] firstArgs;
+    private final int[] secondArgs;
+    private final long[] times;
+    
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private long head = 0;
+    private long reportedDrops = 0;
+    
+    private final List<Sink> sinks = new ArrayList<>();
+    private final Thread drainThread;
+    private volatile boolean running = false;
+    
+    public EventLog(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        mask = size - 1;
+        sequences = new AtomicLongArray(size);
+        types = new Event[size];
+        texts = new String[size];
+        firstArgs = new int[size];
+        secondArgs = new int[size];
+        times = new long[size];
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+        
+        drainThread = new Thread(this::drainLoop, "quiz-log");
+        drainThread.setDaemon(true);
+    }
+    
+    // Sinks must be added before start()
+    public EventLog addSink(Sink sink) {
+        sinks.add(sink);
+        return this;
+    }
+    
+    public void start() {
+        running = true;
+        drainThread.start();
+    }
+    
+    public void close() {
+        running = false;
+        LockSupport.unpark(drainThread);
+        try {
+            drainThread.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (Sink sink : sinks) {
+            sink.close();
+        }
+    }
+    
+    public long getDropped() {
+        return dropped.get();
+    }
+    
+    public boolean message(String text) {
+        return event(Event.MESSAGE, text, 0, 0);
+    }
+    
+    // Records an event without allocating. Returns false if it was dropped
+    // because the buffer is full.
+    public boolean event(Event type, String text, int first, int second) {
+        long position = tail.get();
+        int index;
+        while (true) {
+            index = (int) (position & mask);
+            long difference = sequences.get(index) - position;
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    break;
+                }
+                position = tail.get();
+            } else if (difference < 0) {
+                dropped.incrementAndGet();
+                return false;
+            } else {
+                position = tail.get();
+            }
+        }
+        
+        types[index] = type;
+        texts[index] = text;
+        firstArgs[index] = first;
+        secondArgs[index] = second;
+        times[index] = System.currentTimeMillis();
+        sequences.set(index, position + 1);
+        return true;
+    }
+    
+    private void drainLoop() {
+        StringBuilder batch = new StringBuilder(MAX_BATCH * 64);
+        Date date = new Date();
+        
+        while (running) {
+            if (drain(batch, date) == 0) {
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+            }
+        }
+        // Flush whatever was logged while shutting down
+        drain(batch, date);
+    }
+    
+    private int drain(StringBuilder batch, Date date) {
+        int count = 0;
+        batch.setLength(0);
+        
+        while (count < MAX_BATCH) {
+            int index = (int) (head & mask);
+            if (sequences.get(index) != head + 1) {
+                break;
+            }
+            
+            date.setTime(times[index]);
+            batch.append('[').append(date).append("] ");
+            format(batch, types[index], texts[index], firstArgs[index], secondArgs[index]);
+            batch.append('\n');
+            
+            texts[index] = null;
+            sequences.set(index, head + mask + 1);
+            head++;
+            count++;
+        }
+        
+        long drops = dropped.get();
+        if (drops != reportedDrops) {
+            date.setTime(System.currentTimeMillis());
+            batch.append('[').append(date).append("] ")
+                 .append(drops - reportedDrops).append(" log events dropped, buffer full\n");
+            reportedDrops = drops;
+        }
+        
+        if (batch.length() > 0) {
+            String text = batch.toString();
+            for (Sink sink : sinks) {
+                try {
+                    sink.write(text);
+                } catch (RuntimeException e) {
+                    // A failing sink must not stop the drain thread
+                    System.err.println("Log sink failed: " + e);
+                }
+            }
+        }
+        return count;
+    }
+    
+    private static void format(StringBuilder out, Event type, String text, int first, int second) {
+        switch (type) {
+            case CONNECTED:
+                out.append("New client connected: ").append(text);
+                break;
+            case CORRECT:
+                out.append("Client ").append(text).append(" answered correctly to question ").append(first);
+                break;
+            case INCORRECT:
+                out.append("Client ").append(text).append(" answered incorrectly to question ").append(first);
+                break;
+            case EXPIRED:
+                out.append("Client ").append(text).append(" ran out of time on question ").append(first);
+                break;
+            case FINISHED:
+                out.append("Client ").append(text).append(" finished quiz with score ")
+                   .append(first).append('/').append(second);
+                break;
+            case RESUMED:
+                out.append("Client ").append(text).append(" resumed its session at ")
+                   .append(first).append('/').append(second).append(" answered");
+                break;
+            default:
+                out.append(text);
+                break;
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,59 @@
+package quiz;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// How the blocking server runs its accept loop and client handlers
+enum ExecutorStrategy {
+    CACHED_POOL("Thread per client"),
+    VIRTUAL_THREADS("Virtual threads");
+    
+    private final String label;
+    
+    ExecutorStrategy(String label) {
+        this.label = label;
+    }
+    
+    public ExecutorService newExecutor() {
+        if (this == VIRTUAL_THREADS) {
+            ExecutorService executor = newVirtualThreadExecutor();
+            if (executor != null) {
+                return executor;
+            }
+        }
+        return Executors.newCachedThreadPool();
+    }
+    
+    public boolean isSupported() {
+        return this != VIRTUAL_THREADS || virtualThreadFactory() != null;
+    }
+    
+    @Override
+    public String toString() {
+        return label;
+    }
+    
+    // Looked up reflectively so the server still compiles and runs on JDKs
+    // that predate Executors.newVirtualThreadPerTaskExecutor()
+    private static Method virtualThreadFactory() {
+        try {
+            return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+    
+    private static ExecutorService newVirtualThreadExecutor() {
+        Method factory = virtualThreadFactory();
+        if (factory == null) {
+            return null;
+        }
+        try {
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // Preview builds refuse virtual threads unless --enable-preview is set
+            return null;
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,122 @@
+package quiz;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+// Reusable per-connection buffer for assembling several protocol lines so
+// they go out to the socket in a single write
+class FrameBuffer {
+    static final byte[] RESULT_CORRECT = ascii("RESULT:CORRECT\n");
+    static final byte[] SCORE = ascii("SCORE:");
+    static final byte[] TOTAL = ascii("TOTAL:");
+    
+    private byte[] bytes;
+    private int length;
+    
+    public FrameBuffer(int initialCapacity) {
+        bytes = new byte[initialCapacity];
+    }
+    
+    static byte[] ascii(String text) {
+        return text.getBytes(StandardCharsets.US_ASCII);
+    }
+    
+    public FrameBuffer append(byte[] data) {
+        ensureCapacity(data.length);
+        System.arraycopy(data, 0, bytes, length, data.length);
+        length += data.length;
+        return this;
+    }
+    
+    public FrameBuffer append(byte[] data, int offset, int count) {
+        ensureCapacity(count);
+        System.arraycopy(data, offset, bytes, length, count);
+        length += count;
+        return this;
+    }
+    
+    // Copies bytes out of a (possibly direct) buffer without moving its position
+    public FrameBuffer append(ByteBuffer data, int offset, int count) {
+        ensureCapacity(count);
+        data.get(offset, bytes, length, count);
+        length += count;
+        return this;
+    }
+    
+    public FrameBuffer append(String text) {
+        return append(text.getBytes(StandardCharsets.UTF_8));
+    }
+    
+    public FrameBuffer append(char c) {
+        ensureCapacity(1);
+        bytes[length++] = (byte) c;
+        return this;
+    }
+    
+    // Writes a non-negative number as ASCII digits without allocating
+    public FrameBuffer append(int value) {
+        if (value < 0) {
+            return append(Integer.toString(value));
+        }
+        int digits = 1;
+        for (int v = value; v >= 10; v /= 10) {
+            digits++;
+        }
+        ensureCapacity(digits);
+        for (int i = length + digits - 1; i >= length; i--) {
+            bytes[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        length += digits;
+        return this;
+    }
+    
+    // Unsigned LEB128, as used by the binary protocol
+    public FrameBuffer appendVarint(int value) {
+        ensureCapacity(5);
+        while ((value & ~0x7F) != 0) {
+            bytes[length++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        bytes[length++] = (byte) value;
+        return this;
+    }
+    
+    // SCORE:<score>/<answered>
+    public FrameBuffer appendScore(int score, int answered) {
+        return append(SCORE).append(score).append('/').append(answered).append('\n');
+    }
+    
+    public int length() {
+        return length;
+    }
+    
+    public void reset() {
+        length = 0;
+    }
+    
+    public void writeTo(OutputStream out) throws IOException {
+        out.write(bytes, 0, length);
+        length = 0;
+    }
+    
+    public byte[] toByteArray() {
+        return Arrays.copyOf(bytes, length);
+    }
+    
+    // Copies the pending bytes out for queuing on a non-blocking channel
+    public ByteBuffer drainToByteBuffer() {
+        ByteBuffer buffer = ByteBuffer.wrap(Arrays.copyOf(bytes, length));
+        length = 0;
+        return buffer;
+    }
+    
+    private void ensureCapacity(int extra) {
+        if (length + extra > bytes.length) {
+            bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + extra));
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,126 @@
+package quiz;
+
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+// Hands UI state from a network thread to the EDT at most once per frame.
+// The network thread publishes immutable snapshots of the state it tracks;
+// only the latest one reaches the screen, so a burst of protocol lines
+// costs one repaint instead of one event each. Updates that can't be
+// merged, like a dialog or a question joining a queue, are posted as
+// actions and run in order right after the snapshot of the same frame.
+//
+// Also measures how long an update waits between the network thread and
+// the end of the frame that shows it.
+final class FrameDispatcher<S> {
+    interface Renderer<S> {
+        // Called on the EDT with the state last rendered and the new one
+        void render(S previous, S next);
+    }
+    
+    private final long frameNanos;
+    private final Renderer<S> renderer;
+    private final AtomicReference<S> latest;
+    private final ConcurrentLinkedQueue<Runnable> actions = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    // When the oldest update not yet on screen came in, 0 if there is none
+    private final AtomicLong pendingSince = new AtomicLong();
+    private final LongAdder updates = new LongAdder();
+    private final LongAdder frames = new LongAdder();
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final Timer frameTimer;
+    
+    // Only touched on the EDT
+    private S rendered;
+    private long lastFrame = 0;
+    private boolean closed = false;
+    
+    FrameDispatcher(S initial, long frameNanos, Renderer<S> renderer) {
+        this.frameNanos = frameNanos;
+        this.renderer = renderer;
+        this.latest = new AtomicReference<>(initial);
+        this.rendered = initial;
+        frameTimer = new Timer(0, e -> flush());
+        frameTimer.setRepeats(false);
+    }
+    
+    // Replaces the state to show; any thread
+    public void publish(S state) {
+        latest.set(state);
+        schedule();
+    }
+    
+    // Runs on the EDT after the next frame's snapshot; any thread
+    public void post(Runnable action) {
+        actions.add(action);
+        schedule();
+    }
+    
+    // Drops whatever has not been shown yet; on the EDT
+    public void close() {
+        closed = true;
+        frameTimer.stop();
+        actions.clear();
+    }
+    
+    public long getUpdates() {
+        return updates.sum();
+    }
+    
+    public long getFrames() {
+        return frames.sum();
+    }
+    
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+    
+    public String summary() {
+        return getUpdates() + " updates in " + getFrames() + " frames, network to frame "
+            + latency.summary(1e6, "ms");
+    }
+    
+    private void schedule() {
+        updates.increment();
+        pendingSince.compareAndSet(0, System.nanoTime());
+        if (scheduled.compareAndSet(false, true)) {
+            SwingUtilities.invokeLater(this::flush);
+        }
+    }
+    
+    private void flush() {
+        if (closed) {
+            return;
+        }
+        long wait = lastFrame + frameNanos - System.nanoTime();
+        if (lastFrame != 0 && wait > 0) {
+            // Too soon after the last frame; everything arriving until then joins this one
+            frameTimer.setInitialDelay((int) TimeUnit.NANOSECONDS.toMillis(wait) + 1);
+            frameTimer.restart();
+            return;
+        }
+        // Updates from here on schedule another frame
+        scheduled.set(false);
+        long since = pendingSince.getAndSet(0);
+        S next = latest.get();
+        if (next != rendered) {
+            renderer.render(rendered, next);
+            rendered = next;
+        }
+        Runnable action;
+        while (!closed && (action = actions.poll()) != null) {
+            action.run();
+        }
+        lastFrame = System.nanoTime();
+        frames.increment();
+        if (since != 0) {
+            latency.record(lastFrame - since);
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,238 @@
+package quiz;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+
+// Buffered reader for both protocols. Text lines and binary frames come out
+// of the same buffer, so a connection can switch to binary framing right
+// after the upgrade line without losing bytes that were already read.
+class FrameReader {
+    private static final int MAX_LINE_LENGTH = 64 * 1024;
+    
+    private final InputStream in;
+    private final byte[] buffer = new byte[8192];
+    private int position;
+    private int limit;
+    
+    // Payload of the last frame returned by readFrame()
+    private byte[] payload = new byte[256];
+    private int payloadPosition;
+    private int payloadLength;
+    // Takes turns with payload when a compressed one is inflated
+    private byte[] spare = new byte[256];
+    
+    // Whether the read in progress has taken part of a line or frame
+    private boolean partial;
+    
+    public FrameReader(InputStream in) {
+        this.in = in;
+    }
+    
+    // Returns the next line without its terminator, or null at end of stream
+    public String readLine() throws IOException {
+        int start = position;
+        byte[] line = null;
+        int lineLength = 0;
+        
+        while (true) {
+            for (int i = position; i < limit; i++) {
+                if (buffer[i] == '\n') {
+                    int end = i;
+                    position = i + 1;
+                    if (line == null) {
+                        if (end > start && buffer[end - 1] == '\r') {
+                            end--;
+                        }
+                        return new String(buffer, start, end - start, StandardCharsets.UTF_8);
+                    }
+                    line = append(line, lineLength, buffer, start, end - start);
+                    lineLength += end - start;
+                    if (lineLength > 0 && line[lineLength - 1] == '\r') {
+                        lineLength--;
+                    }
+                    return new String(line, 0, lineLength, StandardCharsets.UTF_8);
+                }
+            }
+            
+            // No terminator buffered yet, keep what we have and read more
+            if (limit > start) {
+                line = append(line, lineLength, buffer, start, limit - start);
+                lineLength += limit - start;
+                if (lineLength > MAX_LINE_LENGTH) {
+                    throw new IOException("Line too long");
+                }
+            }
+            partial = lineLength > 0;
+            if (!fill()) {
+                return lineLength > 0 ? new String(line, 0, lineLength, StandardCharsets.UTF_8) : null;
+            }
+            start = position;
+        }
+    }
+    
+    // Reads one binary frame and returns its type, or -1 at end of stream.
+    // The payload is then read with readVarint(), readString() and readBoolean().
+    public int readFrame() throws IOException {
+        partial = false;
+        if (position == limit && !fill()) {
+            return -1;
+        }
+        int type = buffer[position++] & 0xFF;
+        partial = true;
+        int length = readStreamVarint();
+        if (length < 0 || length > BinaryProtocol.MAX_FRAME_LENGTH) {
+            throw new IOException("Invalid frame length: " + length);
+        }
+        
+        if (payload.length < length) {
+            payload = new byte[Math.max(length, payload.length * 2)];
+        }
+        int copied = 0;
+        while (copied < length) {
+            if (position == limit && !fill()) {
+                throw new EOFException("Connection closed inside a frame");
+            }
+            int chunk = Math.min(length - copied, limit - position);
+            System.arraycopy(buffer, position, payload, copied, chunk);
+            position += chunk;
+            copied += chunk;
+        }
+        payloadPosition = 0;
+        payloadLength = length;
+        return type;
+    }
+    
+    // True if more client input is already buffered, so replies can wait
+    // and go out together once it has been processed
+    public boolean hasBuffered() {
+        return position < limit;
+    }
+    
+    // True if the last read failed, e.g. on a socket timeout, after taking
+    // part of a line or frame. That part is lost, so the stream cannot be
+    // read on from there.
+    public boolean isInsideMessage() {
+        return partial;
+    }
+    
+    public int readVarint() throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            if (payloadPosition >= payloadLength) {
+                throw new IOException("Truncated frame");
+            }
+            int b = payload[payloadPosition++] & 0xFF;
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+    
+    public String readString() throws IOException {
+        int length = readVarint();
+        if (length < 0 || length > payloadLength - payloadPosition) {
+            throw new IOException("Truncated frame");
+        }
+        String text = new String(payload, payloadPosition, length, StandardCharsets.UTF_8);
+        payloadPosition += length;
+        return text;
+    }
+    
+    // Eight bytes, most significant first
+    public long readLong() throws IOException {
+        if (payloadLength - payloadPosition < 8) {
+            throw new IOException("Truncated frame");
+        }
+        long value = 0;
+        for (int i = 0; i < 8; i++) {
+            value = (value << 8) | (payload[payloadPosition++] & 0xFF);
+        }
+        return value;
+    }
+    
+    // A varint length and that many bytes
+    public byte[] readBytes() throws IOException {
+        int length = readVarint();
+        if (length < 0 || length > payloadLength - payloadPosition) {
+            throw new IOException("Truncated frame");
+        }
+        byte[] bytes = Arrays.copyOfRange(payload, payloadPosition, payloadPosition + length);
+        payloadPosition += length;
+        return bytes;
+    }
+    
+    // Replaces the rest of the payload with the length bytes it inflates to
+    // against the dictionary, which are then read like any payload
+    public void inflatePayload(byte[] dictionary, int length) throws IOException {
+        if (length < 0 || length > BinaryProtocol.MAX_FRAME_LENGTH) {
+            throw new IOException("Invalid frame length: " + length);
+        }
+        if (spare.length < length) {
+            spare = new byte[Math.max(length, spare.length * 2)];
+        }
+        try {
+            Compression.inflate(dictionary, payload, payloadPosition, payloadLength - payloadPosition, spare, length);
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt compressed frame: " + e.getMessage());
+        }
+        byte[] inflated = spare;
+        spare = payload;
+        payload = inflated;
+        payloadPosition = 0;
+        payloadLength = length;
+    }
+    
+    public boolean readBoolean() throws IOException {
+        if (payloadPosition >= payloadLength) {
+            throw new IOException("Truncated frame");
+        }
+        return payload[payloadPosition++] != 0;
+    }
+    
+    public void close() throws IOException {
+        in.close();
+    }
+    
+    private int readStreamVarint() throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            if (position == limit && !fill()) {
+                throw new EOFException("Connection closed inside a frame");
+            }
+            int b = buffer[position++] & 0xFF;
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+    
+    private boolean fill() throws IOException {
+        int read = in.read(buffer, 0, buffer.length);
+        if (read <= 0) {
+            position = 0;
+            limit = 0;
+            return false;
+        }
+        position = 0;
+        limit = read;
+        return true;
+    }
+    
+    private static byte[] append(byte[] target, int targetLength, byte[] source, int offset, int length) {
+        if (target == null) {
+            target = new byte[Math.max(64, length * 2)];
+        } else if (targetLength + length > target.length) {
+            target = Arrays.copyOf(target, Math.max(target.length * 2, targetLength + length));
+        }
+        System.arraycopy(source, offset, target, targetLength, length);
+        return target;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,215 @@
+package quiz;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+// One hosted live game, see LiveGames for the protocol. Rounds are driven
+// by the GameRooms clock thread; everything a member sees is delivered on
+// the member's own event loop.
+//
+// Members are grouped by the loop that owns them. A broadcast encodes the
+// frame once and hands each loop one task that writes it to all of its
+// members, so a round costs one wakeup per loop rather than per player.
+// Answers are graded on the answering member's loop, in parallel across
+// loops, into per-round LongAdders. Closing a round passes one task through
+// every loop before the totals are read, so answers that got in before the
+// close are counted.
+class GameRoom {
+    // A player as the room sees it. All calls but executor() arrive on
+    // the member's executor.
+    interface Member {
+        Executor executor();
+        
+        // A frame shared with the other members; write a duplicate or drop it
+        void send(ByteBuffer frame);
+        
+        void gameOver(int rounds);
+    }
+    
+    // One question and its deadline
+    static final class Round {
+        final int number;
+        final Question question;
+        final int bankIndex;
+        final LongAdder answers = new LongAdder();
+        final LongAdder right = new LongAdder();
+        volatile boolean open = true;
+        
+        Round(int number, Question question, int bankIndex) {
+            this.number = number;
+            this.question = question;
+            this.bankIndex = bankIndex;
+        }
+    }
+    
+    private static final int LEADERBOARD_LINES = 5;
+    
+    private final String name;
+    private final GameRooms rooms;
+    private final Map<Executor, Set<Member>> members = new ConcurrentHashMap<>();
+    private final AtomicInteger size = new AtomicInteger();
+    private final Leaderboard leaderboard;
+    
+    // Written by the clock thread only
+    private volatile QuestionBank bank;
+    private volatile QuestionBank questions;
+    private int played = 0;
+    
+    private volatile Round round;
+    private volatile boolean started = false;
+    private boolean over = false;
+    
+    GameRoom(String name, GameRooms rooms) {
+        this.name = name;
+        this.rooms = rooms;
+        this.leaderboard = new Leaderboard(rooms.getLeaderboardSize());
+    }
+    
+    public String getName() {
+        return name;
+    }
+    
+    public int size() {
+        return size.get();
+    }
+    
+    public int getRounds() {
+        QuestionBank drawn = questions;
+        return drawn != null ? drawn.size() : rooms.getRounds();
+    }
+    
+    public boolean isStarted() {
+        return started;
+    }
+    
+    public Leaderboard getLeaderboard() {
+        return leaderboard;
+    }
+    
+    // The lobby opens with the first member
+    void open() {
+        rooms.schedule(this::start, rooms.getLobbyMillis());
+    }
+    
+    // False once the game is over; the member then joins a new game
+    synchronized boolean add(Member member) {
+        if (over) {
+            return false;
+        }
+        members.computeIfAbsent(member.executor(), loop -> ConcurrentHashMap.newKeySet()).add(member);
+        size.incrementAndGet();
+        return true;
+    }
+    
+    void leave(Member member) {
+        Set<Member> batch = members.get(member.executor());
+        if (batch != null && batch.remove(member)) {
+            size.decrementAndGet();
+        }
+    }
+    
+    // Grades an answer to an open round on the calling member's loop.
+    // Returns 1 if right, 0 if wrong and -1 if that round is not open.
+    int answer(int number, int option) {
+        Round current = round;
+        if (current == null || current.number != number || !current.open) {
+            return -1;
+        }
+        boolean isCorrect = option == current.question.getCorrectAnswer();
+        current.answers.increment();
+        if (isCorrect) {
+            current.right.increment();
+        }
+        bank.getStats().record(current.bankIndex, isCorrect);
+        return isCorrect ? 1 : 0;
+    }
+    
+    private void start() {
+        if (size.get() == 0) {
+            end();
+            return;
+        }
+        bank = rooms.getBank();
+        questions = rooms.draw(bank);
+        started = true;
+        rooms.getLog().message("Room " + name + " started a game of " + questions.size() + " questions for " + size.get() + " players");
+        nextRound();
+    }
+    
+    private void nextRound() {
+        if (played == questions.size() || size.get() == 0) {
+            end();
+            return;
+        }
+        int index = played++;
+        Round next = new Round(played, questions.get(index), QuestionSampler.bankIndex(questions, index));
+        round = next;
+        broadcast(LiveGames.roundFrame(next.number, questions.size(), rooms.getAnswerMillis(), next.question));
+        rooms.schedule(() -> close(next), rooms.getAnswerMillis());
+    }
+    
+    // A loop runs its tasks in order, so once each has run the task
+    // handed to it here, no answer that saw the round open is still being
+    // graded. The last of them hands the results back to the clock.
+    private void close(Round closing) {
+        closing.open = false;
+        List<Executor> loops = new ArrayList<>(members.keySet());
+        AtomicInteger draining = new AtomicInteger(loops.size() + 1);
+        Runnable drained = () -> {
+            if (draining.decrementAndGet() == 0) {
+                rooms.schedule(() -> closed(closing), 0);
+            }
+        };
+        for (Executor loop : loops) {
+            loop.execute(drained);
+        }
+        drained.run();
+    }
+    
+    private void closed(Round closing) {
+        broadcast(LiveGames.closedFrame(closing.number, closing.question.getCorrectAnswer(),
+            closing.answers.sum(), closing.right.sum(), leaderboard.top(LEADERBOARD_LINES)));
+        rooms.schedule(this::nextRound, rooms.getPauseMillis());
+    }
+    
+    private void end() {
+        synchronized (this) {
+            over = true;
+        }
+        rooms.remove(this);
+        int rounds = questions != null ? questions.size() : 0;
+        for (Map.Entry<Executor, Set<Member>> batch : members.entrySet()) {
+            Set<Member> loopMembers = batch.getValue();
+            batch.getKey().execute(() -> {
+                for (Member member : loopMembers) {
+                    member.gameOver(rounds);
+                }
+            });
+        }
+        if (started) {
+            rooms.getLog().message("Room " + name + " finished its game with " + size.get() + " players");
+        }
+    }
+    
+    // One task per event loop; slow members drop frames instead of holding up the others
+    private void broadcast(ByteBuffer frame) {
+        int recipients = 0;
+        for (Map.Entry<Executor, Set<Member>> batch : members.entrySet()) {
+            Set<Member> loopMembers = batch.getValue();
+            recipients += loopMembers.size();
+            batch.getKey().execute(() -> {
+                for (Member member : loopMembers) {
+                    member.send(frame.duplicate());
+                }
+            });
+        }
+        rooms.getMetrics().recordBroadcast(recipients);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,125 @@
+package quiz;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+// The live game rooms of a server, by name. A room is created by its first
+// player and removed when its game is over; players joining a name after
+// that start the next game. One clock thread opens and closes the rounds
+// of every room, it never touches a socket.
+class GameRooms {
+    private final Map<String, GameRoom> rooms = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService clock;
+    private final Supplier<QuestionBank> banks;
+    private final QuestionSampler sampler;
+    private final EventLog log;
+    private final ServerMetrics metrics;
+    private final long lobbyMillis;
+    private final long answerMillis;
+    private final long pauseMillis;
+    private final int leaderboardSize;
+    private final int rounds;
+    
+    GameRooms(ServerConfig config, Supplier<QuestionBank> banks, EventLog log, ServerMetrics metrics) {
+        this.banks = banks;
+        this.log = log;
+        this.metrics = metrics;
+        this.sampler = new QuestionSampler(config.getRoomQuestions(), config.getQuizCategory());
+        this.lobbyMillis = config.getRoomLobbyMillis();
+        this.answerMillis = config.getRoomAnswerMillis();
+        this.pauseMillis = config.getRoomPauseMillis();
+        this.leaderboardSize = config.getLeaderboardSize();
+        this.rounds = config.getRoomQuestions();
+        this.clock = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "quiz-rooms");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+    
+    // Adds the member to the room's current game, opening a new one if
+    // there is none or the last one just ended
+    public GameRoom join(String name, GameRoom.Member member) {
+        while (true) {
+            GameRoom room = rooms.computeIfAbsent(name, created -> {
+                GameRoom opened = new GameRoom(created, this);
+                opened.open();
+                return opened;
+            });
+            if (room.add(member)) {
+                return room;
+            }
+            rooms.remove(name, room);
+        }
+    }
+    
+    public int getRoomCount() {
+        return rooms.size();
+    }
+    
+    public void shutdown() {
+        clock.shutdownNow();
+        rooms.clear();
+    }
+    
+    void remove(GameRoom room) {
+        rooms.remove(room.getName(), room);
+    }
+    
+    void schedule(Runnable task, long delayMillis) {
+        try {
+            clock.schedule(() -> {
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    log.message("Live game error: " + e);
+                }
+            }, delayMillis, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // Shutting down
+        }
+    }
+    
+    QuestionBank getBank() {
+        return banks.get();
+    }
+    
+    QuestionBank draw(QuestionBank bank) {
+        return sampler.draw(bank);
+    }
+    
+    EventLog getLog() {
+        return log;
+    }
+    
+    ServerMetrics getMetrics() {
+        return metrics;
+    }
+    
+    // Rounds of a game that has not started yet; 0 means the whole bank
+    int getRounds() {
+        int available = banks.get().size();
+        return rounds > 0 ? Math.min(rounds, available) : available;
+    }
+    
+    int getLeaderboardSize() {
+        return leaderboardSize;
+    }
+    
+    long getLobbyMillis() {
+        return lobbyMillis;
+    }
+    
+    long getAnswerMillis() {
+        return answerMillis;
+    }
+    
+    long getPauseMillis() {
+        return pauseMillis;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,141 @@
+package quiz;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// Question held as ordinary Java objects, as built by the parser
+class HeapQuestion implements Question {
+    private String question;
+    private List<String> options = new ArrayList<>();
+    private int correctAnswer;
+    private String category;
+    private int timeLimit;
+    
+    // Wire frames are the same for every client, so they are encoded once
+    // and shared. Any change to the question drops them.
+    private volatile byte[] frame;
+    private volatile byte[] binaryFrame;
+    private volatile byte[] incorrectResult;
+    private volatile long contentHash;
+    
+    // Decoded copy of any question, e.g. a columnar bank view
+    static HeapQuestion copyOf(Question source) {
+        HeapQuestion question = new HeapQuestion();
+        question.setQuestion(source.getQuestion());
+        for (String option : source.getOptions()) {
+            question.addOption(option);
+        }
+        question.setCorrectAnswer(source.getCorrectAnswer());
+        question.setCategory(source.getCategory());
+        question.setTimeLimit(source.getTimeLimit());
+        return question;
+    }
+    
+    @Override
+    public String getQuestion() {
+        return question;
+    }
+    
+    public void setQuestion(String question) {
+        this.question = question;
+        frame = null;
+        binaryFrame = null;
+        contentHash = 0;
+    }
+    
+    @Override
+    public List<String> getOptions() {
+        return Collections.unmodifiableList(options);
+    }
+    
+    public void addOption(String option) {
+        options.add(option);
+        frame = null;
+        binaryFrame = null;
+        contentHash = 0;
+    }
+    
+    @Override
+    public int getCorrectAnswer() {
+        return correctAnswer;
+    }
+    
+    public void setCorrectAnswer(int correctAnswer) {
+        this.correctAnswer = correctAnswer;
+        incorrectResult = null;
+    }
+    
+    @Override
+    public String getCategory() {
+        return category;
+    }
+    
+    public void setCategory(String category) {
+        this.category = category;
+    }
+    
+    @Override
+    public int getTimeLimit() {
+        return timeLimit;
+    }
+    
+    public void setTimeLimit(int timeLimit) {
+        this.timeLimit = timeLimit;
+    }
+    
+    @Override
+    public byte[] getFrame() {
+        byte[] encoded = frame;
+        if (encoded == null) {
+            StringBuilder text = new StringBuilder();
+            text.append("QUESTION:").append(question).append('\n');
+            text.append("OPTIONS:").append(options.size()).append('\n');
+            for (String option : options) {
+                text.append(option).append('\n');
+            }
+            encoded = text.toString().getBytes(StandardCharsets.UTF_8);
+            frame = encoded;
+        }
+        return encoded;
+    }
+    
+    @Override
+    public byte[] getBinaryFrame() {
+        byte[] encoded = binaryFrame;
+        if (encoded == null) {
+            encoded = BinaryProtocol.question(question, options);
+            binaryFrame = encoded;
+        }
+        return encoded;
+    }
+    
+    // 0 until first asked for, which a real hash is all but never
+    @Override
+    public long getContentHash() {
+        long hash = contentHash;
+        if (hash == 0) {
+            hash = QuestionSync.hash(getBinaryFrame());
+            contentHash = hash;
+        }
+        return hash;
+    }
+    
+    @Override
+    public byte[] getIncorrectResult() {
+        byte[] encoded = incorrectResult;
+        if (encoded == null) {
+            encoded = ("RESULT:INCORRECT:" + correctAnswer + "\n").getBytes(StandardCharsets.US_ASCII);
+            incorrectResult = encoded;
+        }
+        return encoded;
+    }
+    
+    @Override
+    public boolean isValid() {
+        return question != null && !question.isEmpty() && 
+               !options.isEmpty() && 
+               correctAnswer > 0 && correctAnswer <= options.size();
+    }
+}
\ No newline at end of file
@@ -0,0 +1,44 @@
+package quiz;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// Question bank backed by a list of question objects
+final class HeapQuestionBank extends QuestionBank {
+    private final List<Question> questions;
+    
+    HeapQuestionBank(int version, List<Question> questions) {
+        super(version);
+        this.questions = Collections.unmodifiableList(new ArrayList<>(questions));
+    }
+    
+    private HeapQuestionBank(List<Question> questions, int version) {
+        super(version);
+        this.questions = questions;
+    }
+    
+    // Copies any bank into question objects
+    static HeapQuestionBank copyOf(QuestionBank bank) {
+        List<Question> questions = new ArrayList<>(bank.size());
+        for (int i = 0; i < bank.size(); i++) {
+            questions.add(HeapQuestion.copyOf(bank.get(i)));
+        }
+        return new HeapQuestionBank(Collections.unmodifiableList(questions), bank.getVersion());
+    }
+    
+    @Override
+    public int size() {
+        return questions.size();
+    }
+    
+    @Override
+    public Question get(int index) {
+        return questions.get(index);
+    }
+    
+    @Override
+    public QuestionBank withVersion(int version) {
+        return new HeapQuestionBank(questions, version);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,172 @@
+package quiz;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// The client's side of QuestionSync: questions it has seen, by content
+// hash, so a server can send QUESTION@<n> for them instead of their text.
+// The least recently used ones go first once there are more than capacity.
+// Also keeps the last few compression dictionaries servers sent, by id, so
+// each is only downloaded once (see Compression).
+//
+// Kept between runs in a file (see defaultFile()), big endian:
+//   header        magic, format version, entry count
+//   entries       hash, UTF-8 text, option count and UTF-8 options per entry,
+//                 with each string's byte length in front, least recently used first
+//   dictionaries  count, then id, byte length and bytes of each
+// A missing, unreadable or outdated file starts an empty cache.
+class KnownQuestions {
+    static final int DEFAULT_CAPACITY = 10_000;
+    private static final int MAGIC = 0x514B4E57; // "QKNW"
+    private static final int FORMAT_VERSION = 2;
+    private static final int DICTIONARIES = 4;
+    
+    static class Entry {
+        final String text;
+        final List<String> options;
+        
+        Entry(String text, List<String> options) {
+            this.text = text;
+            this.options = options;
+        }
+    }
+    
+    private final Path file;
+    private final int capacity;
+    private final Map<Long, Entry> entries;
+    private final Map<Long, byte[]> dictionaries = new LinkedHashMap<>(8, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, byte[]> eldest) {
+            return size() > DICTIONARIES;
+        }
+    };
+    private boolean changed = false;
+    
+    private KnownQuestions(Path file, int capacity) {
+        this.file = file;
+        this.capacity = capacity;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Entry> eldest) {
+                return size() > KnownQuestions.this.capacity;
+            }
+        };
+    }
+    
+    // ~/.quiz/questions.cache
+    static Path defaultFile() {
+        return Paths.get(System.getProperty("user.home"), ".quiz", "questions.cache");
+    }
+    
+    // A cache backed by file, or held in memory only if file is null
+    static KnownQuestions open(Path file, int capacity) {
+        KnownQuestions known = new KnownQuestions(file, capacity);
+        if (file != null && Files.isRegularFile(file)) {
+            try {
+                known.read();
+            } catch (IOException e) {
+                known.entries.clear();
+                known.dictionaries.clear();
+            }
+        }
+        return known;
+    }
+    
+    synchronized Entry get(long hash) {
+        return entries.get(hash);
+    }
+    
+    synchronized void put(long hash, String text, List<String> options) {
+        if (!entries.containsKey(hash)) {
+            entries.put(hash, new Entry(text, Collections.unmodifiableList(new ArrayList<>(options))));
+            changed = true;
+        }
+    }
+    
+    synchronized byte[] getDictionary(long id) {
+        return dictionaries.get(id);
+    }
+    
+    synchronized void putDictionary(long id, byte[] dictionary) {
+        dictionaries.put(id, dictionary);
+        changed = true;
+    }
+    
+    synchronized int size() {
+        return entries.size();
+    }
+    
+    // Writes the cache through a temporary file, so a crash never leaves a
+    // partial one; does nothing if it is held in memory or has not changed
+    synchronized void save() throws IOException {
+        if (file == null || !changed) {
+            return;
+        }
+        Path directory = file.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        Path temporary = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary), 1 << 16))) {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                out.writeInt(entries.size());
+                for (Map.Entry<Long, Entry> entry : entries.entrySet()) {
+                    out.writeLong(entry.getKey());
+                    out.writeUTF(entry.getValue().text);
+                    out.writeInt(entry.getValue().options.size());
+                    for (String option : entry.getValue().options) {
+                        out.writeUTF(option);
+                    }
+                }
+                out.writeInt(dictionaries.size());
+                for (Map.Entry<Long, byte[]> dictionary : dictionaries.entrySet()) {
+                    out.writeLong(dictionary.getKey());
+                    out.writeInt(dictionary.getValue().length);
+                    out.write(dictionary.getValue());
+                }
+            }
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            changed = false;
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+    
+    private void read() throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+                return;
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                long hash = in.readLong();
+                String text = in.readUTF();
+                int optionCount = in.readInt();
+                if (optionCount < 0 || optionCount > 255) {
+                    throw new IOException("Corrupt question cache " + file);
+                }
+                List<String> options = new ArrayList<>(optionCount);
+                for (int j = 0; j < optionCount; j++) {
+                    options.add(in.readUTF());
+                }
+                entries.put(hash, new Entry(text, Collections.unmodifiableList(options)));
+            }
+            int dictionaryCount = in.readInt();
+            for (int i = 0; i < dictionaryCount; i++) {
+                long id = in.readLong();
+                int length = in.readInt();
+                if (length < 0 || length > Compression.MAX_DICTIONARY_SIZE) {
+                    throw new IOException("Corrupt question cache " + file);
+                }
+                byte[] dictionary = new byte[length];
+                in.readFully(dictionary);
+                dictionaries.put(id, dictionary);
+            }
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,157 @@
+package quiz;
+
+import java.io.PrintStream;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+// Log-linear histogram of durations in nanoseconds, laid out like
+// HdrHistogram: each power of two range is split into the same number of
+// linear sub-buckets, so every recorded value keeps about three significant
+// digits whatever its magnitude. Recording is lock-free and allocation
+// free, so many threads can share one histogram.
+class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 11;
+    private static final int SUB_BUCKET_HALF = 1 << (SUB_BUCKET_BITS - 1);
+    // Values above about 18 minutes are counted as the maximum
+    private static final long MAX_VALUE = (1L << 40) - 1;
+    private static final double[] SUMMARY_PERCENTILES = {50, 90, 99, 99.9, 99.99};
+    
+    private final AtomicLongArray counts = new AtomicLongArray(indexOf(MAX_VALUE) + 1);
+    private final LongAdder totalCount = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+    
+    public void record(long nanos) {
+        long value = Math.min(Math.max(nanos, 0), MAX_VALUE);
+        counts.incrementAndGet(indexOf(value));
+        totalCount.increment();
+        sum.add(value);
+        long previous;
+        while (value > (previous = max.get()) && !max.compareAndSet(previous, value)) {
+            // retry
+        }
+    }
+    
+    public long getCount() {
+        return totalCount.sum();
+    }
+    
+    // Sum of all recorded values
+    public long getSum() {
+        return sum.sum();
+    }
+    
+    public long getMax() {
+        return max.get();
+    }
+    
+    public double getMean() {
+        long count = totalCount.sum();
+        return count == 0 ? 0 : sum.sum() / (double) count;
+    }
+    
+    public double getStdDeviation() {
+        long count = totalCount.sum();
+        if (count == 0) {
+            return 0;
+        }
+        double mean = getMean();
+        double squares = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            long inBucket = counts.get(i);
+            if (inBucket > 0) {
+                double deviation = highestEquivalentValue(i) - mean;
+                squares += deviation * deviation * inBucket;
+            }
+        }
+        return Math.sqrt(squares / count);
+    }
+    
+    // Smallest recorded value (to the histogram's precision) that the given
+    // percentage of recordings do not exceed
+    public long getValueAtPercentile(double percentile) {
+        long count = totalCount.sum();
+        if (count == 0) {
+            return 0;
+        }
+        long target = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+        long seen = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            seen += counts.get(i);
+            if (seen >= target) {
+                return Math.min(highestEquivalentValue(i), max.get());
+            }
+        }
+        return max.get();
+    }
+    
+    // One line summary, values divided by the scale (e.g. 1e6 for ms)
+    public String summary(double scale, String unit) {
+        StringBuilder text = new StringBuilder();
+        text.append(String.format("n=%,d  mean=%.3f", getCount(), getMean() / scale));
+        for (double percentile : SUMMARY_PERCENTILES) {
+            text.append(String.format("  p%s=%.3f", format(percentile), getValueAtPercentile(percentile) / scale));
+        }
+        text.append(String.format("  max=%.3f %s", getMax() / scale, unit));
+        return text.toString();
+    }
+    
+    // The percentile distribution in HdrHistogram's text format, which its
+    // plotting tools read. Ticks halve the remaining tail each step.
+    public void printPercentiles(PrintStream out, double scale) {
+        out.println("       Value     Percentile TotalCount 1/(1-Percentile)");
+        out.println();
+        long count = totalCount.sum();
+        if (count == 0) {
+            return;
+        }
+        
+        long seen = 0;
+        double nextPercentile = 0;
+        int ticksPerHalf = 5;
+        for (int i = 0; i < counts.length() && seen < count; i++) {
+            long inBucket = counts.get(i);
+            if (inBucket == 0) {
+                continue;
+            }
+            seen += inBucket;
+            double reached = 100.0 * seen / count;
+            if (reached < nextPercentile && seen < count) {
+                continue;
+            }
+            double value = Math.min(highestEquivalentValue(i), max.get()) / scale;
+            if (seen < count) {
+                out.printf("%12.3f %2.12f %10d %14.2f%n", value, reached / 100, seen, 100 / (100 - reached));
+            } else {
+                out.printf("%12.3f %2.12f %10d%n", value, 1.0, seen);
+            }
+            // Same number of ticks between 0 and 50%, 50 and 75%, and so on
+            while (nextPercentile <= reached && nextPercentile < 100) {
+                double remaining = 100 - nextPercentile;
+                double half = Math.pow(2, Math.floor(Math.log(100 / remaining) / Math.log(2)) + 1);
+                nextPercentile += 100 / half / ticksPerHalf;
+            }
+        }
+        out.printf("#[Mean    = %12.3f, StdDeviation   = %12.3f]%n", getMean() / scale, getStdDeviation() / scale);
+        out.printf("#[Max     = %12.3f, Total count    = %12d]%n", getMax() / scale, count);
+    }
+    
+    private static String format(double percentile) {
+        return percentile == Math.rint(percentile) ? Long.toString((long) percentile) : Double.toString(percentile);
+    }
+    
+    private static int indexOf(long value) {
+        int shift = Math.max(0, 64 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS);
+        return (shift << (SUB_BUCKET_BITS - 1)) + (int) (value >>> shift);
+    }
+    
+    private static long highestEquivalentValue(int index) {
+        if (index < 2 * SUB_BUCKET_HALF) {
+            return index;
+        }
+        int shift = (index >> (SUB_BUCKET_BITS - 1)) - 1;
+        long subBucket = index - ((long) shift << (SUB_BUCKET_BITS - 1));
+        return ((subBucket + 1) << shift) - 1;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,192 @@
+package quiz;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// The best scores of the sessions since the server started, kept as a
+// bounded skip list so answers from every session update it without a
+// global lock. A score that does not beat the lowest one on a full board is
+// turned away after reading one volatile field; anything else costs a
+// removal and an insertion, O(log K) for a board of K entries.
+//
+// Under a race between two sessions the board can briefly hold one entry
+// too many or have a stale floor; the next update trims it again. Updates
+// for the same owner, such as a local score and one merged from the store,
+// take turns on the owner's entry in the member map, so the board never
+// keeps a stale entry for it.
+//
+// In a cluster every node keeps its own board: scores accepted here are
+// forwarded to the shared store, and the best standings of all nodes are
+// merged back in now and then. A node thus turns away hopeless scores
+// without asking the store.
+class Leaderboard {
+    private final int capacity;
+    private final ConcurrentSkipListSet<Standing> board = new ConcurrentSkipListSet<>();
+    private final Map<Object, Standing> members = new ConcurrentHashMap<>();
+    private final AtomicInteger size = new AtomicInteger();
+    private final AtomicLong sequence = new AtomicLong();
+    private final AtomicInteger players = new AtomicInteger();
+    private volatile Forwarder forwarder;
+    
+    // Lowest score on the board once it is full, -1 before
+    private volatile int floor = -1;
+    
+    // One entry, ordered by score and then by who got there first
+    static class Standing implements Comparable<Standing> {
+        final String name;
+        final int score;
+        final int answered;
+        final Object owner;
+        private final long sequence;
+        
+        Standing(String name, int score, int answered) {
+            this(null, name, score, answered, 0);
+        }
+        
+        Standing(Object owner, String name, int score, int answered) {
+            this(owner, name, score, answered, 0);
+        }
+        
+        private Standing(Object owner, String name, int score, int answered, long sequence) {
+            this.owner = owner;
+            this.name = name;
+            this.score = score;
+            this.answered = answered;
+            this.sequence = sequence;
+        }
+        
+        @Override
+        public int compareTo(Standing other) {
+            if (score != other.score) {
+                return Integer.compare(other.score, score);
+            }
+            return Long.compare(sequence, other.sequence);
+        }
+    }
+    
+    // A session's handle on the board. Updated only from the thread
+    // running that session.
+    class Player {
+        private final Object owner;
+        private final String name;
+        
+        private Player(Object owner, String name) {
+            this.owner = owner;
+            this.name = name;
+        }
+        
+        public String getName() {
+            return name;
+        }
+        
+        // Called when the session's score went up
+        public void update(int score, int answered) {
+            if (submit(owner, name, score, answered) && owner instanceof String) {
+                Forwarder target = forwarder;
+                if (target != null) {
+                    target.forward((String) owner, name, score, answered);
+                }
+            }
+        }
+    }
+    
+    // Receives the scores this board accepts from its own sessions. Only
+    // sessions with a resumption token are forwarded, as the token is what
+    // identifies them across nodes.
+    interface Forwarder {
+        void forward(String token, String name, int score, int answered);
+    }
+    
+    Leaderboard(int capacity) {
+        this.capacity = Math.max(1, capacity);
+    }
+    
+    public int getCapacity() {
+        return capacity;
+    }
+    
+    // A session joins under its resumption token if it has one, so a
+    // resumed session keeps its place; otherwise under a fresh identity
+    public Player join(String address, String token) {
+        if (token != null) {
+            return new Player(token, address + " #" + token.substring(0, Math.min(6, token.length())));
+        }
+        return new Player(new Object(), address + " #" + players.incrementAndGet());
+    }
+    
+    // The best standings, highest first
+    public List<Standing> top(int limit) {
+        List<Standing> top = new ArrayList<>(Math.max(0, Math.min(limit, capacity)));
+        Iterator<Standing> standings = board.iterator();
+        while (top.size() < limit && standings.hasNext()) {
+            top.add(standings.next());
+        }
+        return top;
+    }
+    
+    public int size() {
+        return Math.min(size.get(), capacity);
+    }
+    
+    void forwardTo(Forwarder forwarder) {
+        this.forwarder = forwarder;
+    }
+    
+    // Standings from elsewhere, such as the other nodes of a cluster; they
+    // are not forwarded again
+    public void merge(List<Standing> standings) {
+        for (Standing standing : standings) {
+            submit(standing.owner, standing.name, standing.score, standing.answered);
+        }
+    }
+    
+    // Returns false if the score did not make the board or is already on it
+    boolean submit(Object owner, String name, int score, int answered) {
+        if (score <= floor) {
+            return false;
+        }
+        Standing current = members.get(owner);
+        if (current != null && current.score >= score) {
+            return false;
+        }
+        Standing standing = new Standing(owner, name, score, answered, sequence.incrementAndGet());
+        Standing accepted = members.compute(owner, (key, previous) -> {
+            if (previous != null && previous.score >= score) {
+                return previous;
+            }
+            board.add(standing);
+            // The previous entry may already have been trimmed by another session
+            if (previous == null || !board.remove(previous)) {
+                size.incrementAndGet();
+            }
+            return standing;
+        });
+        if (accepted != standing) {
+            return false;
+        }
+        
+        while (size.get() > capacity) {
+            Standing last = board.pollLast();
+            if (last == null) {
+                break;
+            }
+            size.decrementAndGet();
+            members.remove(last.owner, last);
+        }
+        if (size.get() >= capacity) {
+            try {
+                floor = board.last().score;
+            } catch (NoSuchElementException e) {
+                // Emptied by a concurrent trim, keep the old floor
+            }
+        }
+        return true;
+    }
+}
\ No newline at end of file
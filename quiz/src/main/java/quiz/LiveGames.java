@@ -0,0 +1,65 @@
+package quiz;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+// Hosted live games. A server that hosts them offers HELLO:ROOMS/1. Instead
+// of playing its own quiz the client then sends JOIN:<room> as its first
+// line, like a RESUME request, and skips the question sent before the reply
+// JOIN:OK:<room>:<players>:<rounds>. The game starts a while after the
+// first player joins; everyone in the room then gets the same questions at
+// the same time:
+//
+//   ROUND:<n>:<rounds>:<millis>     round n opens for this many milliseconds,
+//   QUESTION#<n>:<text>, OPTIONS    followed by its question, tagged with n
+//   ANSWER#<n>:<option>             the player's answer, one per round
+//   ROUND:<n>:CLOSED:<correct>:<answers>:<right>
+//                                   the deadline passed; the correct option,
+//                                   how many answered and how many were right,
+//                                   followed by a LEADERBOARD block (LiveStats)
+//   FINISHED:...                    after the last round, as usual
+//
+// The question and close frames are the same for every player, so they are
+// encoded once per round. Players learn whether they were right from the
+// close frame. Players joining during a game play from the next round.
+class LiveGames {
+    static final String HELLO_LINE = "HELLO:ROOMS/1";
+    static final String JOIN_PREFIX = "JOIN:";
+    static final String JOINED_PREFIX = "JOIN:OK:";
+    static final String ROUND_PREFIX = "ROUND:";
+    static final String CLOSED = "CLOSED";
+    static final int MAX_ROOM_NAME = 64;
+    
+    // Names are shown to players and logged, keep them printable and short
+    static boolean isValidName(String room) {
+        if (room.isEmpty() || room.length() > MAX_ROOM_NAME) {
+            return false;
+        }
+        for (int i = 0; i < room.length(); i++) {
+            if (Character.isISOControl(room.charAt(i)) || room.charAt(i) == ':') {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    static ByteBuffer roundFrame(int round, int rounds, long millis, Question question) {
+        FrameBuffer out = new FrameBuffer(question.getFrame().length + 48);
+        out.append(ROUND_PREFIX).append(round).append(':').append(rounds).append(':').append(String.valueOf(millis)).append('\n');
+        TextCodec.INSTANCE.question(out, question, round);
+        return shared(out);
+    }
+    
+    static ByteBuffer closedFrame(int round, int correctOption, long answers, long right, List<Leaderboard.Standing> top) {
+        FrameBuffer out = new FrameBuffer(256);
+        out.append(ROUND_PREFIX).append(round).append(':').append(CLOSED).append(':').append(correctOption).append(':')
+           .append(LiveStats.clamp(answers)).append(':').append(LiveStats.clamp(right)).append('\n');
+        LiveStats.leaderboard(out, top);
+        return shared(out);
+    }
+    
+    // Every recipient writes from its own duplicate of the same bytes
+    private static ByteBuffer shared(FrameBuffer out) {
+        return ByteBuffer.wrap(out.toByteArray()).asReadOnlyBuffer();
+    }
+}
\ No newline at end of file
@@ -0,0 +1,46 @@
+package quiz;
+
+import java.util.List;
+
+// Live statistics. A server that keeps them offers HELLO:STATS/1 before TOTAL.
+// At any point of the session the client may then send
+//
+//   LEADERBOARD or LEADERBOARD:<limit>
+//     answered with LEADERBOARD:<count> and one <score>:<answered>:<name>
+//     line per entry, best first
+//   STATS:<id>, or STATS for the question graded last
+//     answered with STATS:<id>:<attempts>:<correct>, how every session did
+//     on that question, which must be one of its own graded ones
+//
+// Neither request moves the quiz on or repeats the open question. Once
+// upgraded to binary the same requests and replies are the
+// LEADERBOARD_REQUEST, STATS_REQUEST, LEADERBOARD and QUESTION_STATS frames.
+class LiveStats {
+    static final String HELLO_LINE = "HELLO:STATS/1";
+    static final String LEADERBOARD_PREFIX = "LEADERBOARD";
+    static final String STATS_PREFIX = "STATS";
+    
+    static void leaderboard(FrameBuffer out, List<Leaderboard.Standing> standings) {
+        out.append(LEADERBOARD_PREFIX).append(':').append(standings.size()).append('\n');
+        for (Leaderboard.Standing standing : standings) {
+            out.append(standing.score).append(':').append(standing.answered).append(':')
+               .append(standing.name).append('\n');
+        }
+    }
+    
+    static void questionStats(FrameBuffer out, int id, long attempts, long correct) {
+        out.append(STATS_PREFIX).append(':').append(id).append(':')
+           .append(clamp(attempts)).append(':').append(clamp(correct)).append('\n');
+    }
+    
+    // Counts go out as ints on both protocols
+    static int clamp(long count) {
+        return (int) Math.min(Integer.MAX_VALUE, count);
+    }
+    
+    // <score>:<answered>:<name>; names may contain colons
+    static Leaderboard.Standing parseStanding(String line) {
+        String[] parts = line.split(":", 3);
+        return new Leaderboard.Standing(parts[2], Integer.parseInt(parts[0]), Integer.parseInt(parts[1]));
+    }
+}
\ No newline at end of file
@@ -0,0 +1,492 @@
+package quiz;
+
+import java.io.*;
+import java.nio.file.Path;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+// Headless load generator. Plays many quiz sessions at once against a
+// running server through ClientSession, the protocol code the Swing client
+// uses, and reports answer throughput, connection setup time and the time
+// from sending an answer to receiving its result. With --room the players
+// join one live game instead, and it reports how far apart they received
+// each round's question.
+//
+// Usage: java -cp quiz.jar quiz.LoadGenerator [options], see usage()
+public class LoadGenerator {
+    private final String host;
+    private final int port;
+    private final int clients;
+    private final int rounds;
+    private final long rampUpMillis;
+    private final long thinkMillis;
+    private final double accuracy;
+    private final boolean binary;
+    private final int pipelineWindow;
+    private final int dropAfter;
+    private final String room;
+    // Shared by all players, as if each had played what the others did
+    private final KnownQuestions cache;
+    private final boolean compress;
+    private final ExecutorStrategy strategy;
+    private final Map<String, Integer> answerKey;
+    
+    private final LatencyHistogram connectTimes = new LatencyHistogram();
+    private final LatencyHistogram resultTimes = new LatencyHistogram();
+    private final LatencyHistogram roundSpread = new LatencyHistogram();
+    private final Map<Integer, Long> roundFirstSeen = new ConcurrentHashMap<>();
+    private final LongAdder answered = new LongAdder();
+    private final LongAdder correct = new LongAdder();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder resumed = new LongAdder();
+    private final LongAdder resumeFailures = new LongAdder();
+    private final LongAdder compressedConnections = new LongAdder();
+    private final LongAdder serverErrors = new LongAdder();
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicReference<String> firstFailure = new AtomicReference<>();
+    private ExecutorService executor;
+    
+    LoadGenerator(Properties options) throws IOException {
+        host = options.getProperty("host", "localhost");
+        port = Integer.parseInt(options.getProperty("port", "12345"));
+        clients = Math.max(1, Integer.parseInt(options.getProperty("clients", "100")));
+        rounds = Math.max(1, Integer.parseInt(options.getProperty("rounds", "1")));
+        rampUpMillis = Math.max(0, Long.parseLong(options.getProperty("rampUp", "0")));
+        thinkMillis = Math.max(0, Long.parseLong(options.getProperty("think", "0")));
+        accuracy = Double.parseDouble(options.getProperty("accuracy", "0.7"));
+        binary = Boolean.parseBoolean(options.getProperty("binary", "true"));
+        pipelineWindow = Integer.parseInt(options.getProperty("pipeline", "0"));
+        dropAfter = Math.max(0, Integer.parseInt(options.getProperty("drop", "0")));
+        room = options.getProperty("room");
+        cache = Boolean.parseBoolean(options.getProperty("cache", "false"))
+            ? KnownQuestions.open(null, KnownQuestions.DEFAULT_CAPACITY) : null;
+        compress = Boolean.parseBoolean(options.getProperty("compress", "false"));
+        
+        String threads = options.getProperty("threads", "virtual");
+        switch (threads) {
+            case "virtual":
+                strategy = ExecutorStrategy.VIRTUAL_THREADS;
+                break;
+            case "platform":
+                strategy = ExecutorStrategy.CACHED_POOL;
+                break;
+            default:
+                throw new IllegalArgumentException("Invalid threads: " + threads + " (expected virtual or platform)");
+        }
+        
+        // Players only know the right answers if they have the question file
+        String questions = options.getProperty("questions");
+        if (questions != null) {
+            answerKey = new HashMap<>();
+            for (Question question : new QuestionParser().parse(Path.of(questions), problem -> { })) {
+                answerKey.put(question.getQuestion(), question.getCorrectAnswer());
+            }
+        } else {
+            answerKey = null;
+        }
+    }
+    
+    static String usage() {
+        return String.join(System.lineSeparator(),
+            "Usage: java -cp quiz.jar quiz.LoadGenerator [options]",
+            "  --host <host>           Server host (default localhost)",
+            "  --port <port>           Server port (default 12345)",
+            "  --clients <n>           Concurrent players (default 100)",
+            "  --rounds <n>            Quizzes each player plays in a row (default 1)",
+            "  --rampUp <ms>           Spread the players' first connects over this time (default 0)",
+            "  --think <ms>            Mean think time before each answer, +/- 50% (default 0)",
+            "  --accuracy <0..1>       Share of correct answers; needs --questions (default 0.7)",
+            "  --questions <file>      Question file to look the correct answers up in;",
+            "                          without it players answer at random",
+            "  --binary true|false     Switch to the binary protocol when offered (default true)",
+            "  --pipeline <window>     Ask for pipelined delivery with this window (default 0, off)",
+            "  --drop <n>              Drop the connection after every n results but the last and",
+            "                          resume the session on a new one (default 0, never)",
+            "  --room <name>           Join the live game in this room instead of playing alone;",
+            "                          needs a server on the nio engine",
+            "  --cache true|false      Keep the questions received in a cache shared by the players,",
+            "                          so servers send them by position after that (default false)",
+            "  --compress true|false   Ask for compressed questions on the binary protocol (default false)",
+            "  --threads virtual|platform",
+            "                          Threads the players run on (default virtual)",
+            "  --histogram <file>      Also write the answer latency distribution in HdrHistogram format");
+    }
+    
+    void run() throws InterruptedException {
+        executor = strategy.newExecutor();
+        if (!strategy.isSupported()) {
+            System.out.println(strategy + " are not available on this JVM, using platform threads instead");
+        }
+        System.out.printf("%,d players x %d round(s) against %s:%d%n", clients, rounds, host, port);
+        
+        CountDownLatch done = new CountDownLatch(clients);
+        long start = System.nanoTime();
+        for (int i = 0; i < clients; i++) {
+            long due = start + TimeUnit.MILLISECONDS.toNanos(rampUpMillis) * i / clients;
+            executor.execute(() -> {
+                try {
+                    long wait = due - System.nanoTime();
+                    if (wait > 0) {
+                        TimeUnit.NANOSECONDS.sleep(wait);
+                    }
+                    for (int round = 0; round < rounds; round++) {
+                        new Player().play();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        
+        // Progress once a second
+        long lastAnswered = 0;
+        int second = 0;
+        while (!done.await(1, TimeUnit.SECONDS)) {
+            long total = answered.sum();
+            System.out.printf("[%4ds] active %,6d  answers/s %,8d  completed %,6d  busy %,d  failed %,d%n",
+                ++second, active.get(), total - lastAnswered, completed.sum(), rejected.sum(), failed.sum());
+            lastAnswered = total;
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        executor.shutdownNow();
+        
+        System.out.println();
+        System.out.printf("Sessions:     %,d completed, %,d turned away as busy, %,d failed in %.1f s%n",
+            completed.sum(), rejected.sum(), failed.sum(), seconds);
+        if (firstFailure.get() != null) {
+            System.out.println("First failure: " + firstFailure.get());
+        }
+        long answers = answered.sum();
+        if (dropAfter > 0) {
+            System.out.printf("Resumed:      %,d sessions, %,d resumes refused%n", resumed.sum(), resumeFailures.sum());
+        }
+        System.out.printf("Answers:      %,d (%.1f%% correct), %,.0f answers/s%n",
+            answers, answers == 0 ? 0.0 : 100.0 * correct.sum() / answers, answers / seconds);
+        if (serverErrors.sum() > 0) {
+            System.out.printf("Server errors: %,d%n", serverErrors.sum());
+        }
+        if (cache != null) {
+            System.out.printf("Cache:        %,d questions%n", cache.size());
+        }
+        if (compress) {
+            System.out.printf("Compressed:   %,d connections%n", compressedConnections.sum());
+        }
+        System.out.println("Connect (ms): " + connectTimes.summary(1e6, "ms"));
+        if (room != null) {
+            // Time from the first player getting a round's question to each of the others getting it
+            System.out.println("Spread (ms):  " + roundSpread.summary(1e6, "ms"));
+        } else {
+            System.out.println("Result (ms):  " + resultTimes.summary(1e6, "ms"));
+        }
+    }
+    
+    void writeHistogram(String file) throws IOException {
+        try (PrintStream out = new PrintStream(new FileOutputStream(file), false, "UTF-8")) {
+            resultTimes.printPercentiles(out, 1e6);
+        }
+    }
+    
+    // One simulated player for one quiz. Lockstep questions are answered on
+    // the thread reading the session; pipelined ones go to a second thread
+    // so results keep being read, and timed, while the player thinks.
+    private final class Player implements ClientSession.Listener {
+        private volatile ClientSession session;
+        private long connectStart;
+        private volatile long lastSent;
+        private volatile AtomicLongArray sentAt = new AtomicLongArray(0);
+        private volatile AtomicIntegerArray chosen = new AtomicIntegerArray(0);
+        // Pipelined questions with a result; a late answer to a timed out
+        // one gets a second
+        private final BitSet resulted = new BitSet();
+        private BlockingQueue<Object[]> pipelined;
+        private boolean finished;
+        private volatile boolean dropped;
+        private volatile boolean refused;
+        private int resultsOnConnection;
+        private boolean dropDue;
+        private int totalQuestions;
+        
+        void play() {
+            active.incrementAndGet();
+            connectStart = System.nanoTime();
+            try {
+                String token = null;
+                do {
+                    dropped = false;
+                    resultsOnConnection = 0;
+                    dropDue = false;
+                    if (token != null && pipelined != null) {
+                        // The server resends whatever was still open
+                        pipelined.clear();
+                    }
+                    try (ClientSession opened = new ClientSession(host, port, binary, pipelineWindow)) {
+                        session = opened;
+                        opened.resumeFrom(token);
+                        opened.useCache(cache);
+                        opened.useCompression(compress);
+                        if (room != null) {
+                            opened.joinRoom(room);
+                        }
+                        try {
+                            opened.run(this);
+                        } catch (IOException e) {
+                            if (!dropped && !refused) {
+                                throw e;
+                            }
+                        }
+                        token = opened.getToken();
+                        if (opened.isCompressed()) {
+                            compressedConnections.increment();
+                        }
+                    }
+                } while (dropped && !finished && !refused && token != null);
+                
+                if (finished) {
+                    completed.increment();
+                } else if (refused) {
+                    fail("The server refused to resume the session");
+                } else {
+                    fail("Connection closed before the quiz finished");
+                }
+            } catch (ClientSession.BusyException e) {
+                rejected.increment();
+            } catch (IOException | RuntimeException e) {
+                fail(e.toString());
+            } finally {
+                if (pipelined != null) {
+                    pipelined.offer(new Object[0]);
+                }
+                active.decrementAndGet();
+            }
+        }
+        
+        private void fail(String reason) {
+            failed.increment();
+            firstFailure.compareAndSet(null, reason);
+        }
+        
+        @Override
+        public void total(int total) {
+            totalQuestions = total;
+            if (connectStart != 0) {
+                connectTimes.record(System.nanoTime() - connectStart);
+                connectStart = 0;
+            }
+            // The binary upgrade restates the total, keep what was sent so far
+            if (sentAt.length() != total + 1) {
+                sentAt = new AtomicLongArray(total + 1);
+            }
+        }
+        
+        @Override
+        public void question(int id, String text, List<String> options) {
+            if (id == ClientSession.UNTAGGED) {
+                answer(id, text, options.size());
+                return;
+            }
+            if (pipelined == null) {
+                pipelined = new LinkedBlockingQueue<>();
+                executor.execute(this::answerPipelined);
+            }
+            pipelined.offer(new Object[] {id, text, options.size()});
+        }
+        
+        private void answerPipelined() {
+            try {
+                while (true) {
+                    Object[] question = pipelined.take();
+                    if (question.length == 0) {
+                        return;
+                    }
+                    answer((Integer) question[0], (String) question[1], (Integer) question[2]);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        
+        private void answer(int id, String text, int optionCount) {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            try {
+                if (thinkMillis > 0) {
+                    Thread.sleep(thinkMillis / 2 + random.nextLong(thinkMillis + 1));
+                }
+                int option = choose(text, optionCount, random);
+                long now = System.nanoTime();
+                if (id == ClientSession.UNTAGGED) {
+                    lastSent = now;
+                } else if (id < sentAt.length()) {
+                    sentAt.set(id, now);
+                }
+                if (room != null && id < chosen.length()) {
+                    chosen.set(id, option);
+                }
+                session.answer(id, option);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (IOException e) {
+                // The reading side sees the connection go and reports it
+            }
+        }
+        
+        private int choose(String text, int optionCount, ThreadLocalRandom random) {
+            Integer right = answerKey != null ? answerKey.get(text) : null;
+            if (right == null || right < 1 || right > optionCount) {
+                return 1 + random.nextInt(Math.max(1, optionCount));
+            }
+            if (optionCount == 1 || random.nextDouble() < accuracy) {
+                return right;
+            }
+            int wrong = 1 + random.nextInt(optionCount - 1);
+            return wrong >= right ? wrong + 1 : wrong;
+        }
+        
+        @Override
+        public void result(int id, boolean isCorrect, int correctAnswer) {
+            if (id != ClientSession.UNTAGGED) {
+                if (resulted.get(id)) {
+                    return;
+                }
+                resulted.set(id);
+            }
+            long sent = id == ClientSession.UNTAGGED ? lastSent : (id < sentAt.length() ? sentAt.get(id) : 0);
+            if (sent != 0) {
+                resultTimes.record(System.nanoTime() - sent);
+            }
+            answered.increment();
+            if (isCorrect) {
+                correct.increment();
+            }
+            if (dropAfter > 0 && ++resultsOnConnection % dropAfter == 0) {
+                dropDue = true;
+            }
+        }
+        
+        @Override
+        public void resumed(int answeredSoFar, int score) {
+            resumed.increment();
+        }
+        
+        // Stops the player rather than have it start the quiz over
+        @Override
+        public void resumeRefused() {
+            resumeFailures.increment();
+            refused = true;
+            try {
+                session.close();
+            } catch (IOException e) {
+                // Closed anyway
+            }
+        }
+        
+        // Drops once the result's score is in, but never after the last
+        // result: the session is over then, FINISHED is on its way
+        @Override
+        public void score(int score, int answeredSoFar) {
+            if (dropDue && !dropped && answeredSoFar < totalQuestions) {
+                dropped = true;
+                try {
+                    session.close();
+                } catch (IOException e) {
+                    // Closed anyway
+                }
+            }
+            dropDue = false;
+        }
+        
+        @Override
+        public void joined(String joinedRoom, int players, int rounds) {
+            chosen = new AtomicIntegerArray(rounds + 1);
+            sentAt = new AtomicLongArray(rounds + 1);
+        }
+        
+        @Override
+        public void roundStarted(int round, int rounds, long millis) {
+            long now = System.nanoTime();
+            Long first = roundFirstSeen.putIfAbsent(round, now);
+            roundSpread.record(first == null ? 0 : Math.max(0, now - first));
+            if (chosen.length() < rounds + 1) {
+                chosen = new AtomicIntegerArray(rounds + 1);
+                sentAt = new AtomicLongArray(rounds + 1);
+            }
+        }
+        
+        // The close frame tells every player the correct option at once
+        @Override
+        public void roundClosed(int round, int correctOption, int answers, int right) {
+            int option = round < chosen.length() ? chosen.get(round) : 0;
+            if (option != 0) {
+                answered.increment();
+                if (option == correctOption) {
+                    correct.increment();
+                }
+            }
+        }
+        
+        @Override
+        public void finished(String message) {
+            // The server closes the connection next, which ends the session
+            finished = true;
+        }
+        
+        @Override
+        public void error(String message) {
+            serverErrors.increment();
+        }
+    }
+    
+    public static void main(String[] args) {
+        Properties options = new Properties();
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (!arg.startsWith("--")) {
+                System.err.println("Unexpected argument: " + arg);
+                System.err.println(usage());
+                System.exit(2);
+            }
+            String key = arg.substring(2);
+            int equals = key.indexOf('=');
+            if (equals >= 0) {
+                options.setProperty(key.substring(0, equals), key.substring(equals + 1));
+            } else if (i + 1 < args.length) {
+                options.setProperty(key, args[++i]);
+            } else {
+                System.err.println("Missing value for " + arg);
+                System.err.println(usage());
+                System.exit(2);
+            }
+        }
+        
+        try {
+            LoadGenerator generator = new LoadGenerator(options);
+            generator.run();
+            String histogram = options.getProperty("histogram");
+            if (histogram != null) {
+                generator.writeHistogram(histogram);
+                System.out.println("Wrote " + histogram);
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(usage());
+            System.exit(2);
+        } catch (IOException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,974 @@
+package quiz;
+
+import java.io.*;
+import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+// Selector based server engine. A handful of event loop threads serve every
+// connection, each client being driven by an explicit state machine instead
+// of a thread blocked in readLine().
+public class NioQuizServer {
+    private static final int READ_BUFFER_SIZE = 1024;
+    private static final int MAX_LINE_LENGTH = 8192;
+    private static final long SWEEP_INTERVAL_MILLIS = 500;
+    // Live game frames a member may have waiting before further ones are dropped
+    private static final int MAX_BROADCAST_BACKLOG = 16;
+    // Question deadlines fire at most a tick late; a turn of the wheel is about 10 s
+    private static final long TIMER_TICK_MILLIS = 10;
+    private static final int TIMER_WHEEL_TICKS = 1024;
+    
+    private final int port;
+    private final Supplier<QuestionBank> banks;
+    private final QuestionSampler sampler;
+    private final EventLog log;
+    private final EventLoop[] loops;
+    private final AtomicInteger activeSessions = new AtomicInteger();
+    private final ServerMetrics metrics;
+    private final SessionLimits limits;
+    private final SessionStore store;
+    private final Leaderboard leaderboard;
+    private final GameRooms rooms;
+    private final boolean questionSync;
+    
+    private ServerSocketChannel serverChannel;
+    private volatile boolean isRunning = false;
+    private int nextLoop = 0;
+    
+    // Each new session takes the bank that is current when it connects.
+    // The session store may be null, then sessions cannot be resumed, and rooms
+    // may be null if the server hosts no live games. With questionSync,
+    // clients are offered to skip the questions they have; see QuestionSync.
+    public NioQuizServer(int port, Supplier<QuestionBank> banks, QuestionSampler sampler, EventLog log,
+                         int loopCount, SessionLimits limits, SessionStore store, Leaderboard leaderboard,
+                         GameRooms rooms, boolean questionSync, ServerMetrics metrics) {
+        this.port = port;
+        this.rooms = rooms;
+        this.questionSync = questionSync;
+        this.leaderboard = leaderboard;
+        this.limits = limits;
+        this.store = store;
+        this.metrics = metrics;
+        this.banks = banks;
+        this.sampler = sampler;
+        this.log = log;
+        this.loops = new EventLoop[Math.max(1, loopCount)];
+    }
+    
+    public static int defaultLoopCount() {
+        return Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+    }
+    
+    public void start() throws IOException {
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+        serverChannel.bind(new InetSocketAddress(port), limits.getAcceptBacklog());
+        serverChannel.configureBlocking(false);
+        isRunning = true;
+        
+        try {
+            for (int i = 0; i < loops.length; i++) {
+                loops[i] = new EventLoop(i);
+            }
+            // The first loop also owns the listening socket
+            loops[0].registerAcceptor(serverChannel);
+        } catch (IOException e) {
+            stop();
+            throw e;
+        }
+        
+        for (EventLoop loop : loops) {
+            loop.thread.start();
+        }
+    }
+    
+    public void stop() {
+        isRunning = false;
+        
+        for (EventLoop loop : loops) {
+            if (loop != null) {
+                loop.selector.wakeup();
+            }
+        }
+        
+        if (serverChannel != null && serverChannel.isOpen()) {
+            try {
+                serverChannel.close();
+            } catch (IOException e) {
+                log.message("Error closing server socket: " + e.getMessage());
+            }
+        }
+    }
+    
+    public boolean isRunning() {
+        return isRunning;
+    }
+    
+    public int getLocalPort() {
+        return serverChannel != null ? serverChannel.socket().getLocalPort() : -1;
+    }
+    
+    // Accepted connections waiting for their event loop to register them
+    public int getPendingConnections() {
+        int pending = 0;
+        for (EventLoop loop : loops) {
+            if (loop != null) {
+                pending += loop.pending.size();
+            }
+        }
+        return pending;
+    }
+    
+    public int getLoopCount() {
+        return loops.length;
+    }
+    
+    public int getActiveSessions() {
+        return activeSessions.get();
+    }
+    
+    private void dispatch(SocketChannel channel) {
+        EventLoop loop = loops[nextLoop];
+        nextLoop = (nextLoop + 1) % loops.length;
+        loop.pending.add(channel);
+        if (loop != loops[0]) {
+            loop.selector.wakeup();
+        }
+    }
+    
+    private static final byte[] INVALID_ANSWER = FrameBuffer.ascii("ERROR:Invalid answer format\n");
+    
+    // Each event loop owns a selector and all sessions registered with it.
+    // Other threads reach its sessions by handing it tasks.
+    private class EventLoop implements Runnable, Executor {
+        private final Selector selector;
+        private final Thread thread;
+        private final Queue<SocketChannel> pending = new ConcurrentLinkedQueue<>();
+        private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+        private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+        // Deadlines of the timed questions its sessions are waiting on
+        private final TimerWheel timers = new TimerWheel(TIMER_TICK_MILLIS, TIMER_WHEEL_TICKS, System.nanoTime());
+        
+        // Sessions served in this pass whose replies wait for their answers
+        // to be journaled, and the journal position that covers all of them
+        private List<Session> awaitingJournal = new ArrayList<>();
+        private long journaled = 0;
+        
+        EventLoop(int index) throws IOException {
+            selector = Selector.open();
+            thread = new Thread(this, "quiz-nio-" + index);
+            thread.setDaemon(true);
+        }
+        
+        void registerAcceptor(ServerSocketChannel channel) throws ClosedChannelException {
+            channel.register(selector, SelectionKey.OP_ACCEPT);
+        }
+        
+        @Override
+        public void execute(Runnable task) {
+            tasks.add(task);
+            selector.wakeup();
+        }
+        
+        @Override
+        public void run() {
+            long nextSweep = System.nanoTime();
+            try {
+                while (isRunning) {
+                    selector.select(timers.millisToNextTick(System.nanoTime(), SWEEP_INTERVAL_MILLIS));
+                    registerPending();
+                    runTasks();
+                    timers.advance(System.nanoTime());
+                    
+                    Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                    while (keys.hasNext()) {
+                        SelectionKey key = keys.next();
+                        keys.remove();
+                        
+                        if (!key.isValid()) {
+                            continue;
+                        }
+                        
+                        try {
+                            if (key.isAcceptable()) {
+                                accept();
+                            } else {
+                                Session session = (Session) key.attachment();
+                                if (key.isReadable()) {
+                                    session.onReadable(readBuffer);
+                                }
+                                if (key.isValid() && key.isWritable()) {
+                                    session.flush();
+                                }
+                            }
+                        } catch (IOException e) {
+                            Object attachment = key.attachment();
+                            if (attachment instanceof Session) {
+                                ((Session) attachment).close("Error handling client " +
+                                    ((Session) attachment).clientAddress + ": " + e.getMessage());
+                            }
+                        }
+                    }
+                    flushJournaled();
+                    
+                    long now = System.nanoTime();
+                    if (now - nextSweep >= 0) {
+                        sweep(now);
+                        nextSweep = now + SWEEP_INTERVAL_MILLIS * 1_000_000L;
+                    }
+                }
+            } catch (IOException e) {
+                log.message("Event loop failure: " + e.getMessage());
+            } finally {
+                closeAll();
+            }
+        }
+        
+        private void accept() throws IOException {
+            SocketChannel channel;
+            while ((channel = serverChannel.accept()) != null) {
+                metrics.recordConnection();
+                if (!limits.tryAdmit()) {
+                    reject(channel);
+                    continue;
+                }
+                channel.configureBlocking(false);
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                dispatch(channel);
+            }
+            registerPending();
+        }
+        
+        // Holds back a session's replies until its answers are journaled
+        void flushAfterJournal(Session session, long position) {
+            if (session.heldUntil == 0) {
+                awaitingJournal.add(session);
+            }
+            session.heldUntil = Math.max(session.heldUntil, position);
+            journaled = Math.max(journaled, position);
+        }
+        
+        // One request per pass over the ready keys covers the answers of
+        // every session served in it. The loop does not wait for the commit
+        // or the store's reply; it flushes the sessions when told they are
+        // durable, and serves everything else meanwhile.
+        private void flushJournaled() {
+            if (awaitingJournal.isEmpty()) {
+                return;
+            }
+            List<Session> held = awaitingJournal;
+            long position = journaled;
+            awaitingJournal = new ArrayList<>();
+            journaled = 0;
+            store.whenDurable(position, () -> {
+                if (Thread.currentThread() == thread) {
+                    release(held, position);
+                } else {
+                    execute(() -> release(held, position));
+                }
+            });
+        }
+        
+        // A session that answered again since stays held for its later answers
+        private void release(List<Session> held, long position) {
+            for (Session session : held) {
+                if (session.heldUntil > position) {
+                    awaitingJournal.add(session);
+                    journaled = Math.max(journaled, session.heldUntil);
+                    continue;
+                }
+                session.heldUntil = 0;
+                try {
+                    session.flush();
+                } catch (IOException e) {
+                    session.close("Error handling client " + session.clientAddress + ": " + e.getMessage());
+                }
+            }
+        }
+        
+        // Still in blocking mode, but the busy line fits in an empty socket buffer
+        private void reject(SocketChannel channel) {
+            metrics.recordRejection();
+            try (SocketChannel rejected = channel) {
+                rejected.write(ByteBuffer.wrap(limits.getBusyFrame()));
+            } catch (IOException e) {
+                // The client is gone already
+            }
+        }
+        
+        private void runTasks() {
+            Runnable task;
+            while ((task = tasks.poll()) != null) {
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    log.message("Event loop task failed: " + e);
+                }
+            }
+        }
+        
+        // Closes sessions whose current deadline has passed
+        private void sweep(long now) {
+            for (SelectionKey key : selector.keys()) {
+                if (key.attachment() instanceof Session) {
+                    ((Session) key.attachment()).checkDeadlines(now);
+                }
+            }
+        }
+        
+        private void registerPending() {
+            SocketChannel channel;
+            while ((channel = pending.poll()) != null) {
+                Session session = null;
+                try {
+                    SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+                    session = new Session(this, channel, key);
+                    key.attach(session);
+                    log.event(EventLog.Event.CONNECTED, session.clientAddress, 0, 0);
+                    session.begin();
+                } catch (IOException e) {
+                    log.message("Error accepting client connection: " + e.getMessage());
+                    if (session != null) {
+                        // Gives back its claim and its count along with the connection
+                        session.close(null);
+                        continue;
+                    }
+                    limits.release();
+                    try {
+                        channel.close();
+                    } catch (IOException ignored) {
+                        // Nothing left to release
+                    }
+                }
+            }
+        }
+        
+        private void closeAll() {
+            for (SelectionKey key : selector.keys()) {
+                if (key.attachment() instanceof Session) {
+                    ((Session) key.attachment()).close(null);
+                }
+            }
+            try {
+                selector.close();
+            } catch (IOException e) {
+                log.message("Error closing selector: " + e.getMessage());
+            }
+        }
+    }
+    
+    // Protocol states of a single client connection
+    private enum State {
+        AWAITING_ANSWER,
+        FINISHING,
+        CLOSED
+    }
+    
+    private class Session implements GameRoom.Member {
+        private final EventLoop loop;
+        private final SocketChannel channel;
+        private final SelectionKey key;
+        private final String clientAddress;
+        private final QuestionBank bank = banks.get();
+        private QuestionBank questions = sampler.draw(bank);
+        private SessionStore.Claim claim;
+        private Leaderboard.Player player;
+        private long journaled = 0;
+        // Store position the pending replies wait for, 0 when nothing is held
+        private long heldUntil = 0;
+        private final Deque<ByteBuffer> outbound = new ArrayDeque<>();
+        private final FrameBuffer pending = new FrameBuffer(128);
+        private final ByteArrayOutputStream lineBuffer = new ByteArrayOutputStream();
+        // Lines that came while the store looked up a session to resume;
+        // the session stops reading until it has the answer if that takes
+        // a round trip
+        private boolean resuming = false;
+        private boolean paused = false;
+        private final Deque<String> deferred = new ArrayDeque<>();
+        
+        private State state = State.AWAITING_ANSWER;
+        private int currentQuestion = 0;
+        private int score = 0;
+        private int answered = 0;
+        private int lastGraded = -1;
+        
+        // Deadline of the current question if it is timed, on the loop's wheel
+        private TimerWheel.Timeout questionTimer;
+        private int timedQuestion = -1;
+        private long questionDeadline;
+        // Timed out questions whose late answer has not arrived yet; the
+        // timeout already replied to it, so it is dropped. Only counted
+        // for clients that said they send one.
+        private int lateAnswers = 0;
+        private boolean answersLate = false;
+        
+        // Set once the client joined a live game instead of playing alone
+        private GameRoom room;
+        private Leaderboard.Player roomPlayer;
+        private int roomScore = 0;
+        private int lastRoomAnswer = 0;
+        
+        // Lockstep answers come in order, but a resumed session may have
+        // been answered out of order on a pipelined connection before
+        private BitSet graded = new BitSet();
+        
+        // Questions the client said it has, sent by position; see QuestionSync
+        private boolean syncing = false;
+        private BitSet known = new BitSet();
+        
+        // In System.nanoTime() terms, 0 when there is none
+        private boolean greeted = false;
+        private long readDeadline = SessionLimits.deadline(System.nanoTime(), limits.getHandshakeMillis());
+        private long writeDeadline = 0;
+        
+        Session(EventLoop loop, SocketChannel channel, SelectionKey key) throws IOException {
+            this.loop = loop;
+            this.channel = channel;
+            this.key = key;
+            this.clientAddress = ((InetSocketAddress) channel.getRemoteAddress()).getAddress().getHostAddress();
+            activeSessions.incrementAndGet();
+        }
+        
+        void begin() throws IOException {
+            pending.append(LiveStats.HELLO_LINE).append('\n');
+            pending.append(TimedQuestions.HELLO_LINE).append('\n');
+            if (rooms != null) {
+                pending.append(LiveGames.HELLO_LINE).append('\n');
+            }
+            syncing = questionSync && QuestionSync.offered(questions);
+            if (syncing) {
+                pending.append(QuestionSync.HELLO_LINE).append('\n');
+            }
+            claim = store != null ? store.start(bank.getContentHash(), QuestionSampler.indicesOf(questions)) : null;
+            if (claim != null) {
+                pending.append(Resumption.TOKEN_PREFIX).append(claim.getToken()).append('\n');
+            }
+            player = leaderboard.join(clientAddress, claim != null ? claim.getToken() : null);
+            pending.append(FrameBuffer.TOTAL).append(questions.size()).append('\n');
+            if (syncing) {
+                QuestionSync.hashes(pending, questions);
+            }
+            if (questions.isEmpty()) {
+                finish();
+            } else {
+                queueQuestion();
+            }
+            flush();
+        }
+        
+        void onReadable(ByteBuffer buffer) throws IOException {
+            buffer.clear();
+            int read = channel.read(buffer);
+            if (read < 0) {
+                // Client disconnected, report the partial score like the blocking handler does
+                if (state == State.AWAITING_ANSWER) {
+                    logFinished();
+                }
+                close(null);
+                return;
+            }
+            
+            buffer.flip();
+            while (buffer.hasRemaining() && state == State.AWAITING_ANSWER) {
+                byte b = buffer.get();
+                if (b == '\n') {
+                    String line = lineBuffer.toString(StandardCharsets.UTF_8);
+                    lineBuffer.reset();
+                    if (line.endsWith("\r")) {
+                        line = line.substring(0, line.length() - 1);
+                    }
+                    onLine(line);
+                } else if (lineBuffer.size() < MAX_LINE_LENGTH) {
+                    lineBuffer.write(b);
+                } else {
+                    close("Client " + clientAddress + " sent an oversized line");
+                    return;
+                }
+            }
+            if (journaled > 0 && state != State.CLOSED) {
+                loop.flushAfterJournal(this, journaled);
+                journaled = 0;
+            } else {
+                flush();
+            }
+        }
+        
+        private void onLine(String response) {
+            if (resuming) {
+                deferred.add(response);
+                return;
+            }
+            greeted = true;
+            readDeadline = SessionLimits.deadline(System.nanoTime(), limits.getAnswerMillis());
+            
+            if (response.startsWith(Resumption.REQUEST_PREFIX)) {
+                resume(response.substring(Resumption.REQUEST_PREFIX.length()).trim());
+                return;
+            }
+            if (room != null) {
+                // Rounds set the pace in a live game, not the answer timeout
+                readDeadline = 0;
+                onRoomLine(response);
+                return;
+            }
+            if (response.startsWith(LiveGames.JOIN_PREFIX)) {
+                join(response.substring(LiveGames.JOIN_PREFIX.length()).trim());
+                return;
+            }
+            if (response.startsWith(LiveStats.LEADERBOARD_PREFIX) || response.startsWith(LiveStats.STATS_PREFIX)) {
+                // Answered in place, the open question is not repeated
+                liveStats(response);
+                return;
+            }
+            if (response.startsWith(QuestionSync.HAVE_PREFIX)) {
+                // Applies to the questions sent out from now on
+                try {
+                    BitSet have = QuestionSync.parseHave(response.substring(QuestionSync.HAVE_PREFIX.length()).trim());
+                    if (syncing) {
+                        known = have.get(0, questions.size());
+                    }
+                    return;
+                } catch (NumberFormatException e) {
+                    pending.append(INVALID_ANSWER);
+                }
+            }
+            
+            if (response.equals(TimedQuestions.LATE_ANSWERS_LINE)) {
+                answersLate = true;
+                return;
+            }
+            if (response.startsWith("ANSWER:") && lateAnswers > 0) {
+                lateAnswers--;
+                return;
+            }
+            if (response.startsWith("ANSWER:")) {
+                long received = System.nanoTime();
+                try {
+                    grade(Integer.parseInt(response.substring(7)), received);
+                    return;
+                } catch (NumberFormatException e) {
+                    pending.append(INVALID_ANSWER);
+                }
+            }
+            
+            // Anything but a valid answer repeats the current question
+            queueQuestion();
+        }
+        
+        // Grades the current question and moves on. An answer after the
+        // question's deadline counts as a timeout, whatever it was.
+        private void grade(int answer, long received) {
+            Question q = questions.get(currentQuestion);
+            boolean timedOut = timedQuestion == currentQuestion && received - questionDeadline >= 0;
+            boolean isCorrect = !timedOut && (answer == q.getCorrectAnswer());
+            int questionNumber = currentQuestion + 1;
+            cancelQuestionTimer();
+            
+            if (isCorrect) {
+                score++;
+                pending.append(FrameBuffer.RESULT_CORRECT);
+                log.event(EventLog.Event.CORRECT, clientAddress, questionNumber, 0);
+            } else if (timedOut) {
+                TextCodec.INSTANCE.timedOut(pending, q, WireCodec.UNTAGGED);
+                metrics.recordExpired();
+                log.event(EventLog.Event.EXPIRED, clientAddress, questionNumber, 0);
+            } else {
+                pending.append(q.getIncorrectResult());
+                log.event(EventLog.Event.INCORRECT, clientAddress, questionNumber, 0);
+            }
+            
+            graded.set(currentQuestion);
+            answered++;
+            lastGraded = currentQuestion;
+            bank.getStats().record(QuestionSampler.bankIndex(questions, currentQuestion), isCorrect);
+            if (isCorrect) {
+                player.update(score, answered);
+            }
+            pending.appendScore(score, answered);
+            metrics.recordAnswer(isCorrect, System.nanoTime() - received);
+            if (claim != null) {
+                journaled = store.record(claim, currentQuestion, isCorrect);
+                if (journaled < 0) {
+                    close("Client " + clientAddress + " resumed its session on another connection");
+                    return;
+                }
+            }
+            
+            if (answered < questions.size()) {
+                currentQuestion = graded.nextClearBit(currentQuestion);
+                queueQuestion();
+            } else {
+                finish();
+            }
+        }
+        
+        // Fired by the wheel when the current question's deadline passed
+        // without an answer; the reply goes out like one to an answer
+        private void expire() {
+            questionTimer = null;
+            if (state != State.AWAITING_ANSWER || room != null || timedQuestion != currentQuestion) {
+                return;
+            }
+            if (answersLate) {
+                lateAnswers++;
+            }
+            grade(0, System.nanoTime());
+            if (journaled > 0 && state != State.CLOSED) {
+                loop.flushAfterJournal(this, journaled);
+                journaled = 0;
+            } else {
+                flushOrClose();
+            }
+        }
+        
+        private void cancelQuestionTimer() {
+            if (questionTimer != null) {
+                questionTimer.cancel();
+                questionTimer = null;
+            }
+            timedQuestion = -1;
+        }
+        
+        // Only before the session has graded anything itself. A remote
+        // store takes a round trip, so the loop asks and goes on; the
+        // session holds its lines meanwhile, and the open question is sent
+        // again, with a new deadline if it is timed, when the answer comes.
+        private void resume(String token) {
+            if (store == null || answered > 0) {
+                resumed(null);
+                return;
+            }
+            resuming = true;
+            store.whenResumed(token, bank.getContentHash(), claim -> {
+                if (Thread.currentThread() == loop.thread) {
+                    afterResume(claim);
+                } else {
+                    loop.execute(() -> afterResume(claim));
+                }
+            });
+            if (resuming) {
+                paused = true;
+                readDeadline = 0;
+                cancelQuestionTimer();
+                key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+            }
+        }
+        
+        // Takes over the session unless the connection is gone meanwhile.
+        // After a round trip the session reads again, starting with the
+        // lines it held back.
+        private void afterResume(SessionStore.Claim claim) {
+            resuming = false;
+            if (state == State.CLOSED) {
+                if (claim != null) {
+                    store.release(claim);
+                }
+                return;
+            }
+            resumed(claim);
+            if (!paused) {
+                return;
+            }
+            paused = false;
+            key.interestOps(key.interestOps() | SelectionKey.OP_READ);
+            readDeadline = SessionLimits.deadline(System.nanoTime(), limits.getAnswerMillis());
+            while (!deferred.isEmpty() && !resuming && state == State.AWAITING_ANSWER) {
+                onLine(deferred.poll());
+            }
+            if (resuming) {
+                return;
+            }
+            deferred.clear();
+            if (journaled > 0 && state != State.CLOSED) {
+                loop.flushAfterJournal(this, journaled);
+                journaled = 0;
+            } else {
+                flushOrClose();
+            }
+        }
+        
+        private void resumed(SessionStore.Claim resumed) {
+            metrics.recordResume(resumed != null);
+            if (resumed == null) {
+                pending.append(Resumption.UNKNOWN).append('\n');
+                queueQuestion();
+                return;
+            }
+            
+            if (claim != null) {
+                store.release(claim);
+            }
+            cancelQuestionTimer();
+            claim = resumed;
+            questions = QuestionSampler.deal(bank, resumed.indices);
+            graded = resumed.graded;
+            answered = resumed.answered;
+            score = resumed.score;
+            currentQuestion = graded.nextClearBit(0);
+            player = leaderboard.join(clientAddress, resumed.getToken());
+            pending.append(Resumption.RESUMED_PREFIX).append(answered).append(':').append(score).append('\n');
+            pending.append(FrameBuffer.TOTAL).append(questions.size()).append('\n');
+            // Questions of another session, the client says which it has again
+            known = new BitSet();
+            if (syncing && QuestionSync.offered(questions)) {
+                QuestionSync.hashes(pending, questions);
+            }
+            log.event(EventLog.Event.RESUMED, clientAddress, answered, questions.size());
+            if (answered < questions.size()) {
+                queueQuestion();
+            } else {
+                finish();
+            }
+        }
+        
+        // Leaves the session's own quiz for a live game. Only before the
+        // session has answered anything, like a resume.
+        private void join(String name) {
+            if (rooms == null || answered > 0 || !LiveGames.isValidName(name)) {
+                pending.append("ERROR:Cannot join room ").append(name).append('\n');
+                queueQuestion();
+                return;
+            }
+            if (claim != null) {
+                // Live games are not journaled
+                store.release(claim);
+                claim = null;
+            }
+            cancelQuestionTimer();
+            room = rooms.join(name, this);
+            roomPlayer = room.getLeaderboard().join(clientAddress, null);
+            readDeadline = 0;
+            pending.append(LiveGames.JOINED_PREFIX).append(room.getName()).append(':')
+                   .append(room.size()).append(':').append(room.getRounds()).append('\n');
+        }
+        
+        // In a room only answers to the open round and leaderboard requests count
+        private void onRoomLine(String line) {
+            if (line.startsWith(Pipelining.TAGGED_ANSWER_PREFIX)) {
+                long received = System.nanoTime();
+                int colon = line.indexOf(':');
+                int number;
+                int option;
+                try {
+                    number = Integer.parseInt(line.substring(Pipelining.TAGGED_ANSWER_PREFIX.length(), colon));
+                    option = Integer.parseInt(line.substring(colon + 1));
+                } catch (NumberFormatException | StringIndexOutOfBoundsException e) {
+                    pending.append(INVALID_ANSWER);
+                    return;
+                }
+                int graded = number > lastRoomAnswer ? room.answer(number, option) : -1;
+                if (graded < 0) {
+                    pending.append("ERROR:Round ").append(number).append(" is not open\n");
+                    return;
+                }
+                lastRoomAnswer = number;
+                boolean isCorrect = graded > 0;
+                if (isCorrect) {
+                    roomScore++;
+                    roomPlayer.update(roomScore, number);
+                }
+                log.event(isCorrect ? EventLog.Event.CORRECT : EventLog.Event.INCORRECT, clientAddress, number, 0);
+                metrics.recordAnswer(isCorrect, System.nanoTime() - received);
+            } else if (line.startsWith(LiveStats.LEADERBOARD_PREFIX)) {
+                WireCodec.Message message = new WireCodec.Message();
+                TextCodec.INSTANCE.parse(line, message);
+                int limit = message.value > 0 ? message.value : room.getLeaderboard().getCapacity();
+                LiveStats.leaderboard(pending, room.getLeaderboard().top(limit));
+            } else {
+                pending.append("ERROR:Not available in a live game\n");
+            }
+        }
+        
+        @Override
+        public Executor executor() {
+            return loop;
+        }
+        
+        // A live game frame, on this session's loop
+        @Override
+        public void send(ByteBuffer frame) {
+            if (state != State.AWAITING_ANSWER) {
+                return;
+            }
+            if (outbound.size() >= MAX_BROADCAST_BACKLOG) {
+                // Too far behind; the write deadline drops it if it stopped reading
+                metrics.recordBroadcastDropped();
+                return;
+            }
+            queuePending();
+            outbound.add(frame);
+            flushOrClose();
+        }
+        
+        @Override
+        public void gameOver(int rounds) {
+            if (state != State.AWAITING_ANSWER) {
+                return;
+            }
+            pending.append("FINISHED:Your final score is " + roomScore + " out of " + rounds + "\n");
+            logFinished();
+            state = State.FINISHING;
+            flushOrClose();
+        }
+        
+        private void flushOrClose() {
+            try {
+                flush();
+            } catch (IOException e) {
+                close("Error handling client " + clientAddress + ": " + e.getMessage());
+            }
+        }
+        
+        private void liveStats(String request) {
+            WireCodec.Message message = new WireCodec.Message();
+            TextCodec.INSTANCE.parse(request, message);
+            if (message.type == WireCodec.Message.Type.INVALID) {
+                pending.append(INVALID_ANSWER);
+                queueQuestion();
+                return;
+            }
+            if (message.type == WireCodec.Message.Type.LEADERBOARD) {
+                int limit = message.value > 0 ? message.value : leaderboard.getCapacity();
+                LiveStats.leaderboard(pending, leaderboard.top(limit));
+                return;
+            }
+            int asked = message.id > 0 ? message.id - 1 : lastGraded;
+            if (asked < 0 || asked >= questions.size() || !graded.get(asked)) {
+                pending.append(asked < 0 ? "ERROR:No question answered yet\n" : "ERROR:Question " + (asked + 1) + " is not answered yet\n");
+            } else {
+                int bankIndex = QuestionSampler.bankIndex(questions, asked);
+                QuestionStats stats = bank.getStats();
+                LiveStats.questionStats(pending, asked + 1, stats.getAttempts(bankIndex), stats.getCorrect(bankIndex));
+            }
+        }
+        
+        // The question frame is shared by all sessions; it goes out in the
+        // same gathering write as the lines queued before it. A timed
+        // question's deadline is set the first time it is sent.
+        private void queueQuestion() {
+            Question question = questions.get(currentQuestion);
+            if (question.getTimeLimit() > 0) {
+                long now = System.nanoTime();
+                if (timedQuestion != currentQuestion) {
+                    cancelQuestionTimer();
+                    timedQuestion = currentQuestion;
+                    questionDeadline = SessionLimits.deadline(now, question.getTimeLimit() * 1000L);
+                    questionTimer = loop.timers.schedule(this::expire, questionDeadline);
+                }
+                TimedQuestions.deadline(pending, TimedQuestions.remainingMillis(questionDeadline, now));
+            }
+            boolean cached = known.get(currentQuestion);
+            if (cached) {
+                QuestionSync.cachedQuestion(pending, currentQuestion + 1);
+            } else {
+                queuePending();
+                outbound.add(ByteBuffer.wrap(question.getFrame()));
+            }
+            metrics.recordQuestionSent(cached);
+        }
+        
+        private void finish() {
+            if (claim != null) {
+                store.finish(claim);
+            }
+            pending.append("FINISHED:Your final score is " + score + " out of " + questions.size() + "\n");
+            logFinished();
+            state = State.FINISHING;
+        }
+        
+        private void logFinished() {
+            if (room != null) {
+                log.event(EventLog.Event.FINISHED, clientAddress, roomScore, room.getRounds());
+            } else {
+                log.event(EventLog.Event.FINISHED, clientAddress, score, questions.size());
+            }
+        }
+        
+        private void queuePending() {
+            if (pending.length() > 0) {
+                outbound.add(pending.drainToByteBuffer());
+            }
+        }
+        
+        void flush() throws IOException {
+            if (state == State.CLOSED) {
+                return;
+            }
+            if (heldUntil != 0) {
+                // Nothing goes out until the store has the answers; the
+                // loop flushes again then, and the client is not to blame
+                writeDeadline = 0;
+                key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+                return;
+            }
+            
+            queuePending();
+            while (!outbound.isEmpty()) {
+                ByteBuffer[] buffers = outbound.toArray(new ByteBuffer[0]);
+                long writeStart = System.nanoTime();
+                channel.write(buffers);
+                metrics.recordWrite(System.nanoTime() - writeStart);
+                while (!outbound.isEmpty() && !outbound.peek().hasRemaining()) {
+                    outbound.poll();
+                }
+                if (!outbound.isEmpty()) {
+                    // Socket buffer is full, wait until the client drains it
+                    if (writeDeadline == 0) {
+                        writeDeadline = SessionLimits.deadline(System.nanoTime(), limits.getWriteMillis());
+                    }
+                    key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+                    return;
+                }
+            }
+            
+            writeDeadline = 0;
+            key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+            if (state == State.FINISHING) {
+                close(null);
+            }
+        }
+        
+        void checkDeadlines(long now) {
+            if (writeDeadline != 0 && now - writeDeadline >= 0) {
+                metrics.recordTimeout(ServerMetrics.Phase.WRITE);
+                close("Client " + clientAddress + " stopped reading, dropped after the write timeout");
+            } else if (state == State.AWAITING_ANSWER && readDeadline != 0 && now - readDeadline >= 0) {
+                logFinished();
+                metrics.recordTimeout(greeted ? ServerMetrics.Phase.ANSWER : ServerMetrics.Phase.HANDSHAKE);
+                close("Client " + clientAddress + " timed out waiting for " + (greeted ? "an answer" : "its first message"));
+            }
+        }
+        
+        void close(String reason) {
+            if (state == State.CLOSED) {
+                return;
+            }
+            state = State.CLOSED;
+            activeSessions.decrementAndGet();
+            cancelQuestionTimer();
+            if (claim != null) {
+                store.release(claim);
+            }
+            if (room != null) {
+                room.leave(this);
+            }
+            limits.release();
+            if (reason != null) {
+                log.message(reason);
+            }
+            key.cancel();
+            try {
+                channel.close();
+            } catch (IOException e) {
+                log.message("Error closing client connection: " + e.getMessage());
+            }
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,17 @@
+package quiz;
+
+// Pipelined delivery: instead of one question per round trip the server keeps
+// a window of questions in flight. Questions, answers and results then carry
+// the question id (QUESTION#<id>:, ANSWER#<id>:, RESULT#<id>:) so answers can
+// be graded as they arrive while the client already shows the next question.
+//
+// The server offers it with HELLO:PIPELINE/1, the client asks for a window with
+// PIPELINE:<size> and the server confirms the granted size with PIPELINE:OK:<size>.
+class Pipelining {
+    static final String HELLO_LINE = "HELLO:PIPELINE/1";
+    static final String REQUEST_PREFIX = "PIPELINE:";
+    static final String ACCEPTED_PREFIX = "PIPELINE:OK:";
+    static final String TAGGED_QUESTION_PREFIX = "QUESTION#";
+    static final String TAGGED_RESULT_PREFIX = "RESULT#";
+    static final String TAGGED_ANSWER_PREFIX = "ANSWER#";
+}
\ No newline at end of file
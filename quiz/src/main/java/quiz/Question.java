@@ -0,0 +1,34 @@
+package quiz;
+
+import java.util.List;
+
+// A quiz question as sessions see it. HeapQuestion keeps it as Java objects;
+// ColumnarQuestionBank hands out views over its packed storage instead.
+interface Question {
+    String getQuestion();
+    
+    List<String> getOptions();
+    
+    int getCorrectAnswer();
+    
+    // Category from the question file's C: line, or null
+    String getCategory();
+    
+    // Seconds to answer from the question file's T: line, 0 for no limit
+    int getTimeLimit();
+    
+    // The complete QUESTION + OPTIONS frame in UTF-8. Callers must not modify it.
+    byte[] getFrame();
+    
+    // The same question as a binary protocol QUESTION frame
+    byte[] getBinaryFrame();
+    
+    // Names the question's text and options for clients that keep the ones
+    // they have seen; see QuestionSync
+    long getContentHash();
+    
+    // The RESULT line sent for a wrong answer, which names the correct option
+    byte[] getIncorrectResult();
+    
+    boolean isValid();
+}
\ No newline at end of file
@@ -0,0 +1,125 @@
+package quiz;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+// One published version of the question set. A bank never changes once it
+// is built; reloading builds a new one and swaps it in, so each session keeps
+// the version it started on for its whole run. The answer statistics are the
+// one mutable part, and they too belong to a single version.
+//
+// HeapQuestionBank keeps questions as Java objects. ColumnarQuestionBank
+// packs them into a few arrays and an off-heap text buffer for large banks.
+abstract class QuestionBank {
+    static final QuestionBank EMPTY = new HeapQuestionBank(0, Collections.emptyList());
+    
+    private final int version;
+    private final long loadedAt;
+    private final Map<String, int[]> categoryIndex = new ConcurrentHashMap<>();
+    private volatile QuestionStats stats;
+    private volatile Compression.Dictionary dictionary;
+    // 0 until first asked for, which a real hash is all but never
+    private volatile long contentHash;
+    
+    protected QuestionBank(int version) {
+        this.version = version;
+        this.loadedAt = System.currentTimeMillis();
+    }
+    
+    public int getVersion() {
+        return version;
+    }
+    
+    public long getLoadedAt() {
+        return loadedAt;
+    }
+    
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+    
+    public abstract int size();
+    
+    public abstract Question get(int index);
+    
+    // The same questions published under another version; storage is shared
+    public abstract QuestionBank withVersion(int version);
+    
+    // withVersion, keeping the dictionary already trained on these questions
+    QuestionBank nextVersion(int version) {
+        QuestionBank next = withVersion(version);
+        next.dictionary = dictionary;
+        next.contentHash = contentHash;
+        return next;
+    }
+    
+    // Attempt and correct counts per question, allocated on the first answer
+    public QuestionStats getStats() {
+        QuestionStats current = stats;
+        if (current == null) {
+            synchronized (this) {
+                current = stats;
+                if (current == null) {
+                    current = new QuestionStats(size());
+                    stats = current;
+                }
+            }
+        }
+        return current;
+    }
+    
+    // Preset dictionary for compressed sessions, trained on first use with
+    // the size asked for then. The engine trains it while loading the bank,
+    // before any session sees it.
+    public Compression.Dictionary getDictionary(int size) {
+        Compression.Dictionary current = dictionary;
+        if (current == null) {
+            synchronized (this) {
+                current = dictionary;
+                if (current == null) {
+                    current = Compression.train(this, size);
+                    dictionary = current;
+                }
+            }
+        }
+        return current;
+    }
+    
+    // Names these questions for the session store, so a session is only
+    // resumed on the questions it was dealt, not on a reload of the same
+    // size. The engine computes it while loading the bank.
+    public long getContentHash() {
+        long hash = contentHash;
+        if (hash == 0) {
+            hash = QuestionSync.bankHash(this);
+            contentHash = hash;
+        }
+        return hash;
+    }
+    
+    // Indices of the questions in a category, in bank order. Built on first
+    // use and kept for the life of the bank.
+    public int[] questionsIn(String category) {
+        return categoryIndex.computeIfAbsent(category, name -> {
+            int matches = 0;
+            for (int i = 0; i < size(); i++) {
+                if (Objects.equals(name, categoryOf(i))) {
+                    matches++;
+                }
+            }
+            int[] indices = new int[matches];
+            for (int i = 0, next = 0; next < matches; i++) {
+                if (Objects.equals(name, categoryOf(i))) {
+                    indices[next++] = i;
+                }
+            }
+            return indices;
+        });
+    }
+    
+    protected String categoryOf(int index) {
+        return get(index).getCategory();
+    }
+}
\ No newline at end of file
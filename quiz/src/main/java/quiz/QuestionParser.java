@@ -0,0 +1,344 @@
+package quiz;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Consumer;
+
+// Parses question files of any size. The file is memory mapped, cut into
+// chunks that each start on a "Q:" line, and the chunks are parsed in
+// parallel on the common fork/join pool. Lines are scanned as bytes, and only
+// question and option text is decoded (as UTF-8).
+//
+// Format, one item per line, surrounding whitespace ignored:
+//   Q: <question>
+//   <n>. <option>
+//   A: <number of the correct option>
+//   C: <category>   (optional)
+//   T: <seconds>    (optional) time to answer; before the first Q: it is the
+//                   default for every question without a T: line of its own
+class QuestionParser {
+    // Problems reported per file; the rest are only counted
+    static final int MAX_REPORTED_PROBLEMS = 100;
+    static final int MAX_TIME_LIMIT = Short.MAX_VALUE;
+    private static final int MIN_CHUNK_BYTES = 1024 * 1024;
+    
+    private final int parallelism;
+    
+    public QuestionParser() {
+        this(ForkJoinPool.getCommonPoolParallelism());
+    }
+    
+    public QuestionParser(int parallelism) {
+        this.parallelism = Math.max(1, parallelism);
+    }
+    
+    // Returns the valid questions in file order. Malformed records are
+    // skipped and reported to problems as "line <n>: <what>".
+    public List<Question> parse(Path file, Consumer<String> problems) throws IOException {
+        MappedByteBuffer data;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Question file is larger than 2 GB");
+            }
+            if (size == 0) {
+                return new ArrayList<>();
+            }
+            data = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+        
+        int[] bounds = split(data);
+        Chunk[] chunks = new Chunk[bounds.length - 1];
+        for (int i = 0; i < chunks.length; i++) {
+            chunks[i] = new Chunk(data, bounds[i], bounds[i + 1]);
+        }
+        if (chunks.length == 1) {
+            chunks[0].parse();
+        } else {
+            ForkJoinPool.commonPool().invoke(new ParseTask(chunks, 0, chunks.length));
+        }
+        
+        // Stitch the chunks together, turning chunk line numbers into file ones
+        int total = 0;
+        for (Chunk chunk : chunks) {
+            total += chunk.questions.size();
+        }
+        List<Question> questions = new ArrayList<>(total);
+        int defaultTimeLimit = chunks[0].defaultTimeLimit;
+        int lineOffset = 0;
+        int reported = 0;
+        int unreported = 0;
+        for (Chunk chunk : chunks) {
+            if (defaultTimeLimit > 0) {
+                for (int i = chunk.timed.nextClearBit(0); i < chunk.questions.size(); i = chunk.timed.nextClearBit(i + 1)) {
+                    chunk.questions.get(i).setTimeLimit(defaultTimeLimit);
+                }
+            }
+            questions.addAll(chunk.questions);
+            for (int i = 0; i < chunk.problemLines.size(); i++) {
+                if (reported < MAX_REPORTED_PROBLEMS) {
+                    problems.accept("line " + (lineOffset + chunk.problemLines.get(i)) + ": " + chunk.problems.get(i));
+                    reported++;
+                } else {
+                    unreported++;
+                }
+            }
+            unreported += chunk.unrecordedProblems;
+            lineOffset += chunk.lines;
+        }
+        if (unreported > 0) {
+            problems.accept(unreported + " more problems not shown");
+        }
+        return questions;
+    }
+    
+    public int getParallelism() {
+        return parallelism;
+    }
+    
+    // Chunk boundaries: roughly equal pieces, each moved forward to the next
+    // line that starts a question
+    private int[] split(MappedByteBuffer data) {
+        int size = data.limit();
+        int chunkCount = Math.max(1, Math.min(parallelism * 4, size / MIN_CHUNK_BYTES));
+        if (parallelism == 1) {
+            chunkCount = 1;
+        }
+        
+        int[] bounds = new int[chunkCount + 1];
+        int count = 1;
+        for (int i = 1; i < chunkCount; i++) {
+            int bound = nextQuestionLine(data, Math.max((int) ((long) size * i / chunkCount), bounds[count - 1]));
+            if (bound > bounds[count - 1] && bound < size) {
+                bounds[count++] = bound;
+            }
+        }
+        bounds[count++] = size;
+        return count == bounds.length ? bounds : Arrays.copyOf(bounds, count);
+    }
+    
+    private static int nextQuestionLine(MappedByteBuffer data, int position) {
+        int size = data.limit();
+        while (position < size) {
+            // Start of the next line
+            while (position < size && data.get(position) != '\n') {
+                position++;
+            }
+            int lineStart = ++position;
+            while (position < size && isBlank(data.get(position)) && data.get(position) != '\n') {
+                position++;
+            }
+            if (position + 1 < size && data.get(position) == 'Q' && data.get(position + 1) == ':') {
+                return lineStart;
+            }
+        }
+        return size;
+    }
+    
+    private static boolean isBlank(byte b) {
+        // Same as String.trim(): control characters and space, never UTF-8 bytes
+        return b >= 0 && b <= ' ';
+    }
+    
+    private static class ParseTask extends RecursiveAction {
+        private final Chunk[] chunks;
+        private final int from;
+        private final int to;
+        
+        ParseTask(Chunk[] chunks, int from, int to) {
+            this.chunks = chunks;
+            this.from = from;
+            this.to = to;
+        }
+        
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                chunks[from].parse();
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new ParseTask(chunks, from, middle), new ParseTask(chunks, middle, to));
+        }
+    }
+    
+    // One slice of the file, parsed by a single thread
+    private static class Chunk {
+        private final MappedByteBuffer data;
+        private final int start;
+        private final int end;
+        
+        final List<HeapQuestion> questions = new ArrayList<>();
+        final List<Integer> problemLines = new ArrayList<>();
+        final List<String> problems = new ArrayList<>();
+        int unrecordedProblems;
+        int lines;
+        // Only the first chunk can have lines before its first question
+        int defaultTimeLimit;
+        // Questions with a T: line of their own, by index in this chunk
+        final BitSet timed = new BitSet();
+        private boolean currentTimed;
+        
+        private byte[] scratch = new byte[256];
+        private HeapQuestion current;
+        private int currentLine;
+        
+        Chunk(MappedByteBuffer data, int start, int end) {
+            this.data = data;
+            this.start = start;
+            this.end = end;
+        }
+        
+        void parse() {
+            int lineStart = start;
+            while (lineStart < end) {
+                int lineEnd = lineStart;
+                while (lineEnd < end && data.get(lineEnd) != '\n') {
+                    lineEnd++;
+                }
+                lines++;
+                parseLine(lineStart, lineEnd);
+                lineStart = lineEnd + 1;
+            }
+            finishQuestion();
+        }
+        
+        private void parseLine(int from, int to) {
+            // Trim
+            while (from < to && isBlank(data.get(from))) {
+                from++;
+            }
+            while (to > from && isBlank(data.get(to - 1))) {
+                to--;
+            }
+            if (from == to) {
+                return;
+            }
+            
+            byte first = data.get(from);
+            byte second = to - from > 1 ? data.get(from + 1) : 0;
+            
+            if (first == 'Q' && second == ':') {
+                finishQuestion();
+                current = new HeapQuestion();
+                currentTimed = false;
+                currentLine = lines;
+                current.setQuestion(text(from + 2, to));
+                
+            } else if (first >= '0' && first <= '9') {
+                int dot = from;
+                while (dot < to && data.get(dot) >= '0' && data.get(dot) <= '9') {
+                    dot++;
+                }
+                if (dot == to || data.get(dot) != '.') {
+                    problem("unrecognized line");
+                } else if (current == null) {
+                    problem("option outside of a question");
+                } else {
+                    current.addOption(text(dot + 1, to));
+                }
+                
+            } else if (first == 'C' && second == ':') {
+                if (current == null) {
+                    problem("category outside of a question");
+                } else {
+                    current.setCategory(text(from + 2, to));
+                }
+                
+            } else if (first == 'T' && second == ':') {
+                int seconds = number(from + 2, to);
+                if (seconds < 0) {
+                    problem("invalid time limit");
+                } else if (seconds > MAX_TIME_LIMIT) {
+                    problem("time limit over " + MAX_TIME_LIMIT + " seconds");
+                } else if (current == null) {
+                    defaultTimeLimit = seconds;
+                } else {
+                    current.setTimeLimit(seconds);
+                    currentTimed = true;
+                }
+                
+            } else if (first == 'A' && second == ':') {
+                int answer = number(from + 2, to);
+                if (current == null) {
+                    problem("answer outside of a question");
+                } else if (answer < 0) {
+                    problem("invalid answer format");
+                } else {
+                    current.setCorrectAnswer(answer);
+                }
+                
+            } else {
+                problem("unrecognized line");
+            }
+        }
+        
+        private void finishQuestion() {
+            if (current == null) {
+                return;
+            }
+            if (current.isValid()) {
+                timed.set(questions.size(), currentTimed);
+                questions.add(current);
+            } else {
+                problem(currentLine, "incomplete question skipped");
+            }
+            current = null;
+        }
+        
+        // Trimmed UTF-8 text of [from, to)
+        private String text(int from, int to) {
+            while (from < to && isBlank(data.get(from))) {
+                from++;
+            }
+            int length = to - from;
+            if (scratch.length < length) {
+                scratch = new byte[Math.max(length, scratch.length * 2)];
+            }
+            data.get(from, scratch, 0, length);
+            return new String(scratch, 0, length, StandardCharsets.UTF_8);
+        }
+        
+        // Non-negative decimal number in [from, to), or -1
+        private int number(int from, int to) {
+            while (from < to && isBlank(data.get(from))) {
+                from++;
+            }
+            if (from == to || to - from > 9) {
+                return -1;
+            }
+            int value = 0;
+            for (int i = from; i < to; i++) {
+                byte b = data.get(i);
+                if (b < '0' || b > '9') {
+                    return -1;
+                }
+                value = value * 10 + (b - '0');
+            }
+            return value;
+        }
+        
+        private void problem(String message) {
+            problem(lines, message);
+        }
+        
+        private void problem(int line, String message) {
+            if (problems.size() < MAX_REPORTED_PROBLEMS) {
+                problemLines.add(line);
+                problems.add(message);
+            } else {
+                unrecordedProblems++;
+            }
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,147 @@
+package quiz;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+
+// Picks the questions of one session: optionally only those of a category,
+// and optionally a random subset of a given size in random order. With no
+// size the session gets every matching question in bank order.
+//
+// Drawing k of n questions takes O(k) time and memory (Floyd's algorithm),
+// so starting a session stays cheap however large the bank is.
+class QuestionSampler {
+    private final int size;
+    private final String category;
+    
+    public QuestionSampler(int size, String category) {
+        this.size = Math.max(0, size);
+        this.category = category;
+    }
+    
+    public String getCategory() {
+        return category;
+    }
+    
+    // The bank itself or a view of the chosen questions, with the same version
+    public QuestionBank draw(QuestionBank bank) {
+        int[] candidates = category == null ? null : bank.questionsIn(category);
+        int available = candidates == null ? bank.size() : candidates.length;
+        
+        if (size == 0) {
+            return candidates == null ? bank : new Sample(bank, candidates);
+        }
+        
+        int[] chosen = sample(available, Math.min(size, available), ThreadLocalRandom.current());
+        if (candidates != null) {
+            for (int i = 0; i < chosen.length; i++) {
+                chosen[i] = candidates[chosen[i]];
+            }
+        }
+        return new Sample(bank, chosen);
+    }
+    
+    // Bank indices of the questions a session was dealt, or null if it got
+    // the whole bank in order. deal() turns them back into the same view.
+    static int[] indicesOf(QuestionBank dealt) {
+        return dealt instanceof Sample ? ((Sample) dealt).indices : null;
+    }
+    
+    // Bank index of a session's question, for the per-question statistics
+    static int bankIndex(QuestionBank dealt, int index) {
+        return dealt instanceof Sample ? ((Sample) dealt).indices[index] : index;
+    }
+    
+    // The view of a bank of the same size that indicesOf() describes
+    static QuestionBank deal(QuestionBank bank, int[] indices) {
+        return indices == null ? bank : new Sample(bank, indices);
+    }
+    
+    // k distinct values from [0, n) in random order
+    static int[] sample(int n, int k, Random random) {
+        int[] chosen = new int[k];
+        if (k > n / 2) {
+            // Most of the range is wanted anyway, shuffle all of it
+            int[] all = new int[n];
+            for (int i = 0; i < n; i++) {
+                all[i] = i;
+            }
+            for (int i = 0; i < k; i++) {
+                int j = i + random.nextInt(n - i);
+                int swap = all[i];
+                all[i] = all[j];
+                all[j] = swap;
+                chosen[i] = all[i];
+            }
+            return chosen;
+        }
+        
+        // Floyd: for j in [n - k, n) take a random t <= j, or j itself if t
+        // was taken already. Membership is an open addressing set of ints.
+        int[] table = new int[Integer.highestOneBit(Math.max(1, k) * 2) * 2];
+        Arrays.fill(table, -1);
+        int mask = table.length - 1;
+        int count = 0;
+        for (int j = n - k; j < n; j++) {
+            int t = random.nextInt(j + 1);
+            int pick = add(table, mask, t) ? t : j;
+            if (pick == j) {
+                add(table, mask, j);
+            }
+            chosen[count++] = pick;
+        }
+        
+        // Floyd picks the set uniformly but not the order
+        for (int i = k - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int swap = chosen[i];
+            chosen[i] = chosen[j];
+            chosen[j] = swap;
+        }
+        return chosen;
+    }
+    
+    private static boolean add(int[] table, int mask, int value) {
+        int slot = (value * 0x9E3779B9) >>> 1 & mask;
+        while (table[slot] != -1) {
+            if (table[slot] == value) {
+                return false;
+            }
+            slot = (slot + 1) & mask;
+        }
+        table[slot] = value;
+        return true;
+    }
+    
+    // The questions one session was dealt
+    private static final class Sample extends QuestionBank {
+        private final QuestionBank source;
+        private final int[] indices;
+        
+        Sample(QuestionBank source, int[] indices) {
+            super(source.getVersion());
+            this.source = source;
+            this.indices = indices;
+        }
+        
+        @Override
+        public int size() {
+            return indices.length;
+        }
+        
+        @Override
+        public Question get(int index) {
+            return source.get(indices[index]);
+        }
+        
+        @Override
+        public QuestionBank withVersion(int version) {
+            return new Sample(source.withVersion(version), indices);
+        }
+        
+        @Override
+        protected String categoryOf(int index) {
+            return source.categoryOf(indices[index]);
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,206 @@
+package quiz;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.ShortBuffer;
+import java.util.zip.CRC32C;
+
+// Compiled copy of a question file, kept next to it as <file>.qbank. It is
+// only used while the source still has the size, modification time and
+// content hash recorded in its header, so editing the text invalidates it.
+//
+// Layout (big endian):
+//   header       magic, format version, source size, source mtime, source
+//                CRC32C, question count, option count, pool bytes, category count
+//   optionStart  question count + 1 ints, index of each question's first option
+//   stringStart  question count + option count + category count + 1 ints,
+//                offsets into the pool; each question's text is followed by
+//                its options, and the category names come last
+//   answers      question count bytes, the correct option of each question
+//   categories   question count shorts, 0 or the 1-based category of each question
+//   timeLimits   question count shorts, seconds to answer each question, 0 for none
+//   pool         UTF-8 text
+//
+// This is the storage layout of ColumnarQuestionBank, which can use a
+// mapped snapshot in place.
+class QuestionSnapshot {
+    static final String SUFFIX = ".qbank";
+    private static final int MAGIC = 0x51424E4B; // "QBNK"
+    private static final int FORMAT_VERSION = 3;
+    private static final int HEADER_BYTES = 48;
+    
+    // Size, modification time and (computed on demand) hash of a source file
+    static class Source {
+        final Path path;
+        final long size;
+        final long modified;
+        private long hash = -1;
+        
+        private Source(Path path, long size, long modified) {
+            this.path = path;
+            this.size = size;
+            this.modified = modified;
+        }
+        
+        static Source of(Path path) throws IOException {
+            BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            return new Source(path, attributes.size(), attributes.lastModifiedTime().toMillis());
+        }
+        
+        long hash() throws IOException {
+            if (hash < 0) {
+                CRC32C crc = new CRC32C();
+                try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                    if (size > 0) {
+                        crc.update(channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+                    }
+                }
+                hash = crc.getValue();
+            }
+            return hash;
+        }
+    }
+    
+    static Path snapshotPath(Path source) {
+        return source.resolveSibling(source.getFileName() + SUFFIX);
+    }
+    
+    // Returns the snapshot as a columnar bank over the mapped file, or null if
+    // there is none or it does not match the source any more. Only the offset
+    // tables and answers are copied; the text stays in the mapping.
+    static ColumnarQuestionBank load(Source source) throws IOException {
+        Path snapshot = snapshotPath(source.path);
+        if (!Files.isRegularFile(snapshot)) {
+            return null;
+        }
+        
+        MappedByteBuffer data;
+        try (FileChannel channel = FileChannel.open(snapshot, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_BYTES || size > Integer.MAX_VALUE) {
+                return null;
+            }
+            data = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+        
+        if (data.getInt(0) != MAGIC || data.getInt(4) != FORMAT_VERSION
+                || data.getLong(8) != source.size || data.getLong(16) != source.modified
+                || data.getLong(24) != source.hash()) {
+            return null;
+        }
+        
+        int count = data.getInt(32);
+        int optionCount = data.getInt(36);
+        int poolBytes = data.getInt(40);
+        int categoryCount = data.getInt(44);
+        int strings = count + optionCount + categoryCount;
+        long expected = HEADER_BYTES + 4L * (count + 1) + 4L * (strings + 1) + 5L * count + poolBytes;
+        if (count < 0 || optionCount < 0 || poolBytes < 0 || categoryCount < 0 || expected != data.limit()) {
+            return null;
+        }
+        
+        int optionTable = HEADER_BYTES;
+        int stringTable = optionTable + 4 * (count + 1);
+        int answerTable = stringTable + 4 * (strings + 1);
+        int categoryTable = answerTable + count;
+        int timeLimitTable = categoryTable + 2 * count;
+        int pool = timeLimitTable + 2 * count;
+        
+        int[] optionStart = new int[count + 1];
+        int[] stringStart = new int[strings + 1];
+        byte[] answers = new byte[count];
+        short[] categories = new short[count];
+        short[] timeLimits = new short[count];
+        ints(data, optionTable, optionStart);
+        ints(data, stringTable, stringStart);
+        data.get(answerTable, answers);
+        ShortBuffer categoryBuffer = data.slice(categoryTable, 2 * count).asShortBuffer();
+        categoryBuffer.get(categories);
+        ShortBuffer timeLimitBuffer = data.slice(timeLimitTable, 2 * count).asShortBuffer();
+        timeLimitBuffer.get(timeLimits);
+        
+        // Offsets must be in order and inside the text, or views would read garbage
+        if (!ascending(optionStart, optionCount) || !ascending(stringStart, poolBytes)) {
+            return null;
+        }
+        for (int i = 0; i < count; i++) {
+            if (categories[i] < 0 || categories[i] > categoryCount || timeLimits[i] < 0) {
+                return null;
+            }
+        }
+        return new ColumnarQuestionBank(data.slice(pool, poolBytes), optionStart, stringStart, answers, categories, timeLimits);
+    }
+    
+    private static void ints(MappedByteBuffer data, int offset, int[] target) {
+        IntBuffer table = data.slice(offset, 4 * target.length).asIntBuffer();
+        table.get(target);
+    }
+    
+    private static boolean ascending(int[] offsets, int end) {
+        if (offsets[0] != 0 || offsets[offsets.length - 1] != end) {
+            return false;
+        }
+        for (int i = 1; i < offsets.length; i++) {
+            if (offsets[i] < offsets[i - 1]) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    // Writes the snapshot through a temporary file, so readers never see a
+    // partial one
+    static void write(Source source, ColumnarQuestionBank bank) throws IOException {
+        int[] optionStart = bank.getOptionStarts();
+        int[] stringStart = bank.getStringStarts();
+        int count = bank.size();
+        int optionCount = optionStart[count];
+        ByteBuffer text = bank.getText();
+        
+        Path target = snapshotPath(source.path);
+        Path temporary = Files.createTempFile(target.toAbsolutePath().getParent(), target.getFileName().toString(), ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary), 1 << 16))) {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                out.writeLong(source.size);
+                out.writeLong(source.modified);
+                out.writeLong(source.hash());
+                out.writeInt(count);
+                out.writeInt(optionCount);
+                out.writeInt(text.capacity());
+                out.writeInt(stringStart.length - 1 - count - optionCount);
+                
+                for (int offset : optionStart) {
+                    out.writeInt(offset);
+                }
+                for (int offset : stringStart) {
+                    out.writeInt(offset);
+                }
+                out.write(bank.getAnswers());
+                for (short category : bank.getCategories()) {
+                    out.writeShort(category);
+                }
+                for (short timeLimit : bank.getTimeLimits()) {
+                    out.writeShort(timeLimit);
+                }
+                
+                byte[] chunk = new byte[1 << 16];
+                for (int position = 0; position < text.capacity(); position += chunk.length) {
+                    int length = Math.min(chunk.length, text.capacity() - position);
+                    text.get(position, chunk, 0, length);
+                    out.write(chunk, 0, length);
+                }
+            }
+            Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+}
\ No newline at end of file
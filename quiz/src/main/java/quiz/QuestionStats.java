@@ -0,0 +1,116 @@
+package quiz;
+
+import java.util.PriorityQueue;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Attempts and correct answers per question of one bank version. Each cell
+// packs both counts into one long (attempts in the high half), so recording
+// an answer is a single CAS.
+//
+// Counters are striped the way LongAdder stripes its cells: there is one
+// array until two sessions collide on a CAS, then the arrays double, up to
+// one per core. Each thread updates the array its id hashes to, and reads
+// add up the stripes. Banks with millions of questions get fewer stripes so
+// the counters stay within a few tens of MB.
+class QuestionStats {
+    private static final long ATTEMPT = 1L << 32;
+    private static final long CORRECT_MASK = ATTEMPT - 1;
+    private static final int MAX_CELLS = 1 << 22;
+    private static final int MAX_STRIPES = Integer.highestOneBit(Math.max(1, Math.min(16, Runtime.getRuntime().availableProcessors())));
+    
+    private final int size;
+    private final int maxStripes;
+    private volatile AtomicLongArray[] stripes;
+    
+    QuestionStats(int size) {
+        this.size = size;
+        this.maxStripes = Math.max(1, Math.min(MAX_STRIPES, Integer.highestOneBit(Math.max(1, MAX_CELLS / Math.max(1, size)))));
+        this.stripes = new AtomicLongArray[] {new AtomicLongArray(size)};
+    }
+    
+    public int size() {
+        return size;
+    }
+    
+    // A graded answer to the question at this bank index
+    public void record(int question, boolean correct) {
+        long delta = correct ? ATTEMPT + 1 : ATTEMPT;
+        AtomicLongArray[] current = stripes;
+        AtomicLongArray cells = current[stripe(current.length)];
+        long value = cells.get(question);
+        if (!cells.compareAndSet(question, value, value + delta)) {
+            // Contended: spread the threads out, then add unconditionally
+            current = grow(current);
+            current[stripe(current.length)].getAndAdd(question, delta);
+        }
+    }
+    
+    public long getAttempts(int question) {
+        long attempts = 0;
+        for (AtomicLongArray cells : stripes) {
+            attempts += cells.get(question) >>> 32;
+        }
+        return attempts;
+    }
+    
+    public long getCorrect(int question) {
+        long correct = 0;
+        for (AtomicLongArray cells : stripes) {
+            correct += cells.get(question) & CORRECT_MASK;
+        }
+        return correct;
+    }
+    
+    // Bank indices of the questions answered wrongly most often, worst first
+    public int[] mostMissed(int limit) {
+        if (limit <= 0) {
+            return new int[0];
+        }
+        AtomicLongArray[] current = stripes;
+        PriorityQueue<long[]> worst = new PriorityQueue<>(limit + 1, (a, b) -> Long.compare(a[1], b[1]));
+        for (int question = 0; question < size; question++) {
+            long attempts = 0;
+            long correct = 0;
+            for (AtomicLongArray cells : current) {
+                long value = cells.get(question);
+                attempts += value >>> 32;
+                correct += value & CORRECT_MASK;
+            }
+            long missed = attempts - correct;
+            if (missed > 0 && (worst.size() < limit || missed > worst.peek()[1])) {
+                worst.add(new long[] {question, missed});
+                if (worst.size() > limit) {
+                    worst.poll();
+                }
+            }
+        }
+        int[] questions = new int[worst.size()];
+        for (int i = questions.length - 1; i >= 0; i--) {
+            questions[i] = (int) worst.poll()[0];
+        }
+        return questions;
+    }
+    
+    public int getStripes() {
+        return stripes.length;
+    }
+    
+    private static int stripe(int count) {
+        long id = Thread.currentThread().getId();
+        return (int) ((id * 0x9E3779B97F4A7C15L) >>> 40) & (count - 1);
+    }
+    
+    private synchronized AtomicLongArray[] grow(AtomicLongArray[] seen) {
+        AtomicLongArray[] current = stripes;
+        if (current != seen || current.length >= maxStripes) {
+            return current;
+        }
+        AtomicLongArray[] grown = new AtomicLongArray[current.length * 2];
+        System.arraycopy(current, 0, grown, 0, current.length);
+        for (int i = current.length; i < grown.length; i++) {
+            grown[i] = new AtomicLongArray(size);
+        }
+        stripes = grown;
+        return grown;
+    }
+}
\ No newline at end of file
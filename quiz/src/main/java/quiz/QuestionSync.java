@@ -0,0 +1,127 @@
+package quiz;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.BitSet;
+import java.util.List;
+
+// Content-addressed questions, so a client that played the bank before does
+// not download it again. Every question is named by a hash of its binary
+// QUESTION frame, which covers the text and options but not the answer, and
+// clients keep what they have seen by that hash (see KnownQuestions).
+//
+// A server that offers it sends HELLO:CACHE/1 and, right after TOTAL, the
+// hashes of the session's questions in order: HASHES:<hex>,<hex>,... The
+// client answers HAVE:<hex bitmap>, with bit n - 1 set for each question n
+// it already has, as the bytes of a little-endian bit set in hex. From then
+// on the server sends QUESTION@<n> instead of those questions' text, with
+// the usual DEADLINE line in front; when pipelining, n is also the id the
+// answer carries. A resumed session restates HASHES after TOTAL and waits
+// for a new HAVE.
+//
+// The client sends HAVE once no binary upgrade or resume reply is
+// outstanding, so it goes out in the protocol the server then reads. Binary
+// sessions use the HASHES, CACHED_QUESTION and HAVE frames. Sessions of more
+// than MAX_QUESTIONS questions are not offered the cache, which keeps the
+// hash line short.
+class QuestionSync {
+    static final String HELLO_LINE = "HELLO:CACHE/1";
+    static final String HASHES_PREFIX = "HASHES:";
+    static final String HAVE_PREFIX = "HAVE:";
+    static final String CACHED_QUESTION_PREFIX = "QUESTION@";
+    static final int MAX_QUESTIONS = 1024;
+    
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    
+    // The first 64 bits of the SHA-256 of a binary QUESTION frame
+    static long hash(byte[] binaryFrame) {
+        return first64(sha256().digest(binaryFrame));
+    }
+    
+    // Names a whole bank the same way, over the hash and correct option of
+    // every question in bank order; see QuestionBank.getContentHash()
+    static long bankHash(QuestionBank bank) {
+        MessageDigest digest = sha256();
+        ByteBuffer entry = ByteBuffer.allocate(12);
+        for (int i = 0; i < bank.size(); i++) {
+            Question question = bank.get(i);
+            entry.clear();
+            entry.putLong(question.getContentHash()).putInt(question.getCorrectAnswer());
+            digest.update(entry.array());
+        }
+        return first64(digest.digest());
+    }
+    
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+    
+    private static long first64(byte[] sum) {
+        long hash = 0;
+        for (int i = 0; i < 8; i++) {
+            hash = (hash << 8) | (sum[i] & 0xFF);
+        }
+        return hash;
+    }
+    
+    // What a client computes for a question it received in full
+    static long hash(String text, List<String> options) {
+        return hash(BinaryProtocol.question(text, options));
+    }
+    
+    static boolean offered(QuestionBank questions) {
+        return !questions.isEmpty() && questions.size() <= MAX_QUESTIONS;
+    }
+    
+    static void hashes(FrameBuffer out, QuestionBank questions) {
+        out.append(HASHES_PREFIX);
+        for (int i = 0; i < questions.size(); i++) {
+            if (i > 0) {
+                out.append(',');
+            }
+            out.append(Long.toHexString(questions.get(i).getContentHash()));
+        }
+        out.append('\n');
+    }
+    
+    static long[] parseHashes(String list) {
+        if (list.isEmpty()) {
+            return new long[0];
+        }
+        String[] parts = list.split(",");
+        long[] hashes = new long[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            hashes[i] = Long.parseUnsignedLong(parts[i], 16);
+        }
+        return hashes;
+    }
+    
+    static void cachedQuestion(FrameBuffer out, int number) {
+        out.append(CACHED_QUESTION_PREFIX).append(number).append('\n');
+    }
+    
+    static void have(FrameBuffer out, BitSet known) {
+        out.append(HAVE_PREFIX);
+        for (byte b : known.toByteArray()) {
+            out.append(HEX[(b >> 4) & 0xF]).append(HEX[b & 0xF]);
+        }
+        out.append('\n');
+    }
+    
+    // The bit set of a HAVE line, or NumberFormatException
+    static BitSet parseHave(String hex) {
+        if (hex.length() % 2 != 0) {
+            throw new NumberFormatException("Odd length bitmap " + hex);
+        }
+        byte[] bytes = new byte[hex.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) Integer.parseInt(hex.substring(2 * i, 2 * i + 2), 16);
+        }
+        return BitSet.valueOf(bytes);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,80 @@
+package quiz;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.concurrent.TimeUnit;
+
+// Watches the question file and reloads it in the background when it
+// changes. Editors often write a file in several steps, so a reload only
+// starts once the file has been quiet for a moment.
+class QuestionWatcher implements Runnable {
+    private static final long QUIET_MILLIS = 250;
+    
+    private final Path file;
+    private final Runnable reload;
+    private final EventLog log;
+    private final WatchService watchService;
+    private final Thread thread;
+    
+    public QuestionWatcher(Path file, Runnable reload, EventLog log) throws IOException {
+        this.file = file.toAbsolutePath();
+        this.reload = reload;
+        this.log = log;
+        
+        // Files are watched through their directory
+        Path directory = this.file.getParent();
+        watchService = directory.getFileSystem().newWatchService();
+        directory.register(watchService,
+            StandardWatchEventKinds.ENTRY_CREATE,
+            StandardWatchEventKinds.ENTRY_MODIFY);
+        
+        thread = new Thread(this, "quiz-question-watcher");
+        thread.setDaemon(true);
+    }
+    
+    public void start() {
+        thread.start();
+    }
+    
+    public void stop() {
+        try {
+            watchService.close();
+        } catch (IOException e) {
+            log.message("Error closing question watcher: " + e.getMessage());
+        }
+        thread.interrupt();
+    }
+    
+    @Override
+    public void run() {
+        try {
+            while (true) {
+                if (!concernsFile(watchService.take())) {
+                    continue;
+                }
+                
+                // Wait until the writes have settled
+                WatchKey key;
+                while ((key = watchService.poll(QUIET_MILLIS, TimeUnit.MILLISECONDS)) != null) {
+                    concernsFile(key);
+                }
+                reload.run();
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // Stopped
+        }
+    }
+    
+    // Drains the key's events and tells whether any of them was for our file
+    private boolean concernsFile(WatchKey key) {
+        boolean changed = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW
+                    || file.getFileName().equals(event.context())) {
+                changed = true;
+            }
+        }
+        key.reset();
+        return changed;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,871 @@
+package quiz;
+
+import javax.swing.*;
+import javax.swing.table.DefaultTableModel;
+import java.awt.*;
+import java.awt.event.*;
+import java.io.*;
+import java.util.*;
+import java.util.List;
+
+public class QuizClient extends JFrame {
+    private JTextField serverAddressField;
+    private JSpinner portSpinner;
+    private JButton connectButton;
+    private JButton disconnectButton;
+    private JButton leaderboardButton;
+    private JLabel statusLabel;
+    private JPanel questionPanel;
+    private JPanel questionViews;
+    private final CardLayout questionCards = new CardLayout();
+    private JButton submitButton;
+    private JPanel scorePanel;
+    private JLabel scoreLabel;
+    private JLabel feedbackLabel;
+    private JLabel statsLabel;
+    private JLabel timerLabel;
+    private JProgressBar progressBar;
+    
+    // Counts down to the shown question's deadline, in System.nanoTime()
+    // terms and 0 when it is not timed. Only touched on the EDT.
+    private final javax.swing.Timer countdown = new javax.swing.Timer(100, e -> updateCountdown());
+    private long questionDeadline = 0;
+    
+    private volatile ClientSession session;
+    private JCheckBox binaryCheckBox;
+    private JCheckBox pipelineCheckBox;
+    private JCheckBox compressCheckBox;
+    private JTextField roomField;
+    
+    // Pipelined questions received ahead of time, only touched on the EDT
+    private final Deque<QueuedQuestion> queuedQuestions = new ArrayDeque<>();
+    private int shownQuestionId = 0;
+    
+    // The question on screen and the card behind it, which holds the next
+    // pipelined question once it is laid out. Only touched on the EDT.
+    private QuestionView shownView;
+    private QuestionView nextView;
+    private volatile boolean isConnected = false;
+    
+    // Applies the state of the current session's thread to the UI, once per
+    // frame at most. A new one per connection; only touched on the EDT.
+    private FrameDispatcher<ViewState> dispatcher;
+    private static final long FRAME_NANOS = 1_000_000_000L / 60;
+    
+    // The unfinished session to resume on the next connect to the same server
+    private volatile String resumeToken;
+    private volatile String resumeServer;
+    
+    // Questions seen before, kept between runs so servers can skip them.
+    // Opened on the first connect.
+    private KnownQuestions knownQuestions;
+    
+    // Live game state, only touched on the EDT. The answers given, by round.
+    private boolean inRoom = false;
+    private int roomScore = 0;
+    private final Map<Integer, Integer> roomAnswers = new HashMap<>();
+    private volatile boolean leaderboardRequested = false;
+    
+    // Questions the client asks to have in flight when pipelining
+    private static final int PIPELINE_WINDOW = 4;
+    
+    public QuizClient() {
+        setTitle("Quiz Client");
+        setSize(600, 500);
+        setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+        
+        // Main panel with border layout
+        JPanel mainPanel = new JPanel(new BorderLayout(10, 10));
+        mainPanel.setBorder(BorderFactory.createEmptyBorder(10, 10, 10, 10));
+        
+        // Connection panel (North)
+        JPanel connectionPanel = new JPanel(new GridBagLayout());
+        GridBagConstraints gbc = new GridBagConstraints();
+        gbc.fill = GridBagConstraints.HORIZONTAL;
+        gbc.insets = new Insets(5, 5, 5, 5);
+        
+        // Server address
+        gbc.gridx = 0;
+        gbc.gridy = 0;
+        connectionPanel.add(new JLabel("Server Address:"), gbc);
+        
+        serverAddressField = new JTextField("localhost", 15);
+        gbc.gridx = 1;
+        gbc.weightx = 1.0;
+        connectionPanel.add(serverAddressField, gbc);
+        
+        // Port
+        gbc.gridx = 2;
+        gbc.weightx = 0;
+        connectionPanel.add(new JLabel("Port:"), gbc);
+        
+        portSpinner = new JSpinner(new SpinnerNumberModel(12345, 1024, 65535, 1));
+        gbc.gridx = 3;
+        connectionPanel.add(portSpinner, gbc);
+        
+        // Protocol
+        binaryCheckBox = new JCheckBox("Binary protocol", true);
+        binaryCheckBox.setToolTipText("Switch to the compact binary protocol when the server offers it");
+        gbc.gridx = 4;
+        connectionPanel.add(binaryCheckBox, gbc);
+        
+        pipelineCheckBox = new JCheckBox("Pipelining", true);
+        pipelineCheckBox.setToolTipText("Let the server send the next questions ahead of the answers");
+        gbc.gridx = 5;
+        connectionPanel.add(pipelineCheckBox, gbc);
+        
+        compressCheckBox = new JCheckBox("Compression", true);
+        compressCheckBox.setToolTipText("Have the server compress questions on the binary protocol");
+        gbc.gridx = 6;
+        connectionPanel.add(compressCheckBox, gbc);
+        
+        // Connect/Disconnect buttons
+        JPanel buttonPanel = new JPanel(new FlowLayout(FlowLayout.CENTER));
+        connectButton = new JButton("Connect");
+        disconnectButton = new JButton("Disconnect");
+        disconnectButton.setEnabled(false);
+        leaderboardButton = new JButton("Leaderboard");
+        leaderboardButton.setEnabled(false);
+        roomField = new JTextField(8);
+        roomField.setToolTipText("Join the live game in this room instead of playing alone");
+        buttonPanel.add(new JLabel("Live game room:"));
+        buttonPanel.add(roomField);
+        buttonPanel.add(connectButton);
+        buttonPanel.add(disconnectButton);
+        buttonPanel.add(leaderboardButton);
+        
+        gbc.gridx = 0;
+        gbc.gridy = 1;
+        gbc.gridwidth = 7;
+        connectionPanel.add(buttonPanel, gbc);
+        
+        // Status label
+        statusLabel = new JLabel("Not connected", SwingConstants.CENTER);
+        statusLabel.setForeground(Color.RED);
+        gbc.gridy = 2;
+        connectionPanel.add(statusLabel, gbc);
+        
+        // Progress bar
+        progressBar = new JProgressBar(0, 100);
+        progressBar.setStringPainted(true);
+        progressBar.setString("0/0");
+        gbc.gridy = 3;
+        connectionPanel.add(progressBar, gbc);
+        
+        // Question panel (Center)
+        questionPanel = new JPanel(new BorderLayout(10, 10));
+        questionPanel.setBorder(BorderFactory.createEmptyBorder(10, 10, 10, 10));
+        
+        shownView = new QuestionView("first", "Connect to a quiz server to start.");
+        nextView = new QuestionView("second", " ");
+        questionViews = new JPanel(questionCards);
+        questionViews.add(shownView, shownView.getName());
+        questionViews.add(nextView, nextView.getName());
+        questionPanel.add(questionViews, BorderLayout.CENTER);
+        
+        // Submit panel
+        JPanel submitPanel = new JPanel(new FlowLayout(FlowLayout.CENTER));
+        submitButton = new JButton("Submit Answer");
+        submitButton.setEnabled(false);
+        submitPanel.add(submitButton);
+        timerLabel = new JLabel(" ");
+        timerLabel.setFont(new Font("SansSerif", Font.BOLD, 12));
+        submitPanel.add(timerLabel);
+        questionPanel.add(submitPanel, BorderLayout.SOUTH);
+        
+        // Score panel (South)
+        scorePanel = new JPanel(new BorderLayout(5, 5));
+        scorePanel.setBorder(BorderFactory.createEmptyBorder(5, 5, 5, 5));
+        
+        scoreLabel = new JLabel("Score: 0/0", SwingConstants.CENTER);
+        scoreLabel.setFont(new Font("SansSerif", Font.BOLD, 14));
+        scorePanel.add(scoreLabel, BorderLayout.NORTH);
+        
+        feedbackLabel = new JLabel("", SwingConstants.CENTER);
+        feedbackLabel.setFont(new Font("SansSerif", Font.ITALIC, 12));
+        scorePanel.add(feedbackLabel, BorderLayout.CENTER);
+        
+        statsLabel = new JLabel(" ", SwingConstants.CENTER);
+        statsLabel.setFont(new Font("SansSerif", Font.PLAIN, 12));
+        scorePanel.add(statsLabel, BorderLayout.SOUTH);
+        
+        // Add panels to main panel
+        mainPanel.add(connectionPanel, BorderLayout.NORTH);
+        mainPanel.add(questionPanel, BorderLayout.CENTER);
+        mainPanel.add(scorePanel, BorderLayout.SOUTH);
+        
+        add(mainPanel);
+        
+        // Setup event listeners
+        setupListeners();
+        
+        // Center on screen
+        setLocationRelativeTo(null);
+    }
+    
+    private void setupListeners() {
+        connectButton.addActionListener(e -> connectToServer());
+        disconnectButton.addActionListener(e -> disconnectFromServer());
+        submitButton.addActionListener(e -> submitAnswer());
+        leaderboardButton.addActionListener(e -> requestLeaderboard());
+        
+        addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosing(WindowEvent e) {
+                if (isConnected) {
+                    disconnectFromServer();
+                }
+            }
+        });
+    }
+    
+    private void connectToServer() {
+        String serverAddress = serverAddressField.getText().trim();
+        int port = (Integer) portSpinner.getValue();
+        
+        try {
+            session = new ClientSession(serverAddress, port, binaryCheckBox.isSelected(),
+                pipelineCheckBox.isSelected() ? PIPELINE_WINDOW : 0);
+            String server = serverAddress + ":" + port;
+            String room = roomField.getText().trim();
+            if (!room.isEmpty()) {
+                session.joinRoom(room);
+            } else if (server.equals(resumeServer)) {
+                session.resumeFrom(resumeToken);
+            }
+            if (knownQuestions == null) {
+                knownQuestions = KnownQuestions.open(KnownQuestions.defaultFile(), KnownQuestions.DEFAULT_CAPACITY);
+            }
+            session.useCache(knownQuestions);
+            session.useCompression(compressCheckBox.isSelected());
+            resumeServer = server;
+            
+            isConnected = true;
+            
+            // Update UI
+            connectButton.setEnabled(false);
+            disconnectButton.setEnabled(true);
+            serverAddressField.setEnabled(false);
+            portSpinner.setEnabled(false);
+            binaryCheckBox.setEnabled(false);
+            pipelineCheckBox.setEnabled(false);
+            compressCheckBox.setEnabled(false);
+            roomField.setEnabled(false);
+            statusLabel.setText("Connected to " + serverAddress + ":" + port);
+            statusLabel.setForeground(Color.GREEN);
+            
+            // Start quiz in a separate thread
+            FrameDispatcher<ViewState> view = new FrameDispatcher<>(ViewState.EMPTY, FRAME_NANOS, this::render);
+            dispatcher = view;
+            new Thread(() -> startQuiz(view), "quiz-client-session").start();
+            
+        } catch (IOException e) {
+            JOptionPane.showMessageDialog(this, 
+                "Failed to connect to server: " + e.getMessage(), 
+                "Connection Error", 
+                JOptionPane.ERROR_MESSAGE);
+        }
+    }
+    
+    private void disconnectFromServer() {
+        isConnected = false;
+        
+        try {
+            if (session != null) session.close();
+        } catch (IOException e) {
+            System.err.println("Error closing connection: " + e.getMessage());
+        }
+        
+        // Reset UI
+        SwingUtilities.invokeLater(() -> {
+            if (dispatcher != null) {
+                // Whatever the old session has not shown yet is dropped
+                dispatcher.close();
+            }
+            connectButton.setEnabled(true);
+            disconnectButton.setEnabled(false);
+            leaderboardButton.setEnabled(false);
+            serverAddressField.setEnabled(true);
+            portSpinner.setEnabled(true);
+            binaryCheckBox.setEnabled(true);
+            pipelineCheckBox.setEnabled(true);
+            compressCheckBox.setEnabled(true);
+            roomField.setEnabled(true);
+            inRoom = false;
+            roomAnswers.clear();
+            queuedQuestions.clear();
+            shownQuestionId = 0;
+            statusLabel.setText("Disconnected");
+            statusLabel.setForeground(Color.RED);
+            submitButton.setEnabled(false);
+            shownView.label.setText("Connect to a quiz server to start.");
+            clearOptions();
+            scoreLabel.setText("Score: 0/0");
+            feedbackLabel.setText("");
+            statsLabel.setText(" ");
+            startCountdown(0);
+            progressBar.setValue(0);
+            progressBar.setString("0/0");
+        });
+    }
+    
+    private void startQuiz(FrameDispatcher<ViewState> view) {
+        ClientSession current = session;
+        try {
+            current.run(new SessionListener(current, view));
+            rememberSession(current);
+            
+        } catch (IOException e) {
+            rememberSession(current);
+            // After whatever the session showed before it was lost
+            view.post(() -> {
+                if (isConnected) {
+                    JOptionPane.showMessageDialog(this,
+                        "Lost connection to server: " + e.getMessage() +
+                        (resumeToken != null ? "\nConnect again to continue where you left off." : ""),
+                        "Connection Error",
+                        JOptionPane.ERROR_MESSAGE);
+                    disconnectFromServer();
+                }
+            });
+        }
+        try {
+            knownQuestions.save();
+        } catch (IOException e) {
+            System.err.println("Error saving the question cache: " + e.getMessage());
+        }
+        String summary = "UI: " + view.summary();
+        view.post(() -> statusLabel.setToolTipText(summary));
+    }
+    
+    // A session that ends before the quiz is over can be resumed later
+    private void rememberSession(ClientSession ended) {
+        if (ended.isFinished()) {
+            resumeToken = null;
+        } else if (ended.getToken() != null) {
+            resumeToken = ended.getToken();
+        }
+    }
+    
+    // Runs on the session's thread. Progress, score, feedback, stats and
+    // the current unpipelined question are merged into the ViewState it
+    // publishes; queued questions, round changes and dialogs are posted as
+    // actions, which run on the EDT after the state of the same frame.
+    private class SessionListener implements ClientSession.Listener {
+        private final ClientSession current;
+        private final FrameDispatcher<ViewState> view;
+        // Deadline for the question that comes next, 0 if untimed
+        private long nextDeadline = 0;
+        private int total = 0;
+        private int answered = 0;
+        private String score = ViewState.EMPTY.score;
+        private String feedback = ViewState.EMPTY.feedback;
+        private Color feedbackColor = ViewState.EMPTY.feedbackColor;
+        private String stats = ViewState.EMPTY.stats;
+        private QueuedQuestion question = null;
+        
+        SessionListener(ClientSession current, FrameDispatcher<ViewState> view) {
+            this.current = current;
+            this.view = view;
+        }
+        
+        private void publish() {
+            view.publish(new ViewState(total, answered, score, feedback, feedbackColor, stats, question));
+        }
+        
+        private void feedback(String text, Color color) {
+            feedback = text;
+            feedbackColor = color;
+            publish();
+        }
+        
+        @Override
+        public void total(int total) {
+            this.total = total;
+            publish();
+            boolean statsOffered = current.isStatsOffered();
+            view.post(() -> leaderboardButton.setEnabled(isConnected && statsOffered));
+        }
+        
+        @Override
+        public void deadline(long millis) {
+            nextDeadline = System.nanoTime() + millis * 1_000_000L;
+        }
+        
+        @Override
+        public void question(int id, String text, List<String> options) {
+            long deadline = nextDeadline;
+            nextDeadline = 0;
+            if (id != ClientSession.UNTAGGED) {
+                QueuedQuestion queued = new QueuedQuestion(id, questionHtml(id, total, text), options, deadline);
+                view.post(() -> queueQuestion(queued));
+            } else {
+                question = new QueuedQuestion(id, questionHtml(answered + 1, total, text), options, deadline);
+                publish();
+            }
+        }
+        
+        // Results of pipelined answers name the question they belong to
+        @Override
+        public void result(int id, boolean correct, int correctAnswer) {
+            String prefix = id > 0 ? "Question " + id + ": " : "";
+            if (correct) {
+                feedback(prefix + "Correct answer!", new Color(0, 150, 0));
+            } else {
+                feedback(prefix + "Incorrect! The correct answer was: " + correctAnswer, Color.RED);
+            }
+        }
+        
+        @Override
+        public void timedOut(int id, int correctAnswer) {
+            String prefix = id > 0 ? "Question " + id + ": " : "";
+            feedback(prefix + "Time is up! The correct answer was: " + correctAnswer, Color.RED);
+            view.post(() -> showTimedOut(id));
+        }
+        
+        @Override
+        public void score(int score, int answered) {
+            this.score = "Score: " + score + "/" + answered;
+            this.answered++;
+            publish();
+            // The server closes the connection after the last
+            // question, so only ask about the ones before it
+            if (answered < total && current.isStatsOffered()) {
+                try {
+                    current.requestStats(ClientSession.UNTAGGED);
+                } catch (IOException e) {
+                    // The read loop reports the lost connection
+                }
+            }
+        }
+        
+        @Override
+        public void finished(String message) {
+            // No need to disconnect as the server will keep the connection open
+            // to allow the client to see the final results
+            view.post(() -> showFinished(message));
+        }
+        
+        @Override
+        public void error(String message) {
+            view.post(() -> showError(message));
+        }
+        
+        @Override
+        public void resumed(int answered, int score) {
+            this.answered = answered;
+            this.score = "Score: " + score + "/" + answered;
+            feedback("Resumed with " + answered + " questions answered", Color.BLUE);
+        }
+        
+        @Override
+        public void leaderboard(List<Leaderboard.Standing> standings) {
+            // Live games send the top players after every round unasked
+            if (leaderboardRequested) {
+                leaderboardRequested = false;
+                view.post(() -> showLeaderboard(standings));
+                return;
+            }
+            StringBuilder leaders = new StringBuilder(stats);
+            for (int i = 0; i < Math.min(3, standings.size()); i++) {
+                Leaderboard.Standing standing = standings.get(i);
+                leaders.append(i == 0 ? " | Leading: " : ", ").append(standing.name).append(" (").append(standing.score).append(')');
+            }
+            stats = leaders.toString();
+            publish();
+        }
+        
+        @Override
+        public void joined(String room, int players, int rounds) {
+            total = rounds;
+            answered = 0;
+            feedback(players == 1 ? "You are the first player here" : players + " players in the room", Color.BLUE);
+            view.post(() -> showJoined(room));
+        }
+        
+        @Override
+        public void roundStarted(int round, int rounds, long millis) {
+            long deadline = System.nanoTime() + millis * 1_000_000L;
+            total = rounds;
+            answered = round - 1;
+            feedback("Round " + round + ": " + (millis + 500) / 1000 + " seconds to answer", Color.BLUE);
+            view.post(() -> showRoundStarted(deadline));
+        }
+        
+        @Override
+        public void roundClosed(int round, int correctOption, int answers, int right) {
+            answered = round;
+            stats = right + " of " + answers + (answers == 1 ? " player" : " players") + " got it right";
+            publish();
+            view.post(() -> showRoundClosed(round, correctOption));
+        }
+        
+        @Override
+        public void questionStats(int id, int attempts, int correct) {
+            int percent = attempts > 0 ? (int) Math.round(100.0 * correct / attempts) : 0;
+            stats = percent + "% of players got question " + id +
+                " right (" + attempts + (attempts == 1 ? " answer" : " answers") + ")";
+            publish();
+        }
+    }
+    
+    // Applies the fields that changed since the last frame
+    private void render(ViewState previous, ViewState next) {
+        if (next.total != previous.total || next.answered != previous.answered) {
+            progressBar.setMaximum(next.total);
+            progressBar.setValue(next.answered);
+            progressBar.setString(next.answered + "/" + next.total);
+        }
+        if (!next.score.equals(previous.score)) {
+            scoreLabel.setText(next.score);
+        }
+        if (!next.feedback.equals(previous.feedback) || !next.feedbackColor.equals(previous.feedbackColor)) {
+            feedbackLabel.setText(next.feedback);
+            feedbackLabel.setForeground(next.feedbackColor);
+        }
+        if (!next.stats.equals(previous.stats)) {
+            statsLabel.setText(next.stats);
+        }
+        if (next.question != previous.question && next.question != null) {
+            shownView.label.setText(next.question.html);
+            shownView.setOptions(next.question.options);
+            submitButton.setEnabled(true);
+            startCountdown(next.question.deadline);
+        }
+    }
+    
+    // Pipelined questions wait in a queue until the previous one is answered.
+    // The question next in line is laid out behind the shown one as soon as
+    // it arrives.
+    private void queueQuestion(QueuedQuestion queued) {
+        queuedQuestions.add(queued);
+        if (shownQuestionId == 0) {
+            showNextQueued();
+        } else {
+            prepareNextView();
+        }
+    }
+    
+    private void showNextQueued() {
+        QueuedQuestion next = queuedQuestions.poll();
+        if (next == null) {
+            shownQuestionId = 0;
+            return;
+        }
+        shownQuestionId = next.id;
+        if (nextView.prepared != next) {
+            nextView.prepare(next);
+        }
+        // Usually laid out already, so only the cards change places
+        QuestionView shown = nextView;
+        nextView = shownView;
+        shownView = shown;
+        questionCards.show(questionViews, shown.getName());
+        submitButton.setEnabled(true);
+        if (!inRoom) {
+            // Live game rounds count down from when they started
+            startCountdown(next.deadline);
+        }
+        // After this frame is painted, lay out the one after
+        SwingUtilities.invokeLater(this::prepareNextView);
+    }
+    
+    private void prepareNextView() {
+        QueuedQuestion next = queuedQuestions.peek();
+        if (next != null && nextView.prepared != next) {
+            nextView.prepare(next);
+        }
+    }
+    
+    // Built on the network thread, so the EDT only has to lay it out
+    private static String questionHtml(int number, int total, String questionText) {
+        return "<html><div style='text-align: center;'>" + 
+               "Question " + number + "/" + total + 
+               ":<br>" + questionText + "</div></html>";
+    }
+    
+    // Counts down to a System.nanoTime() deadline, or clears the countdown for 0
+    private void startCountdown(long deadline) {
+        questionDeadline = deadline;
+        if (deadline == 0) {
+            countdown.stop();
+            timerLabel.setText(" ");
+            return;
+        }
+        updateCountdown();
+        countdown.start();
+    }
+    
+    private void updateCountdown() {
+        long left = questionDeadline - System.nanoTime();
+        if (left <= 0) {
+            // The server grades the question as timed out
+            countdown.stop();
+            timerLabel.setText("Time is up");
+            timerLabel.setForeground(Color.RED);
+            submitButton.setEnabled(false);
+            return;
+        }
+        long tenths = (left + 99_999_999L) / 100_000_000L;
+        timerLabel.setText(tenths / 10 + "." + tenths % 10 + " s left");
+        timerLabel.setForeground(left < 5_000_000_000L ? Color.RED : Color.DARK_GRAY);
+    }
+    
+    private void showTimedOut(int id) {
+        if (id != ClientSession.UNTAGGED && id == shownQuestionId) {
+            // Move on to the next pipelined question
+            clearOptions();
+            showNextQueued();
+        } else if (id == ClientSession.UNTAGGED) {
+            clearOptions();
+            submitButton.setEnabled(false);
+            startCountdown(0);
+        }
+    }
+    
+    private void showJoined(String room) {
+        inRoom = true;
+        roomScore = 0;
+        roomAnswers.clear();
+        leaderboardButton.setEnabled(true);
+        shownView.label.setText("Waiting for the game in room " + room + " to start...");
+        clearOptions();
+        submitButton.setEnabled(false);
+    }
+    
+    // A new round replaces whatever question was still on screen
+    private void showRoundStarted(long deadline) {
+        queuedQuestions.clear();
+        shownQuestionId = 0;
+        clearOptions();
+        submitButton.setEnabled(false);
+        startCountdown(deadline);
+    }
+    
+    // Scored here, against the answer given on this side
+    private void showRoundClosed(int round, int correctOption) {
+        if (shownQuestionId == round) {
+            // Not answered in time
+            shownQuestionId = 0;
+            clearOptions();
+            submitButton.setEnabled(false);
+        }
+        startCountdown(0);
+        Integer given = roomAnswers.remove(round);
+        if (given == null) {
+            feedbackLabel.setText("Time is up! The correct answer was: " + correctOption);
+            feedbackLabel.setForeground(Color.RED);
+        } else if (given == correctOption) {
+            roomScore++;
+            feedbackLabel.setText("Correct answer!");
+            feedbackLabel.setForeground(new Color(0, 150, 0));
+        } else {
+            feedbackLabel.setText("Incorrect! The correct answer was: " + correctOption);
+            feedbackLabel.setForeground(Color.RED);
+        }
+        scoreLabel.setText("Score: " + roomScore + "/" + round);
+    }
+    
+    private void requestLeaderboard() {
+        ClientSession current = session;
+        leaderboardRequested = true;
+        try {
+            current.requestLeaderboard(0);
+        } catch (IOException e) {
+            JOptionPane.showMessageDialog(this,
+                "Failed to request the leaderboard: " + e.getMessage(),
+                "Connection Error",
+                JOptionPane.ERROR_MESSAGE);
+        }
+    }
+    
+    private void showLeaderboard(List<Leaderboard.Standing> standings) {
+        DefaultTableModel model = new DefaultTableModel(new Object[] {"#", "Player", "Score", "Answered"}, 0) {
+            @Override
+            public boolean isCellEditable(int row, int column) {
+                return false;
+            }
+        };
+        for (int i = 0; i < standings.size(); i++) {
+            Leaderboard.Standing standing = standings.get(i);
+            model.addRow(new Object[] {i + 1, standing.name, standing.score, standing.answered});
+        }
+        JTable table = new JTable(model);
+        JScrollPane scrollPane = new JScrollPane(table);
+        scrollPane.setPreferredSize(new Dimension(400, 200));
+        JOptionPane.showMessageDialog(this,
+            standings.isEmpty() ? new JLabel("Nobody has scored yet") : scrollPane,
+            "Leaderboard",
+            JOptionPane.PLAIN_MESSAGE);
+    }
+    
+    private void showFinished(String message) {
+        shownView.label.setText("Quiz Completed!");
+        clearOptions();
+        submitButton.setEnabled(false);
+        startCountdown(0);
+        feedbackLabel.setText(message);
+        feedbackLabel.setForeground(Color.BLUE);
+        
+        // Show dialog with final score
+        JOptionPane.showMessageDialog(this,
+            message,
+            "Quiz Completed",
+            JOptionPane.INFORMATION_MESSAGE);
+    }
+    
+    private void showError(String errorMsg) {
+        JOptionPane.showMessageDialog(this,
+            "Server error: " + errorMsg,
+            "Error",
+            JOptionPane.ERROR_MESSAGE);
+    }
+    
+    private void clearOptions() {
+        shownView.clearOptions();
+    }
+    
+    private void submitAnswer() {
+        ButtonModel selectedButton = shownView.group.getSelection();
+        
+        if (selectedButton == null) {
+            JOptionPane.showMessageDialog(this,
+                "Please select an answer before submitting.",
+                "No Answer Selected",
+                JOptionPane.WARNING_MESSAGE);
+            return;
+        }
+        
+        int answer = Integer.parseInt(selectedButton.getActionCommand());
+        try {
+            session.answer(shownQuestionId, answer);
+        } catch (IOException e) {
+            JOptionPane.showMessageDialog(this,
+                "Failed to send answer: " + e.getMessage(),
+                "Connection Error",
+                JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        submitButton.setEnabled(false);
+        if (!inRoom) {
+            // Rooms keep counting down until the round closes
+            startCountdown(0);
+        }
+        
+        if (inRoom) {
+            // The result comes when the round closes
+            roomAnswers.put(shownQuestionId, answer);
+            feedbackLabel.setText("Answer sent, waiting for the round to close");
+            feedbackLabel.setForeground(Color.BLUE);
+        }
+        if (shownQuestionId != ClientSession.UNTAGGED) {
+            // The next question is usually here already, show it right away
+            clearOptions();
+            showNextQueued();
+        }
+    }
+    
+    // What the session's thread knows about the quiz, handed to the EDT as
+    // a whole. Matches the reset UI when empty.
+    private static final class ViewState {
+        static final ViewState EMPTY = new ViewState(0, 0, "Score: 0/0", "", Color.BLACK, " ", null);
+        
+        final int total;
+        final int answered;
+        final String score;
+        final String feedback;
+        final Color feedbackColor;
+        final String stats;
+        // The latest unpipelined question, null before the first
+        final QueuedQuestion question;
+        
+        ViewState(int total, int answered, String score, String feedback, Color feedbackColor, String stats,
+                  QueuedQuestion question) {
+            this.total = total;
+            this.answered = answered;
+            this.score = score;
+            this.feedback = feedback;
+            this.feedbackColor = feedbackColor;
+            this.stats = stats;
+            this.question = question;
+        }
+    }
+    
+    private static class QueuedQuestion {
+        final int id;
+        final String html;
+        final List<String> options;
+        final long deadline;
+        
+        QueuedQuestion(int id, String html, List<String> options, long deadline) {
+            this.id = id;
+            this.html = html;
+            this.options = options;
+            this.deadline = deadline;
+        }
+    }
+    
+    // A question card. Its option buttons are pooled and relabelled for each
+    // question instead of being rebuilt, and the panel holding them only
+    // changes when the number of options does.
+    private static class QuestionView extends JPanel {
+        final JLabel label;
+        final ButtonGroup group = new ButtonGroup();
+        private final JPanel optionsPanel = new JPanel(new GridLayout(0, 1, 5, 5));
+        private final List<JRadioButton> buttons = new ArrayList<>();
+        private int inUse = 0;
+        // The queued question last filled in
+        QueuedQuestion prepared;
+        
+        QuestionView(String name, String text) {
+            super(new BorderLayout(10, 10));
+            setName(name);
+            label = new JLabel(text, SwingConstants.CENTER);
+            label.setFont(new Font("SansSerif", Font.BOLD, 14));
+            add(label, BorderLayout.NORTH);
+            add(new JScrollPane(optionsPanel), BorderLayout.CENTER);
+        }
+        
+        // Parses the markup and lays it out while the card is still hidden
+        void prepare(QueuedQuestion question) {
+            prepared = question;
+            label.setText(question.html);
+            setOptions(question.options);
+        }
+        
+        void setOptions(List<String> options) {
+            group.clearSelection();
+            while (buttons.size() < options.size()) {
+                JRadioButton button = new JRadioButton();
+                button.setActionCommand(String.valueOf(buttons.size() + 1));
+                group.add(button);
+                buttons.add(button);
+            }
+            for (int i = 0; i < options.size(); i++) {
+                buttons.get(i).setText((i + 1) + ". " + options.get(i));
+            }
+            if (inUse != options.size()) {
+                optionsPanel.removeAll();
+                for (int i = 0; i < options.size(); i++) {
+                    optionsPanel.add(buttons.get(i));
+                }
+                inUse = options.size();
+                optionsPanel.revalidate();
+                optionsPanel.repaint();
+            }
+            optionsPanel.setVisible(true);
+        }
+        
+        void clearOptions() {
+            group.clearSelection();
+            optionsPanel.setVisible(false);
+        }
+    }
+    
+    public static void main(String[] args) {
+        SwingUtilities.invokeLater(() -> {
+            QuizClient client = new QuizClient();
+            client.setVisible(true);
+        });
+    }
+}
\ No newline at end of file
@@ -0,0 +1,1010 @@
+package quiz;
+
+import java.io.*;
+import java.net.*;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import javax.management.JMException;
+
+// Headless networking and quiz core. QuizServer puts a Swing monitor on top
+// of it, but it also runs on its own for machines without a display.
+public class QuizEngine {
+    private final ServerConfig config;
+    private final EventLog log;
+    
+    private ServerSocket serverSocket;
+    private volatile boolean isRunning = false;
+    private final AtomicReference<QuestionBank> bank = new AtomicReference<>(QuestionBank.EMPTY);
+    private QuestionWatcher watcher;
+    private ExecutorService threadPool;
+    private NioQuizServer nioServer;
+    private SessionLimits limits;
+    private SessionStore store;
+    private GameRooms rooms;
+    private ScheduledExecutorService reaper;
+    private final Set<ClientHandler> handlers = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger activeSessions = new AtomicInteger();
+    private final ServerMetrics metrics = new ServerMetrics();
+    private final Leaderboard leaderboard;
+    private QuizMetrics metricsBean;
+    private MetricsEndpoint metricsEndpoint;
+    private final QuestionSampler sampler;
+    private CountDownLatch stopped = new CountDownLatch(0);
+    
+    public QuizEngine(ServerConfig config, EventLog log) {
+        this.config = config;
+        this.log = log;
+        this.sampler = new QuestionSampler(config.getQuizSize(), config.getQuizCategory());
+        this.leaderboard = new Leaderboard(config.getLeaderboardSize());
+    }
+    
+    public ServerConfig getConfig() {
+        return config;
+    }
+    
+    public boolean isRunning() {
+        return isRunning;
+    }
+    
+    public int getQuestionCount() {
+        return bank.get().size();
+    }
+    
+    // The bank new sessions start on
+    public QuestionBank getQuestionBank() {
+        return bank.get();
+    }
+    
+    public ServerMetrics getMetrics() {
+        return metrics;
+    }
+    
+    public EventLog getLog() {
+        return log;
+    }
+    
+    // Best scores since the server started
+    public Leaderboard getLeaderboard() {
+        return leaderboard;
+    }
+    
+    // Live game rooms, or null unless the nio engine hosts them
+    public GameRooms getRooms() {
+        return rooms;
+    }
+    
+    // Where sessions are kept, or null if they are not resumable
+    public SessionStore getStore() {
+        return store;
+    }
+    
+    // The local session journal, or null if there is none
+    public SessionJournal getJournal() {
+        SessionStore current = store;
+        return current instanceof SessionJournal ? (SessionJournal) current : null;
+    }
+    
+    public int getActiveSessions() {
+        return nioServer != null ? nioServer.getActiveSessions() : activeSessions.get();
+    }
+    
+    // Accepted connections still waiting for a thread or event loop. The
+    // cached pool hands connections straight to a new thread, so only the
+    // nio engine's registration queues can build up.
+    public int getExecutorQueueDepth() {
+        if (nioServer != null) {
+            return nioServer.getPendingConnections();
+        }
+        ExecutorService pool = threadPool;
+        return pool instanceof ThreadPoolExecutor ? ((ThreadPoolExecutor) pool).getQueue().size() : 0;
+    }
+    
+    // The port actually bound, which differs from the configured one for port 0
+    public int getLocalPort() {
+        if (nioServer != null) {
+            return nioServer.getLocalPort();
+        }
+        ServerSocket socket = serverSocket;
+        return socket != null ? socket.getLocalPort() : -1;
+    }
+    
+    public synchronized void start() throws IOException {
+        if (isRunning) {
+            return;
+        }
+        
+        if (bank.get().isEmpty()) {
+            loadQuestions();
+        }
+        
+        if (sampler.getCategory() != null && bank.get().questionsIn(sampler.getCategory()).length == 0) {
+            log.message("No questions in category " + sampler.getCategory());
+        }
+        
+        int port = config.getPort();
+        stopped = new CountDownLatch(1);
+        limits = SessionLimits.of(config);
+        try {
+            openStore();
+        } catch (IOException e) {
+            stopped.countDown();
+            throw e;
+        }
+        
+        if (config.getEngine() == ServerConfig.Engine.NIO) {
+            // Live games fan out from the event loops, the blocking engines do not host them
+            rooms = config.isRoomsEnabled() ? new GameRooms(config, bank::get, log, metrics) : null;
+            nioServer = new NioQuizServer(port, bank::get, sampler, log, config.getNioLoops(), limits, store,
+                leaderboard, rooms, config.isQuestionSyncEnabled(), metrics);
+            try {
+                nioServer.start();
+            } catch (IOException e) {
+                nioServer = null;
+                closeRooms();
+                closeStore();
+                stopped.countDown();
+                throw e;
+            }
+            isRunning = true;
+            log.message("Server started on port " + port + " with " + nioServer.getLoopCount() + " event loops");
+            log.message("Loaded " + getQuestionCount() + " questions");
+            startWatcher();
+            publishMetrics();
+            return;
+        }
+        
+        ExecutorStrategy strategy = config.getEngine() == ServerConfig.Engine.VIRTUAL
+            ? ExecutorStrategy.VIRTUAL_THREADS
+            : ExecutorStrategy.CACHED_POOL;
+        
+        try {
+            serverSocket = new ServerSocket(port, limits.getAcceptBacklog());
+        } catch (IOException e) {
+            closeStore();
+            stopped.countDown();
+            throw e;
+        }
+        isRunning = true;
+        threadPool = strategy.newExecutor();
+        
+        log.message("Server started on port " + port + " using " + strategy);
+        if (!strategy.isSupported()) {
+            log.message(strategy + " are not available on this JVM, using a cached thread pool instead");
+        }
+        log.message("Loaded " + getQuestionCount() + " questions");
+        startWatcher();
+        publishMetrics();
+        startReaper();
+        
+        // Start accepting client connections in a separate thread
+        threadPool.execute(() -> {
+            try {
+                while (isRunning) {
+                    try {
+                        Socket clientSocket = serverSocket.accept();
+                        metrics.recordConnection();
+                        if (!limits.tryAdmit()) {
+                            reject(clientSocket);
+                            continue;
+                        }
+                        // The session stays on the bank that is current now
+                        ClientHandler handler = new ClientHandler(clientSocket, bank.get());
+                        threadPool.execute(handler);
+                        log.event(EventLog.Event.CONNECTED, handler.clientAddress, 0, 0);
+                    } catch (SocketException se) {
+                        // Server socket closed
+                        if (isRunning) {
+                            log.message("Error accepting client connection: " + se.getMessage());
+                        }
+                    } catch (IOException e) {
+                        log.message("Error accepting client connection: " + e.getMessage());
+                    }
+                }
+            } finally {
+                closeServerSocket();
+            }
+        });
+    }
+    
+    public synchronized void stop() {
+        if (!isRunning) {
+            return;
+        }
+        isRunning = false;
+        
+        if (watcher != null) {
+            watcher.stop();
+            watcher = null;
+        }
+        unpublishMetrics();
+        
+        if (reaper != null) {
+            reaper.shutdownNow();
+            reaper = null;
+        }
+        
+        // Shutdown thread pool
+        if (threadPool != null) {
+            threadPool.shutdownNow();
+            threadPool = null;
+        }
+        
+        // Stop the selector engine
+        if (nioServer != null) {
+            nioServer.stop();
+            nioServer = null;
+        }
+        closeRooms();
+        
+        // Close server socket
+        closeServerSocket();
+        closeStore();
+        
+        log.message("Server stopped");
+        stopped.countDown();
+    }
+    
+    private void closeRooms() {
+        if (rooms != null) {
+            rooms.shutdown();
+            rooms = null;
+        }
+    }
+    
+    // Blocks until stop() has been called
+    public void awaitStop() throws InterruptedException {
+        stopped.await();
+    }
+    
+    private void closeServerSocket() {
+        if (serverSocket != null && !serverSocket.isClosed()) {
+            try {
+                serverSocket.close();
+            } catch (IOException e) {
+                log.message("Error closing server socket: " + e.getMessage());
+            }
+        }
+    }
+    
+    // Without a store the server runs as before, only sessions cannot be
+    // resumed. A cluster node only hands out tokens that the ring routes
+    // back to it.
+    private void openStore() throws IOException {
+        ClusterRing ring = null;
+        String self = config.getClusterSelf();
+        if (config.getClusterNodes() != null) {
+            try {
+                ring = ClusterRing.parse(config.getClusterNodes());
+            } catch (IllegalArgumentException e) {
+                throw new IOException(e.getMessage());
+            }
+            if (self == null || !ring.getNodes().contains(self)) {
+                throw new IOException("--cluster.self must be one of the cluster nodes");
+            }
+        }
+        
+        try {
+            if (config.getStore() != null) {
+                store = RemoteSessionStore.connect(config.getStore(), config.getJournalSync(), log);
+            } else if (config.getJournalFile() != null) {
+                store = SessionJournal.open(new File(config.getJournalFile().trim()).toPath(), config.getJournalSync(),
+                    config.getJournalMaxBytes(), TimeUnit.MINUTES.toMillis(config.getJournalRetainMinutes()), log);
+            } else {
+                return;
+            }
+        } catch (IOException e) {
+            log.message("Sessions will not be resumable, could not open the session store: " + e.getMessage());
+            return;
+        }
+        if (ring != null) {
+            ClusterRing owners = ring;
+            store.restrictTokens(token -> owners.owner(token).equals(self));
+        }
+        store.shareLeaderboard(leaderboard);
+    }
+    
+    private void closeStore() {
+        if (store != null) {
+            store.close();
+            store = null;
+        }
+    }
+    
+    // The busy line fits in the empty socket buffer, so this never blocks
+    private void reject(Socket socket) {
+        metrics.recordRejection();
+        try (Socket rejected = socket) {
+            rejected.getOutputStream().write(limits.getBusyFrame());
+        } catch (IOException e) {
+            // The client is gone already
+        }
+    }
+    
+    // Reads time out through SO_TIMEOUT, but a blocked socket write has no
+    // timeout of its own, so a watchdog closes sockets stuck in one
+    private void startReaper() {
+        long writeMillis = limits.getWriteMillis();
+        if (writeMillis <= 0) {
+            return;
+        }
+        long writeNanos = TimeUnit.MILLISECONDS.toNanos(writeMillis);
+        long period = Math.max(50, Math.min(1000, writeMillis / 4));
+        reaper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "quiz-reaper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        reaper.scheduleWithFixedDelay(() -> {
+            long now = System.nanoTime();
+            for (ClientHandler handler : handlers) {
+                long started = handler.writeStarted;
+                if (started != 0 && now - started > writeNanos) {
+                    handler.timeOutWrite();
+                }
+            }
+        }, period, period, TimeUnit.MILLISECONDS);
+    }
+    
+    private void publishMetrics() {
+        if (config.isMetricsJmxEnabled()) {
+            metricsBean = new QuizMetrics(this);
+            try {
+                metricsBean.register();
+            } catch (JMException e) {
+                log.message("Could not register metrics MBean: " + e.getMessage());
+                metricsBean = null;
+            }
+        }
+        if (config.getMetricsPort() > 0) {
+            try {
+                metricsEndpoint = new MetricsEndpoint(new QuizMetrics(this), config.getMetricsPort());
+                log.message("Metrics on http://localhost:" + metricsEndpoint.getPort() + MetricsEndpoint.PATH);
+            } catch (IOException e) {
+                log.message("Could not start metrics endpoint: " + e.getMessage());
+            }
+        }
+    }
+    
+    private void unpublishMetrics() {
+        if (metricsBean != null) {
+            metricsBean.unregister();
+            metricsBean = null;
+        }
+        if (metricsEndpoint != null) {
+            metricsEndpoint.stop();
+            metricsEndpoint = null;
+        }
+    }
+    
+    private void startWatcher() {
+        if (!config.isQuestionWatchEnabled()) {
+            return;
+        }
+        try {
+            watcher = new QuestionWatcher(new File(config.getQuestionFile().trim()).toPath(), this::reloadQuestions, log);
+            watcher.start();
+        } catch (IOException | RuntimeException e) {
+            log.message("Question file will not be reloaded on change: " + e.getMessage());
+        }
+    }
+    
+    // Called by the watcher. A file that fails to parse leaves the current
+    // bank in place.
+    void reloadQuestions() {
+        try {
+            loadQuestions();
+            QuestionBank current = bank.get();
+            log.message("Reloaded " + current.size() + " questions (version " + current.getVersion() + ")");
+        } catch (IOException e) {
+            log.message("Keeping question version " + bank.get().getVersion() + ": " + e.getMessage());
+        }
+    }
+    
+    // Parses the configured question file and publishes it as the next bank
+    // version, failing with a message that can be shown to the operator as is
+    public int loadQuestions() throws IOException {
+        String filePath = config.getQuestionFile().trim();
+        File questionFile = new File(filePath);
+        
+        if (!questionFile.exists() || !questionFile.isFile()) {
+            throw new FileNotFoundException("Question file not found: " + filePath);
+        }
+        
+        QuestionBank loaded;
+        try {
+            loaded = readQuestions(questionFile.toPath());
+        } catch (IOException e) {
+            log.message("Error reading file: " + e.getMessage());
+            throw new IOException("Error reading question file: " + e.getMessage(), e);
+        }
+        
+        if (loaded.isEmpty()) {
+            throw new IOException("No valid questions found in the file.");
+        }
+        
+        if (config.isCompressionEnabled()) {
+            // Trained here rather than on the connection of the first client that asks
+            loaded.getDictionary(config.getCompressionDictionarySize());
+        }
+        if (config.getStore() != null || config.getJournalFile() != null) {
+            // Likewise the hash sessions are stored and resumed under
+            loaded.getContentHash();
+        }
+        bank.updateAndGet(previous -> loaded.nextVersion(previous.getVersion() + 1));
+        return loaded.size();
+    }
+    
+    // Uses the compiled snapshot when it still matches the file, otherwise
+    // parses the text and compiles a new snapshot for the next start. The
+    // result is laid out as configured and still has to be given a version.
+    private QuestionBank readQuestions(Path file) throws IOException {
+        ServerConfig.QuestionLayout layout = config.getQuestionLayout();
+        ColumnarQuestionBank compiled = null;
+        QuestionSnapshot.Source source = null;
+        
+        if (config.isQuestionSnapshotEnabled()) {
+            source = QuestionSnapshot.Source.of(file);
+            try {
+                compiled = QuestionSnapshot.load(source);
+                if (compiled != null) {
+                    log.message("Loaded questions from " + QuestionSnapshot.snapshotPath(file).getFileName());
+                }
+            } catch (IOException e) {
+                log.message("Ignoring question snapshot: " + e.getMessage());
+            }
+        }
+        
+        if (compiled == null) {
+            if (source != null) {
+                // Hash the text before parsing it, so the snapshot describes what was parsed
+                source.hash();
+            }
+            List<Question> parsed = parseQuestions(file);
+            if (source == null && layout == ServerConfig.QuestionLayout.OBJECTS) {
+                return new HeapQuestionBank(0, parsed);
+            }
+            
+            try {
+                compiled = ColumnarQuestionBank.of(parsed);
+            } catch (IllegalArgumentException e) {
+                throw new IOException(e.getMessage(), e);
+            }
+            if (source != null && !parsed.isEmpty()) {
+                try {
+                    QuestionSnapshot.write(source, compiled);
+                } catch (IOException e) {
+                    log.message("Could not write question snapshot: " + e.getMessage());
+                }
+            }
+            if (layout == ServerConfig.QuestionLayout.OBJECTS) {
+                return new HeapQuestionBank(0, parsed);
+            }
+        }
+        
+        switch (layout) {
+            case COLUMNAR:
+                return compiled;
+            case CACHED:
+                return new CachedQuestionBank(compiled, config.getQuestionCacheSize());
+            default:
+                return HeapQuestionBank.copyOf(compiled);
+        }
+    }
+    
+    private List<Question> parseQuestions(Path file) throws IOException {
+        return new QuestionParser().parse(file, problem -> log.message("Question file " + problem));
+    }
+    
+    public static void main(String[] args) {
+        ServerConfig config;
+        try {
+            config = ServerConfig.fromArgs(args);
+        } catch (IllegalArgumentException | IOException e) {
+            System.err.println(e.getMessage());
+            System.err.println(ServerConfig.usage());
+            System.exit(2);
+            return;
+        }
+        runHeadless(config);
+    }
+    
+    // Creates the server log with the file sink from the configuration, if any
+    static EventLog createLog(ServerConfig config, EventLog.Sink sink) throws IOException {
+        EventLog log = new EventLog(config.getLogCapacity()).addSink(sink);
+        if (config.getLogFile() != null) {
+            log.addSink(new RollingFileSink(new File(config.getLogFile()),
+                config.getLogMaxBytes(), config.getLogFiles()));
+        }
+        return log;
+    }
+    
+    static void runHeadless(ServerConfig config) {
+        EventLog log;
+        try {
+            log = createLog(config, batch -> System.out.print(batch));
+        } catch (IOException e) {
+            System.err.println("Failed to open log file: " + e.getMessage());
+            System.exit(1);
+            return;
+        }
+        log.start();
+        
+        QuizEngine engine = new QuizEngine(config, log);
+        
+        try {
+            engine.start();
+        } catch (IOException e) {
+            log.close();
+            System.err.println("Failed to start server: " + e.getMessage());
+            System.exit(1);
+            return;
+        }
+        
+        ProcessHandle.current().info().startInstant().ifPresent(startedAt ->
+            log.message("Ready " + (System.currentTimeMillis() - startedAt.toEpochMilli()) + " ms after JVM start"));
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            engine.stop();
+            log.close();
+        }, "quiz-shutdown"));
+        
+        try {
+            engine.awaitStop();
+        } catch (InterruptedException e) {
+            engine.stop();
+        }
+    }
+    
+    // Handles one client connection on the blocking engines
+    
+    private class ClientHandler implements Runnable {
+        private Socket clientSocket;
+        private final QuestionBank bank;
+        private QuestionBank questions;
+        private OutputStream out;
+        private FrameReader in;
+        private String clientAddress;
+        private final SessionLimits sessionLimits = limits;
+        private final SessionStore sessionStore = store;
+        private SessionStore.Claim claim;
+        private Leaderboard.Player player;
+        private boolean greeted = false;
+        
+        // Set while a write is in progress, for the reaper
+        private volatile long writeStarted = 0;
+        private volatile boolean writeTimedOut = false;
+        
+        public ClientHandler(Socket socket, QuestionBank bank) {
+            this.clientSocket = socket;
+            this.bank = bank;
+            this.clientAddress = socket.getInetAddress().getHostAddress();
+        }
+        
+        @Override
+        public void run() {
+            activeSessions.incrementAndGet();
+            handlers.add(this);
+            try {
+                // This client's questions, drawn from the bank it connected on
+                questions = sampler.draw(bank);
+                if (sessionStore != null) {
+                    claim = sessionStore.start(bank.getContentHash(), QuestionSampler.indicesOf(questions));
+                }
+                
+                // Set up I/O streams. Outgoing lines are collected in a frame
+                // buffer and written once, right before waiting for the client.
+                clientSocket.setTcpNoDelay(true);
+                clientSocket.setSoTimeout(timeout(sessionLimits.getHandshakeMillis()));
+                out = clientSocket.getOutputStream();
+                in = new FrameReader(clientSocket.getInputStream());
+                FrameBuffer pending = new FrameBuffer(512);
+                WireCodec codec = TextCodec.INSTANCE;
+                WireCodec.Message message = new WireCodec.Message();
+                
+                // Offer the optional protocols; clients that don't know them skip the lines
+                if (config.isBinaryEnabled()) {
+                    pending.append(BinaryProtocol.HELLO_LINE);
+                }
+                if (config.isPipeliningEnabled()) {
+                    pending.append(Pipelining.HELLO_LINE).append('\n');
+                }
+                pending.append(LiveStats.HELLO_LINE).append('\n');
+                pending.append(TimedQuestions.HELLO_LINE).append('\n');
+                boolean syncing = config.isQuestionSyncEnabled() && QuestionSync.offered(questions);
+                if (syncing) {
+                    pending.append(QuestionSync.HELLO_LINE).append('\n');
+                }
+                Compression.Dictionary dictionary = config.isCompressionEnabled()
+                    ? bank.getDictionary(config.getCompressionDictionarySize())
+                    : Compression.Dictionary.NONE;
+                if (!dictionary.isEmpty()) {
+                    pending.append(Compression.HELLO_PREFIX).append(Long.toHexString(dictionary.id)).append('\n');
+                }
+                if (claim != null) {
+                    pending.append(Resumption.TOKEN_PREFIX).append(claim.getToken()).append('\n');
+                }
+                player = leaderboard.join(clientAddress, claim != null ? claim.getToken() : null);
+                
+                // Send number of questions
+                int totalQuestions = questions.size();
+                codec.total(pending, totalQuestions);
+                if (syncing) {
+                    codec.hashes(pending, questions);
+                }
+                // Questions the client said it has, which go out by position
+                BitSet known = new BitSet();
+                
+                // Questions go out in a window. Without pipelining the window
+                // is one question and nothing is tagged, which is the original
+                // lockstep protocol.
+                int window = 1;
+                boolean tagged = false;
+                BitSet graded = new BitSet(totalQuestions);
+                int lowestUnanswered = 0;
+                int nextToSend = 0;
+                int answered = 0;
+                int score = 0;
+                int lastGraded = -1;
+                
+                // System.nanoTime() deadlines of timed questions, set when
+                // first sent. Reads give up at the nearest open one.
+                long[] deadlines = new long[totalQuestions];
+                int readTimeout = timeout(sessionLimits.getHandshakeMillis());
+                // Questions graded when their deadline passed, until the late
+                // answer to them arrives; untagged ones are only counted, and
+                // only for clients that said they send one
+                BitSet expiredQuestions = new BitSet(totalQuestions);
+                int lateAnswers = 0;
+                boolean answersLate = false;
+                
+                // Journal position of the latest answer, replies wait for it to be durable
+                long journaled = 0;
+                
+                while (answered < totalQuestions) {
+                    // Write once the input the client already sent has been
+                    // handled, so replies to pipelined answers share a write
+                    // and questions go out in the codec the client ends up on
+                    if (!in.hasBuffered()) {
+                        // Top up the window with pre-encoded questions,
+                        // skipping any that were already answered
+                        while (nextToSend < totalQuestions && nextToSend - lowestUnanswered < window) {
+                            if (!graded.get(nextToSend)) {
+                                Question next = questions.get(nextToSend);
+                                if (next.getTimeLimit() > 0) {
+                                    long now = System.nanoTime();
+                                    if (deadlines[nextToSend] == 0) {
+                                        deadlines[nextToSend] = SessionLimits.deadline(now, next.getTimeLimit() * 1000L);
+                                    }
+                                    codec.deadline(pending, TimedQuestions.remainingMillis(deadlines[nextToSend], now));
+                                }
+                                boolean cached = known.get(nextToSend);
+                                if (cached) {
+                                    codec.cachedQuestion(pending, nextToSend + 1);
+                                } else {
+                                    codec.question(pending, next, tagged ? nextToSend + 1 : WireCodec.UNTAGGED);
+                                }
+                                metrics.recordQuestionSent(cached);
+                            }
+                            nextToSend++;
+                        }
+                        if (pending.length() > 0) {
+                            if (journaled > 0) {
+                                sessionStore.awaitDurable(journaled);
+                                journaled = 0;
+                            }
+                            write(pending);
+                        }
+                    }
+                    
+                    // Wait for answer from client, but no longer than the
+                    // nearest deadline of a question it has been sent
+                    int timed = earliestDeadline(deadlines, graded, lowestUnanswered, nextToSend);
+                    int wait = timeout(greeted ? sessionLimits.getAnswerMillis() : sessionLimits.getHandshakeMillis());
+                    if (timed >= 0) {
+                        int left = TimedQuestions.remainingMillis(deadlines[timed], System.nanoTime()) + 1;
+                        wait = wait == 0 ? left : Math.min(wait, left);
+                    }
+                    if (wait != readTimeout) {
+                        clientSocket.setSoTimeout(wait);
+                        readTimeout = wait;
+                    }
+                    boolean expired = false;
+                    try {
+                        if (!codec.read(in, message)) {
+                            break; // Client disconnected
+                        }
+                    } catch (SocketTimeoutException e) {
+                        if (timed < 0 || System.nanoTime() - deadlines[timed] < 0 || in.isInsideMessage()) {
+                            throw e;
+                        }
+                        // Graded like an answer that came too late
+                        message.set(WireCodec.Message.Type.ANSWER, tagged ? timed + 1 : WireCodec.UNTAGGED, 0);
+                        expired = true;
+                    }
+                    if (!expired) {
+                        greeted = true;
+                    }
+                    
+                    switch (message.type) {
+                        case UPGRADE:
+                            if (config.isBinaryEnabled() && message.value > 0) {
+                                // Switch over and restate where the quiz stands
+                                pending.append(BinaryProtocol.UPGRADE_OK).append('\n');
+                                codec = BinaryCodec.INSTANCE;
+                                codec.total(pending, totalQuestions);
+                                if (tagged) {
+                                    codec.pipelineAccepted(pending, window);
+                                }
+                            } else {
+                                pending.append(BinaryProtocol.UPGRADE_REFUSED).append('\n');
+                            }
+                            nextToSend = lowestUnanswered;
+                            continue;
+                        
+                        case PIPELINE:
+                            // A granted window of 1 tells the client to stay in
+                            // lockstep. Either way the open questions are resent.
+                            if (!tagged) {
+                                int granted = Math.min(message.value, config.getPipelineWindow());
+                                if (granted > 1) {
+                                    tagged = true;
+                                    window = granted;
+                                }
+                            }
+                            codec.pipelineAccepted(pending, window);
+                            nextToSend = lowestUnanswered;
+                            continue;
+                        
+                        case RESUME:
+                            // Only before the session has graded anything itself
+                            SessionStore.Claim resumed = sessionStore != null && answered == 0
+                                ? sessionStore.resume(message.text, bank.getContentHash())
+                                : null;
+                            metrics.recordResume(resumed != null);
+                            if (resumed == null) {
+                                pending.append(Resumption.UNKNOWN).append('\n');
+                            } else {
+                                if (claim != null) {
+                                    sessionStore.release(claim);
+                                }
+                                claim = resumed;
+                                questions = QuestionSampler.deal(bank, resumed.indices);
+                                totalQuestions = questions.size();
+                                deadlines = new long[totalQuestions];
+                                expiredQuestions = new BitSet(totalQuestions);
+                                lateAnswers = 0;
+                                graded = resumed.graded;
+                                answered = resumed.answered;
+                                score = resumed.score;
+                                lowestUnanswered = graded.nextClearBit(0);
+                                player = leaderboard.join(clientAddress, resumed.getToken());
+                                pending.append(Resumption.RESUMED_PREFIX).append(answered).append(':').append(score).append('\n');
+                                codec.total(pending, totalQuestions);
+                                // Questions of another session, the client says which it has again
+                                known = new BitSet();
+                                if (syncing && QuestionSync.offered(questions)) {
+                                    codec.hashes(pending, questions);
+                                }
+                                log.event(EventLog.Event.RESUMED, clientAddress, answered, totalQuestions);
+                            }
+                            nextToSend = lowestUnanswered;
+                            continue;
+                        
+                        case LEADERBOARD:
+                            int limit = message.value > 0 ? message.value : leaderboard.getCapacity();
+                            codec.leaderboard(pending, leaderboard.top(limit));
+                            continue;
+                        
+                        case HAVE:
+                            // Applies to the questions sent out from now on
+                            if (syncing) {
+                                known = message.known.get(0, totalQuestions);
+                            }
+                            continue;
+                        
+                        case LATE_ANSWERS:
+                            answersLate = true;
+                            continue;
+                        
+                        case COMPRESS:
+                            // Questions sent from now on are deflated, the ones
+                            // already out stay as they are
+                            if (dictionary.isEmpty()) {
+                                codec.error(pending, "Compression is not offered");
+                                continue;
+                            }
+                            if (message.value != 0) {
+                                BinaryProtocol.dictionary(pending, dictionary.bytes);
+                                metrics.recordDictionarySent();
+                            } else {
+                                BinaryProtocol.dictionary(pending, new byte[0]);
+                            }
+                            codec = new DeflateCodec(dictionary, metrics);
+                            continue;
+                        
+                        case STATS:
+                            // Only for this session's own graded questions, so
+                            // nobody learns how a question went before answering it
+                            int asked = message.id > 0 ? message.id - 1 : lastGraded;
+                            if (asked < 0 || asked >= totalQuestions || !graded.get(asked)) {
+                                codec.error(pending, asked < 0 ? "No question answered yet" : "Question " + (asked + 1) + " is not answered yet");
+                            } else {
+                                int bankIndex = QuestionSampler.bankIndex(questions, asked);
+                                QuestionStats stats = bank.getStats();
+                                codec.questionStats(pending, asked + 1, stats.getAttempts(bankIndex), stats.getCorrect(bankIndex));
+                            }
+                            continue;
+                        
+                        case INVALID:
+                            codec.error(pending, null);
+                            break;
+                        
+                        case OTHER:
+                            if (codec instanceof BinaryCodec) {
+                                codec.error(pending, "Unexpected frame type " + message.value);
+                            }
+                            break;
+                        
+                        case ANSWER:
+                            long received = System.nanoTime();
+                            // The timeout already replied to a late untagged
+                            // answer, a late tagged one gets the same reply
+                            if (!expired && message.id == WireCodec.UNTAGGED && lateAnswers > 0) {
+                                lateAnswers--;
+                                continue;
+                            }
+                            if (!expired && message.id > 0 && expiredQuestions.get(message.id - 1)) {
+                                expiredQuestions.clear(message.id - 1);
+                                codec.timedOut(pending, questions.get(message.id - 1), message.id);
+                                codec.score(pending, score, answered);
+                                continue;
+                            }
+                            // Untagged answers are for the oldest open question
+                            int index = message.id == WireCodec.UNTAGGED ? lowestUnanswered : message.id - 1;
+                            if (index < lowestUnanswered || index >= nextToSend || graded.get(index)) {
+                                codec.error(pending, "Question " + message.id + " is not open");
+                                break;
+                            }
+                            
+                            Question q = questions.get(index);
+                            boolean timedOut = deadlines[index] != 0 && received - deadlines[index] >= 0;
+                            boolean isCorrect = !timedOut && (message.value == q.getCorrectAnswer());
+                            if (isCorrect) {
+                                score++;
+                                log.event(EventLog.Event.CORRECT, clientAddress, index + 1, 0);
+                            } else {
+                                log.event(timedOut ? EventLog.Event.EXPIRED : EventLog.Event.INCORRECT, clientAddress, index + 1, 0);
+                            }
+                            
+                            graded.set(index);
+                            answered++;
+                            lastGraded = index;
+                            lowestUnanswered = graded.nextClearBit(lowestUnanswered);
+                            bank.getStats().record(QuestionSampler.bankIndex(questions, index), isCorrect);
+                            if (isCorrect) {
+                                player.update(score, answered);
+                            }
+                            if (claim != null) {
+                                journaled = sessionStore.record(claim, index, isCorrect);
+                                if (journaled < 0) {
+                                    throw new IOException("Session was resumed on another connection");
+                                }
+                            }
+                            
+                            if (expired) {
+                                if (tagged) {
+                                    expiredQuestions.set(index);
+                                } else if (answersLate) {
+                                    lateAnswers++;
+                                }
+                            }
+                            
+                            // Send the result and current score
+                            if (timedOut) {
+                                codec.timedOut(pending, q, tagged ? index + 1 : WireCodec.UNTAGGED);
+                                metrics.recordExpired();
+                            } else {
+                                codec.result(pending, q, tagged ? index + 1 : WireCodec.UNTAGGED, isCorrect);
+                            }
+                            codec.score(pending, score, answered);
+                            metrics.recordAnswer(isCorrect, System.nanoTime() - received);
+                            continue;
+                    }
+                    
+                    // In lockstep, anything but an answer gets the question again
+                    if (!tagged) {
+                        nextToSend = lowestUnanswered;
+                    }
+                }
+                
+                // Quiz completed
+                final int finalScore = score;
+                if (claim != null && answered == totalQuestions) {
+                    sessionStore.finish(claim);
+                }
+                
+                // Send results to client
+                codec.finished(pending, finalScore, totalQuestions);
+                if (journaled > 0) {
+                    sessionStore.awaitDurable(journaled);
+                }
+                write(pending);
+                
+                log.event(EventLog.Event.FINISHED, clientAddress, finalScore, totalQuestions);
+                
+            } catch (SocketTimeoutException e) {
+                metrics.recordTimeout(greeted ? ServerMetrics.Phase.ANSWER : ServerMetrics.Phase.HANDSHAKE);
+                log.message("Client " + clientAddress + " timed out waiting for " +
+                    (greeted ? "an answer" : "its first message"));
+            } catch (IOException e) {
+                if (writeTimedOut) {
+                    log.message("Client " + clientAddress + " stopped reading, dropped after the write timeout");
+                } else {
+                    log.message("Error handling client " + clientAddress + ": " + e.getMessage());
+                }
+            } finally {
+                if (claim != null) {
+                    sessionStore.release(claim);
+                }
+                handlers.remove(this);
+                sessionLimits.release();
+                activeSessions.decrementAndGet();
+                try {
+                    if (out != null) out.close();
+                    if (in != null) in.close();
+                    if (clientSocket != null) clientSocket.close();
+                } catch (IOException e) {
+                    log.message("Error closing client connection: " + e.getMessage());
+                }
+            }
+        }
+        
+        private void write(FrameBuffer pending) throws IOException {
+            long start = System.nanoTime();
+            writeStarted = start;
+            try {
+                pending.writeTo(out);
+            } finally {
+                writeStarted = 0;
+            }
+            metrics.recordWrite(System.nanoTime() - start);
+        }
+        
+        // Called by the reaper; closing the socket fails the blocked write
+        void timeOutWrite() {
+            if (!writeTimedOut) {
+                writeTimedOut = true;
+                metrics.recordTimeout(ServerMetrics.Phase.WRITE);
+                try {
+                    clientSocket.close();
+                } catch (IOException e) {
+                    // Closed anyway
+                }
+            }
+        }
+        
+        private int timeout(long millis) {
+            return (int) Math.min(Integer.MAX_VALUE, millis);
+        }
+        
+        // The sent, ungraded question in [from, to) whose deadline comes first, or -1
+        private int earliestDeadline(long[] deadlines, BitSet graded, int from, int to) {
+            int earliest = -1;
+            for (int i = graded.nextClearBit(from); i < to; i = graded.nextClearBit(i + 1)) {
+                if (deadlines[i] != 0 && (earliest < 0 || deadlines[i] - deadlines[earliest] < 0)) {
+                    earliest = i;
+                }
+            }
+            return earliest;
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,372 @@
+package quiz;
+
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+// Read side of the engine's metrics: the JMX MBean, and the text format
+// MetricsEndpoint serves, so both show the same numbers. Everything here
+// runs when someone looks, never on the session threads.
+class QuizMetrics implements QuizMetricsMXBean {
+    static final String OBJECT_NAME = "quiz:type=Metrics";
+    
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+    
+    private final QuizEngine engine;
+    private final ServerMetrics metrics;
+    
+    // Answers per second are measured between two reads
+    private long rateAnswers;
+    private long rateTime = System.nanoTime();
+    private double rate;
+    
+    public QuizMetrics(QuizEngine engine) {
+        this.engine = engine;
+        this.metrics = engine.getMetrics();
+        this.rateAnswers = metrics.getAnswers();
+    }
+    
+    void register() throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(OBJECT_NAME);
+        if (server.isRegistered(name)) {
+            server.unregisterMBean(name);
+        }
+        server.registerMBean(this, name);
+    }
+    
+    void unregister() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(new ObjectName(OBJECT_NAME));
+        } catch (JMException e) {
+            // Already gone
+        }
+    }
+    
+    @Override
+    public long getConnectionsAccepted() {
+        return metrics.getConnections();
+    }
+    
+    @Override
+    public long getConnectionsRejected() {
+        return metrics.getRejected();
+    }
+    
+    @Override
+    public int getActiveSessions() {
+        return engine.getActiveSessions();
+    }
+    
+    @Override
+    public int getMaxSessions() {
+        return engine.getConfig().getMaxSessions();
+    }
+    
+    @Override
+    public long getHandshakeTimeouts() {
+        return metrics.getTimeouts(ServerMetrics.Phase.HANDSHAKE);
+    }
+    
+    @Override
+    public long getAnswerTimeouts() {
+        return metrics.getTimeouts(ServerMetrics.Phase.ANSWER);
+    }
+    
+    @Override
+    public long getWriteTimeouts() {
+        return metrics.getTimeouts(ServerMetrics.Phase.WRITE);
+    }
+    
+    @Override
+    public long getSessionsResumed() {
+        return metrics.getResumed();
+    }
+    
+    @Override
+    public long getResumesRefused() {
+        return metrics.getResumesRefused();
+    }
+    
+    // The store is only there while the engine runs with one, and the
+    // journal only on a server that is not a node of a cluster
+    @Override
+    public int getResumableSessions() {
+        SessionStore store = engine.getStore();
+        return store != null ? store.getSessions() : 0;
+    }
+    
+    @Override
+    public long getJournalRecords() {
+        SessionStore store = engine.getStore();
+        return store != null ? store.getRecords() : 0;
+    }
+    
+    @Override
+    public long getJournalCommits() {
+        SessionJournal journal = engine.getJournal();
+        return journal != null ? journal.getCommitTimes().getCount() : 0;
+    }
+    
+    @Override
+    public double getJournalCommitLatencyP99() {
+        SessionJournal journal = engine.getJournal();
+        return journal != null ? micros(journal.getCommitTimes(), 99) : 0;
+    }
+    
+    @Override
+    public int getLiveRooms() {
+        GameRooms rooms = engine.getRooms();
+        return rooms != null ? rooms.getRoomCount() : 0;
+    }
+    
+    @Override
+    public long getBroadcastFrames() {
+        return metrics.getBroadcastFrames();
+    }
+    
+    @Override
+    public long getBroadcastFramesDropped() {
+        return metrics.getBroadcastDropped();
+    }
+    
+    @Override
+    public long getAnswers() {
+        return metrics.getAnswers();
+    }
+    
+    @Override
+    public long getCorrectAnswers() {
+        return metrics.getCorrect();
+    }
+    
+    @Override
+    public long getIncorrectAnswers() {
+        return metrics.getIncorrect();
+    }
+    
+    @Override
+    public long getQuestionsExpired() {
+        return metrics.getExpired();
+    }
+    
+    @Override
+    public long getQuestionsSent() {
+        return metrics.getQuestionsSent();
+    }
+    
+    @Override
+    public long getQuestionsCached() {
+        return metrics.getQuestionsCached();
+    }
+    
+    @Override
+    public long getCompressedFrames() {
+        return metrics.getCompressTimes().getCount();
+    }
+    
+    @Override
+    public double getCompressionRatio() {
+        return metrics.getCompressionRatio();
+    }
+    
+    @Override
+    public double getCompressionCpuP50() {
+        return micros(metrics.getCompressTimes(), 50);
+    }
+    
+    @Override
+    public double getCompressionCpuP99() {
+        return micros(metrics.getCompressTimes(), 99);
+    }
+    
+    @Override
+    public long getDictionariesSent() {
+        return metrics.getDictionariesSent();
+    }
+    
+    @Override
+    public double getCorrectRatio() {
+        long answers = metrics.getAnswers();
+        return answers == 0 ? 0 : (double) metrics.getCorrect() / answers;
+    }
+    
+    // Over the time since the previous read, once that is at least a second
+    @Override
+    public synchronized double getAnswersPerSecond() {
+        long now = System.nanoTime();
+        long elapsed = now - rateTime;
+        if (elapsed >= 1_000_000_000L) {
+            long answers = metrics.getAnswers();
+            rate = (answers - rateAnswers) * 1e9 / elapsed;
+            rateAnswers = answers;
+            rateTime = now;
+        }
+        return rate;
+    }
+    
+    @Override
+    public double getGradeLatencyP50() {
+        return micros(metrics.getGradeTimes(), 50);
+    }
+    
+    @Override
+    public double getGradeLatencyP99() {
+        return micros(metrics.getGradeTimes(), 99);
+    }
+    
+    @Override
+    public double getGradeLatencyP999() {
+        return micros(metrics.getGradeTimes(), 99.9);
+    }
+    
+    @Override
+    public double getWriteLatencyP50() {
+        return micros(metrics.getWriteTimes(), 50);
+    }
+    
+    @Override
+    public double getWriteLatencyP99() {
+        return micros(metrics.getWriteTimes(), 99);
+    }
+    
+    @Override
+    public double getWriteLatencyP999() {
+        return micros(metrics.getWriteTimes(), 99.9);
+    }
+    
+    @Override
+    public long getWrites() {
+        return metrics.getWrites();
+    }
+    
+    @Override
+    public double getWritesPerAnswer() {
+        return metrics.getWritesPerAnswer();
+    }
+    
+    @Override
+    public int getExecutorQueueDepth() {
+        return engine.getExecutorQueueDepth();
+    }
+    
+    @Override
+    public int getQuestionBankVersion() {
+        return engine.getQuestionBank().getVersion();
+    }
+    
+    @Override
+    public int getQuestionCount() {
+        return engine.getQuestionCount();
+    }
+    
+    @Override
+    public long getLogEventsDropped() {
+        return engine.getLog().getDropped();
+    }
+    
+    private static double micros(LatencyHistogram histogram, double percentile) {
+        return histogram.getValueAtPercentile(percentile) / 1e3;
+    }
+    
+    // Prometheus text exposition format. Latency histograms are summaries
+    // in seconds with fixed quantiles.
+    public String render() {
+        StringBuilder out = new StringBuilder(2048);
+        counter(out, "quiz_connections_accepted_total", "Client connections accepted", getConnectionsAccepted());
+        counter(out, "quiz_connections_rejected_total", "Connections turned away because the server was full", getConnectionsRejected());
+        gauge(out, "quiz_sessions_active", "Sessions in progress", getActiveSessions());
+        gauge(out, "quiz_sessions_max", "Session limit, 0 if unlimited", getMaxSessions());
+        
+        header(out, "quiz_session_timeouts_total", "Sessions closed because a deadline passed", "counter");
+        for (ServerMetrics.Phase phase : ServerMetrics.Phase.values()) {
+            out.append("quiz_session_timeouts_total{phase=\"").append(phase.name().toLowerCase(Locale.ROOT)).append("\"} ")
+               .append(metrics.getTimeouts(phase)).append('\n');
+        }
+        
+        out.append("# HELP quiz_sessions_resumed_total Requests to resume a session\n");
+        out.append("# TYPE quiz_sessions_resumed_total counter\n");
+        out.append("quiz_sessions_resumed_total{result=\"resumed\"} ").append(getSessionsResumed()).append('\n');
+        out.append("quiz_sessions_resumed_total{result=\"refused\"} ").append(getResumesRefused()).append('\n');
+        SessionStore store = engine.getStore();
+        SessionJournal journal = engine.getJournal();
+        if (store instanceof RemoteSessionStore) {
+            gauge(out, "quiz_sessions_resumable", "Sessions in progress on this node, stored on the session store", store.getSessions());
+            counter(out, "quiz_store_records_total", "Answers sent to the session store", store.getRecords());
+        } else if (journal != null) {
+            gauge(out, "quiz_sessions_resumable", "Sessions in the journal, in progress or waiting to be resumed", journal.getSessions());
+            counter(out, "quiz_journal_records_total", "Records appended to the session journal", journal.getRecords());
+            counter(out, "quiz_journal_bytes_total", "Bytes appended to the session journal", journal.getBytesAppended());
+            summary(out, "quiz_journal_commit_seconds", "Time to force a batch of journal records to disk", journal.getCommitTimes());
+        }
+        
+        if (engine.getRooms() != null) {
+            gauge(out, "quiz_rooms_active", "Live game rooms in their lobby or playing", getLiveRooms());
+            counter(out, "quiz_room_broadcasts_total", "Live game frames encoded once for a whole room", metrics.getBroadcasts());
+            counter(out, "quiz_room_broadcast_frames_total", "Live game frames queued for players", getBroadcastFrames());
+            counter(out, "quiz_room_broadcast_dropped_total", "Live game frames dropped for players too far behind", getBroadcastFramesDropped());
+        }
+        
+        out.append("# HELP quiz_answers_total Answers graded\n");
+        out.append("# TYPE quiz_answers_total counter\n");
+        out.append("quiz_answers_total{result=\"correct\"} ").append(getCorrectAnswers()).append('\n');
+        out.append("quiz_answers_total{result=\"incorrect\"} ").append(getIncorrectAnswers()).append('\n');
+        counter(out, "quiz_questions_expired_total", "Timed questions graded as wrong because their deadline passed", getQuestionsExpired());
+        out.append("# HELP quiz_questions_sent_total Questions sent, in full or by position to clients that had them\n");
+        out.append("# TYPE quiz_questions_sent_total counter\n");
+        out.append("quiz_questions_sent_total{form=\"full\"} ").append(getQuestionsSent()).append('\n');
+        out.append("quiz_questions_sent_total{form=\"cached\"} ").append(getQuestionsCached()).append('\n');
+        out.append("# HELP quiz_compression_bytes_total Question payload bytes of compressed sessions, before and as sent\n");
+        out.append("# TYPE quiz_compression_bytes_total counter\n");
+        out.append("quiz_compression_bytes_total{stage=\"raw\"} ").append(metrics.getCompressionInput()).append('\n');
+        out.append("quiz_compression_bytes_total{stage=\"sent\"} ").append(metrics.getCompressionOutput()).append('\n');
+        gauge(out, "quiz_compression_ratio", "Question bytes before compression for each byte sent", getCompressionRatio());
+        summary(out, "quiz_compression_cpu_seconds", "CPU time to deflate one question", metrics.getCompressTimes());
+        counter(out, "quiz_compression_dictionaries_sent_total", "Compression dictionaries sent to clients that did not have them", getDictionariesSent());
+        gauge(out, "quiz_answers_per_second", "Answers graded per second since the previous scrape", getAnswersPerSecond());
+        gauge(out, "quiz_correct_ratio", "Share of answers that were correct", getCorrectRatio());
+        
+        summary(out, "quiz_grade_latency_seconds", "Time from decoding an answer to encoding its result", metrics.getGradeTimes());
+        summary(out, "quiz_write_latency_seconds", "Time spent in socket writes", metrics.getWriteTimes());
+        counter(out, "quiz_socket_writes_total", "Socket writes", getWrites());
+        
+        gauge(out, "quiz_executor_queue_depth", "Accepted connections waiting for a thread or event loop", getExecutorQueueDepth());
+        gauge(out, "quiz_question_bank_version", "Version of the current question bank", getQuestionBankVersion());
+        gauge(out, "quiz_questions", "Questions in the current bank", getQuestionCount());
+        counter(out, "quiz_log_dropped_total", "Log events dropped because the log buffer was full", getLogEventsDropped());
+        return out.toString();
+    }
+    
+    private static void counter(StringBuilder out, String name, String help, long value) {
+        header(out, name, help, "counter");
+        out.append(name).append(' ').append(value).append('\n');
+    }
+    
+    private static void gauge(StringBuilder out, String name, String help, double value) {
+        header(out, name, help, "gauge");
+        out.append(name).append(' ').append(number(value)).append('\n');
+    }
+    
+    private static void summary(StringBuilder out, String name, String help, LatencyHistogram histogram) {
+        header(out, name, help, "summary");
+        for (double quantile : QUANTILES) {
+            out.append(name).append("{quantile=\"").append(quantile).append("\"} ")
+               .append(number(histogram.getValueAtPercentile(quantile * 100) / 1e9)).append('\n');
+        }
+        out.append(name).append("_sum ").append(number(histogram.getSum() / 1e9)).append('\n');
+        out.append(name).append("_count ").append(histogram.getCount()).append('\n');
+    }
+    
+    private static void header(StringBuilder out, String name, String help, String type) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+    
+    private static String number(double value) {
+        return value == Math.rint(value) && Math.abs(value) < 1e15
+            ? Long.toString((long) value)
+            : Double.toString(value);
+    }
+}
\ No newline at end of file
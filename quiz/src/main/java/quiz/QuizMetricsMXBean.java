@@ -0,0 +1,87 @@
+package quiz;
+
+// Management interface of the engine's metrics, see QuizMetrics. Latencies
+// are in microseconds.
+public interface QuizMetricsMXBean {
+    long getConnectionsAccepted();
+    
+    long getConnectionsRejected();
+    
+    int getActiveSessions();
+    
+    int getMaxSessions();
+    
+    long getHandshakeTimeouts();
+    
+    long getAnswerTimeouts();
+    
+    long getWriteTimeouts();
+    
+    long getSessionsResumed();
+    
+    long getResumesRefused();
+    
+    int getResumableSessions();
+    
+    long getJournalRecords();
+    
+    long getJournalCommits();
+    
+    double getJournalCommitLatencyP99();
+    
+    int getLiveRooms();
+    
+    long getBroadcastFrames();
+    
+    long getBroadcastFramesDropped();
+    
+    long getAnswers();
+    
+    long getCorrectAnswers();
+    
+    long getIncorrectAnswers();
+    
+    long getQuestionsExpired();
+    
+    long getQuestionsSent();
+    
+    long getQuestionsCached();
+    
+    long getCompressedFrames();
+    
+    double getCompressionRatio();
+    
+    double getCompressionCpuP50();
+    
+    double getCompressionCpuP99();
+    
+    long getDictionariesSent();
+    
+    double getCorrectRatio();
+    
+    double getAnswersPerSecond();
+    
+    double getGradeLatencyP50();
+    
+    double getGradeLatencyP99();
+    
+    double getGradeLatencyP999();
+    
+    double getWriteLatencyP50();
+    
+    double getWriteLatencyP99();
+    
+    double getWriteLatencyP999();
+    
+    long getWrites();
+    
+    double getWritesPerAnswer();
+    
+    int getExecutorQueueDepth();
+    
+    int getQuestionBankVersion();
+    
+    int getQuestionCount();
+    
+    long getLogEventsDropped();
+}
\ No newline at end of file
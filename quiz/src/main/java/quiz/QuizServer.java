@@ -0,0 +1,402 @@
+package quiz;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.*;
+import javax.swing.table.DefaultTableModel;
+import javax.swing.text.BadLocationException;
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+// Swing monitor for the quiz server. All networking and quiz state lives in
+// QuizEngine, which also runs without this window (see main).
+public class QuizServer extends JFrame {
+    private JTextArea logArea;
+    private JButton startButton;
+    private JButton stopButton;
+    private JLabel statusLabel;
+    private JSpinner portSpinner;
+    private JTextField filePathField;
+    private JButton browseButton;
+    private JComboBox<ServerConfig.Engine> engineCombo;
+    private JLabel statsLabel;
+    private javax.swing.Timer statsTimer;
+    private javax.swing.Timer logTimer;
+    private JTabbedPane tabs;
+    private DefaultTableModel leaderboardModel;
+    private DefaultTableModel missedModel;
+    
+    private final ServerConfig config;
+    private QuizEngine engine;
+    private RuntimeStats runtimeStats;
+    private EventLog log;
+    private final StringBuilder pendingLog = new StringBuilder();
+    private boolean missedLoading = false;
+    
+    private static final int MAX_PENDING_LOG_CHARS = 256 * 1024;
+    private static final int MOST_MISSED_ROWS = 20;
+    
+    public QuizServer() {
+        this(new ServerConfig());
+    }
+    
+    public QuizServer(ServerConfig config) {
+        this.config = config;
+        
+        setTitle("Quiz Server");
+        setSize(600, 500);
+        setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+        
+        // Main panels
+        JPanel mainPanel = new JPanel(new BorderLayout(10, 10));
+        mainPanel.setBorder(BorderFactory.createEmptyBorder(10, 10, 10, 10));
+        
+        // Control panel
+        JPanel controlPanel = new JPanel(new GridBagLayout());
+        GridBagConstraints gbc = new GridBagConstraints();
+        gbc.fill = GridBagConstraints.HORIZONTAL;
+        gbc.insets = new Insets(5, 5, 5, 5);
+        
+        // File selection components
+        gbc.gridx = 0;
+        gbc.gridy = 0;
+        controlPanel.add(new JLabel("Questions File:"), gbc);
+        
+        filePathField = new JTextField(config.getQuestionFile(), 20);
+        gbc.gridx = 1;
+        gbc.weightx = 1.0;
+        controlPanel.add(filePathField, gbc);
+        
+        browseButton = new JButton("Browse");
+        gbc.gridx = 2;
+        gbc.weightx = 0;
+        controlPanel.add(browseButton, gbc);
+        
+        // Port configuration
+        gbc.gridx = 0;
+        gbc.gridy = 1;
+        controlPanel.add(new JLabel("Port:"), gbc);
+        
+        portSpinner = new JSpinner(new SpinnerNumberModel(config.getPort(), 1024, 65535, 1));
+        gbc.gridx = 1;
+        gbc.gridwidth = 2;
+        controlPanel.add(portSpinner, gbc);
+        
+        // Connection engine
+        gbc.gridx = 0;
+        gbc.gridy = 2;
+        gbc.gridwidth = 1;
+        controlPanel.add(new JLabel("Engine:"), gbc);
+        
+        engineCombo = new JComboBox<>(ServerConfig.Engine.values());
+        engineCombo.setSelectedItem(config.getEngine());
+        gbc.gridx = 1;
+        gbc.gridwidth = 2;
+        controlPanel.add(engineCombo, gbc);
+        
+        // Start/Stop buttons
+        JPanel buttonPanel = new JPanel(new FlowLayout(FlowLayout.CENTER));
+        startButton = new JButton("Start Server");
+        stopButton = new JButton("Stop Server");
+        stopButton.setEnabled(false);
+        buttonPanel.add(startButton);
+        buttonPanel.add(stopButton);
+        
+        gbc.gridx = 0;
+        gbc.gridy = 3;
+        gbc.gridwidth = 3;
+        controlPanel.add(buttonPanel, gbc);
+        
+        // Status label
+        statusLabel = new JLabel("Server Stopped", SwingConstants.CENTER);
+        statusLabel.setForeground(Color.RED);
+        gbc.gridx = 0;
+        gbc.gridy = 4;
+        controlPanel.add(statusLabel, gbc);
+        
+        // Session and thread usage, refreshed while the server runs
+        statsLabel = new JLabel(" ", SwingConstants.CENTER);
+        gbc.gridy = 5;
+        controlPanel.add(statsLabel, gbc);
+        statsTimer = new javax.swing.Timer(2000, e -> {
+            if (engine != null) {
+                statsLabel.setText(runtimeStats.sample(engine.getActiveSessions()) +
+                    String.format(" | Writes/answer: %.2f", engine.getMetrics().getWritesPerAnswer()) +
+                    " | Questions: v" + engine.getQuestionBank().getVersion());
+                refreshStatsTab();
+            }
+        });
+        
+        // Log area
+        logArea = new JTextArea();
+        logArea.setEditable(false);
+        JScrollPane scrollPane = new JScrollPane(logArea);
+        
+        // Log batches are collected off the EDT and shown at most once per frame
+        logTimer = new javax.swing.Timer(16, e -> showPendingLog());
+        logTimer.start();
+        try {
+            log = QuizEngine.createLog(config, this::queueLogText);
+        } catch (IOException e) {
+            log = new EventLog(config.getLogCapacity()).addSink(this::queueLogText);
+            log.message("Failed to open log file: " + e.getMessage());
+        }
+        log.start();
+        
+        // Live statistics, refreshed with the stats line while their tab is shown
+        leaderboardModel = readOnlyModel("#", "Player", "Score", "Answered");
+        missedModel = readOnlyModel("#", "Question", "Attempts", "Correct");
+        tabs = new JTabbedPane();
+        tabs.addTab("Log", scrollPane);
+        tabs.addTab("Leaderboard", new JScrollPane(new JTable(leaderboardModel)));
+        tabs.addTab("Most missed", new JScrollPane(new JTable(missedModel)));
+        tabs.addChangeListener(e -> refreshStatsTab());
+        
+        // Add components to main panel
+        mainPanel.add(controlPanel, BorderLayout.NORTH);
+        mainPanel.add(tabs, BorderLayout.CENTER);
+        
+        add(mainPanel);
+        
+        // Setup event listeners
+        setupListeners();
+        
+        // Center on screen
+        setLocationRelativeTo(null);
+    }
+    
+    private void setupListeners() {
+        browseButton.addActionListener(e -> {
+            JFileChooser fileChooser = new JFileChooser();
+            int result = fileChooser.showOpenDialog(this);
+            if (result == JFileChooser.APPROVE_OPTION) {
+                filePathField.setText(fileChooser.getSelectedFile().getAbsolutePath());
+            }
+        });
+        
+        startButton.addActionListener(e -> startServer());
+        
+        stopButton.addActionListener(e -> stopServer());
+        
+        addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosing(WindowEvent e) {
+                if (engine != null && engine.isRunning()) {
+                    stopServer();
+                }
+            }
+        });
+    }
+    
+    private void startServer() {
+        config.setQuestionFile(filePathField.getText().trim());
+        config.setPort((Integer) portSpinner.getValue());
+        config.setEngine((ServerConfig.Engine) engineCombo.getSelectedItem());
+        
+        QuizEngine newEngine = new QuizEngine(config, log);
+        
+        // Large question files take a while to parse, and starting opens and
+        // replays the session journal, so both happen off the event
+        // dispatch thread
+        startButton.setEnabled(false);
+        statusLabel.setText("Loading questions...");
+        new SwingWorker<Void, Void>() {
+            // Whether a failure came after the questions were loaded
+            private boolean loaded;
+            
+            @Override
+            protected Void doInBackground() throws IOException {
+                newEngine.loadQuestions();
+                loaded = true;
+                newEngine.start();
+                return null;
+            }
+            
+            @Override
+            protected void done() {
+                try {
+                    get();
+                } catch (InterruptedException | ExecutionException e) {
+                    Throwable cause = e.getCause() != null ? e.getCause() : e;
+                    startButton.setEnabled(true);
+                    statusLabel.setText("Server Stopped");
+                    if (loaded) {
+                        JOptionPane.showMessageDialog(QuizServer.this, 
+                            "Failed to start server: " + cause.getMessage(), 
+                            "Server Error", 
+                            JOptionPane.ERROR_MESSAGE);
+                        log.message("Error: " + cause.getMessage());
+                    } else {
+                        JOptionPane.showMessageDialog(QuizServer.this, 
+                            cause.getMessage(), 
+                            "File Error", 
+                            cause instanceof FileNotFoundException ? JOptionPane.ERROR_MESSAGE : JOptionPane.WARNING_MESSAGE);
+                    }
+                    return;
+                }
+                engineStarted(newEngine);
+            }
+        }.execute();
+    }
+    
+    private void engineStarted(QuizEngine newEngine) {
+        engine = newEngine;
+        
+        // Update UI
+        startButton.setEnabled(false);
+        stopButton.setEnabled(true);
+        portSpinner.setEnabled(false);
+        filePathField.setEnabled(false);
+        browseButton.setEnabled(false);
+        engineCombo.setEnabled(false);
+        statusLabel.setText("Server Running on port " + config.getPort());
+        statusLabel.setForeground(Color.GREEN);
+        
+        runtimeStats = new RuntimeStats();
+        statsTimer.start();
+    }
+    
+    private void stopServer() {
+        if (engine != null) {
+            engine.stop();
+        }
+        
+        // Update UI
+        SwingUtilities.invokeLater(() -> {
+            startButton.setEnabled(true);
+            stopButton.setEnabled(false);
+            portSpinner.setEnabled(true);
+            filePathField.setEnabled(true);
+            browseButton.setEnabled(true);
+            engineCombo.setEnabled(true);
+            statusLabel.setText("Server Stopped");
+            statusLabel.setForeground(Color.RED);
+            statsTimer.stop();
+            statsLabel.setText(" ");
+        });
+    }
+    
+    private static DefaultTableModel readOnlyModel(Object... columns) {
+        return new DefaultTableModel(columns, 0) {
+            @Override
+            public boolean isCellEditable(int row, int column) {
+                return false;
+            }
+        };
+    }
+    
+    // Only the visible tab is rebuilt; finding the most missed questions
+    // reads the counters of the whole bank
+    private void refreshStatsTab() {
+        QuizEngine current = engine;
+        if (current == null || !current.isRunning()) {
+            return;
+        }
+        String shown = tabs.getTitleAt(tabs.getSelectedIndex());
+        if (shown.equals("Leaderboard")) {
+            List<Leaderboard.Standing> standings = current.getLeaderboard().top(Integer.MAX_VALUE);
+            leaderboardModel.setRowCount(0);
+            for (int i = 0; i < standings.size(); i++) {
+                Leaderboard.Standing standing = standings.get(i);
+                leaderboardModel.addRow(new Object[] {i + 1, standing.name, standing.score, standing.answered});
+            }
+        } else if (shown.equals("Most missed") && !missedLoading) {
+            // Ranking scans the whole bank, so it runs off the event dispatch
+            // thread and only the rows come back; one scan at a time
+            missedLoading = true;
+            QuestionBank bank = current.getQuestionBank();
+            new SwingWorker<List<Object[]>, Void>() {
+                @Override
+                protected List<Object[]> doInBackground() {
+                    QuestionStats stats = bank.getStats();
+                    List<Object[]> rows = new ArrayList<>();
+                    for (int index : stats.mostMissed(MOST_MISSED_ROWS)) {
+                        long attempts = stats.getAttempts(index);
+                        long correct = stats.getCorrect(index);
+                        rows.add(new Object[] {index + 1, bank.get(index).getQuestion(), attempts,
+                            String.format("%d%%", attempts > 0 ? Math.round(100.0 * correct / attempts) : 0)});
+                    }
+                    return rows;
+                }
+                
+                @Override
+                protected void done() {
+                    missedLoading = false;
+                    List<Object[]> rows;
+                    try {
+                        rows = get();
+                    } catch (InterruptedException | ExecutionException e) {
+                        log.message("Failed to rank missed questions: " + e.getMessage());
+                        return;
+                    }
+                    missedModel.setRowCount(0);
+                    for (Object[] row : rows) {
+                        missedModel.addRow(row);
+                    }
+                }
+            }.execute();
+        }
+    }
+    
+    // Called by the log drain thread
+    private void queueLogText(String batch) {
+        synchronized (pendingLog) {
+            pendingLog.append(batch);
+            // Only the tail is ever shown, so never hold more than that
+            if (pendingLog.length() > MAX_PENDING_LOG_CHARS) {
+                pendingLog.delete(0, pendingLog.length() - MAX_PENDING_LOG_CHARS);
+            }
+        }
+    }
+    
+    private void showPendingLog() {
+        String text;
+        synchronized (pendingLog) {
+            if (pendingLog.length() == 0) {
+                return;
+            }
+            text = pendingLog.toString();
+            pendingLog.setLength(0);
+        }
+        
+        logArea.append(text);
+        
+        // Keep only the most recent lines
+        int excess = logArea.getLineCount() - 1 - config.getLogUiLines();
+        if (excess > 0) {
+            try {
+                logArea.replaceRange(null, 0, logArea.getLineStartOffset(excess));
+            } catch (BadLocationException e) {
+                logArea.setText("");
+            }
+        }
+        
+        // Auto-scroll to bottom
+        logArea.setCaretPosition(logArea.getDocument().getLength());
+    }
+    
+    public static void main(String[] args) {
+        ServerConfig config;
+        try {
+            config = ServerConfig.fromArgs(args);
+        } catch (IllegalArgumentException | IOException e) {
+            System.err.println(e.getMessage());
+            System.err.println(ServerConfig.usage());
+            System.exit(2);
+            return;
+        }
+        
+        // No display, or asked not to use one: run the bare engine
+        if (config.isHeadless() || GraphicsEnvironment.isHeadless()) {
+            QuizEngine.runHeadless(config);
+            return;
+        }
+        
+        SwingUtilities.invokeLater(() -> {
+            QuizServer server = new QuizServer(config);
+            server.setVisible(true);
+        });
+    }
+}
\ No newline at end of file
@@ -0,0 +1,502 @@
+package quiz;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.security.SecureRandom;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+// Session store of a cluster node: the client side of a StoreServer.
+//
+// Every session on the node shares one connection. Requests are queued in
+// a buffer that a sender thread writes out in batches, and a receiver
+// thread takes the replies, which come in request order. A session that
+// must not reply before its answer is stored waits for the reply to its
+// RECORD; one round trip covers every answer sent in the same batch, much
+// like a group commit of the journal.
+//
+// A store that cannot be reached is treated like a failed journal: the
+// node goes on, only sessions can no longer be resumed. The node has to be
+// restarted to reconnect.
+//
+// Sessions on virtual threads wait for acknowledgements, so those go
+// through a ReentrantLock rather than a monitor, which would pin their
+// carriers.
+class RemoteSessionStore implements SessionStore {
+    private static final int TOKEN_SIZE = 16;
+    private static final int CONNECT_TIMEOUT_MILLIS = 5000;
+    private static final long REPLY_TIMEOUT_MILLIS = 10_000;
+    private static final long LEADERBOARD_SYNC_MILLIS = 1000;
+    private static final HexFormat HEX = HexFormat.of();
+    
+    // Takes one reply off the connection; type is -1 if none will come
+    private interface Reply {
+        void receive(int type, FrameReader in) throws IOException;
+    }
+    
+    private static final Reply ACK = (type, in) -> { };
+    
+    private final String address;
+    private final Socket socket;
+    private final OutputStream out;
+    private final FrameReader in;
+    private final SessionJournal.Sync sync;
+    private final EventLog log;
+    private final SecureRandom random = new SecureRandom();
+    private final Thread sender;
+    private final Thread receiver;
+    private final AtomicInteger held = new AtomicInteger();
+    private final AtomicLong records = new AtomicLong();
+    private volatile Predicate<String> tokenFilter = token -> true;
+    private volatile Leaderboard leaderboard;
+    
+    // Guarded by this: requests not yet written and the replies still due,
+    // in the order the requests were queued
+    private FrameBuffer queued = new FrameBuffer(8192);
+    private final ArrayDeque<Reply> due = new ArrayDeque<>();
+    private long requests = 0;
+    
+    // Written under ackLock
+    private final ReentrantLock ackLock = new ReentrantLock();
+    private final Condition acked = ackLock.newCondition();
+    private final DurableActions durableActions = new DurableActions();
+    private volatile long acknowledged = 0;
+    private volatile boolean failed = false;
+    private volatile boolean open = true;
+    
+    private final class RemoteClaim extends Claim {
+        private final String token;
+        private final long bankHash;
+        // Whether the store has heard of the session; only touched by the
+        // thread running it
+        private boolean stored;
+        
+        RemoteClaim(String token, long bankHash, int[] indices, BitSet graded, int score, int answered, boolean stored) {
+            super(indices, graded, score, answered);
+            this.token = token;
+            this.bankHash = bankHash;
+            this.stored = stored;
+        }
+        
+        @Override
+        String getToken() {
+            return token;
+        }
+    }
+    
+    private RemoteSessionStore(String address, Socket socket, SessionJournal.Sync sync, EventLog log) throws IOException {
+        this.address = address;
+        this.socket = socket;
+        this.out = socket.getOutputStream();
+        this.in = new FrameReader(socket.getInputStream());
+        this.sync = sync;
+        this.log = log;
+        this.sender = new Thread(this::sendLoop, "quiz-store-sender");
+        this.sender.setDaemon(true);
+        this.receiver = new Thread(this::receiveLoop, "quiz-store-receiver");
+        this.receiver.setDaemon(true);
+    }
+    
+    // Address as host:port. With asynchronous sync, replies to clients do
+    // not wait for the store.
+    static RemoteSessionStore connect(String address, SessionJournal.Sync sync, EventLog log) throws IOException {
+        String[] hostPort;
+        try {
+            hostPort = ClusterRing.parseAddress(address);
+        } catch (IllegalArgumentException e) {
+            throw new IOException(e.getMessage());
+        }
+        Socket socket = new Socket();
+        try {
+            socket.connect(new InetSocketAddress(hostPort[0], Integer.parseInt(hostPort[1])), CONNECT_TIMEOUT_MILLIS);
+            socket.setTcpNoDelay(true);
+            RemoteSessionStore store = new RemoteSessionStore(address, socket, sync, log);
+            store.sender.start();
+            store.receiver.start();
+            log.message("Sessions are stored on " + address);
+            return store;
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+    }
+    
+    // Nothing is sent until the session's first answer. Returns null once
+    // the store has failed.
+    @Override
+    public Claim start(long bankHash, int[] indices) {
+        if (failed) {
+            return null;
+        }
+        Predicate<String> accept = tokenFilter;
+        byte[] bytes = new byte[TOKEN_SIZE];
+        String token;
+        do {
+            random.nextBytes(bytes);
+            token = HEX.formatHex(bytes);
+        } while (!accept.test(token));
+        held.incrementAndGet();
+        return new RemoteClaim(token, bankHash, indices, new BitSet(), 0, 0, false);
+    }
+    
+    // Asks the store and waits for its reply, so the caller blocks for a
+    // round trip
+    @Override
+    public Claim resume(String token, long bankHash) {
+        if (token == null || failed) {
+            return null;
+        }
+        Claim claim = await(requestResume(token, bankHash));
+        if (claim != null) {
+            held.incrementAndGet();
+        }
+        return claim;
+    }
+    
+    // The receiver hands over the reply, or a timer gives up on it
+    @Override
+    public void whenResumed(String token, long bankHash, Consumer<Claim> action) {
+        if (token == null || failed) {
+            action.accept(null);
+            return;
+        }
+        requestResume(token, bankHash).completeOnTimeout(null, REPLY_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS).thenAccept(claim -> {
+            if (claim != null) {
+                held.incrementAndGet();
+            }
+            action.accept(claim);
+        });
+    }
+    
+    // Completes with null if the request could not be sent
+    private CompletableFuture<Claim> requestResume(String token, long bankHash) {
+        String key = token.toLowerCase();
+        CompletableFuture<Claim> reply = new CompletableFuture<>();
+        boolean sent = enqueue(out -> StoreProtocol.resume(out, key, bankHash), (type, in) -> {
+            reply.complete(type == StoreProtocol.RESUMED ? readClaim(key, bankHash, in) : null);
+        });
+        if (!sent) {
+            reply.complete(null);
+        }
+        return reply;
+    }
+    
+    // Returns the sequence number of the request, or 0 if nothing was sent
+    @Override
+    public long record(Claim claim, int question, boolean correct) {
+        RemoteClaim remote = (RemoteClaim) claim;
+        long position;
+        synchronized (this) {
+            if (failed) {
+                return 0;
+            }
+            if (!remote.stored) {
+                StoreProtocol.start(queued, remote.token, remote.bankHash, remote.indices);
+                due.add(ACK);
+                requests++;
+                remote.stored = true;
+            }
+            StoreProtocol.record(queued, remote.token, question, correct);
+            due.add(ACK);
+            position = ++requests;
+            notifyAll();
+        }
+        records.incrementAndGet();
+        return position;
+    }
+    
+    @Override
+    public void finish(Claim claim) {
+        end(StoreProtocol.FINISH, (RemoteClaim) claim);
+    }
+    
+    @Override
+    public void release(Claim claim) {
+        end(StoreProtocol.RELEASE, (RemoteClaim) claim);
+    }
+    
+    private void end(int type, RemoteClaim claim) {
+        held.decrementAndGet();
+        if (claim.stored) {
+            enqueue(out -> StoreProtocol.session(out, type, claim.token), ACK);
+        }
+    }
+    
+    // Waits for the store to acknowledge every request up to position
+    @Override
+    public void awaitDurable(long position) throws InterruptedIOException {
+        if (sync == SessionJournal.Sync.ASYNC || position <= acknowledged) {
+            return;
+        }
+        ackLock.lock();
+        try {
+            while (acknowledged < position && !failed && open) {
+                acked.await();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for the session store");
+        } finally {
+            ackLock.unlock();
+        }
+    }
+    
+    // The same without blocking; the receiver runs the action
+    @Override
+    public void whenDurable(long position, Runnable action) {
+        if (sync != SessionJournal.Sync.ASYNC && position > acknowledged) {
+            ackLock.lock();
+            try {
+                if (acknowledged < position && !failed && open) {
+                    durableActions.add(position, action);
+                    return;
+                }
+            } finally {
+                ackLock.unlock();
+            }
+        }
+        action.run();
+    }
+    
+    // Sessions this node holds; the store keeps the ones waiting to be resumed
+    @Override
+    public int getSessions() {
+        return Math.max(0, held.get());
+    }
+    
+    @Override
+    public long getRecords() {
+        return records.get();
+    }
+    
+    @Override
+    public void restrictTokens(Predicate<String> accept) {
+        tokenFilter = accept;
+    }
+    
+    // Scores the board accepts go to the store, and the store's best
+    // standings are merged back in every second
+    @Override
+    public void shareLeaderboard(Leaderboard leaderboard) {
+        this.leaderboard = leaderboard;
+        leaderboard.forwardTo((token, name, score, answered) ->
+            enqueue(out -> StoreProtocol.score(out, token, name, score, answered), ACK));
+    }
+    
+    @Override
+    public void close() {
+        Leaderboard board = leaderboard;
+        if (board != null) {
+            board.forwardTo(null);
+        }
+        synchronized (this) {
+            open = false;
+            notifyAll();
+        }
+        try {
+            sender.join(REPLY_TIMEOUT_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // Closed anyway
+        }
+        wakeAll();
+    }
+    
+    private interface Request {
+        void encode(FrameBuffer out);
+    }
+    
+    private synchronized boolean enqueue(Request request, Reply reply) {
+        if (failed || !open) {
+            return false;
+        }
+        request.encode(queued);
+        due.add(reply);
+        requests++;
+        notifyAll();
+        return true;
+    }
+    
+    private static Claim await(CompletableFuture<Claim> reply) {
+        try {
+            return reply.get(REPLY_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException | TimeoutException e) {
+            return null;
+        }
+    }
+    
+    private Claim readClaim(String token, long bankHash, FrameReader in) throws IOException {
+        if (!in.readBoolean()) {
+            return null;
+        }
+        int count = in.readVarint();
+        int[] indices = null;
+        if (count > 0) {
+            indices = new int[count - 1];
+            for (int i = 0; i < indices.length; i++) {
+                indices[i] = in.readVarint();
+            }
+        }
+        int score = in.readVarint();
+        int answered = in.readVarint();
+        BitSet graded = new BitSet();
+        for (int i = 0; i < answered; i++) {
+            graded.set(in.readVarint());
+        }
+        return new RemoteClaim(token, bankHash, indices, graded, score, answered, true);
+    }
+    
+    private List<Leaderboard.Standing> readStandings(FrameReader in) throws IOException {
+        int count = in.readVarint();
+        List<Leaderboard.Standing> standings = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String token = in.readString();
+            String name = in.readString();
+            int score = in.readVarint();
+            standings.add(new Leaderboard.Standing(token, name, score, in.readVarint()));
+        }
+        return standings;
+    }
+    
+    // Writes whatever was queued since the last pass in one go, and asks
+    // for the shared leaderboard when it is due
+    private void sendLoop() {
+        FrameBuffer writing = new FrameBuffer(8192);
+        long nextSync = System.nanoTime();
+        try {
+            while (true) {
+                synchronized (this) {
+                    Leaderboard board = leaderboard;
+                    while (queued.length() == 0 && open && !failed && (board == null || System.nanoTime() - nextSync < 0)) {
+                        // Without a board to keep in step, only new requests end the wait
+                        wait(board == null ? 0 : Math.max(1, TimeUnit.NANOSECONDS.toMillis(nextSync - System.nanoTime())));
+                        board = leaderboard;
+                    }
+                    if (failed || (!open && queued.length() == 0)) {
+                        return;
+                    }
+                    if (board != null && open && System.nanoTime() - nextSync >= 0) {
+                        Leaderboard target = board;
+                        StoreProtocol.top(queued, board.getCapacity());
+                        due.add((type, in) -> {
+                            if (type == StoreProtocol.STANDINGS) {
+                                target.merge(readStandings(in));
+                            }
+                        });
+                        requests++;
+                        nextSync = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(LEADERBOARD_SYNC_MILLIS);
+                    }
+                    FrameBuffer batch = queued;
+                    queued = writing;
+                    writing = batch;
+                }
+                writing.writeTo(out);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+    
+    // Replies come in request order; waiters are woken once per batch
+    private void receiveLoop() {
+        long received = 0;
+        try {
+            int type;
+            while ((type = in.readFrame()) >= 0) {
+                Reply reply;
+                synchronized (this) {
+                    reply = due.poll();
+                }
+                if (reply == null) {
+                    throw new IOException("Unexpected reply from the session store");
+                }
+                reply.receive(type, in);
+                received++;
+                if (!in.hasBuffered()) {
+                    List<Runnable> ready;
+                    ackLock.lock();
+                    try {
+                        acknowledged = received;
+                        ready = durableActions.takeUpTo(received);
+                        acked.signalAll();
+                    } finally {
+                        ackLock.unlock();
+                    }
+                    DurableActions.run(ready);
+                }
+            }
+            throw new EOFException("Session store closed the connection");
+        } catch (IOException e) {
+            if (open) {
+                fail(e);
+            }
+        }
+    }
+    
+    // Replies still due will never come
+    private void fail(IOException e) {
+        List<Reply> lost;
+        synchronized (this) {
+            if (failed) {
+                return;
+            }
+            failed = true;
+            lost = new ArrayList<>(due);
+            due.clear();
+            notifyAll();
+        }
+        log.message("Session store " + address + " failed, sessions can no longer be resumed: " + e.getMessage());
+        for (Reply reply : lost) {
+            try {
+                reply.receive(-1, null);
+            } catch (IOException ignored) {
+                // Nothing to read
+            }
+        }
+        try {
+            socket.close();
+        } catch (IOException ignored) {
+            // Closed anyway
+        }
+        wakeAll();
+    }
+    
+    // Nothing more will be acknowledged, so nobody waits any longer
+    private void wakeAll() {
+        List<Runnable> ready;
+        ackLock.lock();
+        try {
+            ready = durableActions.takeAll();
+            acked.signalAll();
+        } finally {
+            ackLock.unlock();
+        }
+        DurableActions.run(ready);
+    }
+}
\ No newline at end of file
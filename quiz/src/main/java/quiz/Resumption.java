@@ -0,0 +1,18 @@
+package quiz;
+
+// Resumable sessions. A server that journals sessions sends SESSION:<token>
+// before TOTAL. A client that lost its connection, or whose server was
+// restarted, reconnects and sends RESUME:<token> as its first line. The
+// server answers RESUME:OK:<answered>:<score>, restates TOTAL and carries on
+// with the questions that are still open, or RESUME:UNKNOWN, in which case
+// the new session simply starts from the beginning. A session that finished
+// a few minutes ago or less resumes with nothing open, so the server
+// repeats its final score and FINISHED.
+//
+// The request is a text line and goes before any PIPELINE or UPGRADE request.
+class Resumption {
+    static final String TOKEN_PREFIX = "SESSION:";
+    static final String REQUEST_PREFIX = "RESUME:";
+    static final String RESUMED_PREFIX = "RESUME:OK:";
+    static final String UNKNOWN = "RESUME:UNKNOWN";
+}
\ No newline at end of file
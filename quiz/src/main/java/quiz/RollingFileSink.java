@@ -0,0 +1,67 @@
+package quiz;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+
+// Appends log batches to a file, rolling it over to name.1 .. name.N once it
+// grows past the size limit
+class RollingFileSink implements EventLog.Sink {
+    private final File file;
+    private final long maxBytes;
+    private final int maxFiles;
+    
+    private OutputStream out;
+    private long size;
+    
+    public RollingFileSink(File file, long maxBytes, int maxFiles) throws IOException {
+        this.file = file;
+        this.maxBytes = maxBytes;
+        this.maxFiles = Math.max(1, maxFiles);
+        open();
+    }
+    
+    @Override
+    public void write(String batch) {
+        try {
+            byte[] bytes = batch.getBytes(StandardCharsets.UTF_8);
+            if (size > 0 && size + bytes.length > maxBytes) {
+                roll();
+            }
+            out.write(bytes);
+            out.flush();
+            size += bytes.length;
+        } catch (IOException e) {
+            System.err.println("Error writing log file: " + e.getMessage());
+        }
+    }
+    
+    @Override
+    public void close() {
+        try {
+            out.close();
+        } catch (IOException e) {
+            System.err.println("Error closing log file: " + e.getMessage());
+        }
+    }
+    
+    private void open() throws IOException {
+        out = new BufferedOutputStream(new FileOutputStream(file, true), 64 * 1024);
+        size = file.length();
+    }
+    
+    private void roll() throws IOException {
+        out.close();
+        for (int i = maxFiles - 1; i >= 1; i--) {
+            File older = new File(file.getPath() + "." + i);
+            if (older.exists()) {
+                File target = new File(file.getPath() + "." + (i + 1));
+                target.delete();
+                older.renameTo(target);
+            }
+        }
+        File first = new File(file.getPath() + ".1");
+        first.delete();
+        file.renameTo(first);
+        open();
+    }
+}
\ No newline at end of file
@@ -0,0 +1,61 @@
+package quiz;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+
+// Samples thread and heap usage so the cost of idle sessions can be checked
+// while the server is running
+class RuntimeStats {
+    // The threads VirtualThread's scheduler mounts virtual threads on; other
+    // fork/join pools, such as the parser's, have plain worker threads
+    private static final String CARRIER_CLASS = "jdk.internal.misc.CarrierThread";
+    
+    private final boolean virtualThreads = ExecutorStrategy.VIRTUAL_THREADS.isSupported();
+    private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    private final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+    private final long baselineHeap;
+    
+    public RuntimeStats() {
+        baselineHeap = heapUsed();
+    }
+    
+    public String sample(int activeSessions) {
+        long heapGrowth = Math.max(0, heapUsed() - baselineHeap);
+        StringBuilder text = new StringBuilder();
+        text.append("Sessions: ").append(activeSessions);
+        text.append(" | Platform threads: ").append(threads.getThreadCount());
+        text.append(" | Carriers busy: ").append(virtualThreads ? carriers() : "n/a");
+        text.append(" | Heap: ").append(heapUsed() / (1024 * 1024)).append(" MB");
+        if (activeSessions > 0) {
+            text.append(" (~").append(heapGrowth / activeSessions / 1024).append(" KB/session)");
+        }
+        return text.toString();
+    }
+    
+    // Busy and total carrier threads, as "busy/total"
+    private String carriers() {
+        ThreadGroup root = Thread.currentThread().getThreadGroup();
+        while (root.getParent() != null) {
+            root = root.getParent();
+        }
+        Thread[] all = new Thread[root.activeCount() * 2 + 16];
+        int count = root.enumerate(all, true);
+        int carriers = 0;
+        int busyCarriers = 0;
+        for (int i = 0; i < count; i++) {
+            if (!all[i].getClass().getName().equals(CARRIER_CLASS)) {
+                continue;
+            }
+            carriers++;
+            if (all[i].getState() == Thread.State.RUNNABLE) {
+                busyCarriers++;
+            }
+        }
+        return busyCarriers + "/" + carriers;
+    }
+    
+    private long heapUsed() {
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+}
\ No newline at end of file
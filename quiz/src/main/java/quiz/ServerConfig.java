@@ -0,0 +1,552 @@
+package quiz;
+
+import java.io.*;
+import java.util.Properties;
+
+// Server settings, read from command line arguments and an optional properties file
+class ServerConfig {
+    // Connection engines the server can run on
+    enum Engine {
+        THREADS("Thread per client"),
+        VIRTUAL("Virtual threads"),
+        NIO("NIO selector");
+        
+        private final String label;
+        
+        Engine(String label) {
+            this.label = label;
+        }
+        
+        @Override
+        public String toString() {
+            return label;
+        }
+    }
+    
+    // How a loaded question bank is kept in memory
+    enum QuestionLayout {
+        OBJECTS("Java objects"),
+        COLUMNAR("Columnar, off-heap text"),
+        CACHED("Columnar with a question cache");
+        
+        private final String label;
+        
+        QuestionLayout(String label) {
+            this.label = label;
+        }
+        
+        @Override
+        public String toString() {
+            return label;
+        }
+    }
+    
+    private int port = 12345;
+    private String questionFile = "questions.txt";
+    private boolean questionWatch = true;
+    private boolean questionSync = true;
+    private boolean questionSnapshot = true;
+    private QuestionLayout questionLayout = QuestionLayout.OBJECTS;
+    private int questionCacheSize = 10000;
+    private int quizSize = 0;
+    private String quizCategory = null;
+    private Engine engine = Engine.THREADS;
+    private int nioLoops = NioQuizServer.defaultLoopCount();
+    private boolean headless = false;
+    private int logCapacity = 8192;
+    private String logFile = null;
+    private long logMaxBytes = 10L * 1024 * 1024;
+    private int logFiles = 5;
+    private int logUiLines = 1000;
+    private boolean binaryEnabled = true;
+    private int pipelineWindow = 4;
+    private boolean compression = true;
+    private int compressionDictionary = Compression.DEFAULT_DICTIONARY_SIZE;
+    private int maxSessions = 10000;
+    private int acceptBacklog = 1024;
+    private long handshakeTimeout = 120_000;
+    private long answerTimeout = 300_000;
+    private long writeTimeout = 10_000;
+    private int metricsPort = 0;
+    private boolean metricsJmx = true;
+    private String journalFile = "sessions.journal";
+    private SessionJournal.Sync journalSync = SessionJournal.Sync.GROUP;
+    private long journalMaxBytes = 64L * 1024 * 1024;
+    private long journalRetainMinutes = 24 * 60;
+    private int leaderboardSize = 10;
+    private String store = null;
+    private String clusterNodes = null;
+    private String clusterSelf = null;
+    private long clusterRouteWait = 1000;
+    private boolean roomsEnabled = true;
+    private int roomQuestions = 10;
+    private long roomLobbyMillis = 15_000;
+    private long roomAnswerMillis = 20_000;
+    private long roomPauseMillis = 5_000;
+    
+    // Accepts "--key value" and "--key=value". A --config file is applied
+    // first so that explicit arguments override it.
+    public static ServerConfig fromArgs(String[] args) throws IOException {
+        ServerConfig config = new ServerConfig();
+        Properties options = new Properties();
+        
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (!arg.startsWith("--")) {
+                throw new IllegalArgumentException("Unexpected argument: " + arg);
+            }
+            
+            String key = arg.substring(2);
+            String value;
+            int equals = key.indexOf('=');
+            if (equals >= 0) {
+                value = key.substring(equals + 1);
+                key = key.substring(0, equals);
+            } else if (key.equals("headless")) {
+                value = "true";
+            } else if (i + 1 < args.length) {
+                value = args[++i];
+            } else {
+                throw new IllegalArgumentException("Missing value for " + arg);
+            }
+            options.setProperty(key, value);
+        }
+        
+        String configFile = options.getProperty("config");
+        if (configFile != null) {
+            Properties fileOptions = new Properties();
+            try (Reader reader = new InputStreamReader(new FileInputStream(configFile), "UTF-8")) {
+                fileOptions.load(reader);
+            }
+            config.apply(fileOptions);
+        }
+        config.apply(options);
+        return config;
+    }
+    
+    public void apply(Properties options) {
+        for (String key : options.stringPropertyNames()) {
+            String value = options.getProperty(key).trim();
+            switch (key) {
+                case "port":
+                    port = parseInt(key, value);
+                    break;
+                case "questions":
+                    questionFile = value;
+                    break;
+                case "engine":
+                    engine = parseEngine(value);
+                    break;
+                case "nio.loops":
+                    nioLoops = Math.max(1, parseInt(key, value));
+                    break;
+                case "headless":
+                    headless = Boolean.parseBoolean(value);
+                    break;
+                case "log.capacity":
+                    logCapacity = Math.max(2, parseInt(key, value));
+                    break;
+                case "log.file":
+                    logFile = value.isEmpty() ? null : value;
+                    break;
+                case "log.maxBytes":
+                    logMaxBytes = Math.max(1024, parseLong(key, value));
+                    break;
+                case "log.files":
+                    logFiles = Math.max(1, parseInt(key, value));
+                    break;
+                case "log.uiLines":
+                    logUiLines = Math.max(1, parseInt(key, value));
+                    break;
+                case "binary":
+                    binaryEnabled = Boolean.parseBoolean(value);
+                    break;
+                case "compression":
+                    compression = Boolean.parseBoolean(value);
+                    break;
+                case "compression.dictionary":
+                    compressionDictionary = Math.min(Compression.MAX_DICTIONARY_SIZE, Math.max(0, parseInt(key, value)));
+                    break;
+                case "questions.watch":
+                    questionWatch = Boolean.parseBoolean(value);
+                    break;
+                case "questions.sync":
+                    questionSync = Boolean.parseBoolean(value);
+                    break;
+                case "questions.snapshot":
+                    questionSnapshot = Boolean.parseBoolean(value);
+                    break;
+                case "questions.layout":
+                    questionLayout = parseLayout(value);
+                    break;
+                case "questions.cacheSize":
+                    questionCacheSize = Math.max(16, parseInt(key, value));
+                    break;
+                case "quiz.size":
+                    quizSize = Math.max(0, parseInt(key, value));
+                    break;
+                case "quiz.category":
+                    quizCategory = value.trim().isEmpty() ? null : value.trim();
+                    break;
+                case "pipeline.window":
+                    pipelineWindow = Math.max(0, parseInt(key, value));
+                    break;
+                case "sessions.max":
+                    maxSessions = Math.max(0, parseInt(key, value));
+                    break;
+                case "accept.backlog":
+                    acceptBacklog = Math.max(1, parseInt(key, value));
+                    break;
+                case "timeout.handshake":
+                    handshakeTimeout = Math.max(0, parseLong(key, value));
+                    break;
+                case "timeout.answer":
+                    answerTimeout = Math.max(0, parseLong(key, value));
+                    break;
+                case "timeout.write":
+                    writeTimeout = Math.max(0, parseLong(key, value));
+                    break;
+                case "metrics.port":
+                    metricsPort = Math.max(0, parseInt(key, value));
+                    break;
+                case "metrics.jmx":
+                    metricsJmx = Boolean.parseBoolean(value);
+                    break;
+                case "journal.file":
+                    journalFile = value.isEmpty() ? null : value;
+                    break;
+                case "journal.sync":
+                    journalSync = parseSync(value);
+                    break;
+                case "journal.maxBytes":
+                    journalMaxBytes = Math.max(1024 * 1024, parseLong(key, value));
+                    break;
+                case "journal.retain":
+                    journalRetainMinutes = Math.max(1, parseLong(key, value));
+                    break;
+                case "leaderboard.size":
+                    leaderboardSize = Math.max(1, parseInt(key, value));
+                    break;
+                case "store":
+                    store = value.isEmpty() ? null : value;
+                    break;
+                case "cluster.nodes":
+                    clusterNodes = value.isEmpty() ? null : value;
+                    break;
+                case "cluster.self":
+                    clusterSelf = value.isEmpty() ? null : value;
+                    break;
+                case "cluster.routeWait":
+                    clusterRouteWait = Math.max(1, parseLong(key, value));
+                    break;
+                case "rooms":
+                    roomsEnabled = Boolean.parseBoolean(value);
+                    break;
+                case "room.questions":
+                    roomQuestions = Math.max(0, parseInt(key, value));
+                    break;
+                case "room.lobby":
+                    roomLobbyMillis = Math.max(0, parseLong(key, value));
+                    break;
+                case "room.answer":
+                    roomAnswerMillis = Math.max(100, parseLong(key, value));
+                    break;
+                case "room.pause":
+                    roomPauseMillis = Math.max(0, parseLong(key, value));
+                    break;
+                case "config":
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option: " + key);
+            }
+        }
+    }
+    
+    public static String usage() {
+        return "Options:\n" +
+               "  --port <port>            port to listen on (default 12345)\n" +
+               "  --questions <file>       question file (default questions.txt)\n" +
+               "  --questions.watch <bool> reload the question file when it changes (default true)\n" +
+               "  --questions.sync <bool>  name questions by content hash so returning clients only get\n" +
+               "                           the ones they have not seen in full (default true)\n" +
+               "  --questions.snapshot <bool>\n" +
+               "                           keep a compiled <file>.qbank next to it for fast starts (default true)\n" +
+               "  --questions.layout <name>\n" +
+               "                           objects, columnar for very large banks, or cached to keep\n" +
+               "                           only recently used questions on the heap (default objects)\n" +
+               "  --questions.cacheSize <n>\n" +
+               "                           questions kept by the cached layout (default 10000)\n" +
+               "  --quiz.size <n>          random questions per client, 0 for all in order (default 0)\n" +
+               "  --quiz.category <name>   only ask questions of this category\n" +
+               "  --engine <name>          threads, virtual or nio (default threads)\n" +
+               "  --nio.loops <count>      event loops for the nio engine\n" +
+               "  --headless               run without the monitor window\n" +
+               "  --binary <true|false>    offer the binary protocol to clients (default true)\n" +
+               "  --compression <bool>     offer binary clients questions deflated against a dictionary\n" +
+               "                           trained on the bank (default true)\n" +
+               "  --compression.dictionary <bytes>\n" +
+               "                           size of that dictionary, at most 32768 (default 16384)\n" +
+               "  --pipeline.window <n>    questions a client may have in flight, 0 or 1 disables (default 4)\n" +
+               "  --sessions.max <n>       concurrent sessions before new clients are told the server is busy,\n" +
+               "                           0 for no limit (default 10000)\n" +
+               "  --accept.backlog <n>     connections the OS queues before the server accepts them (default 1024)\n" +
+               "  --timeout.handshake <ms> time a new client has to send its first message (default 120000)\n" +
+               "  --timeout.answer <ms>    time to wait for each answer before an idle client is dropped (default 300000)\n" +
+               "  --timeout.write <ms>     time a client may leave a write blocked by not reading (default 10000)\n" +
+               "  --journal.file <file>    journal that lets clients resume their session after a lost\n" +
+               "                           connection or a restart, empty disables (default sessions.journal)\n" +
+               "  --journal.sync <mode>    group to reply once an answer is on disk, async to reply at once\n" +
+               "                           and let the disk trail by a few ms (default group)\n" +
+               "  --journal.maxBytes <bytes>\n" +
+               "                           size at which the journal is compacted (default 64 MB)\n" +
+               "  --journal.retain <min>   minutes an unfinished session can still be resumed (default 1440)\n" +
+               "  --leaderboard.size <n>   best scores kept for the live leaderboard (default 10)\n" +
+               "  --store <host:port>      keep sessions and the leaderboard on a StoreServer shared by the\n" +
+               "                           nodes of a cluster instead of the local journal\n" +
+               "  --cluster.nodes <list>   host:port of every node of the cluster, comma separated; the\n" +
+               "                           ClusterRouter sends each session to its node on a hash ring\n" +
+               "  --cluster.self <host:port>\n" +
+               "                           this node's entry in the list, so it only hands out tokens it owns\n" +
+               "  --cluster.routeWait <ms> time the router waits for a client to ask for its node before\n" +
+               "                           relaying it instead (default 1000)\n" +
+               "  --rooms <true|false>     host live games in rooms, nio engine only (default true)\n" +
+               "  --room.questions <n>     questions per live game, 0 for all (default 10)\n" +
+               "  --room.lobby <ms>        time from the first player joining to the first question (default 15000)\n" +
+               "  --room.answer <ms>       time players have to answer each question (default 20000)\n" +
+               "  --room.pause <ms>        pause between the results of a question and the next one (default 5000)\n" +
+               "  --log.file <file>        also write the log to a rolling file\n" +
+               "  --log.maxBytes <bytes>   size at which the log file rolls over (default 10 MB)\n" +
+               "  --log.files <count>      rolled log files to keep (default 5)\n" +
+               "  --log.capacity <events>  log events buffered before new ones are dropped (default 8192)\n" +
+               "  --log.uiLines <lines>    lines kept in the monitor window (default 1000)\n" +
+               "  --metrics.port <port>    serve metrics as text on localhost:<port>/metrics, 0 disables (default 0)\n" +
+               "  --metrics.jmx <bool>     publish metrics as the JMX MBean quiz:type=Metrics (default true)\n" +
+               "  --config <file>          properties file with any of the keys above";
+    }
+    
+    private static int parseInt(String key, String value) {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid number for " + key + ": " + value);
+        }
+    }
+    
+    private static long parseLong(String key, String value) {
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid number for " + key + ": " + value);
+        }
+    }
+    
+    private static QuestionLayout parseLayout(String value) {
+        try {
+            return QuestionLayout.valueOf(value.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown question layout: " + value);
+        }
+    }
+    
+    private static SessionJournal.Sync parseSync(String value) {
+        try {
+            return SessionJournal.Sync.valueOf(value.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown journal sync mode: " + value);
+        }
+    }
+    
+    private static Engine parseEngine(String value) {
+        try {
+            return Engine.valueOf(value.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown engine: " + value);
+        }
+    }
+    
+    public int getPort() {
+        return port;
+    }
+    
+    public void setPort(int port) {
+        this.port = port;
+    }
+    
+    public String getQuestionFile() {
+        return questionFile;
+    }
+    
+    public void setQuestionFile(String questionFile) {
+        this.questionFile = questionFile;
+    }
+    
+    public Engine getEngine() {
+        return engine;
+    }
+    
+    public void setEngine(Engine engine) {
+        this.engine = engine;
+    }
+    
+    public int getNioLoops() {
+        return nioLoops;
+    }
+    
+    public boolean isHeadless() {
+        return headless;
+    }
+    
+    public boolean isBinaryEnabled() {
+        return binaryEnabled;
+    }
+    
+    // Compression rides on the binary protocol
+    public boolean isCompressionEnabled() {
+        return compression && binaryEnabled && compressionDictionary > 0;
+    }
+    
+    public int getCompressionDictionarySize() {
+        return compressionDictionary;
+    }
+    
+    public boolean isQuestionWatchEnabled() {
+        return questionWatch;
+    }
+    
+    public boolean isQuestionSyncEnabled() {
+        return questionSync;
+    }
+    
+    public boolean isQuestionSnapshotEnabled() {
+        return questionSnapshot;
+    }
+    
+    public QuestionLayout getQuestionLayout() {
+        return questionLayout;
+    }
+    
+    public int getQuestionCacheSize() {
+        return questionCacheSize;
+    }
+    
+    public int getQuizSize() {
+        return quizSize;
+    }
+    
+    public String getQuizCategory() {
+        return quizCategory;
+    }
+    
+    public int getPipelineWindow() {
+        return pipelineWindow;
+    }
+    
+    public boolean isPipeliningEnabled() {
+        return pipelineWindow > 1;
+    }
+    
+    public int getMaxSessions() {
+        return maxSessions;
+    }
+    
+    public int getAcceptBacklog() {
+        return acceptBacklog;
+    }
+    
+    public long getHandshakeTimeout() {
+        return handshakeTimeout;
+    }
+    
+    public long getAnswerTimeout() {
+        return answerTimeout;
+    }
+    
+    public long getWriteTimeout() {
+        return writeTimeout;
+    }
+    
+    public int getMetricsPort() {
+        return metricsPort;
+    }
+    
+    public boolean isMetricsJmxEnabled() {
+        return metricsJmx;
+    }
+    
+    public String getJournalFile() {
+        return journalFile;
+    }
+    
+    public SessionJournal.Sync getJournalSync() {
+        return journalSync;
+    }
+    
+    public long getJournalMaxBytes() {
+        return journalMaxBytes;
+    }
+    
+    public long getJournalRetainMinutes() {
+        return journalRetainMinutes;
+    }
+    
+    public int getLeaderboardSize() {
+        return leaderboardSize;
+    }
+    
+    // Address of the shared session store, or null for the local journal
+    public String getStore() {
+        return store;
+    }
+    
+    public String getClusterNodes() {
+        return clusterNodes;
+    }
+    
+    public String getClusterSelf() {
+        return clusterSelf;
+    }
+    
+    public long getClusterRouteWait() {
+        return clusterRouteWait;
+    }
+    
+    public boolean isRoomsEnabled() {
+        return roomsEnabled;
+    }
+    
+    public int getRoomQuestions() {
+        return roomQuestions;
+    }
+    
+    public long getRoomLobbyMillis() {
+        return roomLobbyMillis;
+    }
+    
+    public long getRoomAnswerMillis() {
+        return roomAnswerMillis;
+    }
+    
+    public long getRoomPauseMillis() {
+        return roomPauseMillis;
+    }
+    
+    public int getLogCapacity() {
+        return logCapacity;
+    }
+    
+    public String getLogFile() {
+        return logFile;
+    }
+    
+    public long getLogMaxBytes() {
+        return logMaxBytes;
+    }
+    
+    public int getLogFiles() {
+        return logFiles;
+    }
+    
+    public int getLogUiLines() {
+        return logUiLines;
+    }
+}
\ No newline at end of file
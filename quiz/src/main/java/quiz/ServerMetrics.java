@@ -0,0 +1,206 @@
+package quiz;
+
+import java.util.concurrent.atomic.LongAdder;
+
+// Server counters and latency histograms, shared by all engines. Recording
+// only touches LongAdders and preallocated histogram buckets, so it costs
+// no allocation on the hot path and stays on in production. QuizMetrics
+// publishes them over JMX and MetricsEndpoint over HTTP.
+class ServerMetrics {
+    // Session phases that have a deadline, see SessionLimits
+    enum Phase {
+        HANDSHAKE,
+        ANSWER,
+        WRITE
+    }
+    
+    private final LongAdder connections = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder resumed = new LongAdder();
+    private final LongAdder resumesRefused = new LongAdder();
+    private final LongAdder[] timeouts = new LongAdder[Phase.values().length];
+    private final LongAdder writes = new LongAdder();
+    private final LongAdder broadcasts = new LongAdder();
+    private final LongAdder broadcastFrames = new LongAdder();
+    private final LongAdder broadcastDropped = new LongAdder();
+    private final LongAdder correct = new LongAdder();
+    private final LongAdder incorrect = new LongAdder();
+    private final LongAdder expired = new LongAdder();
+    private final LongAdder questionsSent = new LongAdder();
+    private final LongAdder questionsCached = new LongAdder();
+    private final LongAdder compressionInput = new LongAdder();
+    private final LongAdder compressionOutput = new LongAdder();
+    private final LongAdder dictionariesSent = new LongAdder();
+    private final LatencyHistogram compressTimes = new LatencyHistogram();
+    private final LatencyHistogram gradeTimes = new LatencyHistogram();
+    private final LatencyHistogram writeTimes = new LatencyHistogram();
+    
+    public ServerMetrics() {
+        for (int i = 0; i < timeouts.length; i++) {
+            timeouts[i] = new LongAdder();
+        }
+    }
+    
+    public void recordConnection() {
+        connections.increment();
+    }
+    
+    // Turned away with a busy frame because the server was full
+    public void recordRejection() {
+        rejected.increment();
+    }
+    
+    // A RESUME request, and whether the session could be picked up again
+    public void recordResume(boolean succeeded) {
+        (succeeded ? resumed : resumesRefused).increment();
+    }
+    
+    public void recordTimeout(Phase phase) {
+        timeouts[phase.ordinal()].increment();
+    }
+    
+    // A socket write or gathering write, and how long it blocked
+    public void recordWrite(long nanos) {
+        writes.increment();
+        writeTimes.record(nanos);
+    }
+    
+    // A live game frame encoded once and handed to this many players
+    public void recordBroadcast(int recipients) {
+        broadcasts.increment();
+        broadcastFrames.add(recipients);
+    }
+    
+    // A broadcast frame not queued for a player who is too far behind
+    public void recordBroadcastDropped() {
+        broadcastDropped.increment();
+    }
+    
+    // A graded answer and the time from decoding it to its reply being encoded
+    public void recordAnswer(boolean isCorrect, long nanos) {
+        (isCorrect ? correct : incorrect).increment();
+        gradeTimes.record(nanos);
+    }
+    
+    // A timed question the server graded itself because its deadline
+    // passed; it is recorded as an incorrect answer as well
+    public void recordExpired() {
+        expired.increment();
+    }
+    
+    // A question sent to a client, cached if only by its position because
+    // the client already had it
+    public void recordQuestionSent(boolean cached) {
+        (cached ? questionsCached : questionsSent).increment();
+    }
+    
+    // A question payload of this many bytes sent as that many after trying
+    // to deflate it, which took this much CPU time
+    public void recordCompression(int rawBytes, int sentBytes, long cpuNanos) {
+        compressionInput.add(rawBytes);
+        compressionOutput.add(sentBytes);
+        compressTimes.record(cpuNanos);
+    }
+    
+    // A compression dictionary sent to a client that did not have it
+    public void recordDictionarySent() {
+        dictionariesSent.increment();
+    }
+    
+    public long getConnections() {
+        return connections.sum();
+    }
+    
+    public long getRejected() {
+        return rejected.sum();
+    }
+    
+    public long getResumed() {
+        return resumed.sum();
+    }
+    
+    public long getResumesRefused() {
+        return resumesRefused.sum();
+    }
+    
+    public long getBroadcasts() {
+        return broadcasts.sum();
+    }
+    
+    public long getBroadcastFrames() {
+        return broadcastFrames.sum();
+    }
+    
+    public long getBroadcastDropped() {
+        return broadcastDropped.sum();
+    }
+    
+    public long getExpired() {
+        return expired.sum();
+    }
+    
+    public long getQuestionsSent() {
+        return questionsSent.sum();
+    }
+    
+    public long getQuestionsCached() {
+        return questionsCached.sum();
+    }
+    
+    public long getCompressionInput() {
+        return compressionInput.sum();
+    }
+    
+    public long getCompressionOutput() {
+        return compressionOutput.sum();
+    }
+    
+    // Question bytes before compression for each byte sent, 0 before any
+    public double getCompressionRatio() {
+        long output = compressionOutput.sum();
+        return output == 0 ? 0 : (double) compressionInput.sum() / output;
+    }
+    
+    public long getDictionariesSent() {
+        return dictionariesSent.sum();
+    }
+    
+    public long getTimeouts(Phase phase) {
+        return timeouts[phase.ordinal()].sum();
+    }
+    
+    public long getWrites() {
+        return writes.sum();
+    }
+    
+    public long getCorrect() {
+        return correct.sum();
+    }
+    
+    public long getIncorrect() {
+        return incorrect.sum();
+    }
+    
+    public long getAnswers() {
+        return correct.sum() + incorrect.sum();
+    }
+    
+    // Socket writes against graded answers, to show how well outgoing
+    // frames are being batched
+    public double getWritesPerAnswer() {
+        long answered = getAnswers();
+        return answered == 0 ? 0 : (double) writes.sum() / answered;
+    }
+    
+    public LatencyHistogram getGradeTimes() {
+        return gradeTimes;
+    }
+    
+    public LatencyHistogram getWriteTimes() {
+        return writeTimes;
+    }
+    
+    public LatencyHistogram getCompressTimes() {
+        return compressTimes;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,784 @@
+package quiz;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.SecureRandom;
+import java.util.BitSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+import java.util.zip.CRC32C;
+
+// Write-ahead journal of session progress, so a client that loses its
+// connection, or whose server is restarted, picks up where it left off.
+//
+// Records are appended to a memory-mapped file. One committer thread forces
+// whatever was appended since its previous pass in a single call (group
+// commit): sessions that must not reply before their answer is on disk wait
+// for it instead of forcing the file themselves, so one flush covers every
+// answer graded in the meantime.
+//
+// File: a header, then chunks of <int chunk length> <records>. Record:
+// <int length> <byte type> <payload> <int CRC32C of type and payload>. A
+// zero length ends the used part of a chunk; a record that does not check
+// out is a torn write and ends recovery. Opening the journal replays it and
+// rewrites it with one SESSION record per session that can still be
+// resumed, and so does a journal that outgrows its size limit.
+//
+// A finished session stays resumable for a few minutes, followed by its END
+// record, so a client that lost the connection before FINISHED reached it
+// is given its final score instead of a new quiz.
+//
+// This is the session store of a server on its own, and the one a
+// StoreServer keeps for the nodes of a cluster. Sessions on virtual threads
+// wait for commits and for each other's appends, so both go through
+// ReentrantLocks rather than monitors, which would pin their carriers.
+class SessionJournal implements SessionStore {
+    // When a reply may go out after its answer was journaled
+    enum Sync {
+        GROUP,  // once the answer is on disk
+        ASYNC   // at once; the disk trails by up to one commit interval
+    }
+    
+    private static final int MAGIC = 0x514A4E4C; // QJNL
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 16;
+    private static final int CHUNK_SIZE = 8 * 1024 * 1024;
+    private static final int RECORD_OVERHEAD = 4 + 1 + 4;
+    private static final int TOKEN_SIZE = 16;
+    private static final long COMMIT_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final long EXPIRE_INTERVAL_NANOS = TimeUnit.MINUTES.toNanos(1);
+    private static final long FINISHED_RETAIN_MILLIS = TimeUnit.MINUTES.toMillis(5);
+    
+    // Record types
+    private static final byte SESSION = 1;  // token, last active, bank hash, score, indices, graded set
+    private static final byte ANSWER = 2;   // token, time, question, correct flag
+    private static final byte END = 3;      // token
+    
+    private static final HexFormat HEX = HexFormat.of();
+    
+    private final Path file;
+    private final Sync sync;
+    private final long maxBytes;
+    private final long retainMillis;
+    private final EventLog log;
+    private final Map<String, Entry> sessions = new ConcurrentHashMap<>();
+    private final SecureRandom random = new SecureRandom();
+    private volatile Predicate<String> tokenFilter = token -> true;
+    private final LatencyHistogram commitTimes = new LatencyHistogram();
+    private final Thread committer;
+    
+    // Guarded by lock
+    private final ReentrantLock lock = new ReentrantLock();
+    private final CRC32C crc = new CRC32C();
+    private ByteBuffer scratch = ByteBuffer.allocate(256);
+    private FileChannel channel;
+    private MappedByteBuffer chunk;
+    private long chunkStart;
+    private int chunkForced;
+    private boolean failed = false;
+    
+    // Positions count every byte ever appended, across rewrites
+    private volatile long appended = 0;
+    private volatile long records = 0;
+    
+    // Written under commitLock; waiters counts both blocked threads and actions
+    private final ReentrantLock commitLock = new ReentrantLock();
+    private final Condition committed = commitLock.newCondition();
+    private final DurableActions durableActions = new DurableActions();
+    private volatile long durable = 0;
+    private volatile int waiters = 0;
+    private volatile boolean open = true;
+    
+    private SessionJournal(Path file, Sync sync, long maxBytes, long retainMillis, EventLog log) {
+        this.file = file;
+        this.sync = sync;
+        this.maxBytes = Math.max(CHUNK_SIZE, maxBytes);
+        this.retainMillis = retainMillis;
+        this.log = log;
+        this.committer = new Thread(this::commitLoop, "quiz-journal");
+        this.committer.setDaemon(true);
+    }
+    
+    // Recovers the sessions in the file, if it exists, and starts appending
+    static SessionJournal open(Path file, Sync sync, long maxBytes, long retainMillis, EventLog log) throws IOException {
+        SessionJournal journal = new SessionJournal(file, sync, maxBytes, retainMillis, log);
+        if (Files.exists(file)) {
+            journal.recover();
+        }
+        journal.lock.lock();
+        try {
+            journal.rewrite();
+        } finally {
+            journal.lock.unlock();
+        }
+        journal.committer.start();
+        return journal;
+    }
+    
+    // One session's state as of the last record appended for it
+    private static final class Entry {
+        final byte[] token;
+        final String key;
+        final long bankHash;
+        final int[] indices;
+        final BitSet graded;
+        int score;
+        int answered;
+        long lastActive;
+        int generation;
+        boolean attached;
+        boolean written;
+        boolean finished;
+        
+        Entry(byte[] token, long bankHash, int[] indices, BitSet graded, long lastActive) {
+            this.token = token;
+            this.key = HEX.formatHex(token);
+            this.bankHash = bankHash;
+            this.indices = indices;
+            this.graded = graded;
+            this.lastActive = lastActive;
+        }
+        
+        void grade(int question, boolean correct, long time) {
+            if (question >= 0 && !graded.get(question)) {
+                graded.set(question);
+                answered++;
+                if (correct) {
+                    score++;
+                }
+            }
+            lastActive = Math.max(lastActive, time);
+        }
+    }
+    
+    private static final class JournalClaim extends Claim {
+        private final Entry entry;
+        private final int generation;
+        
+        private JournalClaim(Entry entry) {
+            super(entry.indices, (BitSet) entry.graded.clone(), entry.score, entry.answered);
+            this.entry = entry;
+            this.generation = entry.generation;
+        }
+        
+        private boolean isCurrent() {
+            return entry.generation == generation;
+        }
+        
+        @Override
+        String getToken() {
+            return entry.key;
+        }
+    }
+    
+    // Nothing is written until the session's first answer
+    @Override
+    public Claim start(long bankHash, int[] indices) {
+        Predicate<String> accept = tokenFilter;
+        byte[] token = new byte[TOKEN_SIZE];
+        do {
+            random.nextBytes(token);
+        } while (!accept.test(HEX.formatHex(token)));
+        return start(token, bankHash, indices);
+    }
+    
+    // A session whose token was drawn elsewhere, by a node of a cluster
+    // storing its sessions here. Returns null for a malformed token.
+    Claim start(String token, long bankHash, int[] indices) {
+        byte[] bytes;
+        try {
+            bytes = HEX.parseHex(token.toLowerCase());
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        return bytes.length == TOKEN_SIZE ? start(bytes, bankHash, indices) : null;
+    }
+    
+    private Claim start(byte[] token, long bankHash, int[] indices) {
+        Entry entry = new Entry(token, bankHash, indices, new BitSet(), System.currentTimeMillis());
+        entry.generation = 1;
+        entry.attached = true;
+        sessions.put(entry.key, entry);
+        return new JournalClaim(entry);
+    }
+    
+    @Override
+    public Claim resume(String token, long bankHash) {
+        lock.lock();
+        try {
+            Entry entry = token == null ? null : sessions.get(token.toLowerCase());
+            if (entry == null || entry.bankHash != bankHash) {
+                return null;
+            }
+            entry.generation++;
+            entry.attached = true;
+            entry.lastActive = System.currentTimeMillis();
+            return new JournalClaim(entry);
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    // Returns the journal position of the answer
+    @Override
+    public long record(Claim claim, int question, boolean correct) {
+        lock.lock();
+        try {
+            Entry entry = ((JournalClaim) claim).entry;
+            if (!((JournalClaim) claim).isCurrent()) {
+                return -1;
+            }
+            long now = System.currentTimeMillis();
+            if (!failed && open) {
+                try {
+                    if (!entry.written) {
+                        writeSession(entry);
+                        entry.written = true;
+                    }
+                    ByteBuffer record = startRecord(ANSWER, TOKEN_SIZE + 8 + 4 + 1);
+                    record.put(entry.token).putLong(now).putInt(question).put((byte) (correct ? 1 : 0));
+                    endRecord();
+                } catch (IOException e) {
+                    fail(e);
+                }
+            }
+            entry.grade(question, correct, now);
+            return appended;
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    // Kept until FINISHED_RETAIN_MILLIS after this; finishing it again,
+    // after a resume, writes nothing
+    @Override
+    public void finish(Claim claim) {
+        lock.lock();
+        try {
+            Entry entry = ((JournalClaim) claim).entry;
+            if (!((JournalClaim) claim).isCurrent()) {
+                return;
+            }
+            entry.generation++;
+            entry.attached = false;
+            entry.lastActive = System.currentTimeMillis();
+            if (!entry.written) {
+                sessions.remove(entry.key);
+                return;
+            }
+            if (entry.finished) {
+                return;
+            }
+            entry.finished = true;
+            if (!failed && open) {
+                try {
+                    startRecord(END, TOKEN_SIZE).put(entry.token);
+                    endRecord();
+                } catch (IOException e) {
+                    fail(e);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    @Override
+    public void release(Claim claim) {
+        lock.lock();
+        try {
+            Entry entry = ((JournalClaim) claim).entry;
+            if (!((JournalClaim) claim).isCurrent()) {
+                return;
+            }
+            entry.attached = false;
+            entry.lastActive = System.currentTimeMillis();
+            if (!entry.written) {
+                sessions.remove(entry.key);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    // Blocks until everything up to position is on disk, which takes at
+    // most one commit however many sessions are waiting. Returns at once
+    // with asynchronous commits or once the journal is closed.
+    @Override
+    public void awaitDurable(long position) throws InterruptedIOException {
+        if (sync == Sync.ASYNC || position <= durable) {
+            return;
+        }
+        commitLock.lock();
+        try {
+            waiters++;
+            LockSupport.unpark(committer);
+            while (durable < position && open) {
+                committed.await();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for the session journal");
+        } finally {
+            waiters--;
+            commitLock.unlock();
+        }
+    }
+    
+    // The same without blocking; the committer runs the action
+    @Override
+    public void whenDurable(long position, Runnable action) {
+        if (sync != Sync.ASYNC && position > durable) {
+            commitLock.lock();
+            try {
+                if (durable < position && open) {
+                    durableActions.add(position, action);
+                    waiters++;
+                    LockSupport.unpark(committer);
+                    return;
+                }
+            } finally {
+                commitLock.unlock();
+            }
+        }
+        action.run();
+    }
+    
+    public Sync getSync() {
+        return sync;
+    }
+    
+    @Override
+    public int getSessions() {
+        return sessions.size();
+    }
+    
+    @Override
+    public long getRecords() {
+        return records;
+    }
+    
+    @Override
+    public void restrictTokens(Predicate<String> accept) {
+        tokenFilter = accept;
+    }
+    
+    public long getBytesAppended() {
+        return appended;
+    }
+    
+    // One entry per commit, so its count is the number of commits
+    public LatencyHistogram getCommitTimes() {
+        return commitTimes;
+    }
+    
+    @Override
+    public void close() {
+        List<Runnable> ready;
+        commitLock.lock();
+        try {
+            open = false;
+            ready = durableActions.takeAll();
+            waiters -= ready.size();
+            committed.signalAll();
+        } finally {
+            commitLock.unlock();
+        }
+        DurableActions.run(ready);
+        LockSupport.unpark(committer);
+        try {
+            committer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        lock.lock();
+        try {
+            if (chunk != null && !failed) {
+                chunk.force();
+            }
+            if (channel != null) {
+                channel.close();
+            }
+        } catch (IOException e) {
+            log.message("Error closing session journal: " + e.getMessage());
+        } finally {
+            chunk = null;
+            channel = null;
+            lock.unlock();
+        }
+    }
+    
+    // Commits as soon as a session waits, and otherwise every few
+    // milliseconds; either way one force covers all records appended since
+    // the previous one. Expired sessions are dropped once a minute.
+    private void commitLoop() {
+        long nextExpiry = System.nanoTime() + EXPIRE_INTERVAL_NANOS;
+        while (open) {
+            // Waiters unpark the committer, so the wait ends early for them
+            if (waiters == 0 || appended <= durable) {
+                LockSupport.parkNanos(this, COMMIT_INTERVAL_NANOS);
+            }
+            commit();
+            if (System.nanoTime() - nextExpiry >= 0) {
+                expire();
+                nextExpiry = System.nanoTime() + EXPIRE_INTERVAL_NANOS;
+            }
+        }
+    }
+    
+    private void commit() {
+        MappedByteBuffer target;
+        int from;
+        int to;
+        long position;
+        lock.lock();
+        try {
+            position = appended;
+            if (position <= durable) {
+                return;
+            }
+            target = chunk;
+            from = chunkForced;
+            to = target != null ? target.position() : 0;
+        } finally {
+            lock.unlock();
+        }
+        
+        // Forcing runs outside the lock, so sessions keep appending meanwhile
+        if (to > from && !failed) {
+            long start = System.nanoTime();
+            try {
+                target.force(from, to - from);
+            } catch (UncheckedIOException e) {
+                lock.lock();
+                try {
+                    fail(e.getCause());
+                } finally {
+                    lock.unlock();
+                }
+                return;
+            }
+            commitTimes.record(System.nanoTime() - start);
+            lock.lock();
+            try {
+                if (chunk == target) {
+                    chunkForced = Math.max(chunkForced, to);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+        markDurable(position);
+    }
+    
+    private void markDurable(long position) {
+        List<Runnable> ready;
+        commitLock.lock();
+        try {
+            if (position > durable) {
+                durable = position;
+            }
+            ready = durableActions.takeUpTo(durable);
+            waiters -= ready.size();
+            committed.signalAll();
+        } finally {
+            commitLock.unlock();
+        }
+        DurableActions.run(ready);
+    }
+    
+    private void expire() {
+        lock.lock();
+        try {
+            long now = System.currentTimeMillis();
+            sessions.values().removeIf(entry -> !entry.attached && isExpired(entry, now));
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    private boolean isExpired(Entry entry, long now) {
+        long retain = entry.finished ? Math.min(retainMillis, FINISHED_RETAIN_MILLIS) : retainMillis;
+        return entry.lastActive < now - retain;
+    }
+    
+    // A journal that cannot be written stops journaling; sessions go on
+    // without being resumable
+    private void fail(IOException e) {
+        failed = true;
+        log.message("Session journal failed, sessions can no longer be resumed: " + e.getMessage());
+        markDurable(appended);
+    }
+    
+    private void writeSession(Entry entry) throws IOException {
+        byte[] graded = entry.graded.toByteArray();
+        startRecord(SESSION, sessionSize(entry, graded));
+        encodeSession(entry, graded);
+        endRecord();
+    }
+    
+    private static int sessionSize(Entry entry, byte[] graded) {
+        int count = entry.indices == null ? 0 : entry.indices.length;
+        return TOKEN_SIZE + 8 + 8 + 4 + 4 + count * 4 + 4 + graded.length;
+    }
+    
+    private void encodeSession(Entry entry, byte[] graded) {
+        int count = entry.indices == null ? -1 : entry.indices.length;
+        scratch.put(entry.token).putLong(entry.lastActive).putLong(entry.bankHash).putInt(entry.score).putInt(count);
+        for (int i = 0; i < count; i++) {
+            scratch.putInt(entry.indices[i]);
+        }
+        scratch.putInt(graded.length).put(graded);
+    }
+    
+    // Records are put together in a scratch buffer and copied into the
+    // mapped chunk in one go by endRecord(). The chunk is rolled first, as
+    // rolling may rewrite the file, which uses the scratch buffer too.
+    private ByteBuffer startRecord(byte type, int payloadSize) throws IOException {
+        int size = RECORD_OVERHEAD + payloadSize;
+        if (chunk == null) {
+            throw new IOException("Session journal is closed");
+        }
+        if (chunk.remaining() < size) {
+            roll(size);
+        }
+        return prepareScratch(type, size);
+    }
+    
+    private ByteBuffer prepareScratch(byte type, int size) {
+        if (scratch.capacity() < size) {
+            scratch = ByteBuffer.allocate(Math.max(size, scratch.capacity() * 2));
+        }
+        scratch.clear();
+        scratch.putInt(0).put(type);
+        return scratch;
+    }
+    
+    // Fills in the length and checksum and flips the scratch buffer for reading
+    private void sealRecord() {
+        int length = scratch.position() - 4;
+        scratch.putInt(0, length);
+        crc.reset();
+        crc.update(scratch.array(), 4, length);
+        scratch.putInt((int) crc.getValue());
+        scratch.flip();
+    }
+    
+    private void endRecord() {
+        sealRecord();
+        int size = scratch.remaining();
+        chunk.put(scratch);
+        appended += size;
+        records++;
+    }
+    
+    // The chunk is full: force it, then continue in a new chunk, or in a
+    // rewritten file once the journal has reached its size limit
+    private void roll(int size) throws IOException {
+        chunk.force();
+        long next = chunkStart + chunk.capacity();
+        if (next >= maxBytes) {
+            rewrite();
+            if (chunk.remaining() >= size) {
+                return;
+            }
+            chunk.force();
+            next = chunkStart + chunk.capacity();
+        }
+        mapChunk(next, size);
+    }
+    
+    private void mapChunk(long start, int needed) throws IOException {
+        int size = Math.max(CHUNK_SIZE, needed + 4);
+        chunk = channel.map(FileChannel.MapMode.READ_WRITE, start, size);
+        chunk.putInt(size);
+        chunkStart = start;
+        chunkForced = 0;
+    }
+    
+    // Writes the sessions that can still be resumed to a new file, replaces
+    // the journal with it and maps a first chunk for appending
+    private void rewrite() throws IOException {
+        long now = System.currentTimeMillis();
+        sessions.values().removeIf(entry -> entry.written && !entry.attached && isExpired(entry, now));
+        
+        if (channel != null) {
+            channel.close();
+            channel = null;
+            chunk = null;
+        }
+        
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        int sessionCount = 0;
+        try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putInt(VERSION).putInt(CHUNK_SIZE).flip();
+            out.write(header);
+            
+            // One chunk sized to fit the sessions exactly
+            out.position(HEADER_SIZE + 4);
+            long chunkLength = 4;
+            for (Entry entry : sessions.values()) {
+                if (!entry.written) {
+                    continue;
+                }
+                byte[] graded = entry.graded.toByteArray();
+                prepareScratch(SESSION, RECORD_OVERHEAD + sessionSize(entry, graded));
+                encodeSession(entry, graded);
+                sealRecord();
+                chunkLength += scratch.remaining();
+                while (scratch.hasRemaining()) {
+                    out.write(scratch);
+                }
+                if (entry.finished) {
+                    prepareScratch(END, RECORD_OVERHEAD + TOKEN_SIZE).put(entry.token);
+                    sealRecord();
+                    chunkLength += scratch.remaining();
+                    while (scratch.hasRemaining()) {
+                        out.write(scratch);
+                    }
+                }
+                sessionCount++;
+            }
+            if (chunkLength > Integer.MAX_VALUE) {
+                throw new IOException("Too many sessions to journal");
+            }
+            out.write(ByteBuffer.allocate(4).putInt(0, (int) chunkLength), HEADER_SIZE);
+            out.force(true);
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        
+        channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        mapChunk(channel.size(), 0);
+        markDurable(appended);
+        if (sessionCount > 0) {
+            log.message("Session journal holds " + sessionCount + " resumable sessions");
+        }
+    }
+    
+    // Replays the file into the session map, stopping at the first record
+    // that was not completely written. Sessions in a journal of an older
+    // version were stored without their bank hash and cannot be resumed;
+    // they are dropped, and the file is rewritten in the current version.
+    private void recover() throws IOException {
+        long start = System.nanoTime();
+        int replayed = 0;
+        boolean torn = false;
+        try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = in.size();
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            if (size < HEADER_SIZE || in.read(header, 0) < HEADER_SIZE
+                    || header.getInt(0) != MAGIC || header.getInt(4) > VERSION) {
+                throw new IOException(file + " is not a session journal");
+            }
+            if (header.getInt(4) < VERSION) {
+                log.message("Dropped the sessions of " + file + ", written by an older version");
+                return;
+            }
+            
+            long offset = HEADER_SIZE;
+            while (!torn && offset + 4 <= size) {
+                ByteBuffer lengthField = ByteBuffer.allocate(4);
+                in.read(lengthField, offset);
+                int chunkLength = lengthField.getInt(0);
+                if (chunkLength < 4) {
+                    break;
+                }
+                MappedByteBuffer mapped = in.map(FileChannel.MapMode.READ_ONLY, offset, Math.min(chunkLength, size - offset));
+                mapped.position(4);
+                while (mapped.remaining() >= 4) {
+                    int recordLength = mapped.getInt(mapped.position());
+                    if (recordLength == 0) {
+                        break;
+                    }
+                    if (recordLength < 1 || recordLength + 8 > mapped.remaining() || !checksumMatches(mapped, recordLength)) {
+                        torn = true;
+                        break;
+                    }
+                    ByteBuffer record = mapped.slice(mapped.position() + 4, recordLength);
+                    mapped.position(mapped.position() + recordLength + 8);
+                    apply(record);
+                    replayed++;
+                }
+                offset += chunkLength;
+            }
+        }
+        
+        long now = System.currentTimeMillis();
+        sessions.values().removeIf(entry -> isExpired(entry, now));
+        log.message("Replayed " + replayed + " journal records in "
+            + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms"
+            + (torn ? ", ignoring a torn write at the end" : ""));
+    }
+    
+    private boolean checksumMatches(ByteBuffer chunk, int recordLength) {
+        int start = chunk.position() + 4;
+        crc.reset();
+        crc.update(chunk.slice(start, recordLength));
+        return (int) crc.getValue() == chunk.getInt(start + recordLength);
+    }
+    
+    private void apply(ByteBuffer record) {
+        byte type = record.get();
+        byte[] token = new byte[TOKEN_SIZE];
+        record.get(token);
+        String key = HEX.formatHex(token);
+        
+        switch (type) {
+            case SESSION:
+                long lastActive = record.getLong();
+                long bankHash = record.getLong();
+                int score = record.getInt();
+                int count = record.getInt();
+                int[] indices = null;
+                if (count >= 0) {
+                    indices = new int[count];
+                    for (int i = 0; i < count; i++) {
+                        indices[i] = record.getInt();
+                    }
+                }
+                byte[] graded = new byte[record.getInt()];
+                record.get(graded);
+                Entry entry = new Entry(token, bankHash, indices, BitSet.valueOf(graded), lastActive);
+                entry.score = score;
+                entry.answered = entry.graded.cardinality();
+                entry.written = true;
+                sessions.put(key, entry);
+                break;
+            case ANSWER:
+                Entry answered = sessions.get(key);
+                long time = record.getLong();
+                int question = record.getInt();
+                boolean correct = record.get() != 0;
+                if (answered != null) {
+                    answered.grade(question, correct, time);
+                }
+                break;
+            case END:
+                Entry ended = sessions.get(key);
+                if (ended != null) {
+                    ended.finished = true;
+                }
+                break;
+            default:
+                // Unknown records from newer versions are skipped
+                break;
+        }
+    }
+}
\ No newline at end of file
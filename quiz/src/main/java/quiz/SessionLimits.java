@@ -0,0 +1,78 @@
+package quiz;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+// Admission control and per-phase deadlines, shared by all engines.
+// Connections over the session limit get a BUSY line and are closed
+// straight away, which is cheaper for both sides than leaving them in the
+// listen backlog until they time out. A deadline of 0 means none.
+class SessionLimits {
+    static final String BUSY_PREFIX = "BUSY:";
+    
+    private static final byte[] BUSY_FRAME = FrameBuffer.ascii(BUSY_PREFIX + "Server is full, try again later\n");
+    
+    private final int maxSessions;
+    private final Semaphore permits;
+    private final int acceptBacklog;
+    private final long handshakeMillis;
+    private final long answerMillis;
+    private final long writeMillis;
+    
+    SessionLimits(int maxSessions, int acceptBacklog, long handshakeMillis, long answerMillis, long writeMillis) {
+        this.maxSessions = maxSessions;
+        this.permits = maxSessions > 0 ? new Semaphore(maxSessions) : null;
+        this.acceptBacklog = acceptBacklog;
+        this.handshakeMillis = handshakeMillis;
+        this.answerMillis = answerMillis;
+        this.writeMillis = writeMillis;
+    }
+    
+    static SessionLimits of(ServerConfig config) {
+        return new SessionLimits(config.getMaxSessions(), config.getAcceptBacklog(),
+            config.getHandshakeTimeout(), config.getAnswerTimeout(), config.getWriteTimeout());
+    }
+    
+    // Every admitted session must release() exactly once when it ends
+    public boolean tryAdmit() {
+        return permits == null || permits.tryAcquire();
+    }
+    
+    public void release() {
+        if (permits != null) {
+            permits.release();
+        }
+    }
+    
+    public byte[] getBusyFrame() {
+        return BUSY_FRAME;
+    }
+    
+    public int getMaxSessions() {
+        return maxSessions;
+    }
+    
+    public int getAcceptBacklog() {
+        return acceptBacklog;
+    }
+    
+    // From connecting to the client's first message
+    public long getHandshakeMillis() {
+        return handshakeMillis;
+    }
+    
+    // Waiting for each later message, which is how idle sessions are reaped
+    public long getAnswerMillis() {
+        return answerMillis;
+    }
+    
+    // A single write the client does not read
+    public long getWriteMillis() {
+        return writeMillis;
+    }
+    
+    // Deadline in System.nanoTime() terms, or 0 for none
+    static long deadline(long now, long millis) {
+        return millis > 0 ? now + TimeUnit.MILLISECONDS.toNanos(millis) : 0;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,123 @@
+package quiz;
+
+import java.io.Closeable;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+// Where resumable sessions live. A server on its own keeps them in its
+// SessionJournal; the nodes of a cluster share a StoreServer through
+// RemoteSessionStore, so a session can be resumed on whichever node the
+// client reaches next, and the nodes show one leaderboard between them.
+interface SessionStore extends Closeable {
+    // A connection's hold on a session, with the state it took over. Only
+    // the latest claim on a session may add to it.
+    abstract class Claim {
+        final int[] indices;
+        final BitSet graded;
+        final int score;
+        final int answered;
+        
+        Claim(int[] indices, BitSet graded, int score, int answered) {
+            this.indices = indices;
+            this.graded = graded;
+            this.score = score;
+            this.answered = answered;
+        }
+        
+        abstract String getToken();
+    }
+    
+    // A new session with a fresh token. Nothing is stored until its first
+    // answer, so connections that resume another session or leave early
+    // cost the store nothing.
+    Claim start(long bankHash, int[] indices);
+    
+    // Takes over a session for a reconnecting client, or returns null if the
+    // token is unknown, expired or was dealt from other questions: bankHash
+    // is QuestionBank.getContentHash() of the bank it started on. A
+    // connection still holding the session loses it. A finished session
+    // comes back with every question graded.
+    Claim resume(String token, long bankHash);
+    
+    // The same without blocking: action gets the claim, or null, on
+    // whichever thread has it. A store that answers at once just does so.
+    default void whenResumed(String token, long bankHash, Consumer<Claim> action) {
+        action.accept(resume(token, bankHash));
+    }
+    
+    // Stores a graded answer; question is its index within the session.
+    // Returns the position to pass to awaitDurable(), or -1 if the session
+    // is known to have been resumed on another connection since.
+    long record(Claim claim, int question, boolean correct);
+    
+    // The session is over. It can be resumed for a few minutes more, so a
+    // client that missed the end is given its final score.
+    void finish(Claim claim);
+    
+    // The connection is gone before the end; the session waits to be resumed
+    void release(Claim claim);
+    
+    // Blocks until everything up to position is stored for good
+    void awaitDurable(long position) throws InterruptedIOException;
+    
+    // Runs action once everything up to position is stored for good: at
+    // once if it already is, otherwise on whichever thread finds out. For
+    // callers that must not block, like an event loop.
+    void whenDurable(long position, Runnable action);
+    
+    // Sessions that are in progress or can be resumed, as far as this
+    // process knows
+    int getSessions();
+    
+    long getRecords();
+    
+    // Fresh tokens are drawn until one is accepted, so the nodes of a
+    // cluster only hand out tokens that route back to themselves
+    void restrictTokens(Predicate<String> accept);
+    
+    // Keeps the board in step with the other nodes sharing this store. A
+    // store that only serves one process leaves it alone.
+    default void shareLeaderboard(Leaderboard leaderboard) {
+    }
+    
+    @Override
+    void close();
+    
+    // Actions waiting in whenDurable(). Not thread safe: a store guards
+    // them with the lock it moves its durable position under, and runs the
+    // ones it takes after letting go of it.
+    final class DurableActions {
+        private final List<Long> positions = new ArrayList<>();
+        private final List<Runnable> actions = new ArrayList<>();
+        
+        void add(long position, Runnable action) {
+            positions.add(position);
+            actions.add(action);
+        }
+        
+        List<Runnable> takeUpTo(long position) {
+            List<Runnable> ready = new ArrayList<>();
+            for (int i = positions.size() - 1; i >= 0; i--) {
+                if (positions.get(i) <= position) {
+                    positions.remove(i);
+                    ready.add(0, actions.remove(i));
+                }
+            }
+            return ready;
+        }
+        
+        List<Runnable> takeAll() {
+            return takeUpTo(Long.MAX_VALUE);
+        }
+        
+        static void run(List<Runnable> ready) {
+            for (Runnable action : ready) {
+                action.run();
+            }
+        }
+    }
+}
\ No newline at end of file
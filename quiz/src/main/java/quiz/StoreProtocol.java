@@ -0,0 +1,141 @@
+package quiz;
+
+import java.nio.charset.StandardCharsets;
+import java.util.BitSet;
+import java.util.List;
+
+// Wire protocol between the nodes of a cluster and their StoreServer, in
+// the frames of the binary client protocol: <type byte> <varint payload
+// length> <payload>, with varint integers and length-prefixed strings. Bank
+// hashes are eight bytes, most significant first.
+//
+// A node sends requests and the store answers every one of them with one
+// reply, in order, so requests are pipelined without ids. Sessions are
+// named by their token; a node holds at most one claim per token, and the
+// store lets go of a node's claims when its connection closes.
+class StoreProtocol {
+    static final int DEFAULT_PORT = 12400;
+    
+    // Node to store
+    static final int START = 1;     // token, bank hash, index count + 1 (0 for none), indices
+    static final int RESUME = 2;    // token, bank hash
+    static final int RECORD = 3;    // token, question, correct flag
+    static final int FINISH = 4;    // token
+    static final int RELEASE = 5;   // token
+    static final int SCORE = 6;     // token, name, score, answered
+    static final int TOP = 7;       // limit
+    
+    // Store to node
+    static final int OK = 32;          // empty; a RECORD is only answered once it is durable
+    static final int RESUMED = 33;     // found flag, then index count + 1, indices, score, answered, graded questions
+    static final int STANDINGS = 34;   // count, then token, name, score and answered per entry
+    
+    static void start(FrameBuffer out, String token, long bankHash, int[] indices) {
+        byte[] key = utf8(token);
+        int count = indices == null ? 0 : indices.length + 1;
+        int length = size(key) + 8 + BinaryProtocol.varintSize(count);
+        for (int i = 0; i < count - 1; i++) {
+            length += BinaryProtocol.varintSize(indices[i]);
+        }
+        longValue(string(BinaryProtocol.header(out, START, length), key), bankHash).appendVarint(count);
+        for (int i = 0; i < count - 1; i++) {
+            out.appendVarint(indices[i]);
+        }
+    }
+    
+    static void resume(FrameBuffer out, String token, long bankHash) {
+        byte[] key = utf8(token);
+        longValue(string(BinaryProtocol.header(out, RESUME, size(key) + 8), key), bankHash);
+    }
+    
+    static void record(FrameBuffer out, String token, int question, boolean correct) {
+        byte[] key = utf8(token);
+        string(BinaryProtocol.header(out, RECORD, size(key) + BinaryProtocol.varintSize(question) + 1), key)
+            .appendVarint(question).append((char) (correct ? 1 : 0));
+    }
+    
+    // FINISH or RELEASE
+    static void session(FrameBuffer out, int type, String token) {
+        byte[] key = utf8(token);
+        string(BinaryProtocol.header(out, type, size(key)), key);
+    }
+    
+    static void score(FrameBuffer out, String token, String name, int score, int answered) {
+        byte[] key = utf8(token);
+        byte[] text = utf8(name);
+        int length = size(key) + size(text) + BinaryProtocol.varintSize(score) + BinaryProtocol.varintSize(answered);
+        string(string(BinaryProtocol.header(out, SCORE, length), key), text).appendVarint(score).appendVarint(answered);
+    }
+    
+    static void top(FrameBuffer out, int limit) {
+        BinaryProtocol.header(out, TOP, BinaryProtocol.varintSize(limit)).appendVarint(limit);
+    }
+    
+    static void ok(FrameBuffer out) {
+        BinaryProtocol.header(out, OK, 0);
+    }
+    
+    static void notFound(FrameBuffer out) {
+        BinaryProtocol.header(out, RESUMED, 1).append((char) 0);
+    }
+    
+    static void resumed(FrameBuffer out, SessionStore.Claim claim) {
+        int count = claim.indices == null ? 0 : claim.indices.length + 1;
+        BitSet graded = claim.graded;
+        int length = 1 + BinaryProtocol.varintSize(count) + BinaryProtocol.varintSize(claim.score)
+            + BinaryProtocol.varintSize(claim.answered);
+        for (int i = 0; i < count - 1; i++) {
+            length += BinaryProtocol.varintSize(claim.indices[i]);
+        }
+        for (int i = graded.nextSetBit(0); i >= 0; i = graded.nextSetBit(i + 1)) {
+            length += BinaryProtocol.varintSize(i);
+        }
+        BinaryProtocol.header(out, RESUMED, length).append((char) 1).appendVarint(count);
+        for (int i = 0; i < count - 1; i++) {
+            out.appendVarint(claim.indices[i]);
+        }
+        // As many graded questions as answered
+        out.appendVarint(claim.score).appendVarint(claim.answered);
+        for (int i = graded.nextSetBit(0); i >= 0; i = graded.nextSetBit(i + 1)) {
+            out.appendVarint(i);
+        }
+    }
+    
+    static void standings(FrameBuffer out, List<Leaderboard.Standing> standings) {
+        byte[][] keys = new byte[standings.size()][];
+        byte[][] names = new byte[standings.size()][];
+        int length = BinaryProtocol.varintSize(names.length);
+        for (int i = 0; i < names.length; i++) {
+            Leaderboard.Standing standing = standings.get(i);
+            keys[i] = utf8(String.valueOf(standing.owner));
+            names[i] = utf8(standing.name);
+            length += size(keys[i]) + size(names[i])
+                + BinaryProtocol.varintSize(standing.score) + BinaryProtocol.varintSize(standing.answered);
+        }
+        BinaryProtocol.header(out, STANDINGS, length).appendVarint(names.length);
+        for (int i = 0; i < names.length; i++) {
+            Leaderboard.Standing standing = standings.get(i);
+            string(string(out, keys[i]), names[i]).appendVarint(standing.score).appendVarint(standing.answered);
+        }
+    }
+    
+    private static byte[] utf8(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+    
+    private static int size(byte[] text) {
+        return BinaryProtocol.varintSize(text.length) + text.length;
+    }
+    
+    private static FrameBuffer string(FrameBuffer out, byte[] text) {
+        return out.appendVarint(text.length).append(text);
+    }
+    
+    // Eight bytes, most significant first, as FrameReader.readLong() takes them
+    private static FrameBuffer longValue(FrameBuffer out, long value) {
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            out.append((char) ((value >>> shift) & 0xFF));
+        }
+        return out;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,274 @@
+package quiz;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+// Session store shared by the nodes of a cluster: a SessionJournal and a
+// Leaderboard behind StoreProtocol, so a session started on one node can be
+// resumed on any other and all nodes show one board.
+//
+// Each node keeps one connection and pipelines its requests. A thread per
+// node handles whatever requests have arrived, waits once for the journal
+// to make their answers durable and replies to all of them in one write,
+// so one group commit covers every session on every node.
+//
+// Takes the journal and leaderboard options of the server:
+//   java -cp quiz.jar quiz.StoreServer --port 12400 --journal.file store.journal
+public class StoreServer {
+    private final ServerConfig config;
+    private final EventLog log;
+    private final Leaderboard leaderboard;
+    private final Set<Socket> nodes = ConcurrentHashMap.newKeySet();
+    private SessionJournal journal;
+    private ServerSocket serverSocket;
+    private volatile boolean running = false;
+    private final CountDownLatch stopped = new CountDownLatch(1);
+    
+    public StoreServer(ServerConfig config, EventLog log) {
+        this.config = config;
+        this.log = log;
+        this.leaderboard = new Leaderboard(config.getLeaderboardSize());
+    }
+    
+    public synchronized void start() throws IOException {
+        if (running) {
+            return;
+        }
+        if (config.getJournalFile() == null) {
+            throw new IOException("The session store needs a journal file");
+        }
+        journal = SessionJournal.open(new File(config.getJournalFile().trim()).toPath(), config.getJournalSync(),
+            config.getJournalMaxBytes(), TimeUnit.MINUTES.toMillis(config.getJournalRetainMinutes()), log);
+        try {
+            serverSocket = new ServerSocket(config.getPort(), config.getAcceptBacklog());
+        } catch (IOException e) {
+            journal.close();
+            throw e;
+        }
+        running = true;
+        
+        Thread acceptor = new Thread(this::acceptLoop, "quiz-store-accept");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        log.message("Session store listening on port " + serverSocket.getLocalPort());
+    }
+    
+    public synchronized void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        try {
+            serverSocket.close();
+        } catch (IOException e) {
+            log.message("Error closing server socket: " + e.getMessage());
+        }
+        for (Socket node : nodes) {
+            try {
+                node.close();
+            } catch (IOException e) {
+                // Closed anyway
+            }
+        }
+        journal.close();
+        log.message("Session store stopped");
+        stopped.countDown();
+    }
+    
+    public int getLocalPort() {
+        ServerSocket socket = serverSocket;
+        return socket != null ? socket.getLocalPort() : -1;
+    }
+    
+    public void awaitStop() throws InterruptedException {
+        stopped.await();
+    }
+    
+    private void acceptLoop() {
+        while (running) {
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                nodes.add(socket);
+                Thread thread = new Thread(() -> serve(socket), "quiz-store-" + socket.getRemoteSocketAddress());
+                thread.setDaemon(true);
+                thread.start();
+            } catch (IOException e) {
+                if (running) {
+                    log.message("Error accepting a node: " + e.getMessage());
+                }
+            }
+        }
+    }
+    
+    // The claims a node holds go back to the journal when it disconnects,
+    // so its sessions can be resumed on the other nodes
+    private void serve(Socket socket) {
+        String address = String.valueOf(socket.getRemoteSocketAddress());
+        Map<String, SessionStore.Claim> claims = new HashMap<>();
+        log.message("Node " + address + " connected");
+        try (Socket node = socket) {
+            FrameReader in = new FrameReader(node.getInputStream());
+            OutputStream out = node.getOutputStream();
+            FrameBuffer replies = new FrameBuffer(8192);
+            long durable = 0;
+            int type;
+            while ((type = in.readFrame()) >= 0) {
+                durable = Math.max(durable, handle(type, in, claims, replies));
+                if (!in.hasBuffered()) {
+                    if (durable > 0) {
+                        journal.awaitDurable(durable);
+                        durable = 0;
+                    }
+                    replies.writeTo(out);
+                }
+            }
+            log.message("Node " + address + " disconnected");
+        } catch (IOException e) {
+            if (running) {
+                log.message("Error serving node " + address + ": " + e.getMessage());
+            }
+        } finally {
+            for (SessionStore.Claim claim : claims.values()) {
+                journal.release(claim);
+            }
+            nodes.remove(socket);
+        }
+    }
+    
+    // Answers one request; returns the journal position its reply waits for, or 0
+    private long handle(int type, FrameReader in, Map<String, SessionStore.Claim> claims, FrameBuffer replies) throws IOException {
+        String token = type != StoreProtocol.TOP ? in.readString() : null;
+        SessionStore.Claim claim;
+        switch (type) {
+            case StoreProtocol.START:
+                long bankHash = in.readLong();
+                int count = in.readVarint();
+                int[] indices = null;
+                if (count > 0) {
+                    indices = new int[count - 1];
+                    for (int i = 0; i < indices.length; i++) {
+                        indices[i] = in.readVarint();
+                    }
+                }
+                claim = journal.start(token, bankHash, indices);
+                if (claim != null) {
+                    replace(claims, token, claim);
+                }
+                StoreProtocol.ok(replies);
+                return 0;
+            
+            case StoreProtocol.RESUME:
+                claim = journal.resume(token, in.readLong());
+                if (claim == null) {
+                    StoreProtocol.notFound(replies);
+                } else {
+                    replace(claims, token, claim);
+                    StoreProtocol.resumed(replies, claim);
+                }
+                return 0;
+            
+            case StoreProtocol.RECORD:
+                int question = in.readVarint();
+                boolean correct = in.readBoolean();
+                claim = claims.get(token);
+                // A stale claim, resumed on another node since, is ignored
+                long position = claim != null ? journal.record(claim, question, correct) : -1;
+                StoreProtocol.ok(replies);
+                return Math.max(0, position);
+            
+            case StoreProtocol.FINISH:
+                claim = claims.remove(token);
+                if (claim != null) {
+                    journal.finish(claim);
+                }
+                StoreProtocol.ok(replies);
+                return 0;
+            
+            case StoreProtocol.RELEASE:
+                claim = claims.remove(token);
+                if (claim != null) {
+                    journal.release(claim);
+                }
+                StoreProtocol.ok(replies);
+                return 0;
+            
+            case StoreProtocol.SCORE:
+                String name = in.readString();
+                int score = in.readVarint();
+                leaderboard.submit(token, name, score, in.readVarint());
+                StoreProtocol.ok(replies);
+                return 0;
+            
+            case StoreProtocol.TOP:
+                StoreProtocol.standings(replies, leaderboard.top(in.readVarint()));
+                return 0;
+            
+            default:
+                throw new IOException("Unknown request type " + type);
+        }
+    }
+    
+    private void replace(Map<String, SessionStore.Claim> claims, String token, SessionStore.Claim claim) {
+        SessionStore.Claim previous = claims.put(token, claim);
+        if (previous != null) {
+            journal.release(previous);
+        }
+    }
+    
+    // Defaults to port 12400 and store.journal, so it can run next to a server
+    public static void main(String[] args) {
+        ServerConfig config;
+        try {
+            String[] defaults = {"--port", String.valueOf(StoreProtocol.DEFAULT_PORT), "--journal.file", "store.journal"};
+            String[] all = new String[defaults.length + args.length];
+            System.arraycopy(defaults, 0, all, 0, defaults.length);
+            System.arraycopy(args, 0, all, defaults.length, args.length);
+            config = ServerConfig.fromArgs(all);
+        } catch (IllegalArgumentException | IOException e) {
+            System.err.println(e.getMessage());
+            System.err.println(ServerConfig.usage());
+            System.exit(2);
+            return;
+        }
+        
+        EventLog log;
+        try {
+            log = QuizEngine.createLog(config, batch -> System.out.print(batch));
+        } catch (IOException e) {
+            System.err.println("Failed to open log file: " + e.getMessage());
+            System.exit(1);
+            return;
+        }
+        log.start();
+        
+        StoreServer store = new StoreServer(config, log);
+        try {
+            store.start();
+        } catch (IOException e) {
+            log.close();
+            System.err.println("Failed to start session store: " + e.getMessage());
+            System.exit(1);
+            return;
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            store.stop();
+            log.close();
+        }, "quiz-shutdown"));
+        
+        try {
+            store.awaitStop();
+        } catch (InterruptedException e) {
+            store.stop();
+        }
+    }
+}
\ No newline at end of file
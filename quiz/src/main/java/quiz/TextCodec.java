@@ -0,0 +1,168 @@
+package quiz;
+
+import java.io.IOException;
+import java.util.BitSet;
+import java.util.List;
+
+// The original newline delimited protocol
+class TextCodec implements WireCodec {
+    static final TextCodec INSTANCE = new TextCodec();
+    
+    private static final byte[] INVALID_ANSWER = FrameBuffer.ascii("ERROR:Invalid answer format\n");
+    private static final byte[] TAGGED_QUESTION = FrameBuffer.ascii("QUESTION#");
+    private static final byte[] TAGGED_RESULT = FrameBuffer.ascii("RESULT#");
+    private static final int QUESTION_PREFIX_LENGTH = "QUESTION:".length();
+    
+    @Override
+    public void total(FrameBuffer out, int total) {
+        out.append(FrameBuffer.TOTAL).append(total).append('\n');
+    }
+    
+    @Override
+    public void question(FrameBuffer out, Question question, int id) {
+        byte[] frame = question.getFrame();
+        if (id == UNTAGGED) {
+            out.append(frame);
+        } else {
+            // QUESTION#<id>:<text>, followed by the same OPTIONS block
+            out.append(TAGGED_QUESTION).append(id).append(':')
+               .append(frame, QUESTION_PREFIX_LENGTH, frame.length - QUESTION_PREFIX_LENGTH);
+        }
+    }
+    
+    @Override
+    public void result(FrameBuffer out, Question question, int id, boolean correct) {
+        if (id == UNTAGGED) {
+            out.append(correct ? FrameBuffer.RESULT_CORRECT : question.getIncorrectResult());
+            return;
+        }
+        out.append(TAGGED_RESULT).append(id).append(':');
+        if (correct) {
+            out.append("CORRECT\n");
+        } else {
+            out.append("INCORRECT:").append(question.getCorrectAnswer()).append('\n');
+        }
+    }
+    
+    @Override
+    public void deadline(FrameBuffer out, int millis) {
+        TimedQuestions.deadline(out, millis);
+    }
+    
+    @Override
+    public void timedOut(FrameBuffer out, Question question, int id) {
+        if (id == UNTAGGED) {
+            out.append("RESULT:");
+        } else {
+            out.append(TAGGED_RESULT).append(id).append(':');
+        }
+        out.append(TimedQuestions.TIMEOUT).append(':').append(question.getCorrectAnswer()).append('\n');
+    }
+    
+    @Override
+    public void score(FrameBuffer out, int score, int answered) {
+        out.appendScore(score, answered);
+    }
+    
+    @Override
+    public void finished(FrameBuffer out, int score, int total) {
+        out.append("FINISHED:Your final score is ").append(score).append(" out of ").append(total).append('\n');
+    }
+    
+    @Override
+    public void error(FrameBuffer out, String message) {
+        if (message == null) {
+            out.append(INVALID_ANSWER);
+        } else {
+            out.append("ERROR:").append(message).append('\n');
+        }
+    }
+    
+    @Override
+    public void pipelineAccepted(FrameBuffer out, int window) {
+        out.append(Pipelining.ACCEPTED_PREFIX).append(window).append('\n');
+    }
+    
+    @Override
+    public void hashes(FrameBuffer out, QuestionBank questions) {
+        QuestionSync.hashes(out, questions);
+    }
+    
+    @Override
+    public void cachedQuestion(FrameBuffer out, int number) {
+        QuestionSync.cachedQuestion(out, number);
+    }
+    
+    @Override
+    public void leaderboard(FrameBuffer out, List<Leaderboard.Standing> standings) {
+        LiveStats.leaderboard(out, standings);
+    }
+    
+    @Override
+    public void questionStats(FrameBuffer out, int id, long attempts, long correct) {
+        LiveStats.questionStats(out, id, attempts, correct);
+    }
+    
+    @Override
+    public boolean read(FrameReader in, Message message) throws IOException {
+        String line = in.readLine();
+        if (line == null) {
+            return false;
+        }
+        parse(line, message);
+        return true;
+    }
+    
+    // Decodes one client line; the nio engine reads lines itself
+    void parse(String line, Message message) {
+        try {
+            if (line.startsWith("ANSWER:")) {
+                message.set(Message.Type.ANSWER, UNTAGGED, Integer.parseInt(line.substring(7)));
+            } else if (line.startsWith("ANSWER#")) {
+                // ANSWER#<id>:<option>
+                int colon = line.indexOf(':', 7);
+                if (colon < 0) {
+                    throw new NumberFormatException(line);
+                }
+                message.set(Message.Type.ANSWER, Integer.parseInt(line.substring(7, colon)),
+                    Integer.parseInt(line.substring(colon + 1)));
+            } else if (line.startsWith(BinaryProtocol.UPGRADE_PREFIX)) {
+                message.set(Message.Type.UPGRADE, UNTAGGED,
+                    BinaryProtocol.negotiate(line, BinaryProtocol.UPGRADE_PREFIX));
+            } else if (line.startsWith(Pipelining.REQUEST_PREFIX)) {
+                message.set(Message.Type.PIPELINE, UNTAGGED,
+                    Integer.parseInt(line.substring(Pipelining.REQUEST_PREFIX.length()).trim()));
+            } else if (line.startsWith(Resumption.REQUEST_PREFIX)) {
+                message.set(Message.Type.RESUME, UNTAGGED, 0);
+                message.text = line.substring(Resumption.REQUEST_PREFIX.length()).trim();
+            } else if (line.startsWith(LiveStats.LEADERBOARD_PREFIX)) {
+                // LEADERBOARD or LEADERBOARD:<limit>
+                message.set(Message.Type.LEADERBOARD, UNTAGGED, optionalNumber(line, LiveStats.LEADERBOARD_PREFIX));
+            } else if (line.startsWith(LiveStats.STATS_PREFIX)) {
+                message.set(Message.Type.STATS, optionalNumber(line, LiveStats.STATS_PREFIX), 0);
+            } else if (line.startsWith(QuestionSync.HAVE_PREFIX)) {
+                BitSet known = QuestionSync.parseHave(line.substring(QuestionSync.HAVE_PREFIX.length()).trim());
+                message.set(Message.Type.HAVE, UNTAGGED, 0);
+                message.known = known;
+            } else if (line.equals(TimedQuestions.LATE_ANSWERS_LINE)) {
+                message.set(Message.Type.LATE_ANSWERS, UNTAGGED, 0);
+            } else {
+                message.set(Message.Type.OTHER, UNTAGGED, 0);
+                message.text = line;
+            }
+        } catch (NumberFormatException e) {
+            message.set(Message.Type.INVALID, UNTAGGED, 0);
+        }
+    }
+    
+    // The number after <prefix>:, or 0 if the line is just the prefix
+    private static int optionalNumber(String line, String prefix) {
+        if (line.length() == prefix.length()) {
+            return 0;
+        }
+        if (line.charAt(prefix.length()) != ':') {
+            throw new NumberFormatException(line);
+        }
+        return Integer.parseInt(line.substring(prefix.length() + 1).trim());
+    }
+}
\ No newline at end of file
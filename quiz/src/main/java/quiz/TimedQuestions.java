@@ -0,0 +1,39 @@
+package quiz;
+
+// Timed questions. A question with a time limit (see the T: line of
+// QuestionParser) is preceded by DEADLINE:<millis>, the time the client has
+// left to answer it, counted from when the server sent it. Clients count
+// down from when the line arrives. A question repeated after a bad answer
+// keeps its original deadline.
+//
+// Once the deadline passes the server grades the question itself and sends
+// RESULT:TIMEOUT:<correct option> (RESULT#<id>:TIMEOUT:<correct option> when
+// pipelined) followed by SCORE as usual; a tagged answer that arrives too
+// late gets the same reply. A timed out question counts as answered wrong.
+// Binary sessions get DEADLINE and TIMED_OUT frames instead.
+//
+// An untagged answer can't say which question it is for. The server offers
+// HELLO:TIMED/1, and a client that answers with TIMED:LATE promises that in
+// lockstep a question that timed out is still answered once: the server
+// then drops the next untagged answer as the late one, which the timeout
+// already replied to. Such clients, when they stop the player from
+// answering, send ANSWER:0 in its place, ahead of their next answer.
+//
+// Clients that don't know the lines skip them: they see no countdown, and
+// the timeout only shows in the score. Their answers are never dropped, so
+// one that crossed the timeout is graded against the next question.
+class TimedQuestions {
+    static final String HELLO_LINE = "HELLO:TIMED/1";
+    static final String LATE_ANSWERS_LINE = "TIMED:LATE";
+    static final String DEADLINE_PREFIX = "DEADLINE:";
+    static final String TIMEOUT = "TIMEOUT";
+    
+    static void deadline(FrameBuffer out, int millis) {
+        out.append(DEADLINE_PREFIX).append(millis).append('\n');
+    }
+    
+    // Milliseconds from now until a System.nanoTime() deadline, at least 0
+    static int remainingMillis(long deadline, long now) {
+        return (int) Math.max(0, (deadline - now) / 1_000_000L);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,158 @@
+package quiz;
+
+// Hashed timing wheel for deadlines owned by a single thread, such as an
+// event loop. Time is cut into ticks and each tick hashes to one of a ring
+// of buckets; a timeout goes into the bucket of the tick it expires in,
+// with the number of whole turns of the ring still to wait. Buckets are
+// intrusive doubly linked lists, so scheduling and cancelling are O(1)
+// however many timeouts are pending, and advancing only looks at the
+// buckets of the ticks that passed.
+//
+// Not thread safe: schedule, cancel and advance on the owning thread.
+// Timeouts fire up to one tick late, never early.
+final class TimerWheel {
+    private final long tickNanos;
+    private final Timeout[] buckets;   // sentinel heads of circular lists
+    private final Timeout due = sentinel();
+    private final int mask;
+    private final long origin;
+    private long tick;                 // next tick to expire
+    private int size;
+    
+    // A pending task; cancel() takes it off the wheel
+    final class Timeout {
+        private final Runnable task;
+        private final long deadline;
+        private long rounds;
+        private Timeout previous;
+        private Timeout next;
+        
+        private Timeout(Runnable task, long deadline) {
+            this.task = task;
+            this.deadline = deadline;
+        }
+        
+        // In System.nanoTime() terms
+        long getDeadline() {
+            return deadline;
+        }
+        
+        boolean isPending() {
+            return next != null;
+        }
+        
+        // False if it already fired or was cancelled
+        boolean cancel() {
+            if (next == null) {
+                return false;
+            }
+            unlink(this);
+            return true;
+        }
+    }
+    
+    // Ticks per wheel is rounded up to a power of two
+    TimerWheel(long tickMillis, int ticksPerWheel, long now) {
+        if (tickMillis <= 0 || ticksPerWheel <= 0) {
+            throw new IllegalArgumentException("Tick and wheel size must be positive");
+        }
+        int length = Integer.highestOneBit(Math.max(1, ticksPerWheel - 1)) << 1;
+        this.tickNanos = tickMillis * 1_000_000L;
+        this.buckets = new Timeout[length];
+        this.mask = length - 1;
+        this.origin = now;
+        for (int i = 0; i < length; i++) {
+            buckets[i] = sentinel();
+        }
+    }
+    
+    // Runs the task on the first advance() at or after the deadline
+    Timeout schedule(Runnable task, long deadline) {
+        Timeout timeout = new Timeout(task, deadline);
+        // The tick whose end passes the deadline, at least the next one to expire
+        long expires = Math.max(tick, Math.floorDiv(deadline - origin + tickNanos - 1, tickNanos) - 1);
+        timeout.rounds = (expires - tick) >>> Integer.numberOfTrailingZeros(buckets.length);
+        
+        append(buckets[(int) (expires & mask)], timeout);
+        size++;
+        return timeout;
+    }
+    
+    // Expires every tick that has ended by now and runs its due tasks.
+    // Returns the number of tasks run.
+    int advance(long now) {
+        long current = (now - origin) / tickNanos;
+        if (size == 0) {
+            // Nothing to look at in the ticks that passed
+            tick = Math.max(tick, current);
+            return 0;
+        }
+        int fired = 0;
+        while (tick < current) {
+            // Due timeouts are set aside first, so tasks may cancel or
+            // schedule others without disturbing the bucket being walked
+            Timeout head = buckets[(int) (tick & mask)];
+            Timeout timeout = head.next;
+            while (timeout != head) {
+                Timeout next = timeout.next;
+                if (timeout.rounds <= 0) {
+                    detach(timeout);
+                    append(due, timeout);
+                } else {
+                    timeout.rounds--;
+                }
+                timeout = next;
+            }
+            tick++;
+            
+            while (due.next != due) {
+                Timeout expired = due.next;
+                unlink(expired);
+                expired.task.run();
+                fired++;
+            }
+        }
+        return fired;
+    }
+    
+    // How long a caller may block before the next tick ends, in milliseconds,
+    // or the given maximum if nothing is pending
+    long millisToNextTick(long now, long maximum) {
+        if (size == 0) {
+            return maximum;
+        }
+        long end = origin + (tick + 1) * tickNanos;
+        long millis = (end - now + 999_999) / 1_000_000L;
+        return Math.max(1, Math.min(maximum, millis));
+    }
+    
+    int size() {
+        return size;
+    }
+    
+    private Timeout sentinel() {
+        Timeout head = new Timeout(null, 0);
+        head.previous = head;
+        head.next = head;
+        return head;
+    }
+    
+    private static void append(Timeout head, Timeout timeout) {
+        timeout.previous = head.previous;
+        timeout.next = head;
+        head.previous.next = timeout;
+        head.previous = timeout;
+    }
+    
+    private static void detach(Timeout timeout) {
+        timeout.previous.next = timeout.next;
+        timeout.next.previous = timeout.previous;
+    }
+    
+    private void unlink(Timeout timeout) {
+        detach(timeout);
+        timeout.previous = null;
+        timeout.next = null;
+        size--;
+    }
+}
\ No newline at end of file
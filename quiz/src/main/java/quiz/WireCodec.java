@@ -0,0 +1,77 @@
+package quiz;
+
+import java.io.IOException;
+import java.util.BitSet;
+import java.util.List;
+
+// Server side encoding of the quiz protocol. TextCodec and BinaryCodec
+// implement it so ClientHandler runs the same session logic on either.
+interface WireCodec {
+    // Question ids are only sent once the client asked for pipelining
+    int UNTAGGED = -1;
+    
+    void total(FrameBuffer out, int total);
+    
+    void question(FrameBuffer out, Question question, int id);
+    
+    void result(FrameBuffer out, Question question, int id, boolean correct);
+    
+    // Goes right before a timed question; see TimedQuestions
+    void deadline(FrameBuffer out, int millis);
+    
+    // Result of a question whose deadline passed
+    void timedOut(FrameBuffer out, Question question, int id);
+    
+    void score(FrameBuffer out, int score, int answered);
+    
+    void finished(FrameBuffer out, int score, int total);
+    
+    void error(FrameBuffer out, String message);
+    
+    void pipelineAccepted(FrameBuffer out, int window);
+    
+    // Content hashes of the session's questions, and a question sent by
+    // its position because the client has it; see QuestionSync
+    void hashes(FrameBuffer out, QuestionBank questions);
+    
+    void cachedQuestion(FrameBuffer out, int number);
+    
+    void leaderboard(FrameBuffer out, List<Leaderboard.Standing> standings);
+    
+    void questionStats(FrameBuffer out, int id, long attempts, long correct);
+    
+    // Reads the next client message into the holder; false at end of stream
+    boolean read(FrameReader in, Message message) throws IOException;
+    
+    // One decoded client message, reused for the whole session
+    class Message {
+        enum Type {
+            ANSWER,
+            UPGRADE,
+            PIPELINE,
+            RESUME,
+            LEADERBOARD,
+            STATS,
+            HAVE,
+            COMPRESS,
+            LATE_ANSWERS,
+            INVALID,
+            OTHER
+        }
+        
+        Type type;
+        int id;
+        int value;
+        String text;
+        // The questions a HAVE message names, by position from 0
+        BitSet known;
+        
+        void set(Type type, int id, int value) {
+            this.type = type;
+            this.id = id;
+            this.value = value;
+            this.text = null;
+            this.known = null;
+        }
+    }
+}
\ No newline at end of file